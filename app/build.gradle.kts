@@ -58,11 +58,8 @@ dependencies {
     implementation(libs.tensorflow.lite)
     // implementation(libs.tensorflow.lite.support) // Add if you use support library features
 
-    // --- Add JTransforms dependency ---
-    implementation("com.github.wendykierp:JTransforms:3.1") {
-        // Exclude conflicting dependencies if they arise (unlikely here)
-        // exclude(group = "junit", module="junit")
-    }
+    // --- Android-free audio, decoding and engine code (brings JTransforms) ---
+    implementation(project(":core"))
 
     testImplementation(libs.junit)
     androidTestImplementation(libs.ext.junit)
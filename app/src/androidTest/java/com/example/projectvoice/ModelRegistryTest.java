@@ -0,0 +1,94 @@
+package com.example.projectvoice;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Background model loading on a device. The cold-start timings are reported as instrumentation
+ * status ({@code am instrument -r} prints them) and logged under {@value #TAG}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ModelRegistryTest {
+
+    private static final String TAG = "ModelRegistryTest";
+    private static final long LOAD_TIMEOUT_SECONDS = 60;
+
+    @Test
+    public void load_yieldsUsableSession() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        ExecutorService featureExecutor = Executors.newSingleThreadExecutor();
+        ExecutorService loadExecutor = Executors.newFixedThreadPool(2);
+        ModelRegistry registry = new ModelRegistry(context, "filters_vocab_multilingual.bin", 1, featureExecutor);
+        try {
+            CompletableFuture<ModelRegistry.ReadySession> ready = registry.load(loadExecutor);
+            assertSame(ready, registry.load(loadExecutor));
+            ModelRegistry.ReadySession session = ready.get(LOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+            assertEquals(AudioPreprocessor.melFeatureCount(session.whisperHelper.getInputShape()), session.melEngine.getMelCount());
+            assertTrue(session.readyNanos >= Math.max(session.modelNanos, session.assetNanos));
+            assertEquals(session.interpreters.size(), session.engines.size());
+            // Silence never reaches the model, so this exercises features and the VAD only
+            StreamingMelFrontend frontend = session.transcriptionEngine.newFrontend();
+            float[] silence = new float[AudioPreprocessor.SAMPLE_RATE];
+            frontend.accept(silence, 0, silence.length);
+            TranscriptionEngine engine = session.engines.acquire(PriorityPool.Priority.INTERACTIVE);
+            try {
+                assertNull(engine.transcribe(frontend).speech);
+            } finally {
+                session.engines.release(engine);
+            }
+            assertEquals(session.engines.size(), session.engines.getIdleCount());
+        } finally {
+            registry.close();
+            featureExecutor.shutdown();
+            loadExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void coldStart_canRecordBeforeModelIsReady() throws Exception {
+        long start = SystemClock.elapsedRealtimeNanos();
+        try (ActivityScenario<MainActivity> scenario = ActivityScenario.launch(MainActivity.class)) {
+            InstrumentationRegistry.getInstrumentation().waitForIdleSync(); // First frame drawn
+            long firstFrameNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+            final AtomicReference<CompletableFuture<ModelRegistry.ReadySession>> ready = new AtomicReference<>();
+            final AtomicBoolean canStart = new AtomicBoolean();
+            scenario.onActivity(activity -> {
+                ready.set(activity.getModelReady());
+                canStart.set(activity.findViewById(R.id.buttonStartRecord).isEnabled());
+            });
+            assertTrue("Recording should be possible while the model loads", canStart.get());
+
+            ModelRegistry.ReadySession session = ready.get().get(LOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            long readyNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+            Bundle results = new Bundle();
+            results.putLong("cold_start_to_first_frame_ms", firstFrameNanos / 1_000_000L);
+            results.putLong("cold_start_to_model_ready_ms", readyNanos / 1_000_000L);
+            results.putLong("model_load_ms", session.modelNanos / 1_000_000L);
+            results.putLong("asset_load_ms", session.assetNanos / 1_000_000L);
+            InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+            Log.i(TAG, "Cold start: first frame " + firstFrameNanos / 1_000_000L + " ms, model ready " + readyNanos / 1_000_000L
+                    + " ms (model " + session.modelNanos / 1_000_000L + " ms, assets " + session.assetNanos / 1_000_000L + " ms in parallel)");
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.projectvoice;
+
+import android.media.AudioRecord;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * {@link AudioSource} over an {@code ENCODING_PCM_16BIT} mono AudioRecord. Reads are blocking
+ * {@code read(short[], ...)} calls into the caller's array, which for
+ * {@link PcmRingBuffer#write(AudioSource, int)} is the ring itself, so the platform copies each
+ * sample once and nothing else touches it before the frontend converts it to float.
+ */
+public class AudioRecordSource implements AudioSource {
+    private static final String TAG = "AudioRecordSource";
+
+    private final AudioRecord audioRecord;
+
+    /** @param audioRecord Owned, started and released by the caller. */
+    public AudioRecordSource(AudioRecord audioRecord) {
+        this.audioRecord = audioRecord;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return audioRecord.getSampleRate();
+    }
+
+    @Override
+    public int read(short[] samples, int offset, int length) throws IOException {
+        int samplesRead = audioRecord.read(samples, offset, length);
+        if (samplesRead == AudioRecord.ERROR_INVALID_OPERATION || samplesRead == AudioRecord.ERROR_BAD_VALUE
+                || samplesRead == AudioRecord.ERROR_DEAD_OBJECT) {
+            throw new IOException("AudioRecord.read failed: " + samplesRead);
+        }
+        if (samplesRead < 0) {
+            Log.e(TAG, "Error reading audio data: " + samplesRead); // Other errors may be transient
+            return 0;
+        }
+        return samplesRead;
+    }
+}
@@ -0,0 +1,409 @@
+package com.example.projectvoice;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Debug;
+import android.util.Log;
+
+import org.tensorflow.lite.DataType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the model and its assets off the main thread.
+ *
+ * The interpreters (one model mmap, delegate selection and warm-up, see
+ * {@link WhisperInterpreterPool}) and the filters/vocabulary pack load in parallel on a background
+ * executor. Once both are in, the Mel engine (which needs the model's input shape and the pack's
+ * filters) and one {@link TranscriptionEngine} per interpreter are built, and {@link #getReady()}
+ * completes with all of it. It completes exceptionally if the model or the pack cannot be loaded.
+ * The UI can start capturing before then and only wait for the session once features are to be
+ * computed.
+ */
+public class ModelRegistry {
+
+    private static final String TAG = "ModelRegistry";
+    private static final String MODEL_FILENAME = "whisper-tiny.tflite";
+    private static final int QUEUED_TAKES = 2; // Beyond the running ones; more are rejected
+    // Shorter encoder inputs (5, 10 and 15 s) for short utterances, next to the full 30 s one
+    private static final int[] LENGTH_BUCKET_FRAMES = {500, 1000, 1500};
+    private static final long CLOSE_TIMEOUT_MS = 500;
+
+    /** Everything a take needs, built once per model. */
+    public static final class ReadySession {
+        public final WhisperInterpreterPool interpreters;
+        /** The first interpreter; for tensor details. */
+        public final WhisperHelper whisperHelper;
+        public final TokenTable tokenTable;
+        public final MelSpectrogramEngine melEngine;
+        /** Encoder/decoder stepping on the first interpreter for split models; null for monolithic ones. */
+        public final WhisperSession whisperSession;
+        /** One engine per interpreter; lease one for each take, interactive ones at {@code INTERACTIVE}. */
+        public final PriorityPool<TranscriptionEngine> engines;
+        /** The first pooled engine, for {@link TranscriptionEngine#newFrontend()}; lease it before transcribing. */
+        public final TranscriptionEngine transcriptionEngine;
+        /** Runs takes on {@link #engines}; a few can queue behind the running ones. */
+        public final TranscriptionScheduler scheduler;
+        public final TranscriptionMetrics metrics;
+        /** Interpreter creation and warm-up, pack mapping, and load start to ready, in nanoseconds. */
+        public final long modelNanos;
+        public final long assetNanos;
+        public final long readyNanos;
+        private final ExecutorService featureExecutor;
+
+        ReadySession(WhisperInterpreterPool interpreters, TokenTable tokenTable, MelSpectrogramEngine melEngine, WhisperSession whisperSession,
+                     List<TranscriptionEngine> engines, TranscriptionMetrics metrics, ExecutorService featureExecutor,
+                     long modelNanos, long assetNanos, long readyNanos) {
+            this.interpreters = interpreters;
+            this.whisperHelper = interpreters.getPrimary();
+            this.tokenTable = tokenTable;
+            this.melEngine = melEngine;
+            this.whisperSession = whisperSession;
+            this.engines = new PriorityPool<>(engines);
+            this.transcriptionEngine = engines.get(0);
+            this.scheduler = new TranscriptionScheduler(this.engines, engines.size() + QUEUED_TAKES, metrics);
+            this.metrics = metrics;
+            this.modelNanos = modelNanos;
+            this.assetNanos = assetNanos;
+            this.readyNanos = readyNanos;
+            this.featureExecutor = featureExecutor;
+        }
+
+        /**
+         * Batches windows of offline jobs over many recordings into single invocations; give each
+         * worker thread its own {@link #newBatchEngine}. The batches run on an interpreter of their
+         * own, resized to {@code maxBatch} once (partial batches are padded), so neither they nor
+         * interactive takes reallocate tensors; each still waits for an engine of {@link #engines}
+         * at batch priority, so interactive takes go first and the cores are not oversubscribed.
+         *
+         * @return The batcher (shut it down when the job is done, before the session is closed; that
+         *         closes its interpreter), or null for split models, whose sessions decode one window
+         *         at a time, or if its interpreter cannot be created.
+         */
+        public InferenceBatcher openBatcher(int maxBatch, long maxWaitMillis) {
+            if (whisperHelper.isSplitModel()) {
+                return null;
+            }
+            final WhisperHelper helper;
+            try {
+                helper = interpreters.createHelper();
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot create the batch interpreter: " + e.getMessage(), e);
+                return null;
+            }
+            return new InferenceBatcher(new InferenceBatcher.BatchBackend() {
+                @Override
+                public void decodeBatch(ByteBuffer inputs, int batchSize, int[] prompt, int[][] out, int[] counts)
+                        throws InterruptedException {
+                    TranscriptionEngine turn = engines.acquire(PriorityPool.Priority.BATCH);
+                    try {
+                        ByteBuffer output = helper.transcribeBatch(inputs, batchSize);
+                        if (output == null) {
+                            throw new IllegalStateException("Batched transcription of " + batchSize + " inputs failed.");
+                        }
+                        // One output row per input, back to back
+                        int rowBytes = output.limit() / batchSize;
+                        for (int i = 0; i < batchSize; i++) {
+                            ByteBuffer row = output.duplicate();
+                            row.limit((i + 1) * rowBytes).position(i * rowBytes);
+                            counts[i] = readOutputTokens(row.slice(), helper.getOutputDataType(), helper.getOutputEncoding(),
+                                    helper.getOutputShape(), tokenTable.getEndOfText(), out[i]);
+                        }
+                    } finally {
+                        engines.release(turn);
+                    }
+                }
+
+                @Override
+                public void close() {
+                    helper.close();
+                }
+            }, melEngine, maxBatch, maxWaitMillis);
+        }
+
+        /** An engine for one worker of an offline job whose windows go through {@code batcher}. */
+        public TranscriptionEngine newBatchEngine(InferenceBatcher batcher) {
+            return new TranscriptionEngine(melEngine, tokenTable, batcher.asBackend(), featureExecutor, metrics);
+        }
+    }
+
+    // Timed result of one parallel load
+    private static final class Loaded<T> {
+        final T value;
+        final long nanos;
+
+        Loaded(T value, long nanos) {
+            this.value = value;
+            this.nanos = nanos;
+        }
+    }
+
+    private final Context context;
+    private final String vocabFilename;
+    private final int beamWidth;
+    private final ExecutorService featureExecutor;
+    private final int interpreterCount;
+    private CompletableFuture<ReadySession> ready;
+
+    /**
+     * @param vocabFilename   whisper.cpp filters/vocabulary pack in the assets; must match the model.
+     * @param beamWidth       Decoder beam width for split models; 1 is greedy.
+     * @param featureExecutor Prepares the next window's features during inference; caller-owned.
+     */
+    public ModelRegistry(Context context, String vocabFilename, int beamWidth, ExecutorService featureExecutor) {
+        this(context, vocabFilename, beamWidth, featureExecutor, 0);
+    }
+
+    /** @param interpreterCount Interpreters to run side by side; 0 sizes the pool for the device. */
+    public ModelRegistry(Context context, String vocabFilename, int beamWidth, ExecutorService featureExecutor, int interpreterCount) {
+        this.context = context.getApplicationContext();
+        this.vocabFilename = vocabFilename;
+        this.beamWidth = beamWidth;
+        this.featureExecutor = featureExecutor;
+        this.interpreterCount = interpreterCount;
+    }
+
+    /**
+     * Starts loading on {@code loadExecutor}, which should have two threads so model and pack
+     * load at the same time. Later calls return the same future.
+     */
+    public synchronized CompletableFuture<ReadySession> load(ExecutorService loadExecutor) {
+        if (ready != null) {
+            return ready;
+        }
+        final long start = System.nanoTime();
+        CompletableFuture<Loaded<WhisperInterpreterPool>> model = CompletableFuture.supplyAsync(() -> {
+            long t = System.nanoTime();
+            try {
+                return new Loaded<>(WhisperInterpreterPool.create(context, MODEL_FILENAME, WhisperHelper.Config.defaults(), interpreterCount,
+                        LENGTH_BUCKET_FRAMES), System.nanoTime() - t);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, loadExecutor);
+        CompletableFuture<Loaded<WhisperAssetPack>> pack = CompletableFuture.supplyAsync(() -> {
+            long t = System.nanoTime();
+            try {
+                Log.i(TAG, "Mapping filters/vocabulary from: " + vocabFilename);
+                return new Loaded<>(WhisperAssetPack.parse(WhisperHelper.mapAsset(context, vocabFilename)), System.nanoTime() - t);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, loadExecutor);
+        ready = model.thenCombine(pack, (m, p) -> build(m, p, start));
+        ready.whenComplete((session, error) -> {
+            if (error != null) {
+                Log.e(TAG, "Model or vocabulary failed to load", error);
+            }
+        });
+        return ready;
+    }
+
+    /** The future from {@link #load}; null before it was called. */
+    public synchronized CompletableFuture<ReadySession> getReady() {
+        return ready;
+    }
+
+    /**
+     * Once loading has finished (now, if it has): cancels queued and running takes, gives them
+     * {@value #CLOSE_TIMEOUT_MS} ms to let go of their interpreters and closes the interpreters.
+     */
+    public synchronized void close() {
+        if (ready != null) {
+            ready.thenAccept(session -> {
+                session.scheduler.shutdownNow();
+                try {
+                    if (!session.scheduler.awaitTermination(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                        Log.w(TAG, "Transcription still running; closing interpreters anyway");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                session.interpreters.close();
+            });
+        }
+    }
+
+    private ReadySession build(Loaded<WhisperInterpreterPool> model, Loaded<WhisperAssetPack> pack, long start) {
+        WhisperInterpreterPool interpreters = model.value;
+        WhisperHelper helper = interpreters.getPrimary();
+        WhisperAssetPack assetPack = pack.value;
+        TokenTable tokenTable = TokenTable.fromAssetPack(assetPack);
+        Log.i(TAG, interpreters.size() + " interpreter(s) initialized on " + helper.getBackendName() + " (warm-up " + helper.getWarmUpMillis() + " ms) in "
+                + model.nanos / 1_000_000L + " ms; filters " + assetPack.getMelCount() + "x" + assetPack.getFilterBinCount()
+                + ", " + tokenTable.getTokenCount() + " tokens (" + tokenTable.getFootprintBytes() / 1024 + " KB) in "
+                + pack.nanos / 1_000_000L + " ms");
+
+        // Built once for this model shape and input type; shared by every take's frontend and the engines
+        TensorEncoding inputEncoding = helper.getInputEncoding();
+        if (inputEncoding == null) {
+            throw new IllegalStateException("Unsupported model input type " + helper.getInputDataType());
+        }
+        MelSpectrogramEngine melEngine = new MelSpectrogramEngine(helper.getInputShape(), packFilterbankFor(assetPack, helper.getInputShape()),
+                MelSpectrogramEngine.Normalization.Z_SCORE, inputEncoding);
+
+        // Split encoder/decoder exports decode token by token with a KV-cache per interpreter
+        WhisperSession primarySession = null;
+        TranscriptionMetrics metrics = createMetrics(interpreters, helper.isSplitModel());
+        List<TranscriptionEngine> engines = new ArrayList<>(interpreters.size());
+        int[] bucketFrames = interpreters.getBucketFrames();
+        for (int i = 0; i < interpreters.size(); i++) {
+            WhisperHelper interpreter = interpreters.getHelpers().get(i);
+            WhisperSession session = interpreter.openSession(beamWidth);
+            if (primarySession == null && session != null) {
+                primarySession = session;
+                Log.i(TAG, "Using split encoder/decoder sessions (" + session.getMaxPositions() + " positions).");
+            }
+            TranscriptionEngine engine = new TranscriptionEngine(melEngine, tokenTable, backend(interpreter, session, tokenTable),
+                    featureExecutor, metrics);
+            // Each engine runs on one thread at a time, so its buckets can share its threads
+            for (int b = 0; b < bucketFrames.length; b++) {
+                WhisperHelper bucket = interpreters.getBucketHelper(b, i);
+                if (!inputEncoding.equals(bucket.getInputEncoding())) {
+                    // A variant converted on its own may be quantized differently; the frontend writes one encoding
+                    Log.w(TAG, "Skipping " + bucketFrames[b] + "-frame bucket: input " + bucket.getInputEncoding() + ", model " + inputEncoding);
+                    continue;
+                }
+                engine.addLengthBucket(bucketFrames[b], backend(bucket, bucket.openSession(beamWidth), tokenTable));
+            }
+            engines.add(engine);
+        }
+        metrics.setTag("length_buckets", Arrays.toString(engines.get(0).getLengthBucketFrames()));
+
+        long readyNanos = System.nanoTime() - start;
+        Log.i(TAG, "Model ready " + readyNanos / 1_000_000L + " ms after load started");
+        return new ReadySession(interpreters, tokenTable, melEngine, primarySession, engines, metrics, featureExecutor,
+                model.nanos, pack.nanos, readyNanos);
+    }
+
+    // Split exports decode token by token with the session's KV-cache; monolithic ones in one run
+    private TranscriptionEngine.Backend backend(WhisperHelper interpreter, WhisperSession session, TokenTable tokenTable) {
+        if (session == null) {
+            return monolithicBackend(interpreter, tokenTable);
+        }
+        WhisperDecoder first = (beamWidth > 1) ? new BeamSearchDecoder(beamWidth) : new GreedyDecoder();
+        WhisperDecoder decoder = new TemperatureFallbackDecoder(first, tokenTable, System.nanoTime());
+        return TranscriptionEngine.sessionBackend(session, decoder, tokenTable.getEndOfText());
+    }
+
+    // Use the pack's precomputed Mel filters when they fit the model; null falls back to computed ones
+    private static SparseMelFilterbank packFilterbankFor(WhisperAssetPack assetPack, int[] inputShape) {
+        int nMel = AudioPreprocessor.melFeatureCount(inputShape);
+        if (assetPack.getMelCount() != nMel || assetPack.getFilterBinCount() != AudioPreprocessor.NUM_SPECTRUM_BINS) {
+            Log.w(TAG, "Pack filters are " + assetPack.getMelCount() + "x" + assetPack.getFilterBinCount() + ", model needs " + nMel + "x" + AudioPreprocessor.NUM_SPECTRUM_BINS + ". Using computed filterbank.");
+            return null;
+        }
+        return assetPack.createFilterbank();
+    }
+
+
+    // --- Per-stage metrics; allocation is ART's process-wide counter, so it includes the UI thread ---
+    private static TranscriptionMetrics createMetrics(WhisperInterpreterPool interpreters, boolean split) {
+        WhisperHelper helper = interpreters.getPrimary();
+        TranscriptionMetrics metrics = new TranscriptionMetrics(() -> {
+            String allocated = Debug.getRuntimeStat("art.gc.bytes-allocated");
+            try {
+                return (allocated != null) ? Long.parseLong(allocated) : -1L;
+            } catch (NumberFormatException e) {
+                return -1L;
+            }
+        });
+        metrics.setTag("device", Build.MANUFACTURER + " " + Build.MODEL);
+        metrics.setTag("sdk", String.valueOf(Build.VERSION.SDK_INT));
+        metrics.setTag("build", Build.FINGERPRINT);
+        metrics.setTag("backend", helper.getBackendName());
+        metrics.setTag("input_shape", Arrays.toString(helper.getInputShape()));
+        metrics.setTag("model", split ? "split" : "monolithic");
+        metrics.setTag("interpreters", String.valueOf(interpreters.size()));
+        metrics.setTag("interpreter_threads", String.valueOf(interpreters.getThreadsPerInterpreter()));
+        return metrics;
+    }
+
+
+    // --- Monolithic graphs bake in their own prompt; the output buffer is pooled by WhisperHelper ---
+    private static TranscriptionEngine.Backend monolithicBackend(final WhisperHelper helper, final TokenTable tokenTable) {
+        return new TranscriptionEngine.Backend() {
+            @Override
+            public int decode(ByteBuffer input, int[] prompt, int[] out) {
+                ByteBuffer output = helper.transcribe(input);
+                if (output == null) {
+                    throw new IllegalStateException("Transcription failed or output tensor not found.");
+                }
+                try {
+                    return readOutputTokens(output, helper.getOutputDataType(), helper.getOutputEncoding(), helper.getOutputShape(),
+                            tokenTable.getEndOfText(), out);
+                } finally {
+                    helper.releaseOutputBuffer(output);
+                }
+            }
+
+            @Override
+            public void setCancelled(boolean cancelled) {
+                helper.setCancelled(cancelled);
+            }
+        };
+    }
+
+    // Token ids up to <|endoftext|> from a monolithic model's output into out; returns the count.
+    // encoding is the output's WhisperHelper.getOutputEncoding(), used for quantized logits
+    static int readOutputTokens(ByteBuffer outputBuffer, DataType outputDataType, TensorEncoding encoding, int[] shape,
+                                int endOfText, int[] out) {
+        outputBuffer.order(ByteOrder.nativeOrder()).rewind();
+        int count = 0;
+        switch (outputDataType) {
+            case INT32:
+                IntBuffer intBuffer = outputBuffer.asIntBuffer();
+                while (intBuffer.hasRemaining() && count < out.length) {
+                    int tokenId = intBuffer.get();
+                    if (tokenId == endOfText) break;
+                    out[count++] = tokenId;
+                }
+                return count;
+            case FLOAT32:
+                FloatBuffer floatBuffer = outputBuffer.asFloatBuffer();
+                int rowLength = (shape != null && shape.length > 0) ? shape[shape.length - 1] : 0;
+                if (rowLength > endOfText) {
+                    // [.., positions, vocab] logits: greedy argmax per position
+                    for (int row = 0; row + rowLength <= floatBuffer.limit() && count < out.length; row += rowLength) {
+                        int tokenId = Logits.argMax(floatBuffer, row, rowLength);
+                        if (tokenId == endOfText) break;
+                        out[count++] = tokenId;
+                    }
+                    return count;
+                }
+                while (floatBuffer.hasRemaining() && count < out.length) {
+                    int tokenId = (int) floatBuffer.get();
+                    if (tokenId == endOfText) break;
+                    out[count++] = tokenId;
+                }
+                return count;
+            case INT8:
+            case UINT8:
+                // [.., positions, vocab] quantized logits: argmax of the dequantized values, read in place
+                int vocab = (shape != null && shape.length > 0) ? shape[shape.length - 1] : 0;
+                if (encoding == null || vocab <= endOfText) {
+                    throw new IllegalArgumentException("Quantized output " + Arrays.toString(shape) + " is not a logits tensor");
+                }
+                int values = outputBuffer.limit();
+                for (int row = 0; row + vocab <= values && count < out.length; row += vocab) {
+                    int tokenId = Logits.argMax(outputBuffer, encoding, row, vocab);
+                    if (tokenId == endOfText) break;
+                    out[count++] = tokenId;
+                }
+                return count;
+            default:
+                throw new IllegalArgumentException("Unsupported output data type: " + outputDataType);
+        }
+    }
+}
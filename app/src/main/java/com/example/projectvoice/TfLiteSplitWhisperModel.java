@@ -0,0 +1,171 @@
+package com.example.projectvoice;
+
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link SplitWhisperModel} over a TFLite export with two signatures:
+ *
+ * <pre>
+ * encode: input_features [1, nMel, frames]                    -> cross_kv
+ * decode: input_ids [1, 1] int32, position [1] int32,
+ *         cross_kv, self_kv                                   -> logits [1, 1, vocab], new_self_kv
+ * </pre>
+ *
+ * {@code cross_kv} holds every decoder layer's cross-attention keys/values, projected once from the
+ * encoder output; {@code self_kv} is a fixed-size cache over all decoder positions that the step
+ * fills in at {@code position}. The interpreter argument maps and the token/position buffers are
+ * reused, so a decoder step allocates nothing on the Java side. Quantized logits are written into
+ * a raw buffer and dequantized into the caller's floats.
+ */
+public class TfLiteSplitWhisperModel implements SplitWhisperModel {
+
+    public static final String ENCODE_SIGNATURE = "encode";
+    public static final String DECODE_SIGNATURE = "decode";
+
+    static final String INPUT_FEATURES = "input_features";
+    static final String INPUT_IDS = "input_ids";
+    static final String POSITION = "position";
+    static final String CROSS_KV = "cross_kv";
+    static final String SELF_KV = "self_kv";
+    static final String LOGITS = "logits";
+    static final String NEW_SELF_KV = "new_self_kv";
+
+    /** Whisper's text context (n_text_ctx) for every released model size. */
+    public static final int DEFAULT_MAX_POSITIONS = 448;
+
+    private final Interpreter interpreter;
+    private final int[] inputShape;
+    private final int vocabSize;
+    private final int maxPositions;
+    private final int crossCacheBytes;
+    private final int selfCacheBytes;
+    private final TensorEncoding logitsEncoding;
+    private final ByteBuffer rawLogits; // Null for float32 logits
+
+    private final IntBuffer tokenInput = allocateInts(1);
+    private final IntBuffer positionInput = allocateInts(1);
+    private final Map<String, Object> encodeInputs = new HashMap<>();
+    private final Map<String, Object> encodeOutputs = new HashMap<>();
+    private final Map<String, Object> decodeInputs = new HashMap<>();
+    private final Map<String, Object> decodeOutputs = new HashMap<>();
+
+    public TfLiteSplitWhisperModel(Interpreter interpreter) {
+        this(interpreter, DEFAULT_MAX_POSITIONS);
+    }
+
+    /**
+     * @param interpreter  Interpreter whose model has the {@code encode} and {@code decode}
+     *                     signatures; stays owned by the caller.
+     * @param maxPositions Decoder positions covered by the {@code self_kv} cache.
+     */
+    public TfLiteSplitWhisperModel(Interpreter interpreter, int maxPositions) {
+        if (!isSplitModel(interpreter)) {
+            throw new IllegalArgumentException("Model lacks '" + ENCODE_SIGNATURE + "'/'" + DECODE_SIGNATURE
+                    + "' signatures: " + Arrays.toString(interpreter.getSignatureKeys()));
+        }
+        this.interpreter = interpreter;
+        this.maxPositions = maxPositions;
+
+        Tensor features = interpreter.getInputTensorFromSignature(INPUT_FEATURES, ENCODE_SIGNATURE);
+        this.inputShape = features.shape().clone();
+        this.crossCacheBytes = interpreter.getOutputTensorFromSignature(CROSS_KV, ENCODE_SIGNATURE).numBytes();
+        this.selfCacheBytes = interpreter.getInputTensorFromSignature(SELF_KV, DECODE_SIGNATURE).numBytes();
+        Tensor logits = interpreter.getOutputTensorFromSignature(LOGITS, DECODE_SIGNATURE);
+        int[] logitsShape = logits.shape();
+        this.vocabSize = logitsShape[logitsShape.length - 1];
+        this.logitsEncoding = WhisperHelper.encodingOf(logits);
+        if (logitsEncoding == null) {
+            throw new IllegalArgumentException("Unsupported logits type " + logits.dataType());
+        }
+        this.rawLogits = (logitsEncoding.getType() == TensorEncoding.Type.FLOAT32) ? null
+                : ByteBuffer.allocateDirect(logits.numBytes()).order(ByteOrder.nativeOrder());
+
+        int newSelfBytes = interpreter.getOutputTensorFromSignature(NEW_SELF_KV, DECODE_SIGNATURE).numBytes();
+        if (newSelfBytes != selfCacheBytes) {
+            throw new IllegalArgumentException("self_kv is " + selfCacheBytes + " bytes but new_self_kv is " + newSelfBytes);
+        }
+    }
+
+    /** True if the interpreter's model exposes the split encode/decode signatures. */
+    public static boolean isSplitModel(Interpreter interpreter) {
+        String[] keys = interpreter.getSignatureKeys();
+        return keys != null && Arrays.asList(keys).contains(ENCODE_SIGNATURE) && Arrays.asList(keys).contains(DECODE_SIGNATURE);
+    }
+
+    private static IntBuffer allocateInts(int count) {
+        return ByteBuffer.allocateDirect(count * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    @Override
+    public int[] getInputShape() {
+        return inputShape.clone();
+    }
+
+    @Override
+    public int getVocabSize() {
+        return vocabSize;
+    }
+
+    @Override
+    public int getMaxPositions() {
+        return maxPositions;
+    }
+
+    @Override
+    public int getCrossCacheBytes() {
+        return crossCacheBytes;
+    }
+
+    @Override
+    public int getSelfCacheBytes() {
+        return selfCacheBytes;
+    }
+
+    @Override
+    public void encode(ByteBuffer melInput, ByteBuffer crossCache) {
+        encodeInputs.put(INPUT_FEATURES, melInput);
+        encodeOutputs.put(CROSS_KV, crossCache);
+        try {
+            interpreter.runSignature(encodeInputs, encodeOutputs, ENCODE_SIGNATURE);
+        } finally {
+            encodeInputs.put(INPUT_FEATURES, null); // Don't keep the caller's features reachable
+        }
+    }
+
+    @Override
+    public void decode(int token, int position, ByteBuffer crossCache, ByteBuffer selfCacheIn, ByteBuffer selfCacheOut, FloatBuffer logits) {
+        tokenInput.put(0, token);
+        positionInput.put(0, position);
+        tokenInput.rewind();
+        positionInput.rewind();
+        // Same keys every step, so these puts only swap values
+        decodeInputs.put(INPUT_IDS, tokenInput);
+        decodeInputs.put(POSITION, positionInput);
+        decodeInputs.put(CROSS_KV, crossCache);
+        decodeInputs.put(SELF_KV, selfCacheIn);
+        if (rawLogits != null) {
+            rawLogits.clear();
+        }
+        decodeOutputs.put(LOGITS, (rawLogits != null) ? rawLogits : logits);
+        decodeOutputs.put(NEW_SELF_KV, selfCacheOut);
+        interpreter.runSignature(decodeInputs, decodeOutputs, DECODE_SIGNATURE);
+        if (rawLogits != null) {
+            logitsEncoding.dequantize(rawLogits, 0, logits, vocabSize); // Advances logits as the interpreter would have
+        }
+    }
+
+    // Needs an interpreter built with Options.setCancellable(true), as WhisperHelper does
+    @Override
+    public void setCancelled(boolean cancelled) {
+        interpreter.setCancelled(cancelled);
+    }
+}
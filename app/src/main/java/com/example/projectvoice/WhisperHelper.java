@@ -4,10 +4,10 @@ import android.content.Context;
 import android.content.res.AssetFileDescriptor;
 import android.util.Log;
 import org.tensorflow.lite.DataType;
-
-import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Delegate;
 import org.tensorflow.lite.Interpreter;
 import org.tensorflow.lite.Tensor;
+import org.tensorflow.lite.nnapi.NnApiDelegate;
 // Consider adding InterpreterApi and TensorApi if using newer TFLite features
 
 import java.io.FileInputStream;
@@ -16,14 +16,23 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 public class WhisperHelper {
 
     private static final String TAG = "WhisperHelper";
     private Interpreter interpreter;
+    private Delegate activeDelegate = null; // Owned; closed with the interpreter
+
+    // Which backend won delegate selection, and what its warm-up cost
+    private String backendName = null;
+    private long warmUpMillis = -1;
 
     // These indices usually remain 0, but check your specific model if needed.
     private final int inputTensorIndex = 0;
@@ -31,35 +40,192 @@ public class WhisperHelper {
 
     // Optional: Store tensor details after loading for quicker access
     private DataType inputDataType = null;
+    private TensorEncoding inputEncoding = null;  // Null if the frontend cannot write this input type
+    private TensorEncoding outputEncoding = null; // Null for token id outputs
     private int[] inputShape = null;
     private DataType outputDataType = null;
     private int[] outputShape = null;
     private int outputTensorSizeInBytes = -1;
+    private int inputTensorSizeInBytes = -1;
+
+    // Pooled I/O buffers sized from the tensor details; steady-state transcription allocates no direct memory
+    private static final int BUFFERS_PER_POOL = 2; // One being filled/read while one is in inference
+    private DirectBufferPool inputBufferPool = null;
+    private DirectBufferPool outputBufferPool = null;
+
+    // Set when the model exposes split encode/decode signatures; see openSession()
+    private TfLiteSplitWhisperModel splitModel = null;
+
+    // Reused interpreter arguments (guarded by this)
+    private final Object[] runInputs = new Object[1];
+    private final Map<Integer, Object> runOutputs = new HashMap<>();
+
+    // Batch dimension the input is resized to, and the output of transcribeBatch (guarded by this)
+    private int batchSize = 1;
+    private ByteBuffer batchOutput = null;
+
+
+    /** Creates a hardware delegate; see {@link Config.Builder#addDelegate(DelegateProvider)}. */
+    public interface DelegateProvider {
+        String getName();
+
+        Delegate create() throws Exception;
+
+        static DelegateProvider of(final String name, final Callable<Delegate> factory) {
+            return new DelegateProvider() {
+                @Override public String getName() { return name; }
+                @Override public Delegate create() throws Exception { return factory.call(); }
+            };
+        }
+    }
+
+    /** NNAPI delegate (bundled with the TFLite runtime). A GPU delegate needs the tensorflow-lite-gpu dependency:
+     *  {@code DelegateProvider.of("GPU", GpuDelegate::new)}. */
+    public static final DelegateProvider NNAPI = DelegateProvider.of("NNAPI", NnApiDelegate::new);
+
+    /**
+     * Interpreter configuration. Delegates are tried in order; the first one that builds an
+     * interpreter and survives warm-up wins, otherwise the CPU (optionally XNNPACK) path is used.
+     */
+    public static final class Config {
+        final boolean useXnnpack;
+        final int numThreads;
+        final boolean allowFp16Precision;
+        final List<DelegateProvider> delegates;
+        final int warmUpRuns;
+        final int inputFrames;
+
+        private Config(Builder builder) {
+            this.useXnnpack = builder.useXnnpack;
+            this.numThreads = builder.numThreads;
+            this.allowFp16Precision = builder.allowFp16Precision;
+            this.delegates = Collections.unmodifiableList(new ArrayList<>(builder.delegates));
+            this.warmUpRuns = builder.warmUpRuns;
+            this.inputFrames = builder.inputFrames;
+        }
+
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        /** A builder preset to this configuration, e.g. to change only the thread count. */
+        public Builder toBuilder() {
+            Builder builder = new Builder();
+            builder.useXnnpack = useXnnpack;
+            builder.numThreads = numThreads;
+            builder.allowFp16Precision = allowFp16Precision;
+            builder.delegates.addAll(delegates);
+            builder.warmUpRuns = warmUpRuns;
+            builder.inputFrames = inputFrames;
+            return builder;
+        }
+
+        public int getNumThreads() {
+            return numThreads;
+        }
+
+        /** XNNPACK on, half the cores, full FP32 precision, no delegates, one warm-up run. */
+        public static Config defaults() {
+            return builder().build();
+        }
+
+        public static final class Builder {
+            private boolean useXnnpack = true;
+            private int numThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2); // Half available cores
+            private boolean allowFp16Precision = false;
+            private final List<DelegateProvider> delegates = new ArrayList<>();
+            private int warmUpRuns = 1;
+            private int inputFrames = 0;
+
+            private Builder() {
+            }
+
+            public Builder setUseXnnpack(boolean useXnnpack) {
+                this.useXnnpack = useXnnpack;
+                return this;
+            }
+
+            public Builder setNumThreads(int numThreads) {
+                if (numThreads < 1) throw new IllegalArgumentException("numThreads must be >= 1: " + numThreads);
+                this.numThreads = numThreads;
+                return this;
+            }
+
+            /** Lets FP32 ops run in FP16 where the backend supports it. */
+            public Builder setAllowFp16Precision(boolean allowFp16Precision) {
+                this.allowFp16Precision = allowFp16Precision;
+                return this;
+            }
+
+            /** Appends a delegate to try, in order, before falling back to CPU. */
+            public Builder addDelegate(DelegateProvider provider) {
+                if (provider == null) throw new IllegalArgumentException("provider is null");
+                delegates.add(provider);
+                return this;
+            }
+
+            /** Zero-input inferences run at construction so the first utterance skips kernel preparation. */
+            public Builder setWarmUpRuns(int warmUpRuns) {
+                if (warmUpRuns < 0) throw new IllegalArgumentException("warmUpRuns must be >= 0: " + warmUpRuns);
+                this.warmUpRuns = warmUpRuns;
+                return this;
+            }
+
+            /**
+             * Resizes the features input to {@code inputFrames} frames before warm-up, e.g. a
+             * shorter encoder input for short utterances; 0 keeps the exported length. Only
+             * monolithic graphs whose ops are not tied to the exported length accept this.
+             */
+            public Builder setInputFrames(int inputFrames) {
+                if (inputFrames < 0) throw new IllegalArgumentException("inputFrames must be >= 0: " + inputFrames);
+                this.inputFrames = inputFrames;
+                return this;
+            }
+
+            public Config build() {
+                return new Config(this);
+            }
+        }
+    }
 
 
     public WhisperHelper(Context context, String modelPath) throws IOException {
+        this(context, modelPath, Config.defaults());
+    }
+
+    public WhisperHelper(Context context, String modelPath, Config config) throws IOException {
         if (modelPath == null || modelPath.isEmpty()) {
             Log.w(TAG, "Model path is null or empty, using default 'whisper-tiny.tflite'");
             modelPath = "whisper-tiny.tflite"; // Default model
         }
+        if (config == null) {
+            config = Config.defaults();
+        }
+        MappedByteBuffer modelBuffer;
         try {
-            Interpreter.Options options = new Interpreter.Options();
-            // Optional: Configure threads, delegates (GPU, NNAPI), etc.
-             options.setNumThreads(Math.max(1, Runtime.getRuntime().availableProcessors() / 2)); // Example: Use half available cores
-            // options.addDelegate(new GpuDelegate()); // Requires GPU delegate dependency
-            // options.addDelegate(new NnApiDelegate()); // Requires NNAPI delegate dependency
-
-            MappedByteBuffer modelBuffer = loadModelFile(context, modelPath);
-            interpreter = new Interpreter(modelBuffer, options);
-            Log.i(TAG, "TensorFlow Lite interpreter loaded successfully from: " + modelPath);
-
-            // Get and store tensor details
-            logAndStoreTensorDetails();
-
+            modelBuffer = mapAsset(context, modelPath);
         } catch (IOException e) {
             Log.e(TAG, "IOException loading TFLite model '" + modelPath + "': " + e.getMessage());
             interpreter = null; // Ensure interpreter is null if loading failed
             throw e; // Re-throw exception so caller knows initialization failed
+        }
+        initialize(modelBuffer, modelPath, config);
+    }
+
+    /**
+     * Builds an interpreter over an already mapped model, e.g. one of several sharing a single
+     * mapping (see {@link WhisperInterpreterPool}). Weights are read in place, so the buffer must
+     * stay mapped and unmodified while this helper is open.
+     */
+    public WhisperHelper(ByteBuffer modelBuffer, String modelName, Config config) throws IOException {
+        initialize(modelBuffer, modelName, (config != null) ? config : Config.defaults());
+    }
+
+    private void initialize(ByteBuffer modelBuffer, String modelName, Config config) throws IOException {
+        try {
+            selectBackend(modelBuffer, config);
+            Log.i(TAG, "TensorFlow Lite interpreter loaded successfully from: " + modelName
+                    + " on " + backendName + " with " + config.numThreads + " thread(s) (warm-up " + warmUpMillis + " ms)");
         } catch (Exception e) { // Catch other potential runtime errors during initialization
             Log.e(TAG, "Unexpected error initializing interpreter: " + e.getMessage(), e);
             interpreter = null;
@@ -73,9 +239,126 @@ public class WhisperHelper {
          this(context, "whisper-tiny.tflite");
     }
 
+    // Tries each configured delegate in order, then CPU. A candidate wins once it builds and warms up.
+    private void selectBackend(ByteBuffer modelBuffer, Config config) {
+        for (DelegateProvider provider : config.delegates) {
+            Delegate delegate = null;
+            try {
+                delegate = provider.create();
+                Interpreter.Options options = baseOptions(config);
+                options.addDelegate(delegate);
+                if (tryBackend(modelBuffer, options, provider.getName(), config)) {
+                    activeDelegate = delegate;
+                    return;
+                }
+            } catch (Exception | LinkageError e) { // LinkageError: delegate classes or native libs missing
+                Log.w(TAG, "Delegate " + provider.getName() + " unavailable: " + e.getMessage());
+            }
+            closeQuietly(delegate);
+        }
+        String cpuName = config.useXnnpack ? "CPU (XNNPACK)" : "CPU";
+        if (!tryBackend(modelBuffer, baseOptions(config), cpuName, config)) {
+            throw new IllegalStateException("CPU interpreter failed to initialize or warm up");
+        }
+    }
+
+    private static Interpreter.Options baseOptions(Config config) {
+        Interpreter.Options options = new Interpreter.Options();
+        options.setNumThreads(config.numThreads);
+        options.setUseXNNPACK(config.useXnnpack);
+        options.setAllowFp16PrecisionForFp32(config.allowFp16Precision);
+        options.setCancellable(true); // Lets setCancelled() abandon an inference in progress
+        return options;
+    }
+
+    private boolean tryBackend(ByteBuffer modelBuffer, Interpreter.Options options, String name, Config config) {
+        try {
+            interpreter = new Interpreter(modelBuffer, options);
+            if (config.inputFrames > 0) {
+                resizeInputFrames(config.inputFrames);
+            }
+            // Get and store tensor details
+            logAndStoreTensorDetails();
+            warmUpMillis = warmUp(config.warmUpRuns);
+            backendName = name;
+            return true;
+        } catch (Exception e) {
+            Log.w(TAG, "Backend " + name + " failed, falling back: " + e.getMessage());
+            if (interpreter != null) {
+                interpreter.close();
+                interpreter = null;
+            }
+            return false;
+        }
+    }
+
+    // Graphs with ops tied to the exported length (e.g. fixed positional embeddings) fail in allocateTensors
+    private void resizeInputFrames(int frames) {
+        if (TfLiteSplitWhisperModel.isSplitModel(interpreter)) {
+            throw new IllegalStateException("Split models cannot be resized; export a fixed-length variant instead");
+        }
+        int[] shape = interpreter.getInputTensor(inputTensorIndex).shape().clone();
+        if (AudioPreprocessor.expectedFrames(shape) == frames) {
+            return;
+        }
+        shape[2] = frames; // See AudioPreprocessor.expectedFrames
+        interpreter.resizeInput(inputTensorIndex, shape);
+        interpreter.allocateTensors();
+    }
+
+    // Runs inference on an all-zero input (as MainActivity's dummy buffer did) and returns the elapsed ms
+    private long warmUp(int runs) {
+        if (runs <= 0) return 0;
+        ByteBuffer zeros = acquireInputBuffer();
+        if (zeros == null) {
+            throw new IllegalStateException("Input tensor details unavailable for warm-up");
+        }
+        try {
+            while (zeros.remaining() >= 8) zeros.putLong(0L);
+            while (zeros.hasRemaining()) zeros.put((byte) 0);
+            long start = System.nanoTime();
+            if (splitModel != null) {
+                // One encoder pass and one decoder step prepare both signatures
+                WhisperSession session = new WhisperSession(splitModel);
+                for (int i = 0; i < runs; i++) {
+                    session.beginWindow(zeros);
+                    session.step(0);
+                }
+                return (System.nanoTime() - start) / 1_000_000L;
+            }
+            for (int i = 0; i < runs; i++) {
+                zeros.rewind();
+                ByteBuffer output = transcribe(zeros);
+                if (output == null) {
+                    throw new IllegalStateException("Warm-up inference " + (i + 1) + " failed");
+                }
+                releaseOutputBuffer(output);
+            }
+            return (System.nanoTime() - start) / 1_000_000L;
+        } finally {
+            releaseInputBuffer(zeros);
+        }
+    }
+
+    private static void closeQuietly(Delegate delegate) {
+        if (delegate == null) return;
+        try { delegate.close(); } catch (Exception e) { Log.w(TAG, "Error closing delegate", e); }
+    }
+
+    /** Name of the backend that won selection, e.g. "NNAPI" or "CPU (XNNPACK)". */
+    public String getBackendName() {
+        return backendName;
+    }
+
+    /** Wall time of the construction-time warm-up runs, or 0 if disabled. */
+    public long getWarmUpMillis() {
+        return warmUpMillis;
+    }
 
-    // Standard TFLite model loading utility
-    private MappedByteBuffer loadModelFile(Context context, String modelPath) throws IOException {
+
+    // Standard TFLite model loading utility; also maps the filters/vocab pack (see WhisperAssetPack).
+    // Requires the asset to be stored uncompressed (androidResources.noCompress).
+    static MappedByteBuffer mapAsset(Context context, String modelPath) throws IOException {
         AssetFileDescriptor fileDescriptor = null;
         FileInputStream inputStream = null;
         FileChannel fileChannel = null;
@@ -100,6 +383,10 @@ public class WhisperHelper {
             return;
         }
         try {
+            if (TfLiteSplitWhisperModel.isSplitModel(interpreter)) {
+                storeSplitModelDetails();
+                return;
+            }
             int inputCount = interpreter.getInputTensorCount();
             int outputCount = interpreter.getOutputTensorCount();
             Log.d(TAG, "Input Tensor Count: " + inputCount);
@@ -108,10 +395,16 @@ public class WhisperHelper {
             if (inputCount > inputTensorIndex) {
                 Tensor inputTensor = interpreter.getInputTensor(inputTensorIndex);
                 inputDataType = inputTensor.dataType();
+                inputEncoding = encodingOf(inputTensor);
                 inputShape = inputTensor.shape().clone(); // Clone shape array
+                inputTensorSizeInBytes = inputTensor.numBytes();
                 Log.d(TAG, "Input Tensor (" + inputTensorIndex + ") Name: " + inputTensor.name());
                 Log.d(TAG, "Input Tensor (" + inputTensorIndex + ") Shape: " + Arrays.toString(inputShape));
-                Log.d(TAG, "Input Tensor (" + inputTensorIndex + ") Type: " + inputDataType);
+                Log.d(TAG, "Input Tensor (" + inputTensorIndex + ") Type: " + inputDataType + ", encoding " + inputEncoding);
+                Log.d(TAG, "Input Tensor (" + inputTensorIndex + ") Size (bytes): " + inputTensorSizeInBytes);
+                if (inputTensorSizeInBytes > 0) {
+                    inputBufferPool = new DirectBufferPool(inputTensorSizeInBytes, BUFFERS_PER_POOL, BUFFERS_PER_POOL);
+                }
             } else {
                  Log.w(TAG, "Input Tensor Index " + inputTensorIndex + " out of bounds (Count: " + inputCount + ")");
             }
@@ -119,15 +412,18 @@ public class WhisperHelper {
             if (outputCount > outputTensorIndex) {
                 Tensor outputTensor = interpreter.getOutputTensor(outputTensorIndex);
                 outputDataType = outputTensor.dataType();
+                outputEncoding = encodingOf(outputTensor);
                 outputShape = outputTensor.shape().clone(); // Clone shape array
                 outputTensorSizeInBytes = outputTensor.numBytes(); // Store size
                 Log.d(TAG, "Output Tensor (" + outputTensorIndex + ") Name: " + outputTensor.name());
                 Log.d(TAG, "Output Tensor (" + outputTensorIndex + ") Shape: " + Arrays.toString(outputShape));
-                Log.d(TAG, "Output Tensor (" + outputTensorIndex + ") Type: " + outputDataType);
+                Log.d(TAG, "Output Tensor (" + outputTensorIndex + ") Type: " + outputDataType + ", encoding " + outputEncoding);
                 Log.d(TAG, "Output Tensor (" + outputTensorIndex + ") Size (bytes): " + outputTensorSizeInBytes);
 
                  if (outputTensorSizeInBytes <= 0) {
                      Log.e(TAG, "Output tensor size calculation resulted in <= 0 bytes. Check model output.");
+                 } else {
+                     outputBufferPool = new DirectBufferPool(outputTensorSizeInBytes, BUFFERS_PER_POOL, BUFFERS_PER_POOL);
                  }
 
             } else {
@@ -138,13 +434,93 @@ public class WhisperHelper {
              Log.e(TAG, "Error getting tensor details: " + e.getMessage(), e);
              // Reset stored details on error
              inputDataType = null;
+             inputEncoding = null;
              inputShape = null;
              outputDataType = null;
+             outputEncoding = null;
              outputShape = null;
              outputTensorSizeInBytes = -1;
+             inputTensorSizeInBytes = -1;
+             inputBufferPool = null;
+             outputBufferPool = null;
+             splitModel = null;
         }
     }
 
+    // Split exports: the pooled input is the encoder's features; there is no monolithic output tensor
+    private void storeSplitModelDetails() {
+        splitModel = new TfLiteSplitWhisperModel(interpreter);
+        Tensor inputTensor = interpreter.getInputTensorFromSignature(TfLiteSplitWhisperModel.INPUT_FEATURES, TfLiteSplitWhisperModel.ENCODE_SIGNATURE);
+        inputDataType = inputTensor.dataType();
+        inputEncoding = encodingOf(inputTensor);
+        inputShape = inputTensor.shape().clone();
+        inputTensorSizeInBytes = inputTensor.numBytes();
+        inputBufferPool = new DirectBufferPool(inputTensorSizeInBytes, BUFFERS_PER_POOL, BUFFERS_PER_POOL);
+        Log.d(TAG, "Split encoder/decoder model. Features: " + Arrays.toString(inputShape) + " " + inputDataType
+                + ", vocab " + splitModel.getVocabSize() + ", cross cache " + splitModel.getCrossCacheBytes()
+                + " B, self cache " + splitModel.getSelfCacheBytes() + " B");
+    }
+
+    /**
+     * How the frontend has to encode values for {@code tensor}, or null for types it does not
+     * write (e.g. int32 ids). The Java API has no FLOAT16 type, so half-float tensors never get
+     * here; FP16-weight exports keep float32 inputs and outputs.
+     */
+    static TensorEncoding encodingOf(Tensor tensor) {
+        switch (tensor.dataType()) {
+            case FLOAT32:
+                return TensorEncoding.FLOAT32;
+            case INT8:
+                return TensorEncoding.int8(tensor.quantizationParams().getScale(), tensor.quantizationParams().getZeroPoint());
+            case UINT8:
+                return TensorEncoding.uint8(tensor.quantizationParams().getScale(), tensor.quantizationParams().getZeroPoint());
+            default:
+                return null;
+        }
+    }
+
+    /** True if the model was exported as separate encoder and decoder-step signatures. */
+    public boolean isSplitModel() {
+        return splitModel != null;
+    }
+
+    /**
+     * Opens an autoregressive session on a split model. Sessions share this helper's interpreter,
+     * so only one may run at a time and never concurrently with {@link #transcribe(Object)}.
+     *
+     * @return The session, or null if the model is monolithic or failed to load.
+     */
+    public WhisperSession openSession() {
+        return openSession(1);
+    }
+
+    /** Session with {@code slots} self-attention caches, e.g. the width of a {@link BeamSearchDecoder}. */
+    public WhisperSession openSession(int slots) {
+        return (splitModel != null && interpreter != null) ? new WhisperSession(splitModel, slots) : null;
+    }
+
+    /**
+     * Hands out a cleared, native-order direct buffer sized for the model input.
+     * Give it back with {@link #releaseInputBuffer(ByteBuffer)} once inference on it is done.
+     *
+     * @return The buffer, or null if the input tensor details are unavailable.
+     */
+    public ByteBuffer acquireInputBuffer() {
+        DirectBufferPool pool = inputBufferPool;
+        return (pool != null) ? pool.acquire() : null;
+    }
+
+    public void releaseInputBuffer(ByteBuffer buffer) {
+        DirectBufferPool pool = inputBufferPool;
+        if (pool != null) pool.release(buffer);
+    }
+
+    /** Returns an output buffer obtained from {@link #transcribe(Object)} to the pool. */
+    public void releaseOutputBuffer(ByteBuffer buffer) {
+        DirectBufferPool pool = outputBufferPool;
+        if (pool != null) pool.release(buffer);
+    }
+
     /**
      * Transcribes preprocessed audio data.
      *
@@ -152,10 +528,11 @@ public class WhisperHelper {
      *                              audio data already converted to the model's required format
      *                              (e.g., Mel Spectrogram), shape, and data type.
      *                              Ensure the buffer is rewound if necessary before passing.
-     * @return A Map containing the raw output tensor buffer(s) from the model, or null if inference fails.
-     *         The map key is the output tensor index (e.g., 0). The value is typically a ByteBuffer.
+     *                              Input buffers from {@link #acquireInputBuffer()} are not released here.
+     * @return The raw output tensor buffer (rewound, native order) from the pool, or null if inference
+     *         fails. Hand it back with {@link #releaseOutputBuffer(ByteBuffer)} after decoding.
      */
-    public Map<Integer, Object> transcribe(Object preprocessedAudioData) {
+    public synchronized ByteBuffer transcribe(Object preprocessedAudioData) {
         if (interpreter == null) {
             Log.e(TAG, "Interpreter not initialized.");
             return null;
@@ -164,33 +541,39 @@ public class WhisperHelper {
              Log.e(TAG, "Input preprocessedAudioData is null.");
              return null;
         }
-        if (outputTensorSizeInBytes <= 0 || outputDataType == null) {
+        if (splitModel != null) {
+            Log.e(TAG, "Split encoder/decoder model; use openSession() instead.");
+            return null;
+        }
+        if (outputBufferPool == null || outputDataType == null) {
             Log.e(TAG, "Output tensor details not available or invalid. Cannot prepare output buffer.");
             return null;
         }
-
         try {
-            // --- Prepare Output Buffer ---
-            // Allocate the output buffer based on stored details. Use direct buffer.
-            ByteBuffer outputBuffer = ByteBuffer.allocateDirect(outputTensorSizeInBytes);
-            outputBuffer.order(ByteOrder.nativeOrder()); // Crucial for direct buffers
-
-            Map<Integer, Object> outputs = new HashMap<>();
-            outputs.put(outputTensorIndex, outputBuffer);
+            resizeBatch(1); // After transcribeBatch
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error resizing the input back to one utterance: " + e.getMessage(), e);
+            return null;
+        }
 
-            // --- Prepare Inputs ---
-            // Assuming single input at inputTensorIndex
-            Object[] inputs = new Object[]{preprocessedAudioData};
+        // --- Prepare Output Buffer ---
+        // Pooled direct buffer sized from the stored output tensor details
+        ByteBuffer outputBuffer = outputBufferPool.acquire();
+        boolean success = false;
+        try {
+            // --- Prepare Inputs/Outputs (reused holders; assuming single input at inputTensorIndex) ---
+            runInputs[0] = preprocessedAudioData;
+            runOutputs.put(outputTensorIndex, outputBuffer);
 
             // --- Run Inference ---
-            // Log.d(TAG, "Running inference..."); // Moved logging to MainActivity for timing
-            interpreter.runForMultipleInputsOutputs(inputs, outputs);
-            // Log.d(TAG, "Inference complete.");
+            // Timed by the caller (TranscriptionMetrics.Stage.INFERENCE)
+            interpreter.runForMultipleInputsOutputs(runInputs, runOutputs);
 
             // Rewind the output buffer before returning so the caller can read from the start
             outputBuffer.rewind();
+            success = true;
 
-            return outputs; // Return the map containing the raw output buffer
+            return outputBuffer;
 
         } catch (IllegalArgumentException e) {
              // This often indicates a mismatch between the input data provided (shape/type)
@@ -205,6 +588,72 @@ public class WhisperHelper {
         } catch (Exception e) { // Catch other runtime TFLite errors
             Log.e(TAG, "Error during model inference: " + e.getMessage(), e);
             return null;
+        } finally {
+            // Don't keep the caller's buffers reachable from the holders
+            runInputs[0] = null;
+            runOutputs.clear();
+            if (!success) outputBufferPool.release(outputBuffer);
+        }
+    }
+
+    /**
+     * Runs {@code batchSize} inputs, packed back to back in {@code packedInputs} (e.g. by an
+     * {@link InferenceBatcher}), as one invocation with the batch dimension resized to match.
+     * Monolithic models only. Every change of batch size, including back to one in
+     * {@link #transcribe(Object)}, reallocates the interpreter's tensors, so batch on a helper of
+     * its own ({@link WhisperInterpreterPool#createHelper()}) and always at the same size.
+     *
+     * @return The output rows back to back (rewound, native order), valid until the next call on
+     *         this helper; or null if inference fails.
+     */
+    public synchronized ByteBuffer transcribeBatch(ByteBuffer packedInputs, int batchSize) {
+        if (interpreter == null || splitModel != null || outputTensorSizeInBytes <= 0) {
+            Log.e(TAG, "Batched inference needs a loaded monolithic model.");
+            return null;
+        }
+        try {
+            resizeBatch(batchSize);
+            int bytes = batchSize * outputTensorSizeInBytes;
+            if (batchOutput == null || batchOutput.capacity() < bytes) {
+                batchOutput = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder()); // Grows to the largest batch once
+            }
+            batchOutput.clear();
+            batchOutput.limit(bytes);
+            runInputs[0] = packedInputs;
+            runOutputs.put(outputTensorIndex, batchOutput);
+            interpreter.runForMultipleInputsOutputs(runInputs, runOutputs);
+            batchOutput.rewind();
+            return batchOutput;
+        } catch (Exception e) {
+            Log.e(TAG, "Error during batched inference of " + batchSize + " inputs: " + e.getMessage(), e);
+            return null;
+        } finally {
+            runInputs[0] = null;
+            runOutputs.clear();
+        }
+    }
+
+    // Caller holds the lock. inputShape stays the single-input shape the buffers are sized from
+    private void resizeBatch(int size) {
+        if (size == batchSize) {
+            return;
+        }
+        int[] shape = inputShape.clone();
+        shape[0] = size;
+        interpreter.resizeInput(inputTensorIndex, shape);
+        interpreter.allocateTensors();
+        batchSize = size;
+    }
+
+    /**
+     * Asks an inference running on another thread to stop early; it and every later one fail (so
+     * {@link #transcribe} returns null) until this is cleared. Split-model sessions cancel through
+     * their {@link TfLiteSplitWhisperModel}, which shares this interpreter.
+     */
+    public void setCancelled(boolean cancelled) {
+        Interpreter current = interpreter;
+        if (current != null) {
+            current.setCancelled(cancelled);
         }
     }
 
@@ -213,6 +662,16 @@ public class WhisperHelper {
         return inputDataType;
     }
 
+    // How MelSpectrogramEngine must encode the input; null if it cannot
+    public TensorEncoding getInputEncoding() {
+        return inputEncoding;
+    }
+
+    // How logits are stored in the output; null for token ids
+    public TensorEncoding getOutputEncoding() {
+        return outputEncoding;
+    }
+
     // Helper method to get stored input shape (returns a copy)
      public int[] getInputShape() {
          return (inputShape != null) ? inputShape.clone() : null;
@@ -236,5 +695,8 @@ public class WhisperHelper {
             interpreter = null;
             Log.i(TAG, "Interpreter closed.");
         }
+        splitModel = null;
+        closeQuietly(activeDelegate);
+        activeDelegate = null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,251 @@
+package com.example.projectvoice;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.util.Log;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Several interpreters over one memory-mapped model, so that utterances can be transcribed
+ * concurrently.
+ *
+ * The model is mapped once and every {@link WhisperHelper} reads its weights from that mapping;
+ * what each interpreter adds is its own tensors, arena and (with XNNPACK) packed weights. The
+ * cores are split between the interpreters so that all of them running at once does not
+ * oversubscribe the CPU. Who gets which interpreter when is decided by a {@link PriorityPool}
+ * over them (see {@link ModelRegistry}), which serves interactive utterances before batch work.
+ *
+ * Each interpreter may come with shorter-input interpreters, one per length bucket, so that short
+ * utterances do not pay for a full 30 s encoder pass (see
+ * {@link TranscriptionEngine#addLengthBucket}). A bucket's model is the asset
+ * {@link #variantPath} if the app ships one, else the full model resized to the bucket. Every
+ * interpreter warms up at its own length, so no bucket is cold on first use.
+ */
+public final class WhisperInterpreterPool {
+
+    private static final String TAG = "WhisperInterpreterPool";
+
+    /** Each interpreter gets at least this many threads, which bounds the pool by the core count. */
+    static final int MIN_THREADS_PER_INTERPRETER = 2;
+    static final int MAX_INTERPRETERS = 4;
+    // Rough per-interpreter cost in model sizes: packed weights plus arena and I/O buffers
+    private static final int MODEL_SIZES_PER_INTERPRETER = 2;
+    // Share of the available memory (above the low-memory threshold) the pool may plan to use
+    private static final double MEMORY_HEADROOM_FRACTION = 0.5;
+
+    private final MappedByteBuffer modelBuffer; // Kept reachable while the interpreters read from it
+    private final String modelPath;
+    private final WhisperHelper.Config perInterpreter;
+    private final List<MappedByteBuffer> variantBuffers; // Likewise for the bucket variants
+    private final List<WhisperHelper> helpers;
+    private final int[] bucketFrames;
+    private final List<List<WhisperHelper>> buckets; // [bucket][interpreter]
+    private final int threadsPerInterpreter;
+
+    private WhisperInterpreterPool(MappedByteBuffer modelBuffer, String modelPath, WhisperHelper.Config perInterpreter,
+                                   List<MappedByteBuffer> variantBuffers, List<WhisperHelper> helpers,
+                                   int[] bucketFrames, List<List<WhisperHelper>> buckets, int threadsPerInterpreter) {
+        this.modelBuffer = modelBuffer;
+        this.modelPath = modelPath;
+        this.perInterpreter = perInterpreter;
+        this.variantBuffers = variantBuffers;
+        this.helpers = Collections.unmodifiableList(helpers);
+        this.bucketFrames = bucketFrames;
+        this.buckets = buckets;
+        this.threadsPerInterpreter = threadsPerInterpreter;
+    }
+
+    /**
+     * Maps {@code modelPath} and builds the interpreters, each with {@code config} but its share
+     * of the cores as thread count. Every interpreter warms up, so none is cold on first use.
+     *
+     * @param size Number of interpreters, or 0 for {@link #recommendedSize(Context, long)}.
+     * @throws IOException if the model cannot be mapped or an interpreter fails to initialize.
+     */
+    public static WhisperInterpreterPool create(Context context, String modelPath, WhisperHelper.Config config, int size)
+            throws IOException {
+        return create(context, modelPath, config, size, new int[0]);
+    }
+
+    /**
+     * Same as {@link #create(Context, String, WhisperHelper.Config, int)}, plus an interpreter per
+     * interpreter for each of {@code bucketFrames} (ascending, below the model's length). Lengths
+     * that have no variant and that the model cannot be resized to are left out; see
+     * {@link #getBucketFrames()}. Automatic sizing counts every bucket as another interpreter.
+     */
+    public static WhisperInterpreterPool create(Context context, String modelPath, WhisperHelper.Config config, int size,
+                                                int[] bucketFrames) throws IOException {
+        if (size < 0) {
+            throw new IllegalArgumentException("size must be >= 0: " + size);
+        }
+        if (config == null) {
+            config = WhisperHelper.Config.defaults();
+        }
+        MappedByteBuffer modelBuffer = WhisperHelper.mapAsset(context, modelPath);
+        if (size == 0) {
+            size = recommendedSize(context, (long) modelBuffer.capacity() * (1 + bucketFrames.length));
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        int threads = Math.max(1, Math.min(config.getNumThreads(), cores / size));
+        WhisperHelper.Config perInterpreter = config.toBuilder().setNumThreads(threads).build();
+
+        List<WhisperHelper> helpers = new ArrayList<>(size);
+        try {
+            for (int i = 0; i < size; i++) {
+                helpers.add(new WhisperHelper(modelBuffer, modelPath, perInterpreter));
+            }
+        } catch (IOException | RuntimeException e) {
+            closeAll(helpers);
+            throw e;
+        }
+        Log.i(TAG, size + " interpreter(s) with " + threads + " thread(s) each over " + modelBuffer.capacity() / (1024 * 1024)
+                + " MB of model on " + cores + " cores");
+
+        List<MappedByteBuffer> variantBuffers = new ArrayList<>();
+        List<List<WhisperHelper>> buckets = new ArrayList<>();
+        int[] supported = new int[bucketFrames.length];
+        int fullFrames = AudioPreprocessor.expectedFrames(helpers.get(0).getInputShape());
+        for (int frames : bucketFrames) {
+            if (frames <= 0 || frames >= fullFrames) {
+                Log.w(TAG, "Ignoring " + frames + "-frame bucket for a " + fullFrames + "-frame model");
+                continue;
+            }
+            List<WhisperHelper> bucket = createBucket(context, modelPath, modelBuffer, perInterpreter, frames, size, variantBuffers);
+            if (bucket != null) {
+                supported[buckets.size()] = frames;
+                buckets.add(bucket);
+            }
+        }
+        return new WhisperInterpreterPool(modelBuffer, modelPath, perInterpreter, variantBuffers, helpers, Arrays.copyOf(supported, buckets.size()),
+                buckets, threads);
+    }
+
+    // One interpreter of frames frames per full one, or null if neither a variant nor resizing gives that length
+    private static List<WhisperHelper> createBucket(Context context, String modelPath, MappedByteBuffer modelBuffer,
+                                                    WhisperHelper.Config perInterpreter, int frames, int size,
+                                                    List<MappedByteBuffer> variantBuffers) {
+        String variantPath = variantPath(modelPath, frames);
+        MappedByteBuffer variant;
+        try {
+            variant = WhisperHelper.mapAsset(context, variantPath);
+        } catch (FileNotFoundException e) {
+            variant = null; // No variant shipped: resize the full model
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot map " + variantPath + ": " + e.getMessage());
+            return null;
+        }
+        ByteBuffer source = (variant != null) ? variant : modelBuffer;
+        String name = (variant != null) ? variantPath : modelPath + " resized to " + frames + " frames";
+        WhisperHelper.Config config = perInterpreter.toBuilder().setInputFrames(frames).build();
+        List<WhisperHelper> bucket = new ArrayList<>(size);
+        try {
+            for (int i = 0; i < size; i++) {
+                bucket.add(new WhisperHelper(source, name, config));
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "No " + frames + "-frame input: " + name + " failed: " + e.getMessage());
+            closeAll(bucket);
+            return null;
+        }
+        if (variant != null) {
+            variantBuffers.add(variant);
+        }
+        Log.i(TAG, frames + "-frame input from " + name + " (warm-up " + bucket.get(0).getWarmUpMillis() + " ms)");
+        return Collections.unmodifiableList(bucket);
+    }
+
+    /** Asset of a model exported for {@code frames}-frame input, e.g. whisper-tiny.500.tflite. */
+    static String variantPath(String modelPath, int frames) {
+        int dot = modelPath.lastIndexOf('.');
+        int slash = modelPath.lastIndexOf('/');
+        return (dot > slash) ? modelPath.substring(0, dot) + "." + frames + modelPath.substring(dot) : modelPath + "." + frames;
+    }
+
+    private static void closeAll(List<WhisperHelper> helpers) {
+        for (WhisperHelper helper : helpers) {
+            helper.close();
+        }
+    }
+
+    /**
+     * How many interpreters this device can run side by side: bounded by the cores (at least
+     * {@value #MIN_THREADS_PER_INTERPRETER} threads each) and by half the memory available before
+     * the system starts killing background apps. Low-RAM devices get one.
+     */
+    public static int recommendedSize(Context context, long modelBytes) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager == null || activityManager.isLowRamDevice()) {
+            return 1;
+        }
+        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+        activityManager.getMemoryInfo(memoryInfo);
+        return recommendedSize(Runtime.getRuntime().availableProcessors(), memoryInfo.availMem - memoryInfo.threshold,
+                MODEL_SIZES_PER_INTERPRETER * modelBytes);
+    }
+
+    static int recommendedSize(int cores, long headroomBytes, long bytesPerInterpreter) {
+        int byCores = cores / MIN_THREADS_PER_INTERPRETER;
+        long byMemory = (bytesPerInterpreter > 0) ? (long) (Math.max(0L, headroomBytes) * MEMORY_HEADROOM_FRACTION) / bytesPerInterpreter
+                : MAX_INTERPRETERS;
+        return (int) Math.max(1L, Math.min(MAX_INTERPRETERS, Math.min(byCores, byMemory)));
+    }
+
+    public int size() {
+        return helpers.size();
+    }
+
+    /** The interpreters, in creation order; hand them out through a {@link PriorityPool}. */
+    public List<WhisperHelper> getHelpers() {
+        return helpers;
+    }
+
+    /** The first interpreter; all of them share its tensor shapes and types. */
+    public WhisperHelper getPrimary() {
+        return helpers.get(0);
+    }
+
+    /** Input lengths of the buckets that could be built, ascending; empty if none. */
+    public int[] getBucketFrames() {
+        return bucketFrames.clone();
+    }
+
+    /** The interpreter of {@link #getBucketFrames()}{@code [bucket]} that goes with {@code getHelpers().get(interpreter)}. */
+    public WhisperHelper getBucketHelper(int bucket, int interpreter) {
+        return buckets.get(bucket).get(interpreter);
+    }
+
+    /**
+     * Another full-length interpreter over the same model and settings, outside the pool, e.g.
+     * for batched inference, which keeps its input resized. The caller closes it, before
+     * {@link #close()}.
+     *
+     * @throws IOException if the interpreter fails to initialize.
+     */
+    public WhisperHelper createHelper() throws IOException {
+        return new WhisperHelper(modelBuffer, modelPath, perInterpreter);
+    }
+
+    public int getThreadsPerInterpreter() {
+        return threadsPerInterpreter;
+    }
+
+    public long getModelBytes() {
+        return modelBuffer.capacity();
+    }
+
+    /** Closes every interpreter, buckets included; nobody may hold one any more. */
+    public void close() {
+        closeAll(helpers);
+        for (List<WhisperHelper> bucket : buckets) {
+            closeAll(bucket);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.projectvoice;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Interpreter pool sizing from core count and memory headroom, and length-bucket asset names.
+ */
+public class WhisperInterpreterPoolTest {
+
+    private static final long MB = 1024L * 1024L;
+
+    @Test
+    public void size_isBoundedByCores() {
+        assertEquals(4, WhisperInterpreterPool.recommendedSize(8, 4096 * MB, 80 * MB));
+        assertEquals(2, WhisperInterpreterPool.recommendedSize(4, 4096 * MB, 80 * MB));
+        assertEquals(1, WhisperInterpreterPool.recommendedSize(2, 4096 * MB, 80 * MB));
+    }
+
+    @Test
+    public void size_isBoundedByHalfTheHeadroom() {
+        assertEquals(3, WhisperInterpreterPool.recommendedSize(8, 500 * MB, 80 * MB));
+        assertEquals(1, WhisperInterpreterPool.recommendedSize(8, 100 * MB, 80 * MB));
+    }
+
+    @Test
+    public void size_isAtLeastOneAndAtMostTheCap() {
+        assertEquals(1, WhisperInterpreterPool.recommendedSize(1, -1, 80 * MB));
+        assertEquals(WhisperInterpreterPool.MAX_INTERPRETERS, WhisperInterpreterPool.recommendedSize(64, Long.MAX_VALUE / 2, 80 * MB));
+    }
+
+    @Test
+    public void variantPath_insertsTheFrameCountBeforeTheExtension() {
+        assertEquals("whisper-tiny.500.tflite", WhisperInterpreterPool.variantPath("whisper-tiny.tflite", 500));
+        assertEquals("models/v1.2/whisper.1000.tflite", WhisperInterpreterPool.variantPath("models/v1.2/whisper.tflite", 1000));
+        assertEquals("models.v1/whisper.1500", WhisperInterpreterPool.variantPath("models.v1/whisper", 1500));
+    }
+}
@@ -0,0 +1,30 @@
+// JMH microbenchmarks for the :core hot paths (audio frontend, token decoding, VAD).
+//   ./gradlew :benchmarks:jmh
+//   ./gradlew :benchmarks:jmh -PjmhIncludes=FrontendBenchmark
+// Results (with the gc profiler's allocation rates) go to build/results/jmh/results.json.
+
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8 // Same level as :core
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+dependencies {
+    jmh(project(":core"))
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    (findProperty("jmhIncludes") as String?)?.let { includes.add(it) }
+    profilers.add("gc") // Allocation rate per benchmark (-prof gc)
+    resultFormat.set("JSON")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    // The vocabulary for the decode benchmarks is the app's bundled asset
+    jvmArgsAppend.add("-Dprojectvoice.assets=" + rootProject.file("app/src/main/assets").absolutePath)
+}
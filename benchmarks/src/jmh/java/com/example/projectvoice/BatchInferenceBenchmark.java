@@ -0,0 +1,103 @@
+package com.example.projectvoice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An offline job over the bundled recordings, one worker per recording, with every window going
+ * through an {@link InferenceBatcher} of {@code batchSize} (1 runs each window on its own).
+ *
+ * There is no interpreter on the JVM, so the backend stands in for one: each invocation costs
+ * {@link #INVOCATION_MICROS} whatever its size plus {@link #CLIP_MICROS} per input, roughly the
+ * split of a CPU invocation of whisper-tiny where the fixed part is dispatch and weight reads.
+ * Partial batches are padded to {@code batchSize} and pay for every row, as on a device.
+ * What this measures is how much of that fixed cost batching saves once the frontend, packing
+ * and the dispatcher's waits are paid for; plug the device's own numbers in to compare.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BatchInferenceBenchmark {
+
+    private static final int[] INPUT_SHAPE = {1, 80, 3000};
+    private static final String[] WAVS = { "jfk.wav", "english_test1.wav", "english_test2.wav", "english_test_3_bili.wav", "MicInput.wav" };
+    private static final long INVOCATION_MICROS = 2000;
+    private static final long CLIP_MICROS = 500;
+    private static final long MAX_WAIT_MILLIS = 5;
+
+    @Param({"1", "2", "4", "8"})
+    public int batchSize;
+
+    private final List<float[]> recordings = new ArrayList<>();
+    private final List<TranscriptionEngine> engines = new ArrayList<>();
+    private InferenceBatcher batcher;
+    private ExecutorService workers;
+    private ExecutorService featureExecutor;
+
+    @Setup
+    public void setUp() throws IOException {
+        File assets = new File(System.getProperty("projectvoice.assets", "../app/src/main/assets"));
+        TokenTable table = TokenTable.fromAssetPack(WhisperAssetPack.open(new File(assets, "filters_vocab_multilingual.bin")));
+        for (String wav : WAVS) {
+            recordings.add(WavReader.open(new File(assets, wav)).readMono());
+        }
+        MelSpectrogramEngine melEngine = new MelSpectrogramEngine(INPUT_SHAPE);
+        batcher = new InferenceBatcher((inputs, size, prompt, out, counts) -> {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(INVOCATION_MICROS + size * CLIP_MICROS));
+            for (int i = 0; i < size; i++) {
+                out[i][0] = i; // One token per window
+                counts[i] = 1;
+            }
+        }, melEngine, batchSize, MAX_WAIT_MILLIS);
+        workers = Executors.newFixedThreadPool(WAVS.length);
+        featureExecutor = Executors.newCachedThreadPool();
+        for (int i = 0; i < WAVS.length; i++) {
+            engines.add(new TranscriptionEngine(new MelSpectrogramEngine(INPUT_SHAPE), table, batcher.asBackend(), featureExecutor));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        batcher.shutdown();
+        batcher.awaitTermination(1, TimeUnit.SECONDS);
+        workers.shutdownNow();
+        featureExecutor.shutdownNow();
+    }
+
+    /** All recordings, transcribed concurrently; one op is the whole job. */
+    @Benchmark
+    public int transcribeAll() throws Exception {
+        List<Future<TranscriptionEngine.Result>> results = new ArrayList<>();
+        for (int i = 0; i < WAVS.length; i++) {
+            final TranscriptionEngine engine = engines.get(i);
+            final float[] samples = recordings.get(i);
+            results.add(workers.submit(() -> {
+                StreamingMelFrontend frontend = engine.newFrontend();
+                frontend.accept(samples, 0, samples.length);
+                return engine.transcribe(frontend);
+            }));
+        }
+        int length = 0;
+        for (Future<TranscriptionEngine.Result> result : results) {
+            length += result.get().text.length();
+        }
+        return length;
+    }
+}
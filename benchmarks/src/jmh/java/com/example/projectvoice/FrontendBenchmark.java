@@ -0,0 +1,194 @@
+package com.example.projectvoice;
+
+import org.jtransforms.fft.FloatFFT_1D;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each stage of the log-Mel frontend over a whole take, from PCM bytes to model input buffers.
+ *
+ * The stages run on the previous stage's output, precomputed in setup, so their times add up to
+ * roughly {@link #streamingFrontend()} plus {@link #writeInputMelsByFrames()}. Takes longer than
+ * one model window are written one 30 s window at a time, as {@link LongFormTranscriber} does
+ * (without the overlap). Run with {@code -prof gc} (the Gradle task does) to see which stages
+ * allocate per take.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FrontendBenchmark {
+
+    private static final int N_MEL = 80;
+    private static final int WINDOW_FRAMES = 3000;
+
+    /** Take length in seconds: a short command, a sentence, one full window, ten minutes. */
+    @Param({"1", "10", "30", "600"})
+    public int seconds;
+
+    private byte[] pcm;
+    private float[] samples;
+    private int frameCount;
+
+    private final float[] hannWindow = AudioPreprocessor.createHannWindow(AudioPreprocessor.FRAME_LENGTH);
+    private final FloatFFT_1D fft = new FloatFFT_1D(AudioPreprocessor.N_FFT);
+    private final float[] fftInput = new float[AudioPreprocessor.N_FFT];
+    private final float[] spectrum = new float[AudioPreprocessor.NUM_SPECTRUM_BINS];
+    private final SparseMelFilterbank filterbank = SparseMelFilterbank.fromDense(
+            AudioPreprocessor.createMelFilterbank(N_MEL, AudioPreprocessor.N_FFT, AudioPreprocessor.SAMPLE_RATE));
+    private final float[] melRow = new float[N_MEL];
+
+    private float[][] powerSpectra; // Per frame
+    private float[] melEnergies;    // Frame-major, linear
+    private float[] logMel;         // Frame-major, what StreamingMelFrontend keeps
+    private float[] summaries;      // Per-frame mean and squared deviations, kept alongside
+
+    private final MelSpectrogramEngine melsByFrames = new MelSpectrogramEngine(new int[] {1, N_MEL, WINDOW_FRAMES});
+    private final MelSpectrogramEngine framesByMels = new MelSpectrogramEngine(new int[] {1, 1, WINDOW_FRAMES, N_MEL});
+    private final FloatBuffer input = melsByFrames.allocateInputBuffer().asFloatBuffer();
+    private final MelSpectrogramEngine int8MelsByFrames = new MelSpectrogramEngine(new int[] {1, N_MEL, WINDOW_FRAMES}, null,
+            MelSpectrogramEngine.Normalization.Z_SCORE, TensorEncoding.int8(0.05f, 0));
+    private final MelSpectrogramEngine fp16MelsByFrames = new MelSpectrogramEngine(new int[] {1, N_MEL, WINDOW_FRAMES}, null,
+            MelSpectrogramEngine.Normalization.Z_SCORE, TensorEncoding.FLOAT16);
+    private final ByteBuffer encodedInput = int8MelsByFrames.allocateInputBuffer();
+    private final ByteBuffer halfInput = fp16MelsByFrames.allocateInputBuffer();
+
+    @Setup
+    public void setUp() {
+        // Speech-like signal: a few harmonics with a slow envelope over a noise floor
+        int sampleCount = seconds * AudioPreprocessor.SAMPLE_RATE;
+        ByteBuffer bytes = ByteBuffer.allocate(2 * sampleCount).order(ByteOrder.LITTLE_ENDIAN);
+        Random random = new Random(1);
+        for (int i = 0; i < sampleCount; i++) {
+            double t = i / (double) AudioPreprocessor.SAMPLE_RATE;
+            double envelope = 0.5 + 0.5 * Math.sin(2 * Math.PI * 3 * t);
+            double voice = Math.sin(2 * Math.PI * 180 * t) + 0.5 * Math.sin(2 * Math.PI * 360 * t) + 0.25 * Math.sin(2 * Math.PI * 720 * t);
+            bytes.putShort((short) (8000 * envelope * voice + 100 * random.nextGaussian()));
+        }
+        pcm = bytes.array();
+        samples = AudioPreprocessor.pcm16ToFloat(pcm);
+        frameCount = AudioPreprocessor.numFrames(sampleCount);
+
+        powerSpectra = new float[frameCount][];
+        melEnergies = new float[frameCount * N_MEL];
+        logMel = new float[frameCount * N_MEL];
+        summaries = new float[frameCount * MelSpectrogramEngine.SUMMARY_SIZE];
+        for (int f = 0; f < frameCount; f++) {
+            transform(f);
+            powerSpectra[f] = spectrum.clone();
+            filterbank.apply(powerSpectra[f], melEnergies, f * N_MEL);
+            melsByFrames.computeFrame(samples, f * AudioPreprocessor.FRAME_SHIFT, logMel, f * N_MEL);
+            System.arraycopy(melsByFrames.lastFrameSummary(), 0, summaries, f * MelSpectrogramEngine.SUMMARY_SIZE,
+                    MelSpectrogramEngine.SUMMARY_SIZE);
+        }
+    }
+
+    private void transform(int frame) {
+        int start = frame * AudioPreprocessor.FRAME_SHIFT;
+        for (int i = 0; i < AudioPreprocessor.FRAME_LENGTH; i++) {
+            fftInput[i] = samples[start + i] * hannWindow[i];
+        }
+        fft.realForward(fftInput);
+        AudioPreprocessor.powerSpectrum(fftInput, spectrum);
+    }
+
+    @Benchmark
+    public float[] pcm16ToFloat() {
+        return AudioPreprocessor.pcm16ToFloat(pcm);
+    }
+
+    /** Hann window, {@code FloatFFT_1D.realForward} and power spectrum for every frame. */
+    @Benchmark
+    public float hannWindowAndFft() {
+        float sum = 0f;
+        for (int f = 0; f < frameCount; f++) {
+            transform(f);
+            sum += spectrum[1];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public float[] melFilterbank() {
+        for (int f = 0; f < frameCount; f++) {
+            filterbank.apply(powerSpectra[f], melEnergies, f * N_MEL);
+        }
+        return melEnergies;
+    }
+
+    @Benchmark
+    public float logMel() {
+        float sum = 0f;
+        for (int f = 0; f < frameCount; f++) {
+            System.arraycopy(melEnergies, f * N_MEL, melRow, 0, N_MEL);
+            AudioPreprocessor.logInPlace(melRow);
+            sum += melRow[0];
+        }
+        return sum;
+    }
+
+    /** Z-score normalization plus the transpose into the {@code [1, 80, 3000]} model layout. */
+    @Benchmark
+    public FloatBuffer writeInputMelsByFrames() {
+        return writeWindows(melsByFrames, null);
+    }
+
+    /** Same, with the window statistics merged from per-frame summaries as the frontend does. */
+    @Benchmark
+    public FloatBuffer writeInputMelsByFramesFromSummaries() {
+        return writeWindows(melsByFrames, summaries);
+    }
+
+    /** Same normalization into {@code [1, 1, 3000, 80]}, a straight copy; the difference is the transpose. */
+    @Benchmark
+    public FloatBuffer writeInputFramesByMels() {
+        return writeWindows(framesByMels, null);
+    }
+
+    /** Same as {@link #writeInputMelsByFramesFromSummaries()} quantized to int8 as it is written. */
+    @Benchmark
+    public ByteBuffer writeInputInt8() {
+        return writeEncodedWindows(int8MelsByFrames, encodedInput);
+    }
+
+    /** Same, converted to half floats as it is written. */
+    @Benchmark
+    public ByteBuffer writeInputFloat16() {
+        return writeEncodedWindows(fp16MelsByFrames, halfInput);
+    }
+
+    private ByteBuffer writeEncodedWindows(MelSpectrogramEngine engine, ByteBuffer out) {
+        for (int first = 0; first < frameCount; first += WINDOW_FRAMES) {
+            out.clear();
+            engine.writeNormalized(logMel, summaries, first, Math.min(WINDOW_FRAMES, frameCount - first), out);
+        }
+        return out;
+    }
+
+    private FloatBuffer writeWindows(MelSpectrogramEngine engine, float[] frameSummaries) {
+        for (int first = 0; first < frameCount; first += WINDOW_FRAMES) {
+            input.clear();
+            engine.writeNormalized(logMel, frameSummaries, first, Math.min(WINDOW_FRAMES, frameCount - first), input);
+        }
+        return input;
+    }
+
+    /** Everything up to the model input, as the recorder runs it: float samples in, log-Mel frames out. */
+    @Benchmark
+    public float[] streamingFrontend() {
+        StreamingMelFrontend frontend = new StreamingMelFrontend(melsByFrames);
+        frontend.accept(samples, 0, samples.length);
+        return frontend.finishFrames();
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.projectvoice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame cost of the dense Mel projection against {@link SparseMelFilterbank}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MelFilterbankBenchmark {
+
+    @Param({"80", "128"})
+    public int nMel;
+
+    private float[][] dense;
+    private SparseMelFilterbank sparse;
+    private final float[] power = new float[AudioPreprocessor.NUM_SPECTRUM_BINS];
+    private float[] out;
+
+    @Setup
+    public void setUp() {
+        dense = AudioPreprocessor.createMelFilterbank(nMel, AudioPreprocessor.N_FFT, AudioPreprocessor.SAMPLE_RATE);
+        sparse = SparseMelFilterbank.fromDense(dense);
+        Random random = new Random(1);
+        for (int k = 0; k < power.length; k++) {
+            power[k] = random.nextFloat();
+        }
+        out = new float[nMel];
+    }
+
+    @Benchmark
+    public float[] dense() {
+        AudioPreprocessor.applyMelFilterbank(power, dense, out);
+        return out;
+    }
+
+    @Benchmark
+    public float[] sparse() {
+        sparse.apply(power, out, 0);
+        return out;
+    }
+}
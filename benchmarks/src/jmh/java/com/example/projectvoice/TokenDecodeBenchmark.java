@@ -0,0 +1,101 @@
+package com.example.projectvoice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning a model's output buffer into text: reading int32 ids up to end-of-text from the
+ * native-order output tensor (the app's old {@code decodeOutputBuffer}, now
+ * {@code ModelRegistry.readOutputTokens}) and decoding them with {@link TokenTable}. The
+ * {@code HashMap<Integer,String>} + {@code List<Integer>} decode it replaced is kept as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TokenDecodeBenchmark {
+
+    private static final int TOKENS_PER_SECOND = 3; // ~150 words per minute of dictation
+
+    @Param({"1", "10", "30", "600"})
+    public int seconds;
+
+    private TokenTable table;
+    private Map<Integer, String> map;
+    private ByteBuffer output;
+    private int[] ids;
+    private final TokenTable.TextBuffer text = new TokenTable.TextBuffer();
+
+    @Setup
+    public void setUp() throws IOException {
+        File assets = new File(System.getProperty("projectvoice.assets", "../app/src/main/assets"));
+        WhisperAssetPack pack = WhisperAssetPack.open(new File(assets, "filters_vocab_multilingual.bin"));
+        table = TokenTable.fromAssetPack(pack);
+        map = new HashMap<>();
+        for (int id = 0; id < pack.getTokenCount(); id++) {
+            map.put(id, pack.tokenString(id));
+        }
+
+        int count = Math.max(1, seconds * TOKENS_PER_SECOND);
+        ids = new int[count + 1];
+        output = ByteBuffer.allocateDirect(4 * ids.length).order(ByteOrder.nativeOrder());
+        Random random = new Random(3);
+        for (int i = 0; i < count; i++) {
+            output.putInt(random.nextInt(table.getEndOfText()));
+        }
+        output.putInt(table.getEndOfText()).rewind();
+    }
+
+    private int readIds() {
+        IntBuffer buffer = output.asIntBuffer();
+        int count = 0;
+        while (buffer.hasRemaining()) {
+            int id = buffer.get();
+            if (id == table.getEndOfText()) break;
+            ids[count++] = id;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public String tokenTable() {
+        int count = readIds();
+        text.clear();
+        table.decode(ids, 0, count, text);
+        return text.toString();
+    }
+
+    @Benchmark
+    public String hashMapBaseline() {
+        IntBuffer buffer = output.asIntBuffer();
+        List<Integer> boxed = new ArrayList<>();
+        while (buffer.hasRemaining()) {
+            int id = buffer.get();
+            if (id == table.getEndOfText()) break;
+            boxed.add(id);
+        }
+        StringBuilder transcript = new StringBuilder();
+        for (int id : boxed) {
+            String token = map.get(id);
+            if (token != null) transcript.append(token).append(" ");
+        }
+        return transcript.toString().trim();
+    }
+}
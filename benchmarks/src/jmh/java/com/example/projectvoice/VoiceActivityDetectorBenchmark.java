@@ -0,0 +1,52 @@
+package com.example.projectvoice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame cost of {@link VoiceActivityDetector#acceptFrame(float[])}; each frame has a 10 ms
+ * (FRAME_SHIFT at 16 kHz) budget in the capture path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VoiceActivityDetectorBenchmark {
+
+    private static final int FRAMES_PER_INVOCATION = 100_000;
+
+    private final float[] power = new float[AudioPreprocessor.NUM_SPECTRUM_BINS];
+    private VoiceActivityDetector vad;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        for (int k = 0; k < power.length; k++) {
+            power[k] = random.nextFloat();
+        }
+    }
+
+    // A fresh detector per invocation keeps the frame arrays from growing without bound
+    @Setup(Level.Invocation)
+    public void newDetector() {
+        vad = new VoiceActivityDetector();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES_PER_INVOCATION)
+    public float acceptFrame() {
+        for (int f = 0; f < FRAMES_PER_INVOCATION; f++) {
+            vad.acceptFrame(power);
+        }
+        return vad.getEnergyDb(FRAMES_PER_INVOCATION - 1);
+    }
+}
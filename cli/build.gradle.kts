@@ -0,0 +1,30 @@
+// JVM command-line runner: transcribes WAV files through :core's TranscriptionEngine.
+//   ./gradlew :cli:run --args="--workers 4 app/src/main/assets"
+
+plugins {
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+application {
+    mainClass.set("com.example.projectvoice.cli.TranscribeCli")
+}
+
+dependencies {
+    implementation(project(":core"))
+
+    testImplementation(libs.junit)
+}
+
+tasks.named<JavaExec>("run") {
+    workingDir = rootProject.projectDir // Default paths are relative to the repository root
+}
+
+tasks.test {
+    // The WAV and filters/vocab test files are the app's bundled assets
+    systemProperty("projectvoice.assets", rootProject.file("app/src/main/assets").absolutePath)
+}
@@ -0,0 +1,24 @@
+package com.example.projectvoice.cli;
+
+import com.example.projectvoice.TokenTable;
+import com.example.projectvoice.TranscriptionEngine;
+
+import java.io.IOException;
+
+/**
+ * Model runtime for the CLI, found with {@link java.util.ServiceLoader} (list implementations in
+ * {@code META-INF/services/com.example.projectvoice.cli.BackendProvider}). The app's TFLite
+ * interpreter is Android-only, so a plain JVM classpath has none and the CLI stops after
+ * feature preparation.
+ */
+public interface BackendProvider {
+
+    String getName();
+
+    /**
+     * Creates a backend for one worker thread; called once per worker.
+     *
+     * @param inputShape Model input shape the features are laid out for.
+     */
+    TranscriptionEngine.Backend create(TokenTable tokenTable, int[] inputShape) throws IOException;
+}
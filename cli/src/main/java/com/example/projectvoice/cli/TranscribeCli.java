@@ -0,0 +1,326 @@
+package com.example.projectvoice.cli;
+
+import com.example.projectvoice.AudioPreprocessor;
+import com.example.projectvoice.LatencyHistogram;
+import com.example.projectvoice.MelSpectrogramEngine;
+import com.example.projectvoice.ParallelStft;
+import com.example.projectvoice.SparseMelFilterbank;
+import com.example.projectvoice.TokenTable;
+import com.example.projectvoice.TranscriptionEngine;
+import com.example.projectvoice.TranscriptionMetrics;
+import com.example.projectvoice.WavReader;
+import com.example.projectvoice.WhisperAssetPack;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.ServiceLoader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Transcribes WAV files (or every {@code .wav} in the given directories) in parallel and reports
+ * per-file latency and aggregate throughput in audio seconds per wall second.
+ *
+ * Each worker thread owns a {@link TranscriptionEngine} (Mel engine, feature executor and
+ * backend); the token table and Mel filters are shared, as is the {@link ParallelStft} pool that
+ * computes the frames of files longer than about 10 s ({@code --stft-threads}, 1 to stream
+ * them). Latency is measured per file from mapping the WAV to the decoded text, excluding time
+ * spent queued behind other files. All workers record into one {@link TranscriptionMetrics}; the
+ * per-stage percentiles are printed at the end and {@code --metrics FILE} writes the full
+ * histograms as JSON.
+ */
+public final class TranscribeCli {
+
+    static final String USAGE = "usage: transcribe [--workers N] [--stft-threads N] [--vocab filters_vocab.bin] [--mels 80] [--frames 3000] [--norm zscore|whisper] [--metrics out.json] <file.wav|dir>...";
+    static final File DEFAULT_ASSETS = new File("app/src/main/assets");
+
+    /** Parsed command line. */
+    static final class Options {
+        int workers = Runtime.getRuntime().availableProcessors();
+        /** Fork/join pool shared by all workers for the frames of long files; 1 streams them instead. */
+        int stftThreads = Runtime.getRuntime().availableProcessors();
+        File vocab = new File(DEFAULT_ASSETS, "filters_vocab_multilingual.bin");
+        int melCount = 80;
+        int frames = 3000;
+        MelSpectrogramEngine.Normalization normalization = MelSpectrogramEngine.Normalization.Z_SCORE;
+        File metrics;
+        final List<File> inputs = new ArrayList<>();
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.startsWith("--") && i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                switch (arg) {
+                    case "--workers":
+                        options.workers = positive(arg, args[++i]);
+                        break;
+                    case "--stft-threads":
+                        options.stftThreads = positive(arg, args[++i]);
+                        break;
+                    case "--vocab":
+                        options.vocab = new File(args[++i]);
+                        break;
+                    case "--mels":
+                        options.melCount = positive(arg, args[++i]);
+                        break;
+                    case "--frames":
+                        options.frames = positive(arg, args[++i]);
+                        break;
+                    case "--norm":
+                        options.normalization = normalization(args[++i]);
+                        break;
+                    case "--metrics":
+                        options.metrics = new File(args[++i]);
+                        break;
+                    default:
+                        if (arg.startsWith("--")) {
+                            throw new IllegalArgumentException("Unknown option " + arg);
+                        }
+                        options.inputs.add(new File(arg));
+                }
+            }
+            if (options.inputs.isEmpty()) {
+                options.inputs.add(DEFAULT_ASSETS);
+            }
+            return options;
+        }
+
+        private static MelSpectrogramEngine.Normalization normalization(String value) {
+            switch (value) {
+                case "zscore":
+                    return MelSpectrogramEngine.Normalization.Z_SCORE;
+                case "whisper":
+                    return MelSpectrogramEngine.Normalization.WHISPER;
+                default:
+                    throw new IllegalArgumentException("--norm needs zscore or whisper, got " + value);
+            }
+        }
+
+        private static int positive(String option, String value) {
+            try {
+                int n = Integer.parseInt(value);
+                if (n > 0) return n;
+            } catch (NumberFormatException e) {
+                // Reported below
+            }
+            throw new IllegalArgumentException(option + " needs a positive integer, got " + value);
+        }
+    }
+
+    /** Per-thread pipeline. */
+    private static final class Worker {
+        final ExecutorService featureExecutor = Executors.newSingleThreadExecutor(DAEMON);
+        final TranscriptionEngine engine;
+
+        Worker(MelSpectrogramEngine melEngine, int[] inputShape, TokenTable tokenTable, BackendProvider provider,
+               TranscriptionMetrics metrics, ParallelStft stft) throws IOException {
+            TranscriptionEngine.Backend backend = (provider != null) ? provider.create(tokenTable, inputShape) : null;
+            engine = new TranscriptionEngine(melEngine, tokenTable, backend, featureExecutor, metrics);
+            engine.setParallelStft(stft);
+        }
+    }
+
+    private static final ThreadFactory DAEMON = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "cli-features");
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private TranscribeCli() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        System.exit(execute(args, System.out, System.err));
+    }
+
+    /**
+     * Parses {@code args} and runs them; bad options print the usage.
+     *
+     * @return As {@link #run}, and 2 if the options or the filters/vocab file are bad.
+     */
+    static int execute(String[] args, PrintStream out, PrintStream err) throws InterruptedException {
+        try {
+            return run(Options.parse(args), out, err);
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return 2;
+        } catch (IOException e) {
+            err.println("Cannot load " + e.getMessage());
+            return 2;
+        }
+    }
+
+    /** @return Process exit code: 0 if every file was transcribed, 1 if some failed, 2 on bad input. */
+    static int run(Options options, PrintStream out, PrintStream err) throws IOException, InterruptedException {
+        List<File> files = collectWavFiles(options.inputs);
+        if (files.isEmpty()) {
+            err.println("No .wav files in " + options.inputs);
+            return 2;
+        }
+        final WhisperAssetPack pack = WhisperAssetPack.open(options.vocab);
+        final TokenTable tokenTable = TokenTable.fromAssetPack(pack);
+        final int[] inputShape = { 1, options.melCount, options.frames };
+        final SparseMelFilterbank filterbank = (pack.getMelCount() == options.melCount
+                && pack.getFilterBinCount() == AudioPreprocessor.NUM_SPECTRUM_BINS) ? pack.createFilterbank() : null;
+        final BackendProvider provider = findProvider();
+        String backendName = (provider != null) ? provider.getName() : "none";
+        out.println("Backend: " + (provider != null ? backendName : "none on the classpath (features only, no text)")
+                + ", " + options.workers + " workers, " + files.size() + " files");
+        final TranscriptionMetrics metrics = new TranscriptionMetrics(threadAllocationCounter());
+        metrics.setTag("host", System.getProperty("os.arch") + " " + System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+        metrics.setTag("backend", backendName);
+        metrics.setTag("input_shape", Arrays.toString(inputShape));
+        metrics.setTag("workers", String.valueOf(options.workers));
+        metrics.setTag("stft_threads", String.valueOf(options.stftThreads));
+        metrics.setTag("normalization", options.normalization.name());
+        final MelSpectrogramEngine.Normalization normalization = options.normalization;
+        final ParallelStft stft = (options.stftThreads > 1)
+                ? new ParallelStft(new MelSpectrogramEngine(inputShape, filterbank, normalization), options.stftThreads) : null;
+
+        final List<Worker> workers = Collections.synchronizedList(new ArrayList<Worker>());
+        final ThreadLocal<Worker> local = new ThreadLocal<>();
+        ExecutorService pool = Executors.newFixedThreadPool(options.workers);
+        List<Future<TranscriptionEngine.Result>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (final File file : files) {
+            futures.add(pool.submit(new Callable<TranscriptionEngine.Result>() {
+                @Override
+                public TranscriptionEngine.Result call() throws Exception {
+                    Worker worker = local.get();
+                    if (worker == null) {
+                        worker = new Worker(new MelSpectrogramEngine(inputShape, filterbank, normalization), inputShape, tokenTable, provider,
+                                metrics, stft);
+                        workers.add(worker);
+                        local.set(worker);
+                    }
+                    return worker.engine.transcribe(WavReader.open(file));
+                }
+            }));
+        }
+
+        int failures = 0;
+        float audioSeconds = 0f;
+        long latencySum = 0L;
+        long latencyMax = 0L;
+        for (int i = 0; i < files.size(); i++) {
+            String name = files.get(i).getName();
+            try {
+                TranscriptionEngine.Result result = futures.get(i).get();
+                audioSeconds += result.audioSeconds;
+                latencySum += result.totalNanos;
+                latencyMax = Math.max(latencyMax, result.totalNanos);
+                out.println(formatResult(name, result));
+            } catch (ExecutionException e) {
+                failures++;
+                Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+                out.println(name + "  FAILED: " + cause);
+            }
+        }
+        long wall = System.nanoTime() - start;
+        pool.shutdown();
+        for (Worker worker : workers) {
+            worker.featureExecutor.shutdown();
+        }
+        if (stft != null) {
+            stft.shutdown();
+        }
+
+        int done = files.size() - failures;
+        out.println(String.format(Locale.US, "%d files, %.1f s of audio in %.2f s wall with %d workers: %.1f audio-s/wall-s (latency mean %.1f ms, max %.1f ms)",
+                done, audioSeconds, wall / 1e9, options.workers, audioSeconds / (wall / 1e9),
+                done > 0 ? latencySum / 1e6 / done : 0.0, latencyMax / 1e6));
+        printStages(metrics, out);
+        if (options.metrics != null) {
+            try (FileOutputStream json = new FileOutputStream(options.metrics)) {
+                json.write(metrics.toJson().getBytes(StandardCharsets.UTF_8));
+            }
+            out.println("Metrics written to " + options.metrics);
+        }
+        return failures > 0 ? 1 : 0;
+    }
+
+    static void printStages(TranscriptionMetrics metrics, PrintStream out) {
+        for (TranscriptionMetrics.Stage stage : TranscriptionMetrics.Stage.values()) {
+            LatencyHistogram histogram = metrics.getStage(stage);
+            out.println(String.format(Locale.US, "  %-16s p50 %9.3f ms  p99 %9.3f ms  max %9.3f ms",
+                    stage.jsonName(), histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(99) / 1e6,
+                    histogram.getMax() / 1e6));
+        }
+        LatencyHistogram allocated = metrics.getAllocatedBytes();
+        if (allocated.getCount() > 0) {
+            out.println(String.format(Locale.US, "  %-16s p50 %9.1f KB  max %9.1f KB (worker thread)", "allocated",
+                    allocated.getValueAtPercentile(50) / 1024.0, allocated.getMax() / 1024.0));
+        }
+    }
+
+    // HotSpot and OpenJ9 count bytes allocated per thread; the worker thread does all but window normalization
+    private static TranscriptionMetrics.AllocationCounter threadAllocationCounter() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        final com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+        if (!hotspot.isThreadAllocatedMemorySupported() || !hotspot.isThreadAllocatedMemoryEnabled()) {
+            return null;
+        }
+        return new TranscriptionMetrics.AllocationCounter() {
+            @Override
+            public long getAllocatedBytes() {
+                return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        };
+    }
+
+    static String formatResult(String name, TranscriptionEngine.Result result) {
+        String text = (result.speech == null) ? "(no speech)" : (result.text == null) ? "(no backend)" : "\"" + result.text + "\"";
+        return String.format(Locale.US, "%s  %.2f s audio  %.1f ms  RTF %.4f  %d window%s  features %.1f ms  inference %.1f ms  %s",
+                name, result.audioSeconds, result.totalNanos / 1e6, result.realTimeFactor(), result.windowCount,
+                result.windowCount == 1 ? "" : "s", result.featureNanos / 1e6, result.inferenceNanos / 1e6, text);
+    }
+
+    static List<File> collectWavFiles(List<File> inputs) {
+        List<File> files = new ArrayList<>();
+        for (File input : inputs) {
+            if (input.isDirectory()) {
+                File[] children = input.listFiles();
+                if (children == null) continue;
+                Arrays.sort(children);
+                for (File child : children) {
+                    if (child.isFile() && child.getName().toLowerCase(Locale.US).endsWith(".wav")) {
+                        files.add(child);
+                    }
+                }
+            } else {
+                files.add(input); // Missing files are reported as failures
+            }
+        }
+        return files;
+    }
+
+    private static BackendProvider findProvider() {
+        Iterator<BackendProvider> providers = ServiceLoader.load(BackendProvider.class).iterator();
+        return providers.hasNext() ? providers.next() : null;
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.projectvoice.cli;
+
+import com.example.projectvoice.MelSpectrogramEngine;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Option parsing, input collection and a features-only run of {@link TranscribeCli} over the
+ * app's bundled assets; no {@link BackendProvider} is on the test classpath.
+ */
+public class TranscribeCliTest {
+
+    // As in :core's tests: the build points projectvoice.assets at them
+    private static final File ASSETS = new File(System.getProperty("projectvoice.assets", "../app/src/main/assets"));
+    private static final String[] WAVS = { "MicInput.wav", "english_test1.wav", "english_test2.wav", "english_test_3_bili.wav", "jfk.wav" };
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    private PrintStream print(ByteArrayOutputStream bytes) {
+        try {
+            return new PrintStream(bytes, true, "UTF-8");
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String text(ByteArrayOutputStream bytes) {
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String parseError(String... args) {
+        try {
+            TranscribeCli.Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+        throw new AssertionError("Accepted " + Arrays.toString(args));
+    }
+
+    @Test
+    public void parse_readsEveryOption() {
+        TranscribeCli.Options options = TranscribeCli.Options.parse(new String[] {
+                "--workers", "3", "--stft-threads", "1", "--vocab", "v.bin", "--mels", "128", "--frames", "1500",
+                "--norm", "whisper", "--metrics", "m.json", "a.wav", "dir" });
+
+        assertEquals(3, options.workers);
+        assertEquals(1, options.stftThreads);
+        assertEquals(new File("v.bin"), options.vocab);
+        assertEquals(128, options.melCount);
+        assertEquals(1500, options.frames);
+        assertEquals(MelSpectrogramEngine.Normalization.WHISPER, options.normalization);
+        assertEquals(new File("m.json"), options.metrics);
+        assertEquals(Arrays.asList(new File("a.wav"), new File("dir")), options.inputs);
+    }
+
+    @Test
+    public void parse_withoutInputs_takesTheBundledAssets() {
+        TranscribeCli.Options options = TranscribeCli.Options.parse(new String[0]);
+
+        assertEquals(Collections.singletonList(TranscribeCli.DEFAULT_ASSETS), options.inputs);
+        assertEquals(MelSpectrogramEngine.Normalization.Z_SCORE, options.normalization);
+        assertNull(options.metrics);
+    }
+
+    @Test
+    public void parse_rejectsBadOptions() {
+        assertEquals("Unknown option --beam", parseError("--beam", "2"));
+        assertEquals("Missing value for --workers", parseError("a.wav", "--workers"));
+        assertEquals("--workers needs a positive integer, got 0", parseError("--workers", "0"));
+        assertEquals("--frames needs a positive integer, got many", parseError("--frames", "many"));
+        assertEquals("--norm needs zscore or whisper, got log", parseError("--norm", "log"));
+    }
+
+    @Test
+    public void badOption_printsTheUsage_andExitsWith2() throws Exception {
+        int code = TranscribeCli.execute(new String[] { "--workers", "-1" }, print(out), print(err));
+
+        assertEquals(2, code);
+        assertEquals("", text(out));
+        assertTrue(text(err), text(err).contains("--workers needs a positive integer, got -1"));
+        assertTrue(text(err), text(err).contains(TranscribeCli.USAGE));
+    }
+
+    @Test
+    public void missingVocabulary_exitsWith2() throws Exception {
+        File missing = new File(folder.getRoot(), "missing.bin");
+        int code = TranscribeCli.execute(new String[] { "--vocab", missing.getPath(), new File(ASSETS, "jfk.wav").getPath() },
+                print(out), print(err));
+
+        assertEquals(2, code);
+        assertTrue(text(err), text(err).startsWith("Cannot load "));
+    }
+
+    @Test
+    public void directoryWithoutWavFiles_exitsWith2() throws Exception {
+        folder.newFile("notes.txt");
+        TranscribeCli.Options options = TranscribeCli.Options.parse(new String[] { folder.getRoot().getPath() });
+
+        assertEquals(2, TranscribeCli.run(options, print(out), print(err)));
+        assertTrue(text(err), text(err).startsWith("No .wav files in "));
+    }
+
+    @Test
+    public void collectWavFiles_takesTheWavFilesOfDirectoriesInOrder_andNamedFilesAsGiven() throws Exception {
+        File b = folder.newFile("b.wav");
+        File a = folder.newFile("A.WAV");
+        folder.newFile("notes.txt");
+        folder.newFolder("nested.wav");
+        File named = new File(folder.getRoot(), "missing.wav");
+
+        List<File> files = TranscribeCli.collectWavFiles(Arrays.asList(folder.getRoot(), named));
+
+        assertEquals(Arrays.asList(a, b, named), files);
+    }
+
+    @Test
+    public void run_overTheBundledAssets_reportsEveryFile_andTheThroughput() throws Exception {
+        File metrics = new File(folder.getRoot(), "metrics.json");
+        TranscribeCli.Options options = TranscribeCli.Options.parse(new String[] {
+                "--workers", "2", "--vocab", new File(ASSETS, "filters_vocab_multilingual.bin").getPath(),
+                "--metrics", metrics.getPath(), ASSETS.getPath() });
+
+        int code = TranscribeCli.run(options, print(out), print(err));
+
+        assertEquals(text(err), 0, code);
+        List<String> lines = Arrays.asList(text(out).split("\\R"));
+        assertTrue(lines.get(0), lines.get(0).startsWith("Backend: none on the classpath"));
+        assertTrue(lines.get(0), lines.get(0).endsWith("2 workers, " + WAVS.length + " files"));
+        for (int i = 0; i < WAVS.length; i++) {
+            String line = lines.get(1 + i);
+            assertTrue(line, line.startsWith(WAVS[i] + "  "));
+            assertTrue(line, line.matches(".* s audio .* RTF .* windows? .*\\((no backend|no speech)\\)"));
+        }
+        String summary = lines.get(1 + WAVS.length);
+        assertTrue(summary, summary.matches(WAVS.length + " files, [0-9.]+ s of audio in [0-9.]+ s wall with 2 workers: "
+                + "[0-9.]+ audio-s/wall-s .*"));
+        assertTrue(metrics.length() > 0);
+        assertEquals("Metrics written to " + metrics, lines.get(lines.size() - 1));
+    }
+}
@@ -0,0 +1,22 @@
+// Android-free pipeline: audio features, VAD, decoding, long-form stitching, TranscriptionEngine.
+// Shared by :app and the JVM tools (:cli).
+
+plugins {
+    `java-library`
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8 // Same level as :app
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+dependencies {
+    api(libs.jtransforms)
+
+    testImplementation(libs.junit)
+}
+
+tasks.test {
+    // The WAV and filters/vocab test files are the app's bundled assets
+    systemProperty("projectvoice.assets", rootProject.file("app/src/main/assets").absolutePath)
+}
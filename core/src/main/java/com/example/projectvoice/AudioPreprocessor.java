@@ -0,0 +1,274 @@
+package com.example.projectvoice;
+
+import org.jtransforms.fft.FloatFFT_1D;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Log-Mel feature extraction for the Whisper input tensor.
+ *
+ * This is the batch path that used to live in MainActivity.preprocessAudio. It has no Android
+ * dependencies so it can be run (and compared against {@link StreamingMelFrontend}) in plain
+ * JVM unit tests. Invalid input is reported with IllegalArgumentException; callers log it.
+ */
+public final class AudioPreprocessor {
+
+    public static final int SAMPLE_RATE = 16000; // Whisper models typically expect 16kHz
+    public static final int FRAME_LENGTH = 400;  // 25ms at 16kHz (Whisper default) = 0.025 * 16000
+    public static final int FRAME_SHIFT = 160;   // 10ms hop at 16kHz (Whisper default) = 0.010 * 16000
+    public static final int N_FFT = FRAME_LENGTH; // Use frameLength for FFT size (common practice)
+    public static final int NUM_SPECTRUM_BINS = N_FFT / 2 + 1;
+
+    static final float LOG_OFFSET = 1e-10f; // Small offset to avoid log(0)
+    static final float STD_EPS = 1e-5f;     // Epsilon to prevent division by zero
+
+    private AudioPreprocessor() {
+    }
+
+    /**
+     * Runs the full batch pipeline: PCM conversion, STFT, Mel projection, log, normalization,
+     * pad/truncate and layout into a direct buffer matching {@code inputShape}.
+     *
+     * @param recordedAudioBytes 16-bit little-endian mono PCM at {@link #SAMPLE_RATE}.
+     * @param inputShape         Model input shape, e.g. [1, 80, 3000] or [1, 1, 3000, 80].
+     * @return A rewound direct buffer in native order.
+     */
+    public static ByteBuffer preprocess(byte[] recordedAudioBytes, int[] inputShape) {
+        if (recordedAudioBytes == null || recordedAudioBytes.length == 0) {
+            throw new IllegalArgumentException("No audio data to preprocess");
+        }
+        float[] floatAudio = pcm16ToFloat(recordedAudioBytes);
+        int nMel = melFeatureCount(inputShape);
+        float[][] logMel = computeLogMel(floatAudio, nMel);
+        return toInputBuffer(logMel, logMel.length, inputShape);
+    }
+
+    // Assuming shape is [Batch, Features, Frames] OR [Batch, Channels, Frames, Features]
+    public static int melFeatureCount(int[] inputShape) {
+        checkShape(inputShape);
+        return (inputShape.length == 4) ? inputShape[3] : inputShape[1]; // Typically 80
+    }
+
+    public static int expectedFrames(int[] inputShape) {
+        checkShape(inputShape);
+        return inputShape[2]; // Typically 3000
+    }
+
+    private static void checkShape(int[] inputShape) {
+        if (inputShape == null || inputShape.length < 3) {
+            throw new IllegalArgumentException("Invalid input shape for preprocessing: " + Arrays.toString(inputShape));
+        }
+    }
+
+    /** Converts PCM 16-bit little-endian bytes to a float array in [-1.0, 1.0]. */
+    public static float[] pcm16ToFloat(byte[] pcmBytes) {
+        short[] shorts = new short[pcmBytes.length / 2];
+        ByteBuffer.wrap(pcmBytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(shorts);
+        float[] floatAudio = new float[shorts.length];
+        for (int i = 0; i < shorts.length; i++) {
+            floatAudio[i] = shorts[i] / 32768.0f; // Normalize to [-1.0, 1.0]
+        }
+        return floatAudio;
+    }
+
+    /** Number of complete STFT frames in {@code numSamples} samples (no implicit padding). */
+    public static int numFrames(int numSamples) {
+        return (numSamples >= FRAME_LENGTH) ? 1 + (numSamples - FRAME_LENGTH) / FRAME_SHIFT : 0;
+    }
+
+    /**
+     * Computes the (un-normalized) log-Mel spectrogram, one row per frame.
+     */
+    public static float[][] computeLogMel(float[] floatAudio, int nMel) {
+        int numFrames = numFrames(floatAudio.length);
+        if (numFrames <= 0) {
+            throw new IllegalArgumentException("Audio too short (" + floatAudio.length + " samples) for STFT processing with frameLength=" + FRAME_LENGTH);
+        }
+
+        float[] hannWindow = createHannWindow(FRAME_LENGTH);
+        float[][] melFilterbank = createMelFilterbank(nMel, N_FFT, SAMPLE_RATE); // [nMel, nFFT/2 + 1]
+        float[][] melSpectrogram = new float[numFrames][nMel];
+
+        FloatFFT_1D fft = new FloatFFT_1D(N_FFT);
+        float[] fftInput = new float[N_FFT];
+        float[] powerSpectrum = new float[NUM_SPECTRUM_BINS];
+
+        for (int frameIndex = 0; frameIndex < numFrames; frameIndex++) {
+            int startSample = frameIndex * FRAME_SHIFT;
+            for (int i = 0; i < FRAME_LENGTH; i++) {
+                fftInput[i] = floatAudio[startSample + i] * hannWindow[i];
+            }
+            fft.realForward(fftInput);
+            powerSpectrum(fftInput, powerSpectrum);
+            applyMelFilterbank(powerSpectrum, melFilterbank, melSpectrogram[frameIndex]);
+            logInPlace(melSpectrogram[frameIndex]);
+        }
+        return melSpectrogram;
+    }
+
+    /**
+     * Power spectrum (magnitude squared) of a JTransforms realForward result. The input is packed:
+     * fft[0] = Re[0], fft[1] = Re[n/2], fft[2*k] = Re[k], fft[2*k+1] = Im[k] for k=1..n/2-1.
+     */
+    static void powerSpectrum(float[] fft, float[] powerSpectrum) {
+        powerSpectrum[0] = fft[0] * fft[0]; // DC component (Re[0]^2)
+        for (int k = 1; k < N_FFT / 2; k++) {
+            float real = fft[2 * k];
+            float imag = fft[2 * k + 1];
+            powerSpectrum[k] = real * real + imag * imag;
+        }
+        powerSpectrum[N_FFT / 2] = fft[1] * fft[1]; // Nyquist component (Re[n/2]^2), nFFT is even
+    }
+
+    static void applyMelFilterbank(float[] powerSpectrum, float[][] melFilterbank, float[] melOut) {
+        for (int melIndex = 0; melIndex < melOut.length; melIndex++) {
+            float melEnergy = 0;
+            float[] filter = melFilterbank[melIndex];
+            for (int specIndex = 0; specIndex < powerSpectrum.length; specIndex++) {
+                melEnergy += powerSpectrum[specIndex] * filter[specIndex];
+            }
+            melOut[melIndex] = melEnergy; // Store linear Mel energy
+        }
+    }
+
+    // Whisper typically uses natural log (Math.log); Math.max guards against tiny negative energies.
+    static void logInPlace(float[] melFrame) {
+        for (int j = 0; j < melFrame.length; j++) {
+            melFrame[j] = (float) Math.log(Math.max(melFrame[j], 0.0f) + LOG_OFFSET);
+        }
+    }
+
+    /**
+     * Normalizes (z-score over all values) the first {@code numFrames} rows of {@code logMel} in
+     * place, pads with zeros or truncates to the expected frame count and writes them into a new
+     * direct buffer laid out as {@code inputShape}.
+     */
+    public static ByteBuffer toInputBuffer(float[][] logMel, int numFrames, int[] inputShape) {
+        final int nMel = melFeatureCount(inputShape);
+        final int expectedFrames = expectedFrames(inputShape);
+        if (numFrames <= 0) {
+            throw new IllegalArgumentException("No frames to normalize");
+        }
+
+        // Sums in double: a float sum over a full window drifts by more than the tests allow
+        double sum = 0.0;
+        int totalElements = numFrames * nMel;
+        for (int i = 0; i < numFrames; i++) { for (int j = 0; j < nMel; j++) { sum += logMel[i][j]; } }
+        final float mean = (float) (sum / totalElements);
+
+        double squares = 0.0;
+        for (int i = 0; i < numFrames; i++) {
+            for (int j = 0; j < nMel; j++) {
+                double diff = logMel[i][j] - (sum / totalElements);
+                squares += diff * diff;
+            }
+        }
+        final float stddev = (float) Math.sqrt(squares / totalElements);
+
+        for (int i = 0; i < numFrames; i++) {
+            for (int j = 0; j < nMel; j++) {
+                logMel[i][j] = (logMel[i][j] - mean) / (stddev + STD_EPS);
+            }
+        }
+
+        // Frames past numFrames are padding: zero after normalization.
+        final int framesToCopy = Math.min(numFrames, expectedFrames);
+
+        long numInputElements = 1;
+        for (int dim : inputShape) { if (dim > 0) numInputElements *= dim; }
+        ByteBuffer inputBuffer = ByteBuffer.allocateDirect((int) numInputElements * 4);
+        inputBuffer.order(ByteOrder.nativeOrder());
+
+        if (inputShape.length == 3 && inputShape[0] == 1 && inputShape[1] == nMel && inputShape[2] == expectedFrames) {
+            // [1, MelFeatures, Frames]
+            for (int j = 0; j < nMel; j++) {
+                for (int i = 0; i < expectedFrames; i++) {
+                    inputBuffer.putFloat(i < framesToCopy ? logMel[i][j] : 0.0f);
+                }
+            }
+        } else if ((inputShape.length == 3 && inputShape[0] == 1 && inputShape[1] == expectedFrames && inputShape[2] == nMel)
+                || (inputShape.length == 4 && inputShape[0] == 1 && inputShape[1] == 1 && inputShape[2] == expectedFrames && inputShape[3] == nMel)) {
+            // [1, Frames, MelFeatures] or [1, 1, Frames, MelFeatures]
+            for (int i = 0; i < expectedFrames; i++) {
+                for (int j = 0; j < nMel; j++) {
+                    inputBuffer.putFloat(i < framesToCopy ? logMel[i][j] : 0.0f);
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("Input shape " + Arrays.toString(inputShape) + " does not match expected layouts for filling buffer.");
+        }
+
+        inputBuffer.rewind(); // Prepare buffer for reading by TFLite
+        return inputBuffer;
+    }
+
+    // Create Hann Window
+    public static float[] createHannWindow(int length) {
+        float[] window = new float[length];
+        for (int i = 0; i < length; i++) {
+            // Hann formula: 0.5 * (1 - cos(2 * PI * i / (N - 1)))
+            window[i] = (float) (0.5 * (1.0 - Math.cos(2.0 * Math.PI * i / (length - 1))));
+        }
+        return window;
+    }
+
+    // Create Mel Filterbank Matrix [numMelBins][fftSize / 2 + 1]
+    public static float[][] createMelFilterbank(int numMelBins, int fftSize, int sampleRate) {
+        int numSpectrumBins = fftSize / 2 + 1;
+        float[][] filterbank = new float[numMelBins][numSpectrumBins];
+
+        float minMel = hzToMel(0); // Typically 0 Hz minimum
+        float maxMel = hzToMel(sampleRate / 2); // Nyquist frequency
+
+        // Calculate Mel frequency points (linearly spaced in Mel scale)
+        float[] melPoints = new float[numMelBins + 2]; // We need N+2 points to define N filters
+        for (int i = 0; i < numMelBins + 2; i++) {
+            melPoints[i] = minMel + i * (maxMel - minMel) / (numMelBins + 1);
+        }
+
+        // Convert Mel points back to Hz and then to FFT bin indices
+        int[] binIndices = new int[numMelBins + 2];
+        for (int i = 0; i < numMelBins + 2; i++) {
+            binIndices[i] = Math.round(melToHz(melPoints[i]) * fftSize / sampleRate);
+            // Ensure indices are within the valid range [0, numSpectrumBins - 1]
+            binIndices[i] = Math.max(0, Math.min(binIndices[i], numSpectrumBins - 1));
+        }
+
+        // Create triangular filters
+        for (int i = 0; i < numMelBins; i++) {
+            int startBin = binIndices[i];
+            int centerBin = binIndices[i + 1];
+            int endBin = binIndices[i + 2];
+
+            // Calculate slopes for the triangle
+            float risingSlope = (centerBin - startBin == 0) ? 0 : 1.0f / (centerBin - startBin);
+            float fallingSlope = (endBin - centerBin == 0) ? 0 : 1.0f / (endBin - centerBin);
+
+            // Apply rising edge
+            for (int k = startBin; k < centerBin; k++) {
+                filterbank[i][k] = (k - startBin) * risingSlope;
+            }
+            // Apply falling edge
+            for (int k = centerBin; k < endBin; k++) {
+                filterbank[i][k] = 1.0f - (k - centerBin) * fallingSlope;
+            }
+            // Ensure the peak is exactly 1 at center bin if start and center coincide
+            if (startBin == centerBin && centerBin < numSpectrumBins) {
+                filterbank[i][centerBin] = 1.0f;
+            }
+        }
+        return filterbank;
+    }
+
+    // Convert Hz to Mel (HTK formula - commonly used)
+    static float hzToMel(float hz) {
+        return (float) (2595.0 * Math.log10(1.0 + hz / 700.0));
+    }
+
+    // Convert Mel to Hz (HTK formula)
+    static float melToHz(float mel) {
+        return (float) (700.0 * (Math.pow(10.0, mel / 2595.0) - 1.0));
+    }
+}
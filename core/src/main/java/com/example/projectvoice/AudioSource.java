@@ -0,0 +1,22 @@
+package com.example.projectvoice;
+
+import java.io.IOException;
+
+/**
+ * A live or recorded stream of 16-bit mono PCM, read by the capture thread straight into a
+ * {@link PcmRingBuffer} ({@link PcmRingBuffer#write(AudioSource, int)}) with no staging array.
+ * On Android it wraps an AudioRecord; on the JVM a {@link WavAudioSource} stands in for it.
+ */
+public interface AudioSource {
+
+    int getSampleRate();
+
+    /**
+     * Reads up to {@code length} samples into {@code samples[offset, offset + length)}, blocking
+     * like {@code AudioRecord.read} until some are available.
+     *
+     * @return Number of samples read (possibly 0), or -1 once the source has no more audio.
+     * @throws IOException if the device failed and capture cannot continue.
+     */
+    int read(short[] samples, int offset, int length) throws IOException;
+}
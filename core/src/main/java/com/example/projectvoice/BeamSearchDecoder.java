@@ -0,0 +1,232 @@
+package com.example.projectvoice;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Beam search over a {@link WhisperSession} with one cache slot per beam.
+ *
+ * Each step runs the decoder once per live beam and streams every beam's log-probabilities
+ * through a single {@link TopKHeap} of 2 x width candidates (at most one end-of-text per beam, so
+ * at least width continuations survive). Hypotheses are nodes in a parent-pointer tree, so
+ * extending a beam appends one node instead of copying its prefix; the only per-step copying is
+ * a cache slot when a beam has more than one surviving child. Finished hypotheses are ranked by
+ * mean log-probability, and the search stops once width of them are collected, matching
+ * Whisper's reference decoder with patience 1 and no length penalty.
+ */
+public class BeamSearchDecoder implements WhisperDecoder {
+
+    private final int width;
+    private final TopKHeap candidates;
+    private final float[] candidateScore;
+    private final int[] candidateBeam;
+    private final int[] candidateToken;
+
+    // Live beams, indexed 0 .. live-1
+    private final int[] beamNode;
+    private final double[] beamScore; // Sum of log-probabilities
+    private final int[] beamSlot;
+    private int beamLength; // Generated tokens; equal for all live beams
+
+    // Beams chosen during the current step
+    private final int[] nextParent;
+    private final int[] nextToken;
+    private final double[] nextScore;
+    private final int[] nextSlot;
+    private boolean[] slotTaken = new boolean[0];
+
+    // Finished hypotheses
+    private final int[] finishedNode;
+    private final double[] finishedScore;
+    private final int[] finishedLength; // Generated tokens, end-of-text excluded
+    private final boolean[] finishedAtEnd;
+    private int finishedCount;
+
+    // Prefix tree shared by all hypotheses
+    private int[] nodeToken = new int[0];
+    private int[] nodeParent = new int[0];
+    private int nodeCount;
+
+    private float lastAverageLogProb = Float.NaN;
+
+    public BeamSearchDecoder(int width) {
+        if (width < 1) {
+            throw new IllegalArgumentException("Beam width must be >= 1: " + width);
+        }
+        this.width = width;
+        this.candidates = new TopKHeap(2 * width);
+        this.candidateScore = new float[2 * width];
+        this.candidateBeam = new int[2 * width];
+        this.candidateToken = new int[2 * width];
+        this.beamNode = new int[width];
+        this.beamScore = new double[width];
+        this.beamSlot = new int[width];
+        this.nextParent = new int[width];
+        this.nextToken = new int[width];
+        this.nextScore = new double[width];
+        this.nextSlot = new int[width];
+        this.finishedNode = new int[width];
+        this.finishedScore = new double[width];
+        this.finishedLength = new int[width];
+        this.finishedAtEnd = new boolean[width];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int decodeWindow(WhisperSession session, int[] prompt, int endOfText, int[] out) {
+        GreedyDecoder.checkPrompt(prompt, session.getMaxPositions());
+        if (session.getSlotCount() < width) {
+            throw new IllegalArgumentException("Session has " + session.getSlotCount() + " cache slots, beam width is " + width);
+        }
+        final int vocab = session.getVocabSize();
+        if (out.length == 0) {
+            return 0;
+        }
+        prepare(session);
+
+        session.restartWindow();
+        FloatBuffer promptLogits = null;
+        for (int token : prompt) {
+            promptLogits = session.step(0, token);
+        }
+        int live = 1;
+        beamNode[0] = -1;
+        beamScore[0] = 0.0;
+        beamSlot[0] = 0;
+        beamLength = 0;
+
+        while (live > 0) {
+            // Expand every live beam into the shared candidate heap
+            candidates.clear();
+            for (int b = 0; b < live; b++) {
+                FloatBuffer logits = (beamNode[b] < 0) ? promptLogits : session.step(beamSlot[b], nodeToken[beamNode[b]]);
+                float base = (float) beamScore[b] - Logits.logSumExp(logits, vocab);
+                for (int token = 0; token < vocab; token++) {
+                    float score = base + logits.get(token);
+                    if (score > candidates.threshold()) {
+                        candidates.offer(score, b, token);
+                    }
+                }
+            }
+            int n = candidates.drainDescending(candidateScore, candidateBeam, candidateToken);
+
+            // Best candidates continue; end-of-text ones finish their beam
+            int next = 0;
+            for (int c = 0; c < n && next < width; c++) {
+                int parent = candidateBeam[c];
+                if (candidateToken[c] == endOfText) {
+                    if (finishedCount < width) {
+                        finish(beamNode[parent], candidateScore[c], beamLength, true);
+                    }
+                    continue;
+                }
+                nextParent[next] = parent;
+                nextToken[next] = candidateToken[c];
+                nextScore[next] = candidateScore[c];
+                next++;
+            }
+            if (finishedCount >= width) {
+                break;
+            }
+            live = advance(session, next);
+            if (beamLength >= out.length || !session.hasCapacity(beamSlot[0])) {
+                // Out of room: live beams compete as they are
+                for (int b = 0; b < live && finishedCount < width; b++) {
+                    finish(beamNode[b], beamScore[b], beamLength, false);
+                }
+                break;
+            }
+        }
+
+        int best = 0;
+        for (int i = 1; i < finishedCount; i++) {
+            if (normalizedScore(i) > normalizedScore(best)) {
+                best = i;
+            }
+        }
+        if (finishedCount == 0) {
+            lastAverageLogProb = Float.NaN;
+            return 0;
+        }
+        lastAverageLogProb = (float) normalizedScore(best);
+        int count = finishedLength[best];
+        for (int node = finishedNode[best], i = count - 1; i >= 0; node = nodeParent[node], i--) {
+            out[i] = nodeToken[node];
+        }
+        return count;
+    }
+
+    // Sizes the prefix tree for the session's context and resets per-window state
+    private void prepare(WhisperSession session) {
+        int nodesNeeded = width * session.getMaxPositions();
+        if (nodeToken.length < nodesNeeded) {
+            nodeToken = new int[nodesNeeded];
+            nodeParent = new int[nodesNeeded];
+        }
+        if (slotTaken.length != session.getSlotCount()) {
+            slotTaken = new boolean[session.getSlotCount()];
+        }
+        nodeCount = 0;
+        finishedCount = 0;
+    }
+
+    private void finish(int node, double score, int length, boolean atEnd) {
+        finishedNode[finishedCount] = node;
+        finishedScore[finishedCount] = score;
+        finishedLength[finishedCount] = length;
+        finishedAtEnd[finishedCount] = atEnd;
+        finishedCount++;
+    }
+
+    private double normalizedScore(int i) {
+        return finishedScore[i] / (finishedLength[i] + (finishedAtEnd[i] ? 1 : 0));
+    }
+
+    /**
+     * Turns the chosen candidates into the new live beams: appends their tokens to the prefix
+     * tree and gives each a cache slot. A beam's first child inherits its parent's slot; further
+     * children get copies in slots whose beams died, so no copy reads a slot already overwritten.
+     */
+    private int advance(WhisperSession session, int next) {
+        Arrays.fill(slotTaken, false);
+        for (int i = 0; i < next; i++) {
+            int parentSlot = beamSlot[nextParent[i]];
+            if (!slotTaken[parentSlot]) {
+                slotTaken[parentSlot] = true;
+                nextSlot[i] = parentSlot;
+            } else {
+                nextSlot[i] = -1;
+            }
+        }
+        int free = 0;
+        for (int i = 0; i < next; i++) {
+            if (nextSlot[i] < 0) {
+                while (slotTaken[free]) free++;
+                session.copySlot(beamSlot[nextParent[i]], free);
+                slotTaken[free] = true;
+                nextSlot[i] = free;
+            }
+        }
+        for (int i = 0; i < next; i++) {
+            int node = nodeCount++;
+            nodeToken[node] = nextToken[i];
+            nodeParent[node] = beamNode[nextParent[i]];
+            nextParent[i] = node; // Reused as the new beam's node
+        }
+        for (int i = 0; i < next; i++) {
+            beamNode[i] = nextParent[i];
+            beamScore[i] = nextScore[i];
+            beamSlot[i] = nextSlot[i];
+        }
+        beamLength++;
+        return next;
+    }
+
+    @Override
+    public float getLastAverageLogProb() {
+        return lastAverageLogProb;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.projectvoice;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+
+/**
+ * Small bounded pool of equally sized, native-order direct buffers.
+ *
+ * Direct buffers are only freed when their Java wrapper is collected, so allocating one per
+ * utterance lets native memory creep under back-to-back use. Buffers handed out by
+ * {@link #acquire()} should come back through {@link #release(ByteBuffer)}; once the pool has
+ * warmed up, acquire/release allocate nothing. If more buffers are in flight than the pool
+ * holds, acquire allocates a fresh one and the surplus is dropped again on release.
+ */
+final class DirectBufferPool {
+
+    private final int bufferBytes;
+    private final int maxPooled;
+    private final ArrayDeque<ByteBuffer> free;
+    private int allocations = 0;
+
+    DirectBufferPool(int bufferBytes, int preallocate, int maxPooled) {
+        if (bufferBytes <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferBytes);
+        }
+        this.bufferBytes = bufferBytes;
+        this.maxPooled = Math.max(1, maxPooled);
+        this.free = new ArrayDeque<>(this.maxPooled);
+        for (int i = 0; i < Math.min(preallocate, this.maxPooled); i++) {
+            free.push(allocate());
+        }
+    }
+
+    private ByteBuffer allocate() {
+        allocations++;
+        return ByteBuffer.allocateDirect(bufferBytes).order(ByteOrder.nativeOrder());
+    }
+
+    /** Returns a cleared buffer of {@link #getBufferBytes()} bytes. */
+    synchronized ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            buffer = allocate();
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /** Hands a buffer back. Foreign-sized buffers and surplus beyond the pool size are dropped. */
+    synchronized void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || buffer.capacity() != bufferBytes || free.size() >= maxPooled) {
+            return;
+        }
+        for (ByteBuffer pooled : free) {
+            if (pooled == buffer) return; // Double release
+        }
+        free.push(buffer);
+    }
+
+    int getBufferBytes() {
+        return bufferBytes;
+    }
+
+    /** Total direct allocations made since construction, including preallocation. */
+    synchronized int getAllocationCount() {
+        return allocations;
+    }
+
+    synchronized int getFreeCount() {
+        return free.size();
+    }
+}
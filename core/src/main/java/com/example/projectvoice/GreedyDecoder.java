@@ -0,0 +1,80 @@
+package com.example.projectvoice;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+/**
+ * Single-hypothesis decoding: the argmax token at temperature 0, otherwise a sample from
+ * softmax(logits / temperature). Uses slot 0 of the session.
+ */
+public class GreedyDecoder implements WhisperDecoder {
+
+    private final float temperature;
+    private final Random random;
+    private float lastAverageLogProb = Float.NaN;
+
+    public GreedyDecoder() {
+        this(0f, null);
+    }
+
+    /**
+     * @param temperature 0 for argmax; above 0 tokens are sampled.
+     * @param random      Source for sampling; may be null at temperature 0.
+     */
+    public GreedyDecoder(float temperature, Random random) {
+        if (temperature < 0f) {
+            throw new IllegalArgumentException("temperature must be >= 0: " + temperature);
+        }
+        if (temperature > 0f && random == null) {
+            throw new IllegalArgumentException("Sampling needs a Random");
+        }
+        this.temperature = temperature;
+        this.random = random;
+    }
+
+    public float getTemperature() {
+        return temperature;
+    }
+
+    @Override
+    public int decodeWindow(WhisperSession session, int[] prompt, int endOfText, int[] out) {
+        checkPrompt(prompt, session.getMaxPositions());
+        final int vocab = session.getVocabSize();
+        session.restartWindow();
+        FloatBuffer logits = null;
+        for (int token : prompt) {
+            logits = session.step(token);
+        }
+
+        double sumLogProb = 0.0;
+        int count = 0;
+        while (true) {
+            float max = Logits.max(logits, vocab);
+            int token = (temperature == 0f)
+                    ? Logits.argMax(logits, vocab)
+                    : Logits.sample(logits, vocab, temperature, max, random);
+            sumLogProb += logits.get(token) - Logits.logSumExp(logits, vocab, max);
+            if (token == endOfText || count == out.length) {
+                break;
+            }
+            out[count++] = token;
+            if (!session.hasCapacity()) {
+                break;
+            }
+            logits = session.step(token);
+        }
+        lastAverageLogProb = (float) (sumLogProb / (count + 1));
+        return count;
+    }
+
+    @Override
+    public float getLastAverageLogProb() {
+        return lastAverageLogProb;
+    }
+
+    static void checkPrompt(int[] prompt, int maxPositions) {
+        if (prompt.length == 0 || prompt.length > maxPositions) {
+            throw new IllegalArgumentException("Prompt length " + prompt.length + " outside [1, " + maxPositions + "]");
+        }
+    }
+}
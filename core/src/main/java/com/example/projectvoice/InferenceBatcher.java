@@ -0,0 +1,268 @@
+package com.example.projectvoice;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs model inputs from several takes as one batched invocation, for offline jobs over many
+ * recordings where each invocation's fixed cost (dispatch, weight reads, thread wake-ups) adds up.
+ *
+ * Workers submit one window's input at a time, typically through {@link TranscriptionEngine}s
+ * that have {@link #asBackend()} as their backend, one engine per worker thread. A dispatcher
+ * thread takes the oldest waiting input and adds later ones with the same prompt until it has
+ * {@code maxBatch} of them or {@code maxWaitMillis} have passed since the oldest arrived. It
+ * copies them back to back into one direct buffer, runs the {@link BatchBackend} once and
+ * completes each input's future with its own tokens. Inputs with another prompt (e.g. with
+ * timestamps) wait for the next batch.
+ *
+ * Every invocation is {@code maxBatch} inputs wide: a partial batch is padded with rows nobody
+ * waits for, so the backend's input shape never changes and an interpreter behind it allocates
+ * its tensors for that shape once instead of on every change of batch size.
+ */
+public final class InferenceBatcher {
+
+    /** Runs the model on several inputs at once. */
+    public interface BatchBackend {
+        /**
+         * @param inputs    {@code batchSize} model inputs back to back (rewound, native order).
+         * @param batchSize Always the batcher's {@code maxBatch}; rows past the submitted inputs are padding.
+         * @param prompt    Decoder prompt shared by the batch.
+         * @param out       {@code out[i]} receives input i's ids (text and timestamps), without end-of-text.
+         * @param counts    {@code counts[i]} receives the number of ids in {@code out[i]}.
+         */
+        void decodeBatch(ByteBuffer inputs, int batchSize, int[] prompt, int[][] out, int[] counts) throws Exception;
+
+        /** Called on the dispatcher thread once it stops, after the last batch; e.g. to close an interpreter. */
+        default void close() {
+        }
+    }
+
+    // One submitted input; completed by the dispatcher
+    private static final class Request {
+        final ByteBuffer input;
+        final int[] prompt;
+        final long arrived = System.nanoTime();
+        final CompletableFuture<int[]> result = new CompletableFuture<>();
+
+        Request(ByteBuffer input, int[] prompt) {
+            this.input = input;
+            this.prompt = prompt;
+        }
+    }
+
+    private final BatchBackend backend;
+    private final int inputBytes;
+    private final int maxBatch;
+    private final long maxWaitNanos;
+    private final ByteBuffer packed;
+    private final int[][] out;
+    private final int[] counts;
+    private final Thread dispatcher;
+
+    private final ArrayDeque<Request> waiting = new ArrayDeque<>(); // Guarded by this
+    private boolean shutdown;                                       // Guarded by this
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong inputs = new AtomicLong();
+    private final LatencyHistogram batchSizes = new LatencyHistogram();
+
+    /**
+     * @param melEngine     The engine that writes the inputs; gives their size and the most ids one can produce.
+     * @param maxBatch      Inputs per invocation; partial batches are padded to it.
+     * @param maxWaitMillis How long the oldest input waits for others before a partial batch runs.
+     */
+    public InferenceBatcher(BatchBackend backend, MelSpectrogramEngine melEngine, int maxBatch, long maxWaitMillis) {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("maxBatch must be >= 1: " + maxBatch);
+        }
+        if (maxWaitMillis < 0) {
+            throw new IllegalArgumentException("maxWaitMillis must be >= 0: " + maxWaitMillis);
+        }
+        this.backend = backend;
+        this.inputBytes = melEngine.getInputBytes();
+        this.maxBatch = maxBatch;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.packed = ByteBuffer.allocateDirect(maxBatch * inputBytes).order(ByteOrder.nativeOrder());
+        this.out = new int[maxBatch][melEngine.maxOutputTokens()];
+        this.counts = new int[maxBatch];
+        this.dispatcher = new Thread(this::dispatch, "inference-batcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Queues one model input for the next batch with this prompt. {@code input} is read from its
+     * position when the batch runs, so it must stay untouched until the future completes.
+     *
+     * @return The input's ids, without end-of-text.
+     * @throws RejectedExecutionException after {@link #shutdown()}.
+     */
+    public Future<int[]> submit(ByteBuffer input, int[] prompt) {
+        return enqueue(input, prompt).result;
+    }
+
+    private synchronized Request enqueue(ByteBuffer input, int[] prompt) {
+        if (input.remaining() != inputBytes) {
+            throw new IllegalArgumentException("Input has " + input.remaining() + " bytes, batches take " + inputBytes);
+        }
+        if (shutdown) {
+            throw new RejectedExecutionException("Batcher is shut down");
+        }
+        Request request = new Request(input, prompt);
+        waiting.add(request);
+        notifyAll();
+        return request;
+    }
+
+    /**
+     * A backend that submits each window here and waits for its batch, for engines on worker
+     * threads. Interrupting a waiting caller withdraws its input unless its batch already runs.
+     */
+    public TranscriptionEngine.Backend asBackend() {
+        return (input, prompt, ids) -> {
+            Request request = enqueue(input, prompt);
+            int[] result;
+            try {
+                result = request.result.get();
+            } catch (InterruptedException e) {
+                if (!withdraw(request)) {
+                    awaitUninterruptibly(request); // The caller reuses the input once we return
+                }
+                throw e;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw (cause instanceof Exception) ? (Exception) cause : e;
+            }
+            int count = Math.min(result.length, ids.length);
+            System.arraycopy(result, 0, ids, 0, count);
+            return count;
+        };
+    }
+
+    private synchronized boolean withdraw(Request request) {
+        return waiting.remove(request);
+    }
+
+    private static void awaitUninterruptibly(Request request) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                request.result.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException e) {
+                break;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void dispatch() {
+        List<Request> batch = new ArrayList<>(maxBatch);
+        try {
+            while (collect(batch)) {
+                run(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            backend.close();
+        }
+    }
+
+    // Waits for the next batch; false once shut down with nothing left
+    private synchronized boolean collect(List<Request> batch) throws InterruptedException {
+        while (waiting.isEmpty()) {
+            if (shutdown) {
+                return false;
+            }
+            wait();
+        }
+        long deadline = waiting.peekFirst().arrived + maxWaitNanos;
+        while (true) {
+            for (Iterator<Request> it = waiting.iterator(); it.hasNext() && batch.size() < maxBatch; ) {
+                Request request = it.next();
+                if (batch.isEmpty() || Arrays.equals(request.prompt, batch.get(0).prompt)) {
+                    batch.add(request);
+                    it.remove();
+                }
+            }
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() == maxBatch || remaining <= 0L || shutdown) {
+                return true;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+    }
+
+    private void run(List<Request> batch) {
+        int size = batch.size();
+        packed.clear();
+        for (Request request : batch) {
+            int position = request.input.position();
+            packed.put(request.input);
+            request.input.position(position);
+        }
+        packed.clear(); // Rows past the inputs keep what an earlier batch left there (or zeros)
+        try {
+            backend.decodeBatch(packed, maxBatch, batch.get(0).prompt, out, counts);
+        } catch (Exception | LinkageError e) {
+            for (Request request : batch) {
+                request.result.completeExceptionally(e);
+            }
+            return;
+        } finally {
+            batches.incrementAndGet();
+            inputs.addAndGet(size);
+            batchSizes.record(size);
+        }
+        for (int i = 0; i < size; i++) {
+            batch.get(i).result.complete(Arrays.copyOf(out[i], counts[i]));
+        }
+    }
+
+    public int getMaxBatch() {
+        return maxBatch;
+    }
+
+    /** Invocations of the batch backend so far. */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    /** Inputs that went through the batch backend so far. */
+    public long getInputCount() {
+        return inputs.get();
+    }
+
+    /** Submitted inputs per invocation, padding not included. */
+    public LatencyHistogram getBatchSizes() {
+        return batchSizes;
+    }
+
+    /** Runs what is already submitted, then stops the dispatcher; later submissions are rejected. */
+    public synchronized void shutdown() {
+        shutdown = true;
+        notifyAll();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        dispatcher.join(Math.max(1L, unit.toMillis(timeout)));
+        return !dispatcher.isAlive();
+    }
+}
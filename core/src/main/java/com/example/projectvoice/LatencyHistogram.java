@@ -0,0 +1,145 @@
+package com.example.projectvoice;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear histogram of non-negative longs, after HdrHistogram's layout.
+ *
+ * Values below 64 get a bucket each; above that every power of two is split into 32 linear
+ * sub-buckets, so any recorded value is reported within 1/32 (about 3%) of itself. Values up to
+ * {@link #MAX_TRACKABLE} (about 18 minutes in nanoseconds) are tracked; larger ones land in the
+ * top bucket but still count towards {@link #getMax()} and the mean. Recording is a handful of
+ * atomic adds and never allocates, so it is safe on audio and inference threads. Readers see a
+ * consistent-enough snapshot for reporting, not an atomic one.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+    private static final int MAX_BITS = 40;
+    /** Largest value that gets its own bucket. */
+    public static final long MAX_TRACKABLE = (1L << MAX_BITS) - 1;
+    private static final int BUCKET_COUNT = indexOf(MAX_TRACKABLE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1); // >= 1
+        int sub = (int) (value >>> shift); // [SUB_BUCKET_HALF, SUB_BUCKET_COUNT)
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + (sub - SUB_BUCKET_HALF);
+    }
+
+    /** Smallest value that maps to bucket {@code index}. */
+    static long lowestValueAt(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1;
+        int sub = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return (long) sub << shift;
+    }
+
+    /** Largest value that maps to bucket {@code index}. */
+    static long highestValueAt(int index) {
+        return (index + 1 < BUCKET_COUNT) ? lowestValueAt(index + 1) - 1 : MAX_TRACKABLE;
+    }
+
+    /** Records one value; negative values are recorded as 0. */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(indexOf(Math.min(value, MAX_TRACKABLE)));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value < (current = min.get()) && !min.compareAndSet(current, value)) { }
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) { }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /** Exact smallest recorded value; 0 when empty. */
+    public long getMin() {
+        return getCount() > 0 ? min.get() : 0L;
+    }
+
+    /** Exact largest recorded value; 0 when empty. */
+    public long getMax() {
+        return getCount() > 0 ? max.get() : 0L;
+    }
+
+    public double getMean() {
+        long n = getCount();
+        return n > 0 ? sum.get() / (double) n : 0.0;
+    }
+
+    /**
+     * Value at {@code percentile} (0..100): the highest value equivalent to the bucket holding
+     * that rank, clamped to the recorded maximum (which it is for the top bucket). 0 when empty.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                // The top bucket also holds everything above MAX_TRACKABLE
+                return (i == BUCKET_COUNT - 1) ? getMax() : Math.min(highestValueAt(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0L);
+        }
+        count.set(0L);
+        sum.set(0L);
+        min.set(Long.MAX_VALUE);
+        max.set(Long.MIN_VALUE);
+    }
+
+    /**
+     * Appends a JSON object with the summary statistics and the non-empty buckets as
+     * {@code [lowestValue, count]} pairs, enough to merge histograms from several devices offline.
+     */
+    public void appendJson(StringBuilder out) {
+        out.append("{\"count\":").append(getCount())
+                .append(",\"min\":").append(getMin())
+                .append(",\"mean\":").append(Math.round(getMean()))
+                .append(",\"p50\":").append(getValueAtPercentile(50))
+                .append(",\"p90\":").append(getValueAtPercentile(90))
+                .append(",\"p99\":").append(getValueAtPercentile(99))
+                .append(",\"max\":").append(getMax())
+                .append(",\"buckets\":[");
+        boolean first = true;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long n = counts.get(i);
+            if (n == 0) continue;
+            if (!first) out.append(',');
+            out.append('[').append(lowestValueAt(i)).append(',').append(n).append(']');
+            first = false;
+        }
+        out.append("]}");
+    }
+}
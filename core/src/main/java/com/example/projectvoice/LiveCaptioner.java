@@ -0,0 +1,342 @@
+package com.example.projectvoice;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Live captions for a take that is still being recorded, by re-decoding the growing audio and
+ * committing what stays stable (local agreement, as in whisper_streaming).
+ *
+ * Each pass decodes the current window, from the end of the audio already trimmed to the latest
+ * frame, with timestamps. Text tokens that two consecutive passes agree on are committed; they
+ * are forced as the decoder prompt of later passes, so a split model only generates the unstable
+ * tail after them. Once a committed segment is followed by committed text of the next segment,
+ * its audio is final: its text moves to the stable transcript and the window starts at its end
+ * timestamp from then on, so a pass never decodes more than one model window however long the
+ * take. Graphs that ignore the prompt re-emit the committed text, which is then skipped. If the
+ * window outgrows the model without such a cut (untimed graphs, or one long segment), the last
+ * pass's text is final as it stands and the window restarts at the audio that pass had not heard.
+ *
+ * {@link #update} runs one pass on a leased engine; {@link #start} runs passes periodically
+ * through a {@link TranscriptionScheduler}. Passes run with a fixed delay between them, so at
+ * most one is in flight and the decoder is never busy more than pass / (pass + interval) of the
+ * time on captions.
+ */
+public final class LiveCaptioner {
+
+    /** Receives the captions after every pass that ran, on the thread that ran it. */
+    public interface Listener {
+        /**
+         * @param stable    Text that will not change any more.
+         * @param tentative Latest guess for the rest of the audio so far.
+         */
+        void onCaption(String stable, String tentative);
+    }
+
+    public static final long DEFAULT_INTERVAL_MS = 500;
+    /** New audio a pass needs since the last one, in frames (200 ms). */
+    static final int MIN_NEW_FRAMES = 20;
+    /** Audio the window needs before it is decoded at all, in frames (500 ms). */
+    static final int MIN_WINDOW_FRAMES = 50;
+    private static final int FRAMES_PER_TIMESTAMP =
+            Math.round(TokenTable.TIMESTAMP_STEP_SECONDS * AudioPreprocessor.SAMPLE_RATE / AudioPreprocessor.FRAME_SHIFT);
+
+    private final StreamingMelFrontend frontend;
+    private final TokenTable tokenTable;
+    private final int[] basePrompt;
+
+    // Window state; guarded by this
+    private int windowStart;
+    private int[] committed = new int[64]; // Agreed window tokens, timestamps included
+    private int committedCount;
+    private int committedText;             // Text tokens among them
+    private int[] previous = new int[64];  // Text tokens of the last pass; previousCount < 0 if none
+    private int previousCount = -1;
+    private int[] hypothesis = new int[64];
+    private int hypothesisCount;
+    private int[] hypothesisText = new int[64];
+    private int[] out = new int[0];
+    private int lastPassFrames;
+    private final StringBuilder finalText = new StringBuilder();
+    private final TokenTable.TextBuffer text = new TokenTable.TextBuffer();
+    private String stableText = "";
+    private String tentativeText = "";
+    private int passes;
+    private long lastPassNanos;
+
+    // Periodic driver; guarded by driver
+    private final Object driver = new Object();
+    private ScheduledFuture<?> periodic;
+    private Future<TranscriptionEngine.Result> inFlight;
+    private boolean stopped;
+    private int skippedPasses;
+    private int failedPasses;
+
+    /** @param frontend The take being recorded, e.g. from {@link TranscriptionEngine#newFrontend()}. */
+    public LiveCaptioner(StreamingMelFrontend frontend, TokenTable tokenTable) {
+        this.frontend = frontend;
+        this.tokenTable = tokenTable;
+        this.basePrompt = tokenTable.transcribePrompt(true);
+    }
+
+    /**
+     * Runs one pass on {@code engine} if enough audio arrived since the last one.
+     *
+     * @return true if a pass ran and the captions may have changed.
+     * @throws CancellationException if the engine was cancelled; the captions are unchanged.
+     */
+    public synchronized boolean update(TranscriptionEngine engine) throws Exception {
+        int end = frontend.getFrameCount();
+        if (end - lastPassFrames < MIN_NEW_FRAMES || end - windowStart < MIN_WINDOW_FRAMES) {
+            return false;
+        }
+        long start = System.nanoTime();
+        int windowFrames = engine.getMelEngine().getExpectedFrames();
+        if (end - windowStart > windowFrames) {
+            forceTrim(Math.max(lastPassFrames, end - windowFrames));
+        }
+        int[] prompt = Arrays.copyOf(basePrompt, basePrompt.length + committedCount);
+        System.arraycopy(committed, 0, prompt, basePrompt.length, committedCount);
+        int maxTokens = engine.getMelEngine().maxOutputTokens();
+        if (out.length < maxTokens) {
+            out = new int[maxTokens];
+        }
+        int generated = engine.decodePartial(frontend, windowStart, end - windowStart, prompt, out);
+
+        setHypothesis(generated);
+        agree();
+        int tentativeFrom = committedCount;
+        String tentative = text(hypothesis, tentativeFrom, hypothesisCount - tentativeFrom);
+        trim(end);
+        stableText = (finalText + text(committed, 0, committedCount)).trim();
+        tentativeText = tentative.trim();
+        lastPassFrames = end;
+        passes++;
+        lastPassNanos = System.nanoTime() - start;
+        return true;
+    }
+
+    // Committed tokens, then what the decoder generated after them
+    private void setHypothesis(int generated) {
+        int skip = committedTextPrefix(out, generated);
+        hypothesisCount = 0;
+        ensureHypothesis(committedCount + generated - skip);
+        System.arraycopy(committed, 0, hypothesis, 0, committedCount);
+        System.arraycopy(out, skip, hypothesis, committedCount, generated - skip);
+        hypothesisCount = committedCount + generated - skip;
+    }
+
+    // Length of the prefix of ids holding exactly the committed text, or 0 if it does not start with it
+    private int committedTextPrefix(int[] ids, int count) {
+        if (committedText == 0) {
+            return 0;
+        }
+        int seen = 0;
+        for (int i = 0, c = 0; i < count; i++) {
+            if (tokenTable.isSpecial(ids[i])) continue;
+            while (tokenTable.isSpecial(committed[c])) c++;
+            if (ids[i] != committed[c++]) return 0;
+            if (++seen == committedText) return i + 1;
+        }
+        return 0;
+    }
+
+    // Commits the text the last two passes agree on, with the tokens between
+    private void agree() {
+        int textCount = 0;
+        for (int i = 0; i < hypothesisCount; i++) {
+            if (!tokenTable.isSpecial(hypothesis[i])) hypothesisText[textCount++] = hypothesis[i];
+        }
+        if (previousCount >= 0) {
+            int agreed = 0;
+            while (agreed < textCount && agreed < previousCount && hypothesisText[agreed] == previous[agreed]) agreed++;
+            if (agreed > committedText) {
+                int i = committedCount;
+                int seen = committedText;
+                while (seen < agreed) {
+                    if (!tokenTable.isSpecial(hypothesis[i++])) seen++;
+                }
+                ensureCommitted(i);
+                System.arraycopy(hypothesis, committedCount, committed, committedCount, i - committedCount);
+                committedCount = i;
+                committedText = agreed;
+            }
+        }
+        if (previous.length < textCount) previous = new int[hypothesisText.length];
+        System.arraycopy(hypothesisText, 0, previous, 0, textCount);
+        previousCount = textCount;
+    }
+
+    // Finalizes committed segments whose successor already has committed text, and moves the window past them
+    private void trim(int end) {
+        int cut = -1;
+        for (int i = 1; i < committedCount; i++) {
+            if (tokenTable.isTimestamp(committed[i]) && !tokenTable.isSpecial(committed[i - 1]) && hasTextAfter(i)) {
+                cut = i;
+            }
+        }
+        if (cut < 0) {
+            return;
+        }
+        int steps = committed[cut] - tokenTable.getTimestampBegin();
+        if (steps <= 0 || windowStart + steps * FRAMES_PER_TIMESTAMP > end) {
+            return; // Timestamps that make no sense for this window; keep decoding it whole
+        }
+        int removedText = finalize(cut);
+        windowStart += steps * FRAMES_PER_TIMESTAMP;
+        // What follows the cut now starts at the new window start
+        int kept = 0;
+        for (int i = cut + 1; i < committedCount; i++) {
+            int id = committed[i];
+            committed[kept++] = tokenTable.isTimestamp(id) ? Math.max(tokenTable.getTimestampBegin(), id - steps) : id;
+        }
+        committedCount = kept;
+        committedText -= removedText;
+        previousCount -= removedText;
+        System.arraycopy(previous, removedText, previous, 0, previousCount);
+    }
+
+    private boolean hasTextAfter(int index) {
+        for (int i = index + 1; i < committedCount; i++) {
+            if (!tokenTable.isSpecial(committed[i])) return true;
+        }
+        return false;
+    }
+
+    // The window outgrew the model without a segment to cut at: the last pass's text (committed, then
+    // tentative) becomes final and the window restarts at firstFrame, where that pass's audio ended
+    private void forceTrim(int firstFrame) {
+        if (previousCount > 0) {
+            finalText.append(text(previous, 0, previousCount));
+        } else {
+            finalize(committedCount);
+        }
+        committedCount = 0;
+        committedText = 0;
+        previousCount = -1;
+        windowStart = firstFrame;
+    }
+
+    // Appends the text of committed[0, count) to the final text; returns its text token count
+    private int finalize(int count) {
+        text.clear();
+        int textTokens = 0;
+        for (int i = 0; i < count; i++) {
+            if (tokenTable.append(committed[i], text)) textTokens++;
+        }
+        finalText.append(text.toString());
+        return textTokens;
+    }
+
+    private String text(int[] ids, int offset, int count) {
+        text.clear();
+        tokenTable.decode(ids, offset, count, text);
+        return text.toString();
+    }
+
+    private void ensureCommitted(int capacity) {
+        if (committed.length < capacity) committed = Arrays.copyOf(committed, Math.max(capacity, committed.length * 2));
+    }
+
+    private void ensureHypothesis(int capacity) {
+        if (hypothesis.length < capacity) {
+            hypothesis = new int[Math.max(capacity, hypothesis.length * 2)];
+            hypothesisText = new int[hypothesis.length];
+        }
+    }
+
+    /**
+     * Runs a pass on {@code scheduler} at interactive priority every {@code intervalMillis} after
+     * the previous one ended, until {@link #stop()}. Passes the queue rejects are skipped.
+     */
+    public void start(ScheduledExecutorService timer, final TranscriptionScheduler scheduler, long intervalMillis, final Listener listener) {
+        synchronized (driver) {
+            if (periodic != null || stopped) {
+                throw new IllegalStateException("Live captions already started");
+            }
+            periodic = timer.scheduleWithFixedDelay(() -> runPass(scheduler, listener), intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void runPass(TranscriptionScheduler scheduler, final Listener listener) {
+        Future<TranscriptionEngine.Result> pass;
+        synchronized (driver) {
+            if (stopped) {
+                return;
+            }
+            try {
+                pass = scheduler.submit(PriorityPool.Priority.INTERACTIVE, engine -> {
+                    if (update(engine)) {
+                        listener.onCaption(getStableText(), getTentativeText());
+                    }
+                    return null;
+                });
+            } catch (RejectedExecutionException e) {
+                skippedPasses++;
+                return;
+            }
+            inFlight = pass;
+        }
+        try {
+            pass.get();
+        } catch (CancellationException e) {
+            // Stopped
+        } catch (ExecutionException e) {
+            synchronized (driver) {
+                failedPasses++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Stops the periodic passes and cancels the one in flight, so the final transcription gets the engine. */
+    public void stop() {
+        synchronized (driver) {
+            stopped = true;
+            if (periodic != null) periodic.cancel(false);
+            if (inFlight != null) inFlight.cancel(true);
+        }
+    }
+
+    public synchronized String getStableText() {
+        return stableText;
+    }
+
+    public synchronized String getTentativeText() {
+        return tentativeText;
+    }
+
+    /** First frame of the audio still being re-decoded. */
+    public synchronized int getWindowStartFrame() {
+        return windowStart;
+    }
+
+    public synchronized int getPassCount() {
+        return passes;
+    }
+
+    public synchronized long getLastPassNanos() {
+        return lastPassNanos;
+    }
+
+    /** Passes the scheduler's queue rejected. */
+    public int getSkippedPassCount() {
+        synchronized (driver) {
+            return skippedPasses;
+        }
+    }
+
+    /** Passes that failed with an exception other than cancellation. */
+    public int getFailedPassCount() {
+        synchronized (driver) {
+            return failedPasses;
+        }
+    }
+}
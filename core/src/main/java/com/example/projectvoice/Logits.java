@@ -0,0 +1,97 @@
+package com.example.projectvoice;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+/**
+ * Allocation-free reductions over a logits buffer. All reads are absolute, so the buffer's
+ * position is irrelevant and left untouched.
+ */
+final class Logits {
+
+    private Logits() {
+    }
+
+    /** Index of the largest of the first {@code length} values; NaNs never win. */
+    static int argMax(FloatBuffer logits, int length) {
+        return argMax(logits, 0, length);
+    }
+
+    /** Same as {@link #argMax(FloatBuffer, int)} for the row starting at {@code offset}; the result is relative to it. */
+    static int argMax(FloatBuffer logits, int offset, int length) {
+        int best = 0;
+        float bestValue = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < length; i++) {
+            float v = logits.get(offset + i);
+            if (v > bestValue) {
+                bestValue = v;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Same as {@link #argMax(FloatBuffer, int, int)} over values stored in {@code encoding}, e.g.
+     * an int8 logits tensor, read in place; offset and length count values, not bytes.
+     */
+    static int argMax(ByteBuffer logits, TensorEncoding encoding, int offset, int length) {
+        int best = 0;
+        float bestValue = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < length; i++) {
+            float v = encoding.get(logits, offset + i);
+            if (v > bestValue) {
+                bestValue = v;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    static float max(FloatBuffer logits, int length) {
+        float max = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < length; i++) {
+            float v = logits.get(i);
+            if (v > max) max = v;
+        }
+        return max;
+    }
+
+    /** log(sum(exp(logits))) over the first {@code length} values, given their maximum. */
+    static float logSumExp(FloatBuffer logits, int length, float max) {
+        double sum = 0.0;
+        for (int i = 0; i < length; i++) {
+            sum += Math.exp(logits.get(i) - max);
+        }
+        return max + (float) Math.log(sum);
+    }
+
+    static float logSumExp(FloatBuffer logits, int length) {
+        return logSumExp(logits, length, max(logits, length));
+    }
+
+    /**
+     * Draws an index from softmax(logits / temperature) with two passes over the buffer (total,
+     * then cumulative) instead of materializing the distribution.
+     */
+    static int sample(FloatBuffer logits, int length, float temperature, float max, Random random) {
+        final double invT = 1.0 / temperature;
+        double total = 0.0;
+        for (int i = 0; i < length; i++) {
+            total += Math.exp((logits.get(i) - max) * invT);
+        }
+        double target = random.nextDouble() * total;
+        double cumulative = 0.0;
+        int last = 0;
+        for (int i = 0; i < length; i++) {
+            double p = Math.exp((logits.get(i) - max) * invT);
+            if (p > 0.0) {
+                cumulative += p;
+                last = i;
+                if (cumulative > target) return i;
+            }
+        }
+        return last; // Rounding left target just past the final sum
+    }
+}
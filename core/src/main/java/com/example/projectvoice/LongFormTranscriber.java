@@ -0,0 +1,490 @@
+package com.example.projectvoice;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Transcribes takes longer than one model window by cutting the log-Mel frames into overlapping
+ * 30 s windows and stitching the per-window token streams.
+ *
+ * Each cut is a boundary frame, placed in the longest pause the {@link VoiceActivityDetector} finds
+ * near the end of the window when there is one. The window before a boundary runs
+ * {@code overlapFrames / 2} past it and the window after starts that much before it, so words at
+ * the cut are heard whole by both.
+ *
+ * Timestamped output is stitched the way Whisper seeks: a window keeps its complete segments, and
+ * the next window starts where the last of them ends instead of at the planned cut, so a segment
+ * longer than the overlap is transcribed once, from its start, by the window that heard all of
+ * it. Windows without timestamp tokens follow the plan and drop the longest token run that ends
+ * one window and starts the next.
+ *
+ * Untimed windows are pipelined: while the recognizer runs window N on the calling thread, window
+ * N+1 is normalized into the second of two pooled input buffers on {@code featureExecutor}. Once
+ * a window turns out timed, the next start depends on its result, so later windows are normalized
+ * after it.
+ */
+public class LongFormTranscriber {
+
+    /** Runs the model on one normalized window. */
+    public interface WindowRecognizer {
+        /**
+         * @param input Normalized features for one window (rewound, native order).
+         * @param out   Receives the generated text and timestamp token ids, without end-of-text.
+         * @return Number of ids written.
+         */
+        int recognize(ByteBuffer input, int[] out) throws Exception;
+    }
+
+    /** Frames [start, end) go to the model; [keepFrom, keepUntil) lies between its cuts. */
+    public static final class Window {
+        public final int start;
+        public final int end;
+        public final int keepFrom;
+        public final int keepUntil;
+
+        Window(int start, int end, int keepFrom, int keepUntil) {
+            this.start = start;
+            this.end = end;
+            this.keepFrom = keepFrom;
+            this.keepUntil = keepUntil;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + start + ", " + end + ") keep [" + keepFrom + ", " + keepUntil + ")";
+        }
+    }
+
+    public static final int DEFAULT_OVERLAP_FRAMES = 200;      // 2 s
+    public static final int DEFAULT_PAUSE_SEARCH_FRAMES = 500; // Look up to 5 s back for a pause
+    private static final float SECONDS_PER_FRAME = (float) AudioPreprocessor.FRAME_SHIFT / AudioPreprocessor.SAMPLE_RATE;
+    private static final int MAX_TOKEN_OVERLAP = 64;
+
+    private final MelSpectrogramEngine engine;
+    private final TokenTable tokenTable;
+    private final ExecutorService featureExecutor;
+    private final int overlapFrames;
+    private final int pauseSearchFrames;
+    private final DirectBufferPool inputPool;
+
+    private int[] windowTokens = new int[0];
+    private Window currentWindow;
+    private int seekFrame; // Where the next window starts after timed output; -1 after untimed
+    private int[] stitched = new int[1024];
+    private int stitchedCount;
+    private final TokenTable.TextBuffer text = new TokenTable.TextBuffer();
+
+    private int lastWindowCount;
+    private long lastFeatureNanos;
+    private long lastNormalizeNanos;
+    private long lastFillNanos;
+    private long lastInferenceNanos;
+    private long lastDecodeNanos;
+    private long lastWallNanos;
+
+    public LongFormTranscriber(MelSpectrogramEngine engine, TokenTable tokenTable, ExecutorService featureExecutor) {
+        this(engine, tokenTable, featureExecutor, DEFAULT_OVERLAP_FRAMES, DEFAULT_PAUSE_SEARCH_FRAMES);
+    }
+
+    /**
+     * @param featureExecutor   Runs feature normalization for the next window; caller-owned.
+     * @param overlapFrames     Frames shared by consecutive windows, centred on each boundary.
+     * @param pauseSearchFrames How far before the latest possible boundary to look for a pause.
+     */
+    public LongFormTranscriber(MelSpectrogramEngine engine, TokenTable tokenTable, ExecutorService featureExecutor,
+                               int overlapFrames, int pauseSearchFrames) {
+        if (overlapFrames < 0 || overlapFrames >= engine.getExpectedFrames() / 2 || pauseSearchFrames < 0) {
+            throw new IllegalArgumentException("Invalid overlap " + overlapFrames + " or pause search " + pauseSearchFrames
+                    + " for " + engine.getExpectedFrames() + "-frame windows");
+        }
+        this.engine = engine;
+        this.tokenTable = tokenTable;
+        this.featureExecutor = featureExecutor;
+        this.overlapFrames = overlapFrames;
+        this.pauseSearchFrames = pauseSearchFrames;
+        this.inputPool = new DirectBufferPool(engine.getInputBytes(), 2, 2);
+    }
+
+    /**
+     * Splits frames [firstFrame, endFrame) into windows of at most the model frame count. These
+     * are the windows of untimed output; with timestamps, each window after the first starts
+     * where the previous one's last complete segment ended.
+     *
+     * @param vad Detector that saw the same frames, or null to cut without looking for pauses.
+     */
+    public List<Window> planWindows(int firstFrame, int endFrame, VoiceActivityDetector vad) {
+        if (firstFrame < 0 || endFrame <= firstFrame) {
+            throw new IllegalArgumentException("Empty frame range [" + firstFrame + ", " + endFrame + ")");
+        }
+        List<Window> windows = new ArrayList<>();
+        Window window = windowAt(firstFrame, firstFrame, endFrame, vad);
+        windows.add(window);
+        while (window.end < endFrame) {
+            window = after(window, endFrame, vad);
+            windows.add(window);
+        }
+        return windows;
+    }
+
+    // The window from start, cut in a pause if it cannot reach endFrame
+    private Window windowAt(int start, int keepFrom, int endFrame, VoiceActivityDetector vad) {
+        final int size = engine.getExpectedFrames();
+        final int margin = overlapFrames / 2;
+        int end = Math.min(start + size, endFrame);
+        if (end == endFrame) {
+            return new Window(start, end, keepFrom, endFrame);
+        }
+        int latest = end - margin;
+        int earliest = Math.max(start + size / 2, latest - pauseSearchFrames);
+        int boundary = (vad != null) ? findPause(vad, earliest, latest) : latest;
+        return new Window(start, boundary + margin, keepFrom, boundary);
+    }
+
+    // The planned window after a cut
+    private Window after(Window window, int endFrame, VoiceActivityDetector vad) {
+        return windowAt(window.keepUntil - overlapFrames / 2, window.keepUntil, endFrame, vad);
+    }
+
+    // Middle of the longest non-speech run in [earliest, latest], preferring later runs; latest if none
+    private static int findPause(VoiceActivityDetector vad, int earliest, int latest) {
+        int bestStart = -1;
+        int bestLength = 0;
+        int runStart = -1;
+        for (int i = earliest; i <= latest; i++) {
+            boolean pause = i < vad.getFrameCount() && !vad.isSpeech(i);
+            if (pause && runStart < 0) {
+                runStart = i;
+            }
+            if ((!pause || i == latest) && runStart >= 0) {
+                int runEnd = pause ? i + 1 : i;
+                if (runEnd - runStart >= bestLength) {
+                    bestLength = runEnd - runStart;
+                    bestStart = runStart;
+                }
+                runStart = -1;
+            }
+        }
+        return (bestStart >= 0) ? bestStart + bestLength / 2 : latest;
+    }
+
+    /**
+     * Transcribes the {@code speech} span of a finished take. Further input to {@code frontend}
+     * is rejected.
+     *
+     * @throws ExecutionException if feature preparation or the recognizer failed.
+     * @throws CancellationException if the recognizer was cancelled; it is passed through as is.
+     */
+    public String transcribe(StreamingMelFrontend frontend, VoiceActivityDetector.Segment speech, WindowRecognizer recognizer)
+            throws ExecutionException, InterruptedException {
+        float[] frames = frontend.finishFrames();
+        return transcribe(frames, frontend.getFrameSummaries(), speech.start, speech.end, frontend.getVoiceActivityDetector(), recognizer);
+    }
+
+    /**
+     * Transcribes frames [firstFrame, endFrame) of frame-major log-Mel {@code frames}.
+     *
+     * @param vad Detector for pause-aligned cuts; may be null.
+     * @throws ExecutionException if feature preparation or the recognizer failed.
+     */
+    public String transcribe(float[] frames, int firstFrame, int endFrame, VoiceActivityDetector vad,
+                             WindowRecognizer recognizer) throws ExecutionException, InterruptedException {
+        return transcribe(frames, null, firstFrame, endFrame, vad, recognizer);
+    }
+
+    /** Same with the frames' summaries (see {@link MelSpectrogramEngine#lastFrameSummary()}), or null. */
+    String transcribe(float[] frames, float[] summaries, int firstFrame, int endFrame, VoiceActivityDetector vad,
+                      WindowRecognizer recognizer) throws ExecutionException, InterruptedException {
+        long wallStart = System.nanoTime();
+        if (firstFrame < 0 || endFrame <= firstFrame) {
+            throw new IllegalArgumentException("Empty frame range [" + firstFrame + ", " + endFrame + ")");
+        }
+        if (windowTokens.length < engine.maxOutputTokens()) {
+            windowTokens = new int[engine.maxOutputTokens()];
+        }
+        stitchedCount = 0;
+        synchronized (this) {
+            lastFeatureNanos = 0;
+            lastNormalizeNanos = 0;
+            lastFillNanos = 0;
+        }
+        lastInferenceNanos = 0;
+        lastDecodeNanos = 0;
+
+        Window window = windowAt(firstFrame, firstFrame, endFrame, vad);
+        PreparedWindow current = prepare(frames, summaries, window);
+        PreparedWindow next = null;
+        int n = 0;
+        try {
+            boolean pipelined = true; // Until a window comes back timed
+            int previousTokenCount = 0;
+            while (true) {
+                ByteBuffer input = current.take();
+                current = null;
+                Window planned = (window.end < endFrame) ? after(window, endFrame, vad) : null;
+                int count;
+                long inferenceStart;
+                try {
+                    if (planned != null && pipelined) {
+                        next = prepare(frames, summaries, planned);
+                    }
+                    currentWindow = window;
+                    inferenceStart = System.nanoTime();
+                    try {
+                        count = recognizer.recognize(input, windowTokens);
+                    } catch (CancellationException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        throw new ExecutionException("Window " + n + " " + window + " failed", e);
+                    }
+                } finally {
+                    inputPool.release(input);
+                }
+                long decodeStart = System.nanoTime();
+                lastInferenceNanos += decodeStart - inferenceStart;
+                previousTokenCount = stitch(window, n == 0, planned == null, count, previousTokenCount);
+                lastDecodeNanos += System.nanoTime() - decodeStart;
+                n++;
+                if (planned == null) {
+                    break;
+                }
+                if (seekFrame >= 0) {
+                    pipelined = false;
+                    if (next != null) {
+                        next.discard();
+                        next = null;
+                    }
+                    window = windowAt(seekFrame, seekFrame, endFrame, vad);
+                    current = prepare(frames, summaries, window);
+                } else {
+                    window = planned;
+                    current = (next != null) ? next : prepare(frames, summaries, planned);
+                    next = null;
+                }
+            }
+        } finally {
+            currentWindow = null;
+            // Failed, cancelled or interrupted with a window in hand
+            if (current != null) current.discard();
+            if (next != null) next.discard();
+        }
+        lastWindowCount = n;
+
+        long decodeStart = System.nanoTime();
+        text.clear();
+        tokenTable.decode(stitched, 0, stitchedCount, text);
+        String result = text.toString().trim();
+        long end = System.nanoTime();
+        lastDecodeNanos += end - decodeStart;
+        lastWallNanos = end - wallStart;
+        return result;
+    }
+
+    private PreparedWindow prepare(float[] frames, float[] summaries, Window window) {
+        PreparedWindow prepared = new PreparedWindow(frames, summaries, window);
+        prepared.future = featureExecutor.submit(prepared);
+        return prepared;
+    }
+
+    /**
+     * One window being normalized into a pooled buffer on the feature executor. The buffer goes
+     * to whoever {@link #take}s it; if the window is discarded instead, it goes back to the pool
+     * as soon as it exists, whether that is now or when the task finishes.
+     */
+    private final class PreparedWindow implements Callable<ByteBuffer> {
+        private final float[] frames;
+        private final float[] summaries;
+        private final Window window;
+        Future<ByteBuffer> future;
+        private ByteBuffer ready;   // Filled but not yet taken; guarded by this
+        private boolean discarded; // Guarded by this
+
+        PreparedWindow(float[] frames, float[] summaries, Window window) {
+            this.frames = frames;
+            this.summaries = summaries;
+            this.window = window;
+        }
+
+        @Override
+        public ByteBuffer call() {
+            long start = System.nanoTime();
+            ByteBuffer input = inputPool.acquire();
+            try {
+                engine.writeNormalized(frames, summaries, window.start, window.end - window.start, input);
+            } catch (RuntimeException e) {
+                inputPool.release(input);
+                throw e;
+            }
+            input.rewind();
+            synchronized (LongFormTranscriber.this) {
+                lastFeatureNanos += System.nanoTime() - start;
+                lastNormalizeNanos += engine.lastNormalizeNanos();
+                lastFillNanos += engine.lastFillNanos();
+            }
+            synchronized (this) {
+                if (discarded) {
+                    inputPool.release(input);
+                    return null;
+                }
+                ready = input;
+            }
+            return input;
+        }
+
+        /** Waits for the window; the caller then owns the buffer and must release it. */
+        ByteBuffer take() throws ExecutionException, InterruptedException {
+            ByteBuffer input = future.get();
+            synchronized (this) {
+                ready = null;
+            }
+            return input;
+        }
+
+        void discard() {
+            future.cancel(false); // A task already running finishes and sees discarded
+            synchronized (this) {
+                discarded = true;
+                if (ready != null) {
+                    inputPool.release(ready);
+                    ready = null;
+                }
+            }
+        }
+    }
+
+    // For tests: the window the recognizer is running on
+    Window getCurrentWindow() {
+        return currentWindow;
+    }
+
+    // For tests: buffers come back to the pool however a transcription ends
+    DirectBufferPool getInputPool() {
+        return inputPool;
+    }
+
+    /**
+     * Appends one window's text. Timed output keeps its complete segments (all of it in the last
+     * window) and sets {@link #seekFrame} to where the last of them ends; untimed output sets it
+     * to -1.
+     *
+     * @return Number of text tokens this window contributed (for the untimed fallback).
+     */
+    private int stitch(Window window, boolean first, boolean last, int count, int previousTokenCount) {
+        boolean timed = false;
+        for (int i = 0; i < count; i++) {
+            if (tokenTable.isTimestamp(windowTokens[i])) {
+                timed = true;
+                break;
+            }
+        }
+        int before = stitchedCount;
+        if (!timed) {
+            seekFrame = -1;
+            int skip = first ? 0 : overlappingPrefix(previousTokenCount, count);
+            for (int i = skip; i < count; i++) {
+                appendIfText(windowTokens[i]);
+            }
+            return stitchedCount - before;
+        }
+
+        // Segments run from an opening timestamp token to a closing one
+        int completeUntil = -1; // Index of the last closing timestamp
+        int lastEndFrame = 0;
+        boolean segmentOpen = false;
+        for (int i = 0; i < count; i++) {
+            if (tokenTable.isTimestamp(windowTokens[i])) {
+                if (segmentOpen) {
+                    completeUntil = i;
+                    lastEndFrame = Math.round(tokenTable.timestampSeconds(windowTokens[i]) / SECONDS_PER_FRAME);
+                }
+                segmentOpen = !segmentOpen;
+            }
+        }
+        int keepUntil = count;
+        seekFrame = window.end;
+        if (!last && completeUntil >= 0 && lastEndFrame > 0) {
+            // The unfinished segment after it is heard again from its start by the next window
+            keepUntil = completeUntil;
+            seekFrame = Math.min(window.start + lastEndFrame, window.end);
+        }
+        for (int i = 0; i < keepUntil; i++) {
+            appendIfText(windowTokens[i]);
+        }
+        return stitchedCount - before;
+    }
+
+    // Longest run of text tokens ending the previous window's output that also starts this window's
+    private int overlappingPrefix(int previousTokenCount, int count) {
+        int max = Math.min(MAX_TOKEN_OVERLAP, Math.min(previousTokenCount, count));
+        for (int length = max; length > 0; length--) {
+            boolean match = true;
+            for (int i = 0; i < length && match; i++) {
+                match = stitched[stitchedCount - length + i] == windowTokens[i];
+            }
+            if (match) {
+                return length;
+            }
+        }
+        return 0;
+    }
+
+    private void appendIfText(int token) {
+        if (tokenTable.isSpecial(token)) {
+            return;
+        }
+        if (stitchedCount == stitched.length) {
+            stitched = Arrays.copyOf(stitched, stitched.length * 2);
+        }
+        stitched[stitchedCount++] = token;
+    }
+
+    /** Text token ids of the last transcription, in order. */
+    public int[] getLastTokens() {
+        return Arrays.copyOf(stitched, stitchedCount);
+    }
+
+    public int getLastWindowCount() {
+        return lastWindowCount;
+    }
+
+    /** Feature normalization time of the last call, summed over windows (overlaps inference). */
+    public synchronized long getLastFeatureNanos() {
+        return lastFeatureNanos;
+    }
+
+    /** Statistics part of {@link #getLastFeatureNanos()}. */
+    public synchronized long getLastNormalizeNanos() {
+        return lastNormalizeNanos;
+    }
+
+    /** Input-buffer writing part of {@link #getLastFeatureNanos()}. */
+    public synchronized long getLastFillNanos() {
+        return lastFillNanos;
+    }
+
+    /** Recognizer time of the last call, summed over windows. */
+    public long getLastInferenceNanos() {
+        return lastInferenceNanos;
+    }
+
+    /** Stitching and token-to-text time of the last call. */
+    public long getLastDecodeNanos() {
+        return lastDecodeNanos;
+    }
+
+    /** End-to-end time of the last call. */
+    public long getLastWallNanos() {
+        return lastWallNanos;
+    }
+
+    /** Wall time over the duration of {@code frameCount} frames; below 1 is faster than real time. */
+    public float realTimeFactor(int frameCount) {
+        return (lastWallNanos / 1e9f) / (frameCount * SECONDS_PER_FRAME);
+    }
+}
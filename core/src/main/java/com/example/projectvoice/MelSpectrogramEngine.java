@@ -0,0 +1,498 @@
+package com.example.projectvoice;
+
+import org.jtransforms.fft.FloatFFT_1D;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Reusable log-Mel engine built once per model input shape.
+ *
+ * Owns the FFT plan, Hann window, sparse Mel filterbank and all scratch arrays, so computing
+ * features allocates nothing per call. Normalized features are written straight into a
+ * caller-supplied (direct) FloatBuffer in the model's layout, replacing the per-utterance
+ * window/filterbank/FFT setup, per-frame power spectra and jagged float[frames][mels] copies of
+ * {@link AudioPreprocessor#preprocess(byte[], int[])}.
+ *
+ * Each frame's log is taken as it is produced, together with a two-float summary of the frame
+ * ({@link #lastFrameSummary()}): its mean and squared deviations (Welford) for
+ * {@link Normalization#Z_SCORE}, its maximum for {@link Normalization#WHISPER}. Callers that keep
+ * the summaries next to the frames let {@link #writeNormalized} get a window's statistics from one
+ * pass over frames instead of over every value, then write each output row with one bulk put.
+ *
+ * Quantized and FP16 inputs ({@link TensorEncoding}) are encoded row by row as they are written
+ * into a {@link ByteBuffer}, so there is never a float32 copy of the whole input.
+ *
+ * Frames past the model's frame count are dropped before normalization, so the statistics are
+ * taken over what the model actually sees. Not thread-safe, with one exception: {@link #computeFrame}
+ * (feeding thread) and {@link #writeNormalized} (inference thread) touch disjoint state, which
+ * is how {@link StreamingMelFrontend} shares one engine across takes.
+ */
+public class MelSpectrogramEngine {
+
+    /** Order of the two non-trivial dimensions of the input tensor. */
+    public enum Layout {
+        /** [1, nMel, frames] */
+        MELS_BY_FRAMES,
+        /** [1, frames, nMel] or [1, 1, frames, nMel] */
+        FRAMES_BY_MELS
+    }
+
+    /** How log-Mel values are scaled for the model. */
+    public enum Normalization {
+        /** Natural log, then zero mean and unit variance over the window. */
+        Z_SCORE,
+        /**
+         * Whisper's {@code log_mel_spectrogram}: log10, clamped to 8 below the window maximum,
+         * then {@code (x + 4) / 4}. Padding is the clamped log of silence, as for zero-padded audio.
+         */
+        WHISPER
+    }
+
+    /** Floats per frame summary: mean and sum of squared deviations, or maximum and 0. */
+    static final int SUMMARY_SIZE = 2;
+    private static final float WHISPER_FLOOR = 1e-10f;
+    private static final float WHISPER_SILENCE = -10f; // log10(WHISPER_FLOOR)
+    private static final float WHISPER_DYNAMIC_RANGE = 8f;
+
+    private final int[] inputShape;
+    private final Normalization normalization;
+    private final TensorEncoding encoding;
+    private final int nMel;
+    private final int expectedFrames;
+    private final Layout layout;
+
+    private final float[] hannWindow;
+    private final SparseMelFilterbank melFilterbank;
+    private final FloatFFT_1D fft;
+
+    // Per-frame scratch (computeFrame)
+    private final float[] fftInput = new float[AudioPreprocessor.N_FFT];
+    private final float[] powerSpectrum = new float[AudioPreprocessor.NUM_SPECTRUM_BINS];
+    private final float[] melEnergies;
+    private final float[] frameSummary = new float[SUMMARY_SIZE];
+
+    // Output row and summary scratch per thread: writeNormalized may run for the next window while
+    // a caller normalizes another one
+    private final ThreadLocal<float[][]> writeScratch = new ThreadLocal<>();
+
+    // Whole-window scratch (process): [expectedFrames * nMel], frame-major
+    private float[] melScratch;
+
+    // Stage timings of the last frame / window; written by whichever thread made the call
+    private long lastStftNanos;
+    private long lastMelNanos;
+    private long lastNormalizeNanos;
+    private long lastFillNanos;
+
+    public MelSpectrogramEngine(int[] inputShape) {
+        this(inputShape, null);
+    }
+
+    /**
+     * @param filterbank Mel filters to use, e.g. {@link WhisperAssetPack#createFilterbank()}, or
+     *                   null to build the HTK filterbank from {@link AudioPreprocessor}.
+     */
+    public MelSpectrogramEngine(int[] inputShape, SparseMelFilterbank filterbank) {
+        this(inputShape, filterbank, Normalization.Z_SCORE);
+    }
+
+    /** @param normalization How the model expects its features scaled. */
+    public MelSpectrogramEngine(int[] inputShape, SparseMelFilterbank filterbank, Normalization normalization) {
+        this(inputShape, filterbank, normalization, TensorEncoding.FLOAT32);
+    }
+
+    /** @param encoding How the input tensor stores values, e.g. int8 with the tensor's scale and zero point. */
+    public MelSpectrogramEngine(int[] inputShape, SparseMelFilterbank filterbank, Normalization normalization, TensorEncoding encoding) {
+        if (encoding == null) {
+            throw new IllegalArgumentException("encoding is null");
+        }
+        this.inputShape = inputShape.clone();
+        this.normalization = normalization;
+        this.encoding = encoding;
+        this.nMel = AudioPreprocessor.melFeatureCount(inputShape);
+        this.expectedFrames = AudioPreprocessor.expectedFrames(inputShape);
+        this.layout = layoutOf(inputShape, nMel, expectedFrames);
+        if (nMel <= 0 || expectedFrames <= 0) {
+            throw new IllegalArgumentException("Invalid dimensions extracted from shape: Features=" + nMel + ", Frames=" + expectedFrames);
+        }
+
+        this.hannWindow = AudioPreprocessor.createHannWindow(AudioPreprocessor.FRAME_LENGTH);
+        if (filterbank == null) {
+            filterbank = SparseMelFilterbank.fromDense(
+                    AudioPreprocessor.createMelFilterbank(nMel, AudioPreprocessor.N_FFT, AudioPreprocessor.SAMPLE_RATE));
+        } else if (filterbank.getNumFilters() != nMel || filterbank.getNumBins() != AudioPreprocessor.NUM_SPECTRUM_BINS) {
+            throw new IllegalArgumentException("Filterbank is " + filterbank.getNumFilters() + "x" + filterbank.getNumBins()
+                    + ", model needs " + nMel + "x" + AudioPreprocessor.NUM_SPECTRUM_BINS);
+        }
+        this.melFilterbank = filterbank;
+        this.melEnergies = new float[nMel];
+        this.fft = new FloatFFT_1D(AudioPreprocessor.N_FFT);
+    }
+
+    private static Layout layoutOf(int[] shape, int nMel, int frames) {
+        if (shape.length == 3 && shape[0] == 1 && shape[1] == nMel && shape[2] == frames) {
+            return Layout.MELS_BY_FRAMES;
+        }
+        if ((shape.length == 3 && shape[0] == 1 && shape[1] == frames && shape[2] == nMel)
+                || (shape.length == 4 && shape[0] == 1 && shape[1] == 1 && shape[2] == frames && shape[3] == nMel)) {
+            return Layout.FRAMES_BY_MELS;
+        }
+        throw new IllegalArgumentException("Input shape " + Arrays.toString(shape) + " does not match expected layouts for filling buffer.");
+    }
+
+    /**
+     * A new engine for the same shape and filterbank with its own FFT plan and scratch, for
+     * computing frames on another thread.
+     */
+    MelSpectrogramEngine newWorkerCopy() {
+        return new MelSpectrogramEngine(inputShape, melFilterbank, normalization, encoding);
+    }
+
+    /**
+     * An engine for the same filterbank, normalization, encoding and layout whose model input holds
+     * {@code frames} frames, e.g. for a shorter encoder input (see
+     * {@link TranscriptionEngine#addLengthBucket}).
+     */
+    public MelSpectrogramEngine withExpectedFrames(int frames) {
+        int[] shape = inputShape.clone();
+        shape[2] = frames; // The frame axis in both layouts, see AudioPreprocessor.expectedFrames
+        return new MelSpectrogramEngine(shape, melFilterbank, normalization, encoding);
+    }
+
+    public Normalization getNormalization() {
+        return normalization;
+    }
+
+    public TensorEncoding getEncoding() {
+        return encoding;
+    }
+
+    public int getMelCount() {
+        return nMel;
+    }
+
+    public int getExpectedFrames() {
+        return expectedFrames;
+    }
+
+    /**
+     * Size for a buffer of tokens decoded from one window. A window never yields more tokens than
+     * it has 10 ms frames.
+     */
+    public int maxOutputTokens() {
+        return expectedFrames;
+    }
+
+    public Layout getLayout() {
+        return layout;
+    }
+
+    /** Number of values in one model input. */
+    public int getInputSize() {
+        return nMel * expectedFrames;
+    }
+
+    /** Bytes of one model input in the engine's encoding. */
+    public int getInputBytes() {
+        return getInputSize() * encoding.getBytesPerValue();
+    }
+
+    /** Allocates a native-order direct buffer large enough for one model input. */
+    public ByteBuffer allocateInputBuffer() {
+        return ByteBuffer.allocateDirect(getInputBytes()).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Computes features for {@code numSamples} samples in [-1.0, 1.0] and writes the normalized,
+     * padded model input into {@code out} starting at its current position. The position is
+     * advanced by {@link #getInputSize()}.
+     *
+     * @return Number of audio frames that made it into the input (at most the model frame count).
+     */
+    public int process(float[] samples, int numSamples, FloatBuffer out) {
+        int numFrames = Math.min(AudioPreprocessor.numFrames(numSamples), expectedFrames);
+        if (numFrames <= 0) {
+            throw new IllegalArgumentException("Audio too short (" + numSamples + " samples) for STFT processing with frameLength=" + AudioPreprocessor.FRAME_LENGTH);
+        }
+        if (melScratch == null) {
+            melScratch = new float[expectedFrames * nMel]; // Allocated on first use only
+        }
+        for (int frameIndex = 0; frameIndex < numFrames; frameIndex++) {
+            computeFrame(samples, frameIndex * AudioPreprocessor.FRAME_SHIFT, melScratch, frameIndex * nMel);
+        }
+        writeNormalized(melScratch, numFrames, out);
+        return numFrames;
+    }
+
+    /**
+     * Windows FRAME_LENGTH samples starting at {@code start}, transforms them and stores the
+     * log-Mel energies in {@code dst[dstOffset .. dstOffset + nMel)}.
+     */
+    public void computeFrame(float[] samples, int start, float[] dst, int dstOffset) {
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < AudioPreprocessor.FRAME_LENGTH; i++) {
+            fftInput[i] = samples[start + i] * hannWindow[i];
+        }
+        transformAndProject(dst, dstOffset, startNanos);
+    }
+
+    /**
+     * Same as {@link #computeFrame(float[], int, float[], int)} for a ring of exactly FRAME_LENGTH
+     * samples whose oldest sample is at {@code oldest}.
+     */
+    public void computeFrameFromRing(float[] ring, int oldest, float[] dst, int dstOffset) {
+        long startNanos = System.nanoTime();
+        int firstPart = AudioPreprocessor.FRAME_LENGTH - oldest;
+        for (int i = 0; i < firstPart; i++) {
+            fftInput[i] = ring[oldest + i] * hannWindow[i];
+        }
+        for (int i = firstPart; i < AudioPreprocessor.FRAME_LENGTH; i++) {
+            fftInput[i] = ring[i - firstPart] * hannWindow[i];
+        }
+        transformAndProject(dst, dstOffset, startNanos);
+    }
+
+    /**
+     * Power spectrum ({@link AudioPreprocessor#NUM_SPECTRUM_BINS} bins) of the frame most recently
+     * computed; overwritten by the next computeFrame call.
+     */
+    float[] lastPowerSpectrum() {
+        return powerSpectrum;
+    }
+
+    /**
+     * Summary ({@link #SUMMARY_SIZE} floats) of the frame most recently computed, to be stored
+     * alongside it for {@link #writeNormalized(float[], float[], int, int, FloatBuffer)};
+     * overwritten by the next computeFrame call.
+     */
+    float[] lastFrameSummary() {
+        return frameSummary;
+    }
+
+    /**
+     * Time the most recent computeFrame call spent in windowing, FFT and power spectrum, and in the
+     * Mel projection and log; see {@link TranscriptionMetrics.Stage}.
+     */
+    long lastStftNanos() {
+        return lastStftNanos;
+    }
+
+    long lastMelNanos() {
+        return lastMelNanos;
+    }
+
+    /** Time the most recent writeNormalized call spent computing statistics, and writing the buffer. */
+    long lastNormalizeNanos() {
+        return lastNormalizeNanos;
+    }
+
+    long lastFillNanos() {
+        return lastFillNanos;
+    }
+
+    private void transformAndProject(float[] dst, int dstOffset, long startNanos) {
+        fft.realForward(fftInput);
+        AudioPreprocessor.powerSpectrum(fftInput, powerSpectrum);
+        long projectNanos = System.nanoTime();
+        lastStftNanos = projectNanos - startNanos;
+
+        melFilterbank.apply(powerSpectrum, melEnergies, 0);
+        if (normalization == Normalization.WHISPER) {
+            float max = Float.NEGATIVE_INFINITY;
+            for (int m = 0; m < nMel; m++) {
+                float value = (float) Math.log10(Math.max(melEnergies[m], WHISPER_FLOOR));
+                dst[dstOffset + m] = value;
+                max = Math.max(max, value);
+            }
+            frameSummary[0] = max;
+            frameSummary[1] = 0f;
+        } else {
+            double mean = 0.0;
+            double m2 = 0.0;
+            for (int m = 0; m < nMel; m++) {
+                float value = (float) Math.log(Math.max(melEnergies[m], 0.0f) + AudioPreprocessor.LOG_OFFSET);
+                dst[dstOffset + m] = value;
+                double delta = value - mean;
+                mean += delta / (m + 1);
+                m2 += delta * (value - mean);
+            }
+            frameSummary[0] = (float) mean;
+            frameSummary[1] = (float) m2;
+        }
+        lastMelNanos = System.nanoTime() - projectNanos;
+    }
+
+    /** The summary {@link #transformAndProject} produces, for a frame that is already in {@code logMel}. */
+    private void summarize(float[] logMel, int offset, float[] summary) {
+        if (normalization == Normalization.WHISPER) {
+            float max = Float.NEGATIVE_INFINITY;
+            for (int m = 0; m < nMel; m++) {
+                max = Math.max(max, logMel[offset + m]);
+            }
+            summary[0] = max;
+            summary[1] = 0f;
+        } else {
+            double mean = 0.0;
+            double m2 = 0.0;
+            for (int m = 0; m < nMel; m++) {
+                float value = logMel[offset + m];
+                double delta = value - mean;
+                mean += delta / (m + 1);
+                m2 += delta * (value - mean);
+            }
+            summary[0] = (float) mean;
+            summary[1] = (float) m2;
+        }
+    }
+
+    /**
+     * Normalizes the first {@code numFrames} frames of a frame-major log-Mel array (truncated to
+     * the model frame count) and writes them, padded, into {@code out} in the model layout, as
+     * floats whatever the engine's encoding. {@code logMel} itself is left untouched.
+     */
+    public void writeNormalized(float[] logMel, int numFrames, FloatBuffer out) {
+        writeNormalized(logMel, null, 0, numFrames, out);
+    }
+
+    /**
+     * Same as {@link #writeNormalized(float[], int, FloatBuffer)} for the {@code numFrames} frames
+     * starting at frame {@code firstFrame}, e.g. the speech span found by a
+     * {@link VoiceActivityDetector}.
+     */
+    public void writeNormalized(float[] logMel, int firstFrame, int numFrames, FloatBuffer out) {
+        writeNormalized(logMel, null, firstFrame, numFrames, out);
+    }
+
+    /**
+     * Same as {@link #writeNormalized(float[], int, int, FloatBuffer)} with the frames' summaries
+     * ({@link #lastFrameSummary()}, {@link #SUMMARY_SIZE} per frame at the same index), so the
+     * window statistics come from those instead of another pass over {@code logMel}. Summaries
+     * may be null.
+     */
+    void writeNormalized(float[] logMel, float[] summaries, int firstFrame, int numFrames, FloatBuffer out) {
+        if (out.remaining() < getInputSize()) {
+            throw new IllegalArgumentException("Output buffer has " + out.remaining() + " floats remaining, need " + getInputSize());
+        }
+        write(logMel, summaries, firstFrame, numFrames, out, null);
+    }
+
+    /**
+     * Same as {@link #writeNormalized(float[], int, int, FloatBuffer)} into a (native-order)
+     * byte buffer in the engine's {@link TensorEncoding}; the position is advanced by
+     * {@link #getInputBytes()}.
+     */
+    public void writeNormalized(float[] logMel, int firstFrame, int numFrames, ByteBuffer out) {
+        writeNormalized(logMel, null, firstFrame, numFrames, out);
+    }
+
+    /** Same as {@link #writeNormalized(float[], int, int, ByteBuffer)} with the frames' summaries, which may be null. */
+    void writeNormalized(float[] logMel, float[] summaries, int firstFrame, int numFrames, ByteBuffer out) {
+        if (out.remaining() < getInputBytes()) {
+            throw new IllegalArgumentException("Output buffer has " + out.remaining() + " bytes remaining, need " + getInputBytes());
+        }
+        if (encoding.getType() == TensorEncoding.Type.FLOAT32) {
+            int base = out.position();
+            write(logMel, summaries, firstFrame, numFrames, out.asFloatBuffer(), null); // Bulk float puts
+            out.position(base + getInputBytes());
+        } else {
+            write(logMel, summaries, firstFrame, numFrames, null, out);
+        }
+    }
+
+    // Writes into exactly one of floats and encoded
+    private void write(float[] logMel, float[] summaries, int firstFrame, int numFrames, FloatBuffer floats, ByteBuffer encoded) {
+        final int frames = Math.min(numFrames, expectedFrames);
+        if (frames <= 0) {
+            throw new IllegalArgumentException("No frames to normalize");
+        }
+        final long startNanos = System.nanoTime();
+        final int src = firstFrame * nMel;
+        float[][] scratch = writeScratch.get();
+        if (scratch == null) {
+            scratch = new float[][] {new float[Math.max(nMel, expectedFrames)], new float[SUMMARY_SIZE]};
+            writeScratch.set(scratch);
+        }
+        final float[] row = scratch[0];
+        final float[] summary = scratch[1];
+
+        // x -> (x + shift) * scale, then clamped from below at min (Z_SCORE: no clamp)
+        final float shift;
+        final float scale;
+        final float min;
+        final float padding;
+        if (normalization == Normalization.WHISPER) {
+            float max = (frames < expectedFrames) ? WHISPER_SILENCE : Float.NEGATIVE_INFINITY;
+            for (int i = 0; i < frames; i++) {
+                frameSummary(logMel, summaries, firstFrame + i, summary);
+                max = Math.max(max, summary[0]);
+            }
+            shift = 4f;
+            scale = 0.25f;
+            min = max - WHISPER_DYNAMIC_RANGE;
+            padding = (Math.max(WHISPER_SILENCE, min) + shift) * scale;
+        } else {
+            // Chan et al.'s pairwise merge of the per-frame Welford summaries
+            double mean = 0.0;
+            double m2 = 0.0;
+            long count = 0;
+            for (int i = 0; i < frames; i++) {
+                frameSummary(logMel, summaries, firstFrame + i, summary);
+                long merged = count + nMel;
+                double delta = summary[0] - mean;
+                mean += delta * nMel / merged;
+                m2 += summary[1] + delta * delta * count * nMel / merged;
+                count = merged;
+            }
+            float stddev = (float) Math.sqrt(m2 / count);
+            shift = (float) -mean;
+            scale = 1.0f / (stddev + AudioPreprocessor.STD_EPS);
+            min = Float.NEGATIVE_INFINITY;
+            padding = 0f;
+        }
+        final long fillNanos = System.nanoTime();
+        lastNormalizeNanos = fillNanos - startNanos;
+
+        if (layout == Layout.MELS_BY_FRAMES) {
+            // One output row per Mel bin, gathered across frames
+            Arrays.fill(row, frames, expectedFrames, padding);
+            for (int j = 0; j < nMel; j++) {
+                for (int i = 0, k = src + j; i < frames; i++, k += nMel) {
+                    row[i] = (Math.max(logMel[k], min) + shift) * scale;
+                }
+                putRow(row, expectedFrames, floats, encoded);
+            }
+        } else {
+            for (int i = 0, k = src; i < frames; i++) {
+                for (int j = 0; j < nMel; j++, k++) {
+                    row[j] = (Math.max(logMel[k], min) + shift) * scale;
+                }
+                putRow(row, nMel, floats, encoded);
+            }
+            Arrays.fill(row, 0, nMel, padding);
+            for (int i = frames; i < expectedFrames; i++) {
+                putRow(row, nMel, floats, encoded);
+            }
+        }
+        lastFillNanos = System.nanoTime() - fillNanos;
+    }
+
+    private void putRow(float[] row, int count, FloatBuffer floats, ByteBuffer encoded) {
+        if (floats != null) {
+            floats.put(row, 0, count);
+        } else {
+            encoding.put(row, 0, count, encoded);
+        }
+    }
+
+    private void frameSummary(float[] logMel, float[] summaries, int frame, float[] summary) {
+        if (summaries != null) {
+            summary[0] = summaries[frame * SUMMARY_SIZE];
+            summary[1] = summaries[frame * SUMMARY_SIZE + 1];
+        } else {
+            summarize(logMel, frame * nMel, summary);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.projectvoice;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Log-Mel frames of a whole recording computed on a bounded {@link ForkJoinPool}.
+ *
+ * The frame range is split in halves until a piece is small enough; each leaf reads its own span of
+ * samples from the {@link SampleSource} (for a {@link WavReader}, straight out of the mapped file)
+ * and computes its frames with the calling thread's copy of the {@link MelSpectrogramEngine}, so
+ * FFT plans and scratch are never shared and the filterbank is only read. Leaves write disjoint
+ * slices of one frame-major array, so the result is identical to streaming the same samples.
+ * Recordings under the serial threshold are computed on the calling thread; splitting them costs
+ * more than it saves.
+ *
+ * One instance may be used by several threads at once (e.g. the CLI's file workers).
+ */
+public final class ParallelStft {
+
+    /** Random-access mono samples, e.g. a {@link WavReader} or {@link #samples(float[], int, int)}. */
+    public interface SampleSource {
+        int getSampleCount();
+
+        /**
+         * Reads samples {@code [first, first + count)} as floats in [-1, 1] into {@code out}.
+         *
+         * @return Number of samples read (fewer at the end).
+         */
+        int read(int first, float[] out, int offset, int count);
+    }
+
+    /** About 10 s of audio; below this the frames are computed on the calling thread. */
+    public static final int DEFAULT_SERIAL_THRESHOLD_FRAMES = 1000;
+    private static final int MIN_LEAF_FRAMES = 128;
+    private static final int LEAVES_PER_THREAD = 4; // Slack for stragglers and busy workers
+
+    private final MelSpectrogramEngine template;
+    private final ForkJoinPool pool;
+    private final boolean ownsPool;
+    private final int serialThresholdFrames;
+    private final ThreadLocal<Worker> workers = new ThreadLocal<>();
+
+    /** Per-thread engine (FFT plan and scratch) and sample span. */
+    private static final class Worker {
+        final MelSpectrogramEngine engine;
+        float[] samples = new float[0];
+
+        Worker(MelSpectrogramEngine engine) {
+            this.engine = engine;
+        }
+    }
+
+    /**
+     * Uses its own pool of {@code parallelism} threads; call {@link #shutdown()} when done.
+     *
+     * @param template Engine whose shape and filterbank the workers copy.
+     */
+    public ParallelStft(MelSpectrogramEngine template, int parallelism) {
+        this(template, new ForkJoinPool(parallelism), DEFAULT_SERIAL_THRESHOLD_FRAMES, true);
+    }
+
+    /** Runs on a caller-owned {@code pool}, splitting recordings of at least {@code serialThresholdFrames} frames. */
+    public ParallelStft(MelSpectrogramEngine template, ForkJoinPool pool, int serialThresholdFrames) {
+        this(template, pool, serialThresholdFrames, false);
+    }
+
+    private ParallelStft(MelSpectrogramEngine template, ForkJoinPool pool, int serialThresholdFrames, boolean ownsPool) {
+        if (serialThresholdFrames < 0) {
+            throw new IllegalArgumentException("Serial threshold must not be negative: " + serialThresholdFrames);
+        }
+        this.template = template;
+        this.pool = pool;
+        this.serialThresholdFrames = serialThresholdFrames;
+        this.ownsPool = ownsPool;
+    }
+
+    /** {@code samples[offset, offset + length)} as a {@link SampleSource}. */
+    public static SampleSource samples(final float[] samples, final int offset, final int length) {
+        if (offset < 0 || length < 0 || offset + length > samples.length) {
+            throw new IllegalArgumentException("Range [" + offset + ", " + (offset + length) + ") outside [0, " + samples.length + ")");
+        }
+        return new SampleSource() {
+            @Override
+            public int getSampleCount() {
+                return length;
+            }
+
+            @Override
+            public int read(int first, float[] out, int outOffset, int count) {
+                int n = Math.max(0, Math.min(count, length - first));
+                System.arraycopy(samples, offset + first, out, outOffset, n);
+                return n;
+            }
+        };
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public int getMelCount() {
+        return template.getMelCount();
+    }
+
+    /**
+     * Computes the first {@code frameCount} frames of {@code source} into {@code dst} (frame-major,
+     * {@code nMel} values per frame from index 0), their summaries into {@code summaries} if not
+     * null (see {@link MelSpectrogramEngine#lastFrameSummary()}) and, if {@code detector} is not
+     * null, appends their features to it in order.
+     *
+     * @param utterance Receives conversion, STFT and Mel time summed over all threads; may be null.
+     */
+    public void compute(SampleSource source, int frameCount, float[] dst, float[] summaries, VoiceActivityDetector detector,
+                        TranscriptionMetrics.Utterance utterance) {
+        int nMel = template.getMelCount();
+        if (frameCount < 0 || (long) frameCount * nMel > dst.length) {
+            throw new IllegalArgumentException(frameCount + " frames do not fit " + dst.length + " values");
+        }
+        if (summaries != null && (long) frameCount * MelSpectrogramEngine.SUMMARY_SIZE > summaries.length) {
+            throw new IllegalArgumentException(frameCount + " frame summaries do not fit " + summaries.length + " values");
+        }
+        if (frameCount > AudioPreprocessor.numFrames(source.getSampleCount())) {
+            throw new IllegalArgumentException(frameCount + " frames need more than " + source.getSampleCount() + " samples");
+        }
+        int firstVadFrame = 0;
+        if (detector != null) {
+            firstVadFrame = detector.getFrameCount();
+            detector.ensureCapacity(firstVadFrame + frameCount);
+        }
+
+        Frames task = new Frames(source, dst, summaries, nMel, detector, firstVadFrame, 0, frameCount,
+                leafFrames(frameCount), new AtomicLong[] {new AtomicLong(), new AtomicLong(), new AtomicLong()});
+        if (frameCount < serialThresholdFrames || pool.getParallelism() == 1) {
+            task.computeLeaf();
+        } else {
+            pool.invoke(task);
+        }
+
+        if (detector != null) {
+            detector.commitFrames(firstVadFrame + frameCount);
+        }
+        if (utterance != null) {
+            utterance.add(TranscriptionMetrics.Stage.PCM_CONVERSION, task.nanos[0].get());
+            utterance.add(TranscriptionMetrics.Stage.STFT, task.nanos[1].get());
+            utterance.add(TranscriptionMetrics.Stage.MEL_PROJECTION, task.nanos[2].get());
+        }
+    }
+
+    private int leafFrames(int frameCount) {
+        int leaves = pool.getParallelism() * LEAVES_PER_THREAD;
+        return Math.max(MIN_LEAF_FRAMES, (frameCount + leaves - 1) / leaves);
+    }
+
+    private Worker worker() {
+        Worker worker = workers.get();
+        if (worker == null) {
+            worker = new Worker(template.newWorkerCopy());
+            workers.set(worker);
+        }
+        return worker;
+    }
+
+    /** Shuts the pool down if this instance created it. */
+    public void shutdown() {
+        if (ownsPool) {
+            pool.shutdown();
+        }
+    }
+
+    /** Frames {@code [from, to)}; splits in halves down to {@code leafFrames}. */
+    private final class Frames extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final SampleSource source;
+        private final float[] dst;
+        private final float[] summaries;
+        private final int nMel;
+        private final VoiceActivityDetector detector;
+        private final int firstVadFrame;
+        private final int from;
+        private final int to;
+        private final int leafFrames;
+        final AtomicLong[] nanos; // Conversion, STFT, Mel; shared by the whole tree
+
+        Frames(SampleSource source, float[] dst, float[] summaries, int nMel, VoiceActivityDetector detector, int firstVadFrame,
+               int from, int to, int leafFrames, AtomicLong[] nanos) {
+            this.source = source;
+            this.dst = dst;
+            this.summaries = summaries;
+            this.nMel = nMel;
+            this.detector = detector;
+            this.firstVadFrame = firstVadFrame;
+            this.from = from;
+            this.to = to;
+            this.leafFrames = leafFrames;
+            this.nanos = nanos;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= leafFrames) {
+                computeLeaf();
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Frames(source, dst, summaries, nMel, detector, firstVadFrame, from, mid, leafFrames, nanos),
+                    new Frames(source, dst, summaries, nMel, detector, firstVadFrame, mid, to, leafFrames, nanos));
+        }
+
+        void computeLeaf() {
+            if (to <= from) {
+                return;
+            }
+            Worker worker = worker();
+            MelSpectrogramEngine engine = worker.engine;
+            int sampleCount = (to - from - 1) * AudioPreprocessor.FRAME_SHIFT + AudioPreprocessor.FRAME_LENGTH;
+            if (worker.samples.length < sampleCount) {
+                worker.samples = new float[sampleCount];
+            }
+            long start = System.nanoTime();
+            source.read(from * AudioPreprocessor.FRAME_SHIFT, worker.samples, 0, sampleCount);
+            long conversion = System.nanoTime() - start;
+
+            long stft = 0;
+            long mel = 0;
+            for (int f = from; f < to; f++) {
+                engine.computeFrame(worker.samples, (f - from) * AudioPreprocessor.FRAME_SHIFT, dst, f * nMel);
+                stft += engine.lastStftNanos();
+                mel += engine.lastMelNanos();
+                if (summaries != null) {
+                    System.arraycopy(engine.lastFrameSummary(), 0, summaries, f * MelSpectrogramEngine.SUMMARY_SIZE,
+                            MelSpectrogramEngine.SUMMARY_SIZE);
+                }
+                if (detector != null) {
+                    detector.setFrame(firstVadFrame + f, engine.lastPowerSpectrum());
+                }
+            }
+            nanos[0].addAndGet(conversion);
+            nanos[1].addAndGet(stft);
+            nanos[2].addAndGet(mel);
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.example.projectvoice;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Preallocated single-producer ring of 16-bit PCM samples with any number of lock-free readers.
+ *
+ * The capture thread {@link #write}s into a power-of-two {@code short} ring and publishes its
+ * position with an ordered store; it never blocks, allocates or copies old audio. With an
+ * {@link AudioSource} the source reads straight into the ring, so captured audio is not copied at
+ * all before readers see it. Each
+ * {@link Reader} keeps its own cursor and receives samples as segments of the ring array itself
+ * (no copy). A reader that falls more than half a ring behind would eventually be overwritten, so
+ * once unread samples cross that line the producer copies them into fixed-size spill chunks and
+ * the reader drains those first. Chunks are only allocated while some reader lags that far, never
+ * move once written, and are dropped as soon as every reader is past them. A long take therefore
+ * costs one ring plus, at worst, the backlog of the slowest reader; nothing is ever reallocated
+ * and copied wholesale.
+ *
+ * Because ring reads only happen within half a ring of the write position, a reader's callback
+ * has half a ring of audio time (~8 s by default) before the producer can reach the samples it
+ * is looking at; {@link Reader#getOverruns()} counts segments where that was violated.
+ */
+public class PcmRingBuffer {
+
+    /** Receives samples {@code [offset, offset + length)} of {@code samples}; must not retain the array. */
+    public interface SampleConsumer {
+        void accept(short[] samples, int offset, int length);
+    }
+
+    public static final int DEFAULT_CAPACITY = 1 << 18; // ~16 s at 16 kHz, 512 KB
+    static final int SPILL_CHUNK_BITS = 14;             // ~1 s at 16 kHz
+    private static final int SPILL_CHUNK = 1 << SPILL_CHUNK_BITS;
+    private static final int SPILL_MASK = SPILL_CHUNK - 1;
+
+    private final short[] ring;
+    private final int mask;
+    private final int spillLag;
+    private final AtomicLong written = new AtomicLong();
+
+    // Producer-owned; readers only see it through the volatile reference, published before written
+    private volatile short[][] spill = new short[16][];
+    private long firstLiveChunk = 0;
+    private volatile int spillChunkCount = 0; // Written by the producer only
+
+    // Copy-on-write so the producer can scan cursors without locking
+    private volatile Reader[] readers = new Reader[0];
+
+    public PcmRingBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /** @param capacity Ring size in samples, rounded up to a power of two. */
+    public PcmRingBuffer(int capacity) {
+        if (capacity < 2 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid ring capacity " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.ring = new short[size];
+        this.mask = size - 1;
+        this.spillLag = size / 2;
+    }
+
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    /** Samples written so far (the producer position). */
+    public long getWrittenSamples() {
+        return written.get();
+    }
+
+    /** Spill chunks currently holding audio for lagging readers. */
+    public int getSpillChunkCount() {
+        return spillChunkCount;
+    }
+
+    /** Registers a reader that starts at the current write position. */
+    public synchronized Reader newReader() {
+        Reader reader = new Reader(written.get());
+        Reader[] grown = Arrays.copyOf(readers, readers.length + 1);
+        grown[readers.length] = reader;
+        readers = grown;
+        return reader;
+    }
+
+    private synchronized void remove(Reader reader) {
+        Reader[] current = readers;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == reader) {
+                Reader[] shrunk = new Reader[current.length - 1];
+                System.arraycopy(current, 0, shrunk, 0, i);
+                System.arraycopy(current, i + 1, shrunk, i, current.length - i - 1);
+                readers = shrunk;
+                return;
+            }
+        }
+    }
+
+    /** Appends samples. Producer thread only. */
+    public void write(short[] samples, int offset, int length) {
+        Reader[] current = readers;
+        long w = written.get();
+        long slowest = w;
+        for (Reader reader : current) {
+            slowest = Math.min(slowest, reader.position.get());
+        }
+
+        int done = 0;
+        while (done < length) {
+            int index = (int) (w & mask);
+            // At most spillLag per step, so everything that crosses the spill line is already in the ring
+            int n = Math.min(Math.min(length - done, ring.length - index), spillLag);
+            // Unread samples about to fall more than spillLag behind go to the spill first
+            long spillFrom = Math.max(slowest, w - spillLag);
+            long spillTo = w + n - spillLag;
+            if (spillFrom < spillTo) {
+                spill(spillFrom, spillTo);
+            }
+            System.arraycopy(samples, offset + done, ring, index, n);
+            w += n;
+            done += n;
+            written.lazySet(w);
+        }
+
+        for (Reader reader : current) {
+            Thread waiter = reader.waiter;
+            if (waiter != null) {
+                LockSupport.unpark(waiter);
+            }
+        }
+        if (spillChunkCount > 0) {
+            releaseSpill(slowest);
+        }
+    }
+
+    /**
+     * Reads up to {@code maxSamples} from {@code source} straight into the ring: at most one
+     * contiguous segment (up to the end of the ring or half a ring), so callers loop. Producer
+     * thread only; may be mixed with {@link #write(short[], int, int)}.
+     *
+     * @return Samples written, or the source's -1 once it has no more audio.
+     */
+    public int write(AudioSource source, int maxSamples) throws IOException {
+        Reader[] current = readers;
+        long w = written.get();
+        long slowest = w;
+        for (Reader reader : current) {
+            slowest = Math.min(slowest, reader.position.get());
+        }
+        int index = (int) (w & mask);
+        int n = Math.min(Math.min(maxSamples, ring.length - index), spillLag);
+        // The read may fill the whole segment, so spill as if it will
+        long spillFrom = Math.max(slowest, w - spillLag);
+        long spillTo = w + n - spillLag;
+        if (spillFrom < spillTo) {
+            spill(spillFrom, spillTo);
+        }
+        int read = source.read(ring, index, n);
+        if (read <= 0) {
+            return read;
+        }
+        written.lazySet(w + read);
+
+        for (Reader reader : current) {
+            Thread waiter = reader.waiter;
+            if (waiter != null) {
+                LockSupport.unpark(waiter);
+            }
+        }
+        if (spillChunkCount > 0) {
+            releaseSpill(slowest);
+        }
+        return read;
+    }
+
+    private void spill(long from, long to) {
+        short[][] directory = spill;
+        while (from < to) {
+            int chunkIndex = (int) (from >>> SPILL_CHUNK_BITS);
+            if (chunkIndex >= directory.length) {
+                directory = Arrays.copyOf(directory, Math.max(directory.length * 2, chunkIndex + 1));
+            }
+            short[] chunk = directory[chunkIndex];
+            if (chunk == null) {
+                chunk = new short[SPILL_CHUNK];
+                directory[chunkIndex] = chunk;
+                spillChunkCount++;
+            }
+            int chunkOffset = (int) (from & SPILL_MASK);
+            int ringIndex = (int) (from & mask);
+            int n = (int) Math.min(to - from, Math.min(SPILL_CHUNK - chunkOffset, ring.length - ringIndex));
+            System.arraycopy(ring, ringIndex, chunk, chunkOffset, n);
+            from += n;
+        }
+        spill = directory;
+    }
+
+    // Chunks entirely behind every reader are never read again
+    private void releaseSpill(long slowest) {
+        short[][] directory = spill;
+        long lastDead = (slowest >>> SPILL_CHUNK_BITS) - 1;
+        for (long c = firstLiveChunk; c <= lastDead && c < directory.length; c++) {
+            if (directory[(int) c] != null) {
+                directory[(int) c] = null;
+                spillChunkCount--;
+            }
+        }
+        firstLiveChunk = Math.max(firstLiveChunk, lastDead + 1);
+    }
+
+    /**
+     * Peak absolute sample value of the most recent {@code sampleCount} samples, for level meters.
+     * Reads the ring without a cursor; at most half a ring back.
+     */
+    public int latestPeak(int sampleCount) {
+        long w = written.get();
+        int n = (int) Math.min(Math.min(sampleCount, spillLag), w);
+        int peak = 0;
+        for (long s = w - n; s < w; s++) {
+            peak = Math.max(peak, Math.abs(ring[(int) (s & mask)]));
+        }
+        return peak;
+    }
+
+    /** One consumer's cursor. Each reader must be used from a single thread. */
+    public final class Reader {
+        private final AtomicLong position;
+        private volatile Thread waiter;
+        private int overruns;
+
+        private Reader(long start) {
+            this.position = new AtomicLong(start);
+        }
+
+        public long getPosition() {
+            return position.get();
+        }
+
+        /** Samples written but not yet consumed by this reader. */
+        public long available() {
+            return written.get() - position.get();
+        }
+
+        /** Ring segments that may have been overwritten while the consumer was reading them. */
+        public int getOverruns() {
+            return overruns;
+        }
+
+        /**
+         * Waits until samples are available, the timeout passes or the thread is interrupted.
+         *
+         * @return Whether samples are available.
+         */
+        public boolean awaitAvailable(long timeoutNanos) {
+            if (available() > 0) {
+                return true;
+            }
+            waiter = Thread.currentThread();
+            try {
+                long deadline = System.nanoTime() + timeoutNanos;
+                while (available() == 0 && !Thread.currentThread().isInterrupted()) {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) break;
+                    LockSupport.parkNanos(this, left);
+                }
+            } finally {
+                waiter = null;
+            }
+            return available() > 0;
+        }
+
+        /**
+         * Hands up to {@code maxSamples} unread samples to {@code consumer} in order, as spill and
+         * ring segments, and advances past them.
+         *
+         * @return Number of samples consumed.
+         */
+        public int consume(SampleConsumer consumer, int maxSamples) {
+            long p = position.get();
+            final long w = written.get();
+            final long end = Math.min(w, p + maxSamples);
+            final long spilledBelow = w - spillLag;
+            int total = 0;
+            while (p < end) {
+                int n;
+                if (p < spilledBelow) {
+                    short[] chunk = spill[(int) (p >>> SPILL_CHUNK_BITS)];
+                    int chunkOffset = (int) (p & SPILL_MASK);
+                    n = (int) Math.min(Math.min(end, spilledBelow) - p, SPILL_CHUNK - chunkOffset);
+                    consumer.accept(chunk, chunkOffset, n);
+                } else {
+                    int index = (int) (p & mask);
+                    n = (int) Math.min(end - p, ring.length - index);
+                    consumer.accept(ring, index, n);
+                    if (written.get() - ring.length > p) {
+                        overruns++;
+                    }
+                }
+                p += n;
+                total += n;
+                position.lazySet(p);
+            }
+            return total;
+        }
+
+        /** Unregisters the reader; the producer stops keeping samples for it. */
+        public void close() {
+            remove(this);
+        }
+    }
+}
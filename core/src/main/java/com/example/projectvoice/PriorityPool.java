@@ -0,0 +1,165 @@
+package com.example.projectvoice;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed set of exclusive resources (e.g. one {@link TranscriptionEngine} per interpreter) handed
+ * out to two classes of work.
+ *
+ * Interactive waiters are served before batch waiters, and each class is served in arrival order.
+ * So that a steady stream of utterances cannot starve batch work forever, a batch waiter gets the
+ * next resource after {@code maxInteractiveBurst} interactive grants in a row made while it was
+ * waiting. A released resource goes straight to the waiter it is granted to; nobody can take it
+ * in between, and new arrivals never overtake waiters.
+ */
+public final class PriorityPool<T> {
+
+    public enum Priority { INTERACTIVE, BATCH }
+
+    /** Interactive grants in a row while batch work waits before one batch grant. */
+    public static final int DEFAULT_MAX_INTERACTIVE_BURST = 4;
+
+    // One blocked acquire; item is set (under the lock) once the waiter has been granted a resource
+    private static final class Waiter<T> {
+        final Condition granted;
+        T item;
+
+        Waiter(Condition granted) {
+            this.granted = granted;
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<T> idle;
+    private final ArrayDeque<Waiter<T>> interactive = new ArrayDeque<>();
+    private final ArrayDeque<Waiter<T>> batch = new ArrayDeque<>();
+    private final int size;
+    private final int maxInteractiveBurst;
+    private int interactiveBurst; // Interactive grants since batch work last got one (while it waited)
+
+    public PriorityPool(Collection<? extends T> items) {
+        this(items, DEFAULT_MAX_INTERACTIVE_BURST);
+    }
+
+    public PriorityPool(Collection<? extends T> items, int maxInteractiveBurst) {
+        if (items.isEmpty()) {
+            throw new IllegalArgumentException("Pool needs at least one item");
+        }
+        if (maxInteractiveBurst < 1) {
+            throw new IllegalArgumentException("maxInteractiveBurst must be >= 1: " + maxInteractiveBurst);
+        }
+        this.idle = new ArrayDeque<>(items);
+        this.size = items.size();
+        this.maxInteractiveBurst = maxInteractiveBurst;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Waits as long as it takes for a resource; give it back with {@link #release}. */
+    public T acquire(Priority priority) throws InterruptedException {
+        return acquire(priority, false, 0L);
+    }
+
+    /** Like {@link #acquire}, but gives up after {@code timeout}. @return The resource, or null on timeout. */
+    public T tryAcquire(Priority priority, long timeout, TimeUnit unit) throws InterruptedException {
+        return acquire(priority, true, unit.toNanos(timeout));
+    }
+
+    private T acquire(Priority priority, boolean timed, long nanos) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            // Idle resources only exist while nobody waits, so taking one cannot overtake anybody
+            if (!idle.isEmpty()) {
+                return idle.poll();
+            }
+            if (timed && nanos <= 0L) {
+                return null;
+            }
+            Waiter<T> waiter = new Waiter<>(lock.newCondition());
+            ArrayDeque<Waiter<T>> queue = (priority == Priority.INTERACTIVE) ? interactive : batch;
+            queue.add(waiter);
+            try {
+                while (waiter.item == null) {
+                    if (!timed) {
+                        waiter.granted.await();
+                    } else if (nanos > 0L) {
+                        nanos = waiter.granted.awaitNanos(nanos);
+                    } else {
+                        queue.remove(waiter);
+                        return null;
+                    }
+                }
+                return waiter.item;
+            } catch (InterruptedException e) {
+                // Granted just before the interrupt: pass the resource on rather than lose it
+                if (waiter.item != null) {
+                    grant(waiter.item);
+                } else {
+                    queue.remove(waiter);
+                }
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns a resource from {@link #acquire}; it goes to the next waiter, if any. */
+    public void release(T item) {
+        if (item == null) {
+            throw new IllegalArgumentException("item is null");
+        }
+        lock.lock();
+        try {
+            grant(item);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds the lock
+    private void grant(T item) {
+        Waiter<T> next;
+        if (!interactive.isEmpty() && (batch.isEmpty() || interactiveBurst < maxInteractiveBurst)) {
+            next = interactive.poll();
+            interactiveBurst = batch.isEmpty() ? 0 : interactiveBurst + 1;
+        } else if (!batch.isEmpty()) {
+            next = batch.poll();
+            interactiveBurst = 0;
+        } else {
+            if (idle.size() >= size) {
+                throw new IllegalStateException("More releases than acquires");
+            }
+            idle.push(item);
+            return;
+        }
+        next.item = item;
+        next.granted.signal();
+    }
+
+    /** Resources nobody holds right now. */
+    public int getIdleCount() {
+        lock.lock();
+        try {
+            return idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Callers blocked in {@link #acquire} at {@code priority}. */
+    public int getWaitingCount(Priority priority) {
+        lock.lock();
+        try {
+            return (priority == Priority.INTERACTIVE) ? interactive.size() : batch.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
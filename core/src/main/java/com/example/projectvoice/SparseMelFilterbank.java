@@ -0,0 +1,93 @@
+package com.example.projectvoice;
+
+/**
+ * Compact Mel filterbank storing only the nonzero span of each triangular filter.
+ *
+ * Each filter m covers spectrum bins [startBin[m], startBin[m] + length[m]) and its weights sit
+ * at weights[weightOffset[m] ...] in one contiguous array. Projecting a power spectrum touches
+ * only those weights, instead of nMel x NUM_SPECTRUM_BINS multiply-adds of which almost all are
+ * zero. Sums run in ascending bin order like the dense loop, so results are identical.
+ */
+public final class SparseMelFilterbank {
+
+    private final int numFilters;
+    private final int numBins;
+    private final int[] startBin;
+    private final int[] length;
+    private final int[] weightOffset;
+    private final float[] weights;
+
+    private SparseMelFilterbank(int numBins, int[] startBin, int[] length, int[] weightOffset, float[] weights) {
+        this.numFilters = startBin.length;
+        this.numBins = numBins;
+        this.startBin = startBin;
+        this.length = length;
+        this.weightOffset = weightOffset;
+        this.weights = weights;
+    }
+
+    /** Builds the sparse form of a dense [numFilters][numBins] filterbank. */
+    public static SparseMelFilterbank fromDense(float[][] dense) {
+        int numFilters = dense.length;
+        int numBins = numFilters > 0 ? dense[0].length : 0;
+        float[] flat = new float[numFilters * numBins];
+        for (int m = 0; m < numFilters; m++) {
+            System.arraycopy(dense[m], 0, flat, m * numBins, numBins);
+        }
+        return fromDense(flat, numFilters, numBins);
+    }
+
+    /** Builds the sparse form of a dense row-major [numFilters * numBins] filterbank. */
+    public static SparseMelFilterbank fromDense(float[] dense, int numFilters, int numBins) {
+        int[] startBin = new int[numFilters];
+        int[] length = new int[numFilters];
+        int[] weightOffset = new int[numFilters];
+        int total = 0;
+        for (int m = 0; m < numFilters; m++) {
+            int row = m * numBins;
+            int first = 0;
+            while (first < numBins && dense[row + first] == 0f) first++;
+            int last = numBins - 1;
+            while (last >= first && dense[row + last] == 0f) last--;
+            startBin[m] = (first < numBins) ? first : 0;
+            length[m] = Math.max(0, last - first + 1);
+            weightOffset[m] = total;
+            total += length[m];
+        }
+        float[] weights = new float[total];
+        for (int m = 0; m < numFilters; m++) {
+            System.arraycopy(dense, m * numBins + startBin[m], weights, weightOffset[m], length[m]);
+        }
+        return new SparseMelFilterbank(numBins, startBin, length, weightOffset, weights);
+    }
+
+    public int getNumFilters() {
+        return numFilters;
+    }
+
+    public int getNumBins() {
+        return numBins;
+    }
+
+    /** Total stored weights; the dense matrix would hold numFilters * numBins. */
+    public int getNonZeroCount() {
+        return weights.length;
+    }
+
+    /**
+     * Projects {@code powerSpectrum} onto every filter, writing linear Mel energies to
+     * {@code dst[dstOffset .. dstOffset + numFilters)}.
+     */
+    public void apply(float[] powerSpectrum, float[] dst, int dstOffset) {
+        for (int m = 0; m < numFilters; m++) {
+            float melEnergy = 0;
+            int w = weightOffset[m];
+            int k = startBin[m];
+            int end = k + length[m];
+            for (; k < end; k++, w++) {
+                melEnergy += powerSpectrum[k] * weights[w];
+            }
+            dst[dstOffset + m] = melEnergy;
+        }
+    }
+}
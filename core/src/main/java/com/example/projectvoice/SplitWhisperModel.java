@@ -0,0 +1,48 @@
+package com.example.projectvoice;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * A Whisper export split into an encoder and a single-token decoder step.
+ *
+ * The encoder runs once per 30 s window and writes the cross-attention keys/values for every
+ * decoder layer into {@code crossCache}. Each decoder step consumes one token at a position,
+ * reads the cross cache and the self-attention cache of all previous positions, and writes the
+ * updated self-attention cache plus the next-token logits. All buffers are owned and reused by
+ * {@link WhisperSession}; implementations must not retain or reallocate them.
+ */
+public interface SplitWhisperModel {
+
+    /** Model input shape for the log-Mel features, e.g. [1, 80, 3000]. */
+    int[] getInputShape();
+
+    int getVocabSize();
+
+    /** Decoder context length: the maximum number of positions the self cache can hold. */
+    int getMaxPositions();
+
+    int getCrossCacheBytes();
+
+    int getSelfCacheBytes();
+
+    /** Runs the encoder on {@code melInput} and writes cross-attention K/V into {@code crossCache}. */
+    void encode(ByteBuffer melInput, ByteBuffer crossCache);
+
+    /**
+     * Runs one decoder step.
+     *
+     * @param selfCacheIn  K/V for positions {@code [0, position)}.
+     * @param selfCacheOut Receives K/V for positions {@code [0, position]}; may not alias selfCacheIn.
+     * @param logits       Receives {@link #getVocabSize()} logits for the next token.
+     */
+    void decode(int token, int position, ByteBuffer crossCache, ByteBuffer selfCacheIn, ByteBuffer selfCacheOut, FloatBuffer logits);
+
+    /**
+     * Asks an {@link #encode} or {@link #decode} running on another thread to stop early (it then
+     * throws), and keeps later calls failing until cleared. Runtimes that cannot interrupt a graph
+     * ignore this; {@link WhisperSession} still stops between steps.
+     */
+    default void setCancelled(boolean cancelled) {
+    }
+}
@@ -0,0 +1,346 @@
+package com.example.projectvoice;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Incremental log-Mel frontend fed straight from the AudioRecord read loop.
+ *
+ * Only the last {@link AudioPreprocessor#FRAME_LENGTH} samples are kept in a ring; every time a
+ * {@link AudioPreprocessor#FRAME_SHIFT} hop completes, that frame is windowed, transformed and
+ * projected onto the Mel filterbank by the shared {@link MelSpectrogramEngine}. By the time
+ * recording stops all frames already exist and {@link #finish(FloatBuffer)} only has to
+ * normalize and lay them out. Frames are identical to
+ * {@link AudioPreprocessor#computeLogMel(float[], int)} over the same audio.
+ *
+ * accept/finish are synchronized: the thread feeding audio may still be draining its last read when
+ * the inference executor calls finish.
+ */
+public class StreamingMelFrontend {
+
+    /**
+     * Receives each log-Mel frame as soon as it is complete, as {@code nMel} values starting at
+     * {@code offset}. Called on the feeding thread; the array must not be retained.
+     */
+    public interface FrameListener {
+        void onFrame(int frameIndex, float[] logMel, int offset);
+    }
+
+    private static final int INITIAL_FRAME_CAPACITY = 512; // ~5 seconds
+
+    private final MelSpectrogramEngine engine;
+    private final int nMel;
+
+    // Overlap ring holding the most recent FRAME_LENGTH samples; ringPos is the oldest sample once full.
+    private final float[] ring = new float[AudioPreprocessor.FRAME_LENGTH];
+    private int ringPos = 0;
+    private long samplesReceived = 0;
+    private int samplesUntilNextFrame = AudioPreprocessor.FRAME_LENGTH;
+
+    // Odd trailing byte of a PCM chunk, completed by the next chunk.
+    private int pendingLowByte = -1;
+    private float[] conversion = new float[0];
+
+    // Frame-major log-Mel frames, [capacity * nMel], and their summaries, [capacity * SUMMARY_SIZE]
+    private float[] frames;
+    private float[] summaries;
+    private int numFrames = 0;
+    private boolean finished = false;
+
+    private FrameListener frameListener;
+    private VoiceActivityDetector voiceActivityDetector;
+    private TranscriptionMetrics.Utterance utterance = new TranscriptionMetrics.Utterance();
+
+    public StreamingMelFrontend(MelSpectrogramEngine engine) {
+        this.engine = engine;
+        this.nMel = engine.getMelCount();
+        this.frames = new float[INITIAL_FRAME_CAPACITY * nMel];
+        this.summaries = new float[INITIAL_FRAME_CAPACITY * MelSpectrogramEngine.SUMMARY_SIZE];
+    }
+
+    public synchronized void setFrameListener(FrameListener listener) {
+        this.frameListener = listener;
+    }
+
+    /**
+     * Feeds every frame's power spectrum to {@code detector} as it is computed. Set before the
+     * first sample arrives so the detector sees every frame.
+     */
+    public synchronized void setVoiceActivityDetector(VoiceActivityDetector detector) {
+        this.voiceActivityDetector = detector;
+    }
+
+    synchronized VoiceActivityDetector getVoiceActivityDetector() {
+        return voiceActivityDetector;
+    }
+
+    /**
+     * Stage timings of this take so far (PCM conversion, STFT, Mel projection); callers may add
+     * their own stages, e.g. {@link TranscriptionMetrics.Stage#CAPTURE_TO_STOP}.
+     */
+    public synchronized TranscriptionMetrics.Utterance getUtterance() {
+        return utterance;
+    }
+
+    synchronized void setUtterance(TranscriptionMetrics.Utterance utterance) {
+        this.utterance = utterance;
+    }
+
+    /**
+     * Feeds a chunk of 16-bit little-endian PCM as returned by AudioRecord.read(byte[], ...).
+     * Chunks may split a sample; the odd byte is carried over to the next call.
+     */
+    public synchronized void acceptPcm16(byte[] pcm, int offset, int length) {
+        checkNotFinished();
+        long start = System.nanoTime();
+        float[] samples = conversionScratch(length / 2 + 1);
+        int n = 0;
+        int i = offset;
+        int end = offset + length;
+        if (pendingLowByte >= 0 && i < end) {
+            samples[n++] = (short) ((pcm[i++] << 8) | pendingLowByte) / 32768.0f;
+            pendingLowByte = -1;
+        }
+        for (; i + 1 < end; i += 2) {
+            samples[n++] = (short) ((pcm[i + 1] << 8) | (pcm[i] & 0xFF)) / 32768.0f;
+        }
+        if (i < end) {
+            pendingLowByte = pcm[i] & 0xFF;
+        }
+        utterance.add(TranscriptionMetrics.Stage.PCM_CONVERSION, System.nanoTime() - start);
+        acceptSamples(samples, 0, n);
+    }
+
+    /**
+     * Feeds 16-bit PCM samples, e.g. segments handed out by a {@link PcmRingBuffer.Reader}. Each
+     * sample is converted as it goes into the overlap ring, without a float copy of the segment.
+     * The segment's time less the frames it completed (already recorded as {@code STFT} and
+     * {@code MEL_PROJECTION}) is recorded as {@code PCM_CONVERSION}; it also covers the ring
+     * stores and the voice activity detector's per-frame update.
+     */
+    public synchronized void accept(short[] pcm, int offset, int length) {
+        checkNotFinished();
+        long frameNanosBefore = frameNanos();
+        long start = System.nanoTime();
+        for (int i = offset; i < offset + length; i++) {
+            acceptSample(pcm[i] / 32768.0f);
+        }
+        long elapsed = System.nanoTime() - start;
+        utterance.add(TranscriptionMetrics.Stage.PCM_CONVERSION, Math.max(0L, elapsed - (frameNanos() - frameNanosBefore)));
+    }
+
+    private long frameNanos() {
+        return utterance.getNanos(TranscriptionMetrics.Stage.STFT) + utterance.getNanos(TranscriptionMetrics.Stage.MEL_PROJECTION);
+    }
+
+    /** Feeds normalized float samples in [-1.0, 1.0]. */
+    public synchronized void accept(float[] samples, int offset, int length) {
+        checkNotFinished();
+        acceptSamples(samples, offset, length);
+    }
+
+    /**
+     * Feeds a whole recording at once, its frames computed in parallel by {@code stft} (batch
+     * files, where nothing arrives while it runs). Must be the first input; afterwards the frontend
+     * is in the state streaming the same samples would have left it in, so it can be fed further.
+     */
+    public synchronized void acceptAll(ParallelStft.SampleSource source, ParallelStft stft) {
+        checkNotFinished();
+        if (samplesReceived != 0) {
+            throw new IllegalStateException("acceptAll must be the first input");
+        }
+        if (stft.getMelCount() != nMel) {
+            throw new IllegalArgumentException("ParallelStft computes " + stft.getMelCount() + " Mel bins, frontend has " + nMel);
+        }
+        int n = source.getSampleCount();
+        int count = AudioPreprocessor.numFrames(n);
+        if ((long) count * nMel > frames.length) {
+            frames = new float[count * nMel];
+            summaries = new float[count * MelSpectrogramEngine.SUMMARY_SIZE];
+        }
+        stft.compute(source, count, frames, summaries, voiceActivityDetector, utterance);
+        numFrames = count;
+
+        // Ring as acceptSample would have left it: sample i sits at i % FRAME_LENGTH
+        int tail = Math.min(n, AudioPreprocessor.FRAME_LENGTH);
+        float[] last = conversionScratch(tail);
+        source.read(n - tail, last, 0, tail);
+        for (int i = 0; i < tail; i++) {
+            ring[(n - tail + i) % AudioPreprocessor.FRAME_LENGTH] = last[i];
+        }
+        ringPos = n % AudioPreprocessor.FRAME_LENGTH;
+        samplesReceived = n;
+        samplesUntilNextFrame = (n < AudioPreprocessor.FRAME_LENGTH)
+                ? AudioPreprocessor.FRAME_LENGTH - n
+                : AudioPreprocessor.FRAME_SHIFT - (n - AudioPreprocessor.FRAME_LENGTH) % AudioPreprocessor.FRAME_SHIFT;
+
+        if (frameListener != null) {
+            for (int f = 0; f < numFrames; f++) {
+                frameListener.onFrame(f, frames, f * nMel);
+            }
+        }
+    }
+
+    // Sized to the largest chunk seen, so steady-state feeding does not allocate
+    private float[] conversionScratch(int length) {
+        if (conversion.length < length) {
+            conversion = new float[length];
+        }
+        return conversion;
+    }
+
+    private void acceptSamples(float[] samples, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            acceptSample(samples[i]);
+        }
+    }
+
+    private void acceptSample(float sample) {
+        ring[ringPos] = sample;
+        ringPos = (ringPos + 1) % AudioPreprocessor.FRAME_LENGTH;
+        samplesReceived++;
+        if (--samplesUntilNextFrame == 0) {
+            emitFrame();
+            samplesUntilNextFrame = AudioPreprocessor.FRAME_SHIFT;
+        }
+    }
+
+    private void emitFrame() {
+        if ((numFrames + 1) * nMel > frames.length) {
+            frames = Arrays.copyOf(frames, frames.length * 2);
+            summaries = Arrays.copyOf(summaries, summaries.length * 2);
+        }
+        int offset = numFrames * nMel;
+        engine.computeFrameFromRing(ring, ringPos, frames, offset);
+        System.arraycopy(engine.lastFrameSummary(), 0, summaries, numFrames * MelSpectrogramEngine.SUMMARY_SIZE,
+                MelSpectrogramEngine.SUMMARY_SIZE);
+        utterance.add(TranscriptionMetrics.Stage.STFT, engine.lastStftNanos());
+        utterance.add(TranscriptionMetrics.Stage.MEL_PROJECTION, engine.lastMelNanos());
+        if (voiceActivityDetector != null) {
+            voiceActivityDetector.acceptFrame(engine.lastPowerSpectrum());
+        }
+
+        if (frameListener != null) {
+            frameListener.onFrame(numFrames, frames, offset);
+        }
+        numFrames++;
+    }
+
+    private void checkNotFinished() {
+        if (finished) {
+            throw new IllegalStateException("StreamingMelFrontend already finished");
+        }
+    }
+
+    public synchronized long getSampleCount() {
+        return samplesReceived;
+    }
+
+    public synchronized int getFrameCount() {
+        return numFrames;
+    }
+
+    /** Returns a copy of a completed (un-normalized) log-Mel frame. */
+    public synchronized float[] getFrame(int frameIndex) {
+        if (frameIndex < 0 || frameIndex >= numFrames) {
+            throw new IndexOutOfBoundsException("Frame " + frameIndex + " of " + numFrames);
+        }
+        float[] frame = new float[nMel];
+        System.arraycopy(frames, frameIndex * nMel, frame, 0, nMel);
+        return frame;
+    }
+
+    /**
+     * Normalizes the collected frames into {@code out} (see
+     * {@link MelSpectrogramEngine#writeNormalized}). Further input is rejected.
+     *
+     * @return Number of frames written before padding.
+     * @throws IllegalArgumentException if fewer than FRAME_LENGTH samples were received.
+     */
+    public synchronized int finish(FloatBuffer out) {
+        return finish(out, 0, numFrames);
+    }
+
+    /**
+     * Speech span of the take so far according to the detector set with
+     * {@link #setVoiceActivityDetector}; all frames if there is none.
+     *
+     * @return The span, or null if no speech was detected (or no frame is complete yet).
+     */
+    public synchronized VoiceActivityDetector.Segment findSpeech() {
+        if (voiceActivityDetector == null) {
+            return numFrames > 0 ? new VoiceActivityDetector.Segment(0, numFrames) : null;
+        }
+        return voiceActivityDetector.findSpeech();
+    }
+
+    /**
+     * Like {@link #finish(FloatBuffer)} but normalizes only frames
+     * {@code [firstFrame, firstFrame + frameCount)}, e.g. the span from {@link #findSpeech()}.
+     * Trimmed silence no longer drags the mean/stddev down or fills the model window.
+     */
+    public synchronized int finish(FloatBuffer out, int firstFrame, int frameCount) {
+        checkNotFinished();
+        if (numFrames == 0) {
+            throw new IllegalArgumentException("Audio too short (" + samplesReceived + " samples) for STFT processing with frameLength=" + AudioPreprocessor.FRAME_LENGTH);
+        }
+        if (firstFrame < 0 || frameCount <= 0 || firstFrame + frameCount > numFrames) {
+            throw new IllegalArgumentException("Frames [" + firstFrame + ", " + (firstFrame + frameCount) + ") outside [0, " + numFrames + ")");
+        }
+        finished = true;
+        engine.writeNormalized(frames, summaries, firstFrame, frameCount, out);
+        return Math.min(frameCount, engine.getExpectedFrames());
+    }
+
+    /**
+     * Normalizes frames {@code [firstFrame, firstFrame + frameCount)} of the take so far into
+     * {@code out}, like {@link #finish(FloatBuffer, int, int)} but without ending the take, e.g.
+     * for live captions while audio keeps arriving. Feeding waits while this runs.
+     *
+     * @return Number of frames written before padding.
+     */
+    public int peek(FloatBuffer out, int firstFrame, int frameCount) {
+        return peek(engine, out, firstFrame, frameCount);
+    }
+
+    /**
+     * Same as {@link #peek(FloatBuffer, int, int)} in the input layout and length of
+     * {@code target}, e.g. a shorter input from {@link MelSpectrogramEngine#withExpectedFrames}.
+     */
+    public synchronized int peek(MelSpectrogramEngine target, FloatBuffer out, int firstFrame, int frameCount) {
+        if (firstFrame < 0 || frameCount <= 0 || firstFrame + frameCount > numFrames) {
+            throw new IllegalArgumentException("Frames [" + firstFrame + ", " + (firstFrame + frameCount) + ") outside [0, " + numFrames + ")");
+        }
+        target.writeNormalized(frames, summaries, firstFrame, frameCount, out);
+        return Math.min(frameCount, target.getExpectedFrames());
+    }
+
+    /** Same as {@link #peek(MelSpectrogramEngine, FloatBuffer, int, int)} in {@code target}'s {@link TensorEncoding}. */
+    public synchronized int peek(MelSpectrogramEngine target, ByteBuffer out, int firstFrame, int frameCount) {
+        if (firstFrame < 0 || frameCount <= 0 || firstFrame + frameCount > numFrames) {
+            throw new IllegalArgumentException("Frames [" + firstFrame + ", " + (firstFrame + frameCount) + ") outside [0, " + numFrames + ")");
+        }
+        target.writeNormalized(frames, summaries, firstFrame, frameCount, out);
+        return Math.min(frameCount, target.getExpectedFrames());
+    }
+
+    /**
+     * Ends the take and hands out the frame-major frames themselves, valid for
+     * {@link #getFrameCount()} frames, for callers that normalize several ranges (see
+     * {@link LongFormTranscriber}). Further input is rejected, so the array no longer changes.
+     */
+    public synchronized float[] finishFrames() {
+        checkNotFinished();
+        finished = true;
+        return frames;
+    }
+
+    /**
+     * Per-frame summaries matching {@link #finishFrames()} (see
+     * {@link MelSpectrogramEngine#lastFrameSummary()}); call after it.
+     */
+    synchronized float[] getFrameSummaries() {
+        return summaries;
+    }
+}
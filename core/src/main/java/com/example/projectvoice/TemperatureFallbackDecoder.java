@@ -0,0 +1,120 @@
+package com.example.projectvoice;
+
+import java.util.Random;
+import java.util.zip.Deflater;
+
+/**
+ * Whisper's temperature fallback: decode deterministically first, and if the result looks like
+ * a failure (mean log-probability below a threshold, or text that compresses too well, which is
+ * how repetition loops show up) decode again by sampling at increasing temperatures. The last
+ * attempt is kept if none passes.
+ *
+ * The compression check needs the {@link TokenTable} to turn ids back into text; without one
+ * only the log-probability check applies.
+ */
+public class TemperatureFallbackDecoder implements WhisperDecoder {
+
+    public static final float[] DEFAULT_TEMPERATURES = { 0.2f, 0.4f, 0.6f, 0.8f, 1.0f };
+    public static final float DEFAULT_LOG_PROB_THRESHOLD = -1.0f;
+    public static final float DEFAULT_COMPRESSION_RATIO_THRESHOLD = 2.4f;
+
+    private final WhisperDecoder initial;
+    private final GreedyDecoder[] fallbacks;
+    private final TokenTable tokenTable;
+    private final float logProbThreshold;
+    private final float compressionRatioThreshold;
+
+    private final TokenTable.TextBuffer text = new TokenTable.TextBuffer();
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private final byte[] deflated = new byte[1024];
+
+    private float lastAverageLogProb = Float.NaN;
+    private float lastCompressionRatio = Float.NaN;
+    private float lastTemperature = Float.NaN;
+    private int lastAttempts = 0;
+
+    /** Default Whisper thresholds and temperatures on top of {@code initial}. */
+    public TemperatureFallbackDecoder(WhisperDecoder initial, TokenTable tokenTable, long seed) {
+        this(initial, tokenTable, DEFAULT_TEMPERATURES, DEFAULT_LOG_PROB_THRESHOLD, DEFAULT_COMPRESSION_RATIO_THRESHOLD, new Random(seed));
+    }
+
+    /**
+     * @param initial      Temperature-0 decoder tried first (greedy or beam search).
+     * @param tokenTable   Used for the compression-ratio check; may be null to skip it.
+     * @param temperatures Ascending sampling temperatures for the retries.
+     */
+    public TemperatureFallbackDecoder(WhisperDecoder initial, TokenTable tokenTable, float[] temperatures,
+                                      float logProbThreshold, float compressionRatioThreshold, Random random) {
+        this.initial = initial;
+        this.tokenTable = tokenTable;
+        this.logProbThreshold = logProbThreshold;
+        this.compressionRatioThreshold = compressionRatioThreshold;
+        this.fallbacks = new GreedyDecoder[temperatures.length];
+        for (int i = 0; i < temperatures.length; i++) {
+            fallbacks[i] = new GreedyDecoder(temperatures[i], random);
+        }
+    }
+
+    /** The window is encoded once; every retry only reruns the decoder against its cross cache. */
+    @Override
+    public int decodeWindow(WhisperSession session, int[] prompt, int endOfText, int[] out) {
+        int count = 0;
+        for (int attempt = 0; attempt <= fallbacks.length; attempt++) {
+            WhisperDecoder decoder = (attempt == 0) ? initial : fallbacks[attempt - 1];
+            count = decoder.decodeWindow(session, prompt, endOfText, out);
+            lastAverageLogProb = decoder.getLastAverageLogProb();
+            lastCompressionRatio = compressionRatio(out, count);
+            lastTemperature = (attempt == 0) ? 0f : fallbacks[attempt - 1].getTemperature();
+            lastAttempts = attempt + 1;
+            if (!needsFallback()) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    private boolean needsFallback() {
+        return lastAverageLogProb < logProbThreshold
+                || (!Float.isNaN(lastCompressionRatio) && lastCompressionRatio > compressionRatioThreshold);
+    }
+
+    // UTF-8 length over deflated length, as Whisper computes it with zlib; NaN without a token table
+    private float compressionRatio(int[] tokens, int count) {
+        if (tokenTable == null) {
+            return Float.NaN;
+        }
+        text.clear();
+        tokenTable.decode(tokens, 0, count, text);
+        if (text.length() == 0) {
+            return 0f;
+        }
+        deflater.reset();
+        deflater.setInput(text.data(), 0, text.length());
+        deflater.finish();
+        int compressed = 0;
+        while (!deflater.finished()) {
+            compressed += deflater.deflate(deflated);
+        }
+        return (float) text.length() / compressed;
+    }
+
+    @Override
+    public float getLastAverageLogProb() {
+        return lastAverageLogProb;
+    }
+
+    /** Compression ratio of the last result's text, or NaN without a token table. */
+    public float getLastCompressionRatio() {
+        return lastCompressionRatio;
+    }
+
+    /** Temperature of the attempt that produced the last result. */
+    public float getLastTemperature() {
+        return lastTemperature;
+    }
+
+    /** Decoding passes the last call needed, 1 if the first was accepted. */
+    public int getLastAttempts() {
+        return lastAttempts;
+    }
+}
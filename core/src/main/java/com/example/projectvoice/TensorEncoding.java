@@ -0,0 +1,204 @@
+package com.example.projectvoice;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * How real values are stored in a model tensor: float32, IEEE half floats, or 8-bit integers with
+ * an affine quantization {@code real = scale * (q - zeroPoint)}.
+ *
+ * {@link MelSpectrogramEngine} encodes each normalized value as it writes the model input, so an
+ * int8 or FP16 export gets its input without a float32 copy first. On the output side
+ * {@link #get} and {@link #dequantize} read logits back as floats. Buffers are read and written
+ * in their own byte order; the engine's input buffers and TFLite's tensors are native order.
+ */
+public final class TensorEncoding {
+
+    public enum Type {
+        FLOAT32(4),
+        FLOAT16(2),
+        INT8(1),
+        UINT8(1);
+
+        final int bytes;
+
+        Type(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    public static final TensorEncoding FLOAT32 = new TensorEncoding(Type.FLOAT32, 1f, 0);
+    public static final TensorEncoding FLOAT16 = new TensorEncoding(Type.FLOAT16, 1f, 0);
+
+    private final Type type;
+    private final float scale;
+    private final int zeroPoint;
+    private final float inverseScale;
+    private final int minQuantized;
+    private final int maxQuantized;
+
+    private TensorEncoding(Type type, float scale, int zeroPoint) {
+        this.type = type;
+        this.scale = scale;
+        this.zeroPoint = zeroPoint;
+        this.inverseScale = 1f / scale;
+        this.minQuantized = (type == Type.UINT8) ? 0 : Byte.MIN_VALUE;
+        this.maxQuantized = (type == Type.UINT8) ? 255 : Byte.MAX_VALUE;
+    }
+
+    /** Signed 8-bit values; {@code scale} and {@code zeroPoint} as reported for the tensor. */
+    public static TensorEncoding int8(float scale, int zeroPoint) {
+        return quantized(Type.INT8, scale, zeroPoint);
+    }
+
+    /** Unsigned 8-bit values; {@code scale} and {@code zeroPoint} as reported for the tensor. */
+    public static TensorEncoding uint8(float scale, int zeroPoint) {
+        return quantized(Type.UINT8, scale, zeroPoint);
+    }
+
+    private static TensorEncoding quantized(Type type, float scale, int zeroPoint) {
+        if (!(scale > 0f) || Float.isInfinite(scale)) {
+            throw new IllegalArgumentException("Quantization scale must be positive and finite: " + scale);
+        }
+        TensorEncoding encoding = new TensorEncoding(type, scale, zeroPoint);
+        if (zeroPoint < encoding.minQuantized || zeroPoint > encoding.maxQuantized) {
+            throw new IllegalArgumentException("Zero point " + zeroPoint + " outside the " + type + " range");
+        }
+        return encoding;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /** 1 for unquantized types. */
+    public float getScale() {
+        return scale;
+    }
+
+    /** 0 for unquantized types. */
+    public int getZeroPoint() {
+        return zeroPoint;
+    }
+
+    public int getBytesPerValue() {
+        return type.bytes;
+    }
+
+    public boolean isQuantized() {
+        return type == Type.INT8 || type == Type.UINT8;
+    }
+
+    /**
+     * Encodes {@code values[offset, offset + count)} into {@code out} at its position and advances
+     * it. Quantized values are rounded to nearest and saturate at the type's range.
+     */
+    public void put(float[] values, int offset, int count, ByteBuffer out) {
+        int end = offset + count;
+        switch (type) {
+            case FLOAT32:
+                for (int i = offset; i < end; i++) out.putFloat(values[i]);
+                break;
+            case FLOAT16:
+                for (int i = offset; i < end; i++) out.putShort(floatToHalf(values[i]));
+                break;
+            default:
+                for (int i = offset; i < end; i++) out.put((byte) quantize(values[i]));
+                break;
+        }
+    }
+
+    /** Value {@code index} of {@code buffer} (counted in values, from 0), decoded; an absolute read. */
+    public float get(ByteBuffer buffer, int index) {
+        switch (type) {
+            case FLOAT32:
+                return buffer.getFloat(index * 4);
+            case FLOAT16:
+                return halfToFloat(buffer.getShort(index * 2));
+            case UINT8:
+                return scale * ((buffer.get(index) & 0xff) - zeroPoint);
+            default:
+                return scale * (buffer.get(index) - zeroPoint);
+        }
+    }
+
+    /**
+     * Decodes {@code count} values of {@code src} starting at value {@code offset} into
+     * {@code dst} at its position, advancing it; {@code src} is read with absolute gets.
+     */
+    public void dequantize(ByteBuffer src, int offset, FloatBuffer dst, int count) {
+        for (int i = 0; i < count; i++) {
+            dst.put(get(src, offset + i));
+        }
+    }
+
+    private int quantize(float value) {
+        int q = Math.round(value * inverseScale) + zeroPoint;
+        return (q < minQuantized) ? minQuantized : (q > maxQuantized) ? maxQuantized : q;
+    }
+
+    /** Nearest IEEE 754 half to {@code value}, ties to even; overflow gives infinity. */
+    static short floatToHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xff) - 127 + 15;
+        int mantissa = bits & 0x7fffff;
+        if (exponent == 0xff - 127 + 15) {
+            return (short) (sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0)); // Infinity or NaN
+        }
+        if (exponent >= 0x1f) {
+            return (short) (sign | 0x7c00);
+        }
+        if (exponent <= 0) {
+            // Subnormal half: the full significand shifted into 10 bits
+            if (exponent < -10) {
+                return (short) sign;
+            }
+            int significand = mantissa | 0x800000;
+            int shift = 14 - exponent;
+            int half = significand >> shift;
+            int rest = significand & ((1 << shift) - 1);
+            int middle = 1 << (shift - 1);
+            if (rest > middle || (rest == middle && (half & 1) != 0)) half++;
+            return (short) (sign | half);
+        }
+        int half = (exponent << 10) | (mantissa >> 13);
+        int rest = mantissa & 0x1fff;
+        if (rest > 0x1000 || (rest == 0x1000 && (half & 1) != 0)) half++; // A carry rounds up into the exponent
+        return (short) (sign | half);
+    }
+
+    static float halfToFloat(short half) {
+        int bits = half & 0xffff;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1f;
+        int mantissa = bits & 0x3ff;
+        if (exponent == 0x1f) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+        if (exponent == 0) {
+            float subnormal = mantissa * 0x1p-24f;
+            return (sign != 0) ? -subnormal : subnormal;
+        }
+        return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof TensorEncoding)) {
+            return false;
+        }
+        TensorEncoding other = (TensorEncoding) o;
+        return type == other.type && Float.compare(scale, other.scale) == 0 && zeroPoint == other.zeroPoint;
+    }
+
+    @Override
+    public int hashCode() {
+        return (type.hashCode() * 31 + Float.floatToIntBits(scale)) * 31 + zeroPoint;
+    }
+
+    @Override
+    public String toString() {
+        return isQuantized() ? type + "(scale " + scale + ", zero point " + zeroPoint + ")" : type.toString();
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.projectvoice;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Dense token-id to bytes table for decoding Whisper output.
+ *
+ * All token bytes live in one array indexed by {@code offsets[id] .. offsets[id + 1]}; special
+ * tokens ({@code <|...|>} and empty entries in the vocabulary) are flagged in a BitSet and every id
+ * from {@link #getEndOfText()} upwards (start-of-transcript, language, task and timestamp tokens)
+ * is special too. whisper.cpp vocabularies store raw byte-level BPE pieces, so concatenating the
+ * bytes of a token sequence and decoding UTF-8 once reconstructs the text exactly, including
+ * characters split across tokens.
+ */
+public final class TokenTable {
+
+    /** Seconds per timestamp token step. */
+    public static final float TIMESTAMP_STEP_SECONDS = 0.02f;
+
+    // Offsets from <|startoftranscript|> in the whisper.cpp token layout
+    private static final int SOT_TO_ENGLISH = 1;
+    private static final int SOT_TO_TRANSLATE = 100;
+    private static final int SOT_TO_TRANSCRIBE = 101;
+    private static final int SOT_TO_NO_TIMESTAMPS = 105;
+    private static final int SOT_TO_TIMESTAMP_BEGIN = 106;
+
+    private final byte[] bytes;
+    private final int[] offsets; // tokenCount + 1 entries
+    private final BitSet special;
+    private final int endOfText;
+
+    private TokenTable(byte[] bytes, int[] offsets, BitSet special, int endOfText) {
+        this.bytes = bytes;
+        this.offsets = offsets;
+        this.special = special;
+        this.endOfText = endOfText;
+    }
+
+    /** Copies the pack's tokens into a compact table (one pass, no per-token objects). */
+    public static TokenTable fromAssetPack(WhisperAssetPack pack) {
+        int count = pack.getTokenCount();
+        int[] offsets = new int[count + 1];
+        for (int id = 0; id < count; id++) {
+            offsets[id + 1] = offsets[id] + pack.tokenLength(id);
+        }
+        byte[] bytes = new byte[offsets[count]];
+        for (int id = 0; id < count; id++) {
+            pack.copyToken(id, bytes, offsets[id]);
+        }
+        return fromBytes(bytes, offsets);
+    }
+
+    /**
+     * @param bytes   Concatenated raw token bytes.
+     * @param offsets tokenCount + 1 ascending offsets into {@code bytes}.
+     */
+    public static TokenTable fromBytes(byte[] bytes, int[] offsets) {
+        int count = offsets.length - 1;
+        BitSet special = new BitSet(count);
+        for (int id = 0; id < count; id++) {
+            int start = offsets[id];
+            int length = offsets[id + 1] - start;
+            if (length == 0 || (length >= 4 && bytes[start] == '<' && bytes[start + 1] == '|'
+                    && bytes[start + length - 2] == '|' && bytes[start + length - 1] == '>')) {
+                special.set(id);
+            }
+        }
+        // English-only vocabularies end with <|endoftext|>; multilingual ones place it right after.
+        int endOfText = (count > 0 && isEndOfText(bytes, offsets[count - 1], offsets[count])) ? count - 1 : count;
+        return new TokenTable(bytes, offsets, special, endOfText);
+    }
+
+    private static boolean isEndOfText(byte[] bytes, int start, int end) {
+        byte[] eot = "<|endoftext|>".getBytes(StandardCharsets.US_ASCII);
+        if (end - start != eot.length) return false;
+        for (int i = 0; i < eot.length; i++) {
+            if (bytes[start + i] != eot[i]) return false;
+        }
+        return true;
+    }
+
+    /** Number of tokens with stored bytes. */
+    public int getTokenCount() {
+        return offsets.length - 1;
+    }
+
+    public int getEndOfText() {
+        return endOfText;
+    }
+
+    /** Multilingual vocabularies place special tokens after the stored tokens; English-only ones end with them. */
+    public boolean isMultilingual() {
+        return endOfText == getTokenCount();
+    }
+
+    public int getStartOfTranscript() {
+        return endOfText + 1;
+    }
+
+    public int getTranslate() {
+        return getStartOfTranscript() + SOT_TO_TRANSLATE;
+    }
+
+    public int getTranscribe() {
+        return getStartOfTranscript() + SOT_TO_TRANSCRIBE;
+    }
+
+    public int getNoTimestamps() {
+        return getStartOfTranscript() + SOT_TO_NO_TIMESTAMPS;
+    }
+
+    /**
+     * Decoder prompt for English transcription: {@code <|startoftranscript|>}, then
+     * {@code <|en|> <|transcribe|>} for multilingual vocabularies, then {@code <|notimestamps|>}
+     * unless {@code timestamps} is set.
+     */
+    public int[] transcribePrompt(boolean timestamps) {
+        int sot = getStartOfTranscript();
+        int[] prompt = isMultilingual()
+                ? new int[] { sot, sot + SOT_TO_ENGLISH, getTranscribe(), getNoTimestamps() }
+                : new int[] { sot, getNoTimestamps() };
+        return timestamps ? Arrays.copyOf(prompt, prompt.length - 1) : prompt;
+    }
+
+    /** First timestamp token, {@code <|0.00|>}. */
+    public int getTimestampBegin() {
+        return getStartOfTranscript() + SOT_TO_TIMESTAMP_BEGIN;
+    }
+
+    public boolean isSpecial(int id) {
+        return id < 0 || id >= endOfText || special.get(id);
+    }
+
+    public boolean isTimestamp(int id) {
+        return id >= getTimestampBegin();
+    }
+
+    public float timestampSeconds(int id) {
+        return (id - getTimestampBegin()) * TIMESTAMP_STEP_SECONDS;
+    }
+
+    /** Raw bytes of a token; 0 for ids outside the table. */
+    public int tokenLength(int id) {
+        return (id >= 0 && id < offsets.length - 1) ? offsets[id + 1] - offsets[id] : 0;
+    }
+
+    /**
+     * Appends the bytes of {@code id} to {@code out} unless it is special.
+     *
+     * @return true if text was appended.
+     */
+    public boolean append(int id, TextBuffer out) {
+        if (isSpecial(id)) {
+            return false;
+        }
+        int start = offsets[id];
+        out.append(bytes, start, offsets[id + 1] - start);
+        return true;
+    }
+
+    /** Appends the text tokens of {@code ids[offset .. offset + count)} to {@code out}. */
+    public void decode(int[] ids, int offset, int count, TextBuffer out) {
+        for (int i = offset; i < offset + count; i++) {
+            append(ids[i], out);
+        }
+    }
+
+    /** Approximate heap footprint of the table in bytes. */
+    public long getFootprintBytes() {
+        return bytes.length + 4L * offsets.length + special.size() / 8;
+    }
+
+    /**
+     * Reusable UTF-8 byte accumulator. Grows only when a longer transcript than any before is
+     * decoded, so steady-state decoding allocates nothing until {@link #toString()}.
+     */
+    public static final class TextBuffer {
+        private byte[] data;
+        private int length;
+
+        public TextBuffer() {
+            this(256);
+        }
+
+        public TextBuffer(int initialCapacity) {
+            data = new byte[Math.max(16, initialCapacity)];
+        }
+
+        public void clear() {
+            length = 0;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        /** Backing array; only the first {@link #length()} bytes are valid. */
+        byte[] data() {
+            return data;
+        }
+
+        void append(byte[] src, int offset, int count) {
+            if (length + count > data.length) {
+                byte[] grown = new byte[Math.max(data.length * 2, length + count)];
+                System.arraycopy(data, 0, grown, 0, length);
+                data = grown;
+            }
+            System.arraycopy(src, offset, data, length, count);
+            length += count;
+        }
+
+        /** Decodes the accumulated bytes; malformed sequences become U+FFFD. */
+        @Override
+        public String toString() {
+            return new String(data, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
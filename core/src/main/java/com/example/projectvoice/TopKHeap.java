@@ -0,0 +1,102 @@
+package com.example.projectvoice;
+
+/**
+ * Bounded min-heap of (score, a, b) triples in parallel primitive arrays.
+ *
+ * Keeps the {@code capacity} highest scores seen since {@link #clear()}. Offers below the current
+ * minimum of a full heap are rejected with a single comparison, so streaming a whole vocabulary
+ * through it costs one compare per entry plus O(log k) for the rare survivors; nothing is boxed
+ * or sorted beyond the k kept entries.
+ */
+final class TopKHeap {
+
+    private final float[] scores;
+    private final int[] as;
+    private final int[] bs;
+    private int size;
+
+    TopKHeap(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be >= 1: " + capacity);
+        }
+        scores = new float[capacity];
+        as = new int[capacity];
+        bs = new int[capacity];
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return scores.length;
+    }
+
+    /** Lowest kept score, or -infinity while the heap is not full (anything is accepted). */
+    float threshold() {
+        return size < scores.length ? Float.NEGATIVE_INFINITY : scores[0];
+    }
+
+    /** @return true if the entry was kept. */
+    boolean offer(float score, int a, int b) {
+        if (size < scores.length) {
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (scores[parent] <= score) break;
+                set(i, scores[parent], as[parent], bs[parent]);
+                i = parent;
+            }
+            set(i, score, a, b);
+            return true;
+        }
+        if (!(score > scores[0])) {
+            return false;
+        }
+        siftDown(score, a, b);
+        return true;
+    }
+
+    // Replaces the root with (score, a, b) and restores the heap order
+    private void siftDown(float score, int a, int b) {
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && scores[child + 1] < scores[child]) child++;
+            if (scores[child] >= score) break;
+            set(i, scores[child], as[child], bs[child]);
+            i = child;
+        }
+        set(i, score, a, b);
+    }
+
+    private void set(int i, float score, int a, int b) {
+        scores[i] = score;
+        as[i] = a;
+        bs[i] = b;
+    }
+
+    /**
+     * Empties the heap into the given arrays in descending score order.
+     *
+     * @return Number of entries written.
+     */
+    int drainDescending(float[] outScores, int[] outA, int[] outB) {
+        int count = size;
+        while (size > 0) {
+            int last = --size;
+            outScores[last] = scores[0];
+            outA[last] = as[0];
+            outB[last] = bs[0];
+            if (size > 0) {
+                siftDown(scores[size], as[size], bs[size]);
+            }
+        }
+        return count;
+    }
+}
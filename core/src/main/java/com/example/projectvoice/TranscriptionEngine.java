@@ -0,0 +1,345 @@
+package com.example.projectvoice;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Audio-to-text path with no Android dependency: log-Mel features and voice activity detection,
+ * window planning and normalization ({@link LongFormTranscriber}), model inference through a
+ * {@link Backend}, and stitching and decoding of the token streams.
+ *
+ * The app feeds a {@link StreamingMelFrontend} while recording and hands it over once the take
+ * ends; offline tools call {@link #transcribe(WavReader)}. Takes that fit one window are decoded
+ * without timestamps; longer ones ask for timestamps, which is what the windows are stitched on.
+ * Without a backend (e.g. on a JVM with no model runtime) the engine still computes and times
+ * everything up to inference and returns no text. Every take's per-stage timings come back in
+ * {@link Result#utterance} and, if the engine has one, go into a shared {@link TranscriptionMetrics}.
+ *
+ * Encoder cost grows with the input length, not with the speech in it, so a model may come in
+ * shorter-input variants too ({@link #addLengthBucket}): a take whose speech fits one goes to the
+ * shortest that fits instead of being padded to the full window.
+ *
+ * An engine and its backend belong to one thread at a time; run one engine per worker.
+ */
+public class TranscriptionEngine {
+
+    /** Runs the model on one window of normalized features. */
+    public interface Backend {
+        /**
+         * @param input  Normalized features in the model layout (rewound, native order).
+         * @param prompt Decoder prompt; graphs that bake in their own prompt may ignore it.
+         * @param out    Receives the generated ids (text and timestamps), without end-of-text.
+         * @return Number of ids written.
+         */
+        int decode(ByteBuffer input, int[] prompt, int[] out) throws Exception;
+
+        /**
+         * Asks a {@link #decode} running on another thread to stop at the next opportunity and
+         * keeps later calls failing until cleared; see {@link TranscriptionEngine#setCancelled}.
+         */
+        default void setCancelled(boolean cancelled) {
+        }
+    }
+
+    /** Outcome and timings of one take. */
+    public static final class Result {
+        /** Decoded text; null when the engine has no backend. Empty when there was no speech. */
+        public final String text;
+        public final float audioSeconds;
+        /** Frames that went to the model; null if no speech was detected. */
+        public final VoiceActivityDetector.Segment speech;
+        public final int windowCount;
+        /** Frames of the model input used, i.e. of the length bucket the speech went to. */
+        public final int inputFrames;
+        /** Mel frames (when computed by the engine) plus normalization. */
+        public final long featureNanos;
+        public final long inferenceNanos;
+        public final long totalNanos;
+        /** Per-stage timings and allocation of this take. */
+        public final TranscriptionMetrics.Utterance utterance;
+
+        Result(String text, float audioSeconds, VoiceActivityDetector.Segment speech, int windowCount, int inputFrames,
+               long featureNanos, long inferenceNanos, long totalNanos, TranscriptionMetrics.Utterance utterance) {
+            this.text = text;
+            this.audioSeconds = audioSeconds;
+            this.speech = speech;
+            this.windowCount = windowCount;
+            this.inputFrames = inputFrames;
+            this.featureNanos = featureNanos;
+            this.inferenceNanos = inferenceNanos;
+            this.totalNanos = totalNanos;
+            this.utterance = utterance;
+        }
+
+        /** Wall time over audio duration; below 1 is faster than real time. */
+        public float realTimeFactor() {
+            return audioSeconds > 0 ? (totalNanos / 1e9f) / audioSeconds : 0f;
+        }
+    }
+
+    // One model input length with its backend; the full-length one is the engine's own
+    private static final class Bucket {
+        final MelSpectrogramEngine melEngine;
+        final Backend backend;
+        final LongFormTranscriber transcriber;
+        ByteBuffer partialInput; // Lazily allocated for decodePartial
+
+        Bucket(MelSpectrogramEngine melEngine, Backend backend, ExecutorService featureExecutor, TokenTable tokenTable) {
+            this.melEngine = melEngine;
+            this.backend = backend;
+            // Shorter inputs only ever see one window, so the overlap just has to be valid
+            int overlap = Math.min(LongFormTranscriber.DEFAULT_OVERLAP_FRAMES, (melEngine.getExpectedFrames() - 1) / 2);
+            this.transcriber = new LongFormTranscriber(melEngine, tokenTable, featureExecutor, overlap,
+                    LongFormTranscriber.DEFAULT_PAUSE_SEARCH_FRAMES);
+        }
+
+        int frames() {
+            return melEngine.getExpectedFrames();
+        }
+    }
+
+    private final MelSpectrogramEngine melEngine;
+    private final TokenTable tokenTable;
+    private final Backend backend;
+    private final ExecutorService featureExecutor;
+    private final List<Bucket> buckets = new ArrayList<>(); // By input length; the full-length input last
+    private final TranscriptionMetrics metrics;
+    private volatile ParallelStft parallelStft;
+    private volatile boolean cancelled;
+
+    public TranscriptionEngine(MelSpectrogramEngine melEngine, TokenTable tokenTable, Backend backend, ExecutorService featureExecutor) {
+        this(melEngine, tokenTable, backend, featureExecutor, null);
+    }
+
+    /**
+     * @param backend         Model inference, or null to stop after feature preparation.
+     * @param featureExecutor Prepares the next window's features during inference; caller-owned.
+     * @param metrics         Histograms every take is recorded into (may be shared by engines), or null.
+     */
+    public TranscriptionEngine(MelSpectrogramEngine melEngine, TokenTable tokenTable, Backend backend, ExecutorService featureExecutor,
+                               TranscriptionMetrics metrics) {
+        this.melEngine = melEngine;
+        this.tokenTable = tokenTable;
+        this.backend = backend;
+        this.featureExecutor = featureExecutor;
+        this.metrics = metrics;
+        buckets.add(new Bucket(melEngine, backend, featureExecutor, tokenTable));
+    }
+
+    /**
+     * Adds a shorter model input of {@code frames} frames, e.g. an encoder resized to it or a
+     * model exported for it, whose {@code backend} takes speech that fits it (without timestamps,
+     * like any single-window take). Call before the engine is used.
+     *
+     * @throws IllegalArgumentException if {@code frames} is not below the full input length, or
+     *                                  already has a bucket.
+     */
+    public void addLengthBucket(int frames, Backend backend) {
+        if (backend == null) {
+            throw new IllegalArgumentException("Length bucket needs a backend");
+        }
+        if (frames <= 0 || frames >= melEngine.getExpectedFrames()) {
+            throw new IllegalArgumentException("Bucket of " + frames + " frames is not shorter than the "
+                    + melEngine.getExpectedFrames() + "-frame input");
+        }
+        int index = 0;
+        while (buckets.get(index).frames() < frames) index++;
+        if (buckets.get(index).frames() == frames) {
+            throw new IllegalArgumentException("Already have a bucket of " + frames + " frames");
+        }
+        buckets.add(index, new Bucket(melEngine.withExpectedFrames(frames), backend, featureExecutor, tokenTable));
+    }
+
+    /** Input lengths takes can go to, shortest first; the last is the full window. */
+    public int[] getLengthBucketFrames() {
+        int[] frames = new int[buckets.size()];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = buckets.get(i).frames();
+        }
+        return frames;
+    }
+
+    // Shortest input that holds frameCount frames; the full one for anything longer
+    private Bucket bucketFor(int frameCount) {
+        for (Bucket bucket : buckets) {
+            if (frameCount <= bucket.frames()) return bucket;
+        }
+        return buckets.get(buckets.size() - 1);
+    }
+
+    /** Backend for split encoder/decoder models: encode once per window, then decode token by token. */
+    public static Backend sessionBackend(final WhisperSession session, final WhisperDecoder decoder, final int endOfText) {
+        return new Backend() {
+            @Override
+            public int decode(ByteBuffer input, int[] prompt, int[] out) {
+                return decoder.decode(session, input, prompt, endOfText, out);
+            }
+
+            @Override
+            public void setCancelled(boolean cancelled) {
+                session.setCancelled(cancelled); // Between decoder steps, and inside the interpreter
+            }
+        };
+    }
+
+    public boolean hasBackend() {
+        return backend != null;
+    }
+
+    public MelSpectrogramEngine getMelEngine() {
+        return melEngine;
+    }
+
+    /**
+     * Computes the frames of files passed to {@link #transcribe(WavReader)} on {@code stft}'s pool
+     * instead of streaming them through the calling thread; null to stream. May be shared by engines.
+     */
+    public void setParallelStft(ParallelStft stft) {
+        this.parallelStft = stft;
+    }
+
+    /**
+     * Cancels the take being transcribed, possibly from another thread: it stops before its next
+     * window, or at its backend's next decoder step, with a {@link CancellationException}. Takes
+     * keep failing that way until {@code setCancelled(false)}; see {@link TranscriptionScheduler}.
+     */
+    public void setCancelled(boolean cancelled) {
+        this.cancelled = cancelled;
+        for (Bucket bucket : buckets) {
+            if (bucket.backend != null) {
+                bucket.backend.setCancelled(cancelled);
+            }
+        }
+    }
+
+    /** Null if takes are not being recorded. */
+    public TranscriptionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /** A frontend with voice activity detection, ready to be fed and passed to {@link #transcribe(StreamingMelFrontend)}. */
+    public StreamingMelFrontend newFrontend() {
+        StreamingMelFrontend frontend = new StreamingMelFrontend(melEngine);
+        frontend.setVoiceActivityDetector(new VoiceActivityDetector());
+        if (metrics != null) {
+            frontend.setUtterance(metrics.newUtterance()); // Allocation is counted from here
+        }
+        return frontend;
+    }
+
+    /**
+     * Transcribes a WAV file (16 kHz, see {@link WavReader#feed}), with parallel frames if
+     * {@link #setParallelStft} was given a pool.
+     *
+     * @throws ExecutionException if feature preparation or the backend failed.
+     */
+    public Result transcribe(WavReader wav) throws IOException, ExecutionException, InterruptedException {
+        long start = System.nanoTime();
+        StreamingMelFrontend frontend = newFrontend();
+        ParallelStft stft = parallelStft;
+        if (stft != null) {
+            wav.feed(frontend, stft);
+        } else {
+            wav.feed(frontend);
+        }
+        return transcribe(frontend, start, System.nanoTime() - start);
+    }
+
+    /**
+     * Transcribes the take collected by {@code frontend} (see {@link #newFrontend()}); the
+     * frontend is finished afterwards.
+     *
+     * @throws ExecutionException if feature preparation or the backend failed.
+     * @throws CancellationException if {@link #setCancelled} stopped it.
+     */
+    public Result transcribe(StreamingMelFrontend frontend) throws ExecutionException, InterruptedException {
+        return transcribe(frontend, System.nanoTime(), 0L);
+    }
+
+    private Result transcribe(StreamingMelFrontend frontend, long start, long frontendNanos)
+            throws ExecutionException, InterruptedException {
+        float audioSeconds = frontend.getSampleCount() / (float) AudioPreprocessor.SAMPLE_RATE;
+        TranscriptionMetrics.Utterance utterance = frontend.getUtterance();
+        VoiceActivityDetector.Segment speech = frontend.findSpeech();
+        if (speech == null) {
+            long totalNanos = finish(utterance, audioSeconds, start);
+            return new Result(hasBackend() ? "" : null, audioSeconds, null, 0, 0, frontendNanos, 0L, totalNanos, utterance);
+        }
+
+        final Bucket bucket = bucketFor(speech.length());
+        final Backend windowBackend = bucket.backend;
+        LongFormTranscriber transcriber = bucket.transcriber;
+        final int[] prompt = tokenTable.transcribePrompt(speech.length() > melEngine.getExpectedFrames());
+        LongFormTranscriber.WindowRecognizer recognizer = new LongFormTranscriber.WindowRecognizer() {
+            @Override
+            public int recognize(ByteBuffer input, int[] out) throws Exception {
+                checkCancelled();
+                try {
+                    return (windowBackend != null) ? windowBackend.decode(input, prompt, out) : 0;
+                } catch (Exception e) {
+                    checkCancelled(); // A cancelled interpreter fails with its own exception
+                    throw e;
+                }
+            }
+        };
+        String text = transcriber.transcribe(frontend, speech, recognizer);
+        utterance.add(TranscriptionMetrics.Stage.NORMALIZATION, transcriber.getLastNormalizeNanos());
+        utterance.add(TranscriptionMetrics.Stage.BUFFER_FILL, transcriber.getLastFillNanos());
+        utterance.add(TranscriptionMetrics.Stage.INFERENCE, transcriber.getLastInferenceNanos());
+        utterance.add(TranscriptionMetrics.Stage.DECODE, transcriber.getLastDecodeNanos());
+        long totalNanos = finish(utterance, audioSeconds, start);
+        return new Result(hasBackend() ? text : null, audioSeconds, speech, transcriber.getLastWindowCount(), bucket.frames(),
+                frontendNanos + transcriber.getLastFeatureNanos(), transcriber.getLastInferenceNanos(), totalNanos, utterance);
+    }
+
+    /**
+     * Decodes frames {@code [firstFrame, firstFrame + frameCount)} of a take still being recorded
+     * (at most one window), e.g. for {@link LiveCaptioner}, on the shortest input that holds them.
+     * Nothing is recorded in the metrics.
+     *
+     * @param prompt Decoder prompt, which may end with tokens to force before generation starts.
+     * @return Number of ids written to {@code out}; 0 without a backend.
+     * @throws CancellationException if {@link #setCancelled} stopped it.
+     */
+    public int decodePartial(StreamingMelFrontend frontend, int firstFrame, int frameCount, int[] prompt, int[] out) throws Exception {
+        checkCancelled();
+        Bucket bucket = bucketFor(frameCount);
+        if (bucket.backend == null) {
+            return 0;
+        }
+        if (bucket.partialInput == null) {
+            bucket.partialInput = bucket.melEngine.allocateInputBuffer();
+        }
+        ByteBuffer input = bucket.partialInput;
+        input.clear();
+        frontend.peek(bucket.melEngine, input, firstFrame, frameCount);
+        input.rewind();
+        try {
+            return bucket.backend.decode(input, prompt, out);
+        } catch (Exception e) {
+            checkCancelled();
+            throw e;
+        }
+    }
+
+    private void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Transcription cancelled");
+        }
+    }
+
+    private long finish(TranscriptionMetrics.Utterance utterance, float audioSeconds, long start) {
+        long totalNanos = System.nanoTime() - start;
+        if (metrics != null) {
+            metrics.record(utterance, audioSeconds, totalNanos);
+        } else {
+            utterance.finish(null, audioSeconds, totalNanos);
+        }
+        return totalNanos;
+    }
+}
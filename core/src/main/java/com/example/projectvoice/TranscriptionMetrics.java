@@ -0,0 +1,232 @@
+package com.example.projectvoice;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-stage latency and resource histograms over every utterance an engine transcribes.
+ *
+ * Each take carries an {@link Utterance}: the {@link StreamingMelFrontend} adds conversion, STFT
+ * and Mel time per frame while audio arrives, {@link LongFormTranscriber} adds normalization,
+ * buffer fill, inference and decode per window, and {@link TranscriptionEngine} hands the finished
+ * record to {@link #record(Utterance, float, long)}. Recording is lock-free and allocation-free,
+ * so one instance can be shared by parallel engines. {@link #toJson()} dumps everything, with tags
+ * such as device and build, for comparing runs offline.
+ */
+public final class TranscriptionMetrics {
+
+    /** Pipeline stages, timed in nanoseconds. */
+    public enum Stage {
+        /** Stop request until every captured sample has been turned into features. */
+        CAPTURE_TO_STOP,
+        /** PCM (16-bit or WAV) to float samples. */
+        PCM_CONVERSION,
+        /** Hann window, FFT and power spectrum of every frame. */
+        STFT,
+        /** Mel filterbank projection and log of every frame. */
+        MEL_PROJECTION,
+        /** Mean and standard deviation of each window's frames. */
+        NORMALIZATION,
+        /** Writing normalized frames into the model input buffer (transposing if needed). */
+        BUFFER_FILL,
+        /** Model invocation: {@code Interpreter.run} or a session's encoder and decoder steps. */
+        INFERENCE,
+        /** Stitching windows and turning token ids into text. */
+        DECODE,
+        /** Engine time for the whole take, from the start of transcription (or of a file) to text. */
+        TOTAL;
+
+        public String jsonName() {
+            return name().toLowerCase(Locale.US);
+        }
+    }
+
+    /** Reports bytes allocated so far by whatever scope the host can measure (thread or process); -1 if unknown. */
+    public interface AllocationCounter {
+        long getAllocatedBytes();
+    }
+
+    /** Measurements of one take. Filled by one thread at a time, in pipeline order. */
+    public static final class Utterance {
+        private final long[] stageNanos = new long[STAGES.length];
+        private long allocationStart = -1L;
+        private long allocatedBytes = -1L;
+        private float audioSeconds;
+
+        public void add(Stage stage, long nanos) {
+            stageNanos[stage.ordinal()] += nanos;
+        }
+
+        public long getNanos(Stage stage) {
+            return stageNanos[stage.ordinal()];
+        }
+
+        /** Bytes allocated between the start of the take and {@link #finish}; -1 if not measured. */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public float getAudioSeconds() {
+            return audioSeconds;
+        }
+
+        /** Total time over audio duration; below 1 is faster than real time. */
+        public float getRealTimeFactor() {
+            return audioSeconds > 0 ? (getNanos(Stage.TOTAL) / 1e9f) / audioSeconds : 0f;
+        }
+
+        void start(AllocationCounter counter) {
+            allocationStart = (counter != null) ? counter.getAllocatedBytes() : -1L;
+        }
+
+        void finish(AllocationCounter counter, float audioSeconds, long totalNanos) {
+            this.audioSeconds = audioSeconds;
+            stageNanos[Stage.TOTAL.ordinal()] = totalNanos;
+            long end = (counter != null && allocationStart >= 0) ? counter.getAllocatedBytes() : -1L;
+            allocatedBytes = (end >= allocationStart && allocationStart >= 0) ? end - allocationStart : -1L;
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final AllocationCounter allocationCounter;
+    private final LatencyHistogram[] stages = new LatencyHistogram[STAGES.length];
+    private final LatencyHistogram allocatedBytes = new LatencyHistogram();
+    private final LatencyHistogram audioMillis = new LatencyHistogram();
+    private final LatencyHistogram realTimeFactorPermille = new LatencyHistogram();
+    private final LatencyHistogram queueWaitNanos = new LatencyHistogram();
+    private final LatencyHistogram queueDepth = new LatencyHistogram();
+    private final AtomicLong utterances = new AtomicLong();
+    private final Map<String, String> tags = new LinkedHashMap<>();
+
+    /** @param allocationCounter Source for per-utterance allocation, or null to skip it. */
+    public TranscriptionMetrics(AllocationCounter allocationCounter) {
+        this.allocationCounter = allocationCounter;
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new LatencyHistogram();
+        }
+    }
+
+    /** Starts a take's record; allocation is counted from here. */
+    public Utterance newUtterance() {
+        Utterance utterance = new Utterance();
+        utterance.start(allocationCounter);
+        return utterance;
+    }
+
+    /** Closes {@code utterance} and adds it to the histograms. */
+    public void record(Utterance utterance, float audioSeconds, long totalNanos) {
+        utterance.finish(allocationCounter, audioSeconds, totalNanos);
+        for (Stage stage : STAGES) {
+            stages[stage.ordinal()].record(utterance.getNanos(stage));
+        }
+        if (utterance.getAllocatedBytes() >= 0) {
+            allocatedBytes.record(utterance.getAllocatedBytes());
+        }
+        audioMillis.record(Math.round(audioSeconds * 1000.0));
+        realTimeFactorPermille.record(Math.round(utterance.getRealTimeFactor() * 1000.0));
+        utterances.incrementAndGet();
+    }
+
+    /** Adds a label to the JSON dump, e.g. device model, build or backend. */
+    public synchronized void setTag(String key, String value) {
+        tags.put(key, value);
+    }
+
+    public LatencyHistogram getStage(Stage stage) {
+        return stages[stage.ordinal()];
+    }
+
+    public LatencyHistogram getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public LatencyHistogram getAudioMillis() {
+        return audioMillis;
+    }
+
+    /** Real-time factor times 1000, so the integer histogram keeps three decimals. */
+    public LatencyHistogram getRealTimeFactorPermille() {
+        return realTimeFactorPermille;
+    }
+
+    /** Submission to start of each {@link TranscriptionScheduler} job. */
+    public LatencyHistogram getQueueWaitNanos() {
+        return queueWaitNanos;
+    }
+
+    /** Jobs already waiting in the {@link TranscriptionScheduler} when another was submitted. */
+    public LatencyHistogram getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getUtteranceCount() {
+        return utterances.get();
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : stages) {
+            histogram.reset();
+        }
+        allocatedBytes.reset();
+        audioMillis.reset();
+        realTimeFactorPermille.reset();
+        queueWaitNanos.reset();
+        queueDepth.reset();
+        utterances.set(0L);
+    }
+
+    /**
+     * All histograms as one JSON object: tags, the utterance count, a {@code stages_ns} object keyed
+     * by {@link Stage#jsonName()}, then {@code allocated_bytes}, {@code audio_ms},
+     * {@code real_time_factor_permille}, {@code queue_wait_ns} and {@code queue_depth}.
+     */
+    public String toJson() {
+        StringBuilder out = new StringBuilder(4096);
+        out.append("{\"tags\":{");
+        synchronized (this) {
+            boolean first = true;
+            for (Map.Entry<String, String> tag : tags.entrySet()) {
+                if (!first) out.append(',');
+                appendString(out, tag.getKey());
+                out.append(':');
+                appendString(out, tag.getValue());
+                first = false;
+            }
+        }
+        out.append("},\"utterances\":").append(getUtteranceCount()).append(",\"stages_ns\":{");
+        for (Stage stage : STAGES) {
+            if (stage.ordinal() > 0) out.append(',');
+            out.append('"').append(stage.jsonName()).append("\":");
+            stages[stage.ordinal()].appendJson(out);
+        }
+        out.append("},\"allocated_bytes\":");
+        allocatedBytes.appendJson(out);
+        out.append(",\"audio_ms\":");
+        audioMillis.appendJson(out);
+        out.append(",\"real_time_factor_permille\":");
+        realTimeFactorPermille.appendJson(out);
+        out.append(",\"queue_wait_ns\":");
+        queueWaitNanos.appendJson(out);
+        out.append(",\"queue_depth\":");
+        queueDepth.appendJson(out);
+        return out.append('}').toString();
+    }
+
+    private static void appendString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+}
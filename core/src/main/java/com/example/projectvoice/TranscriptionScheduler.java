@@ -0,0 +1,268 @@
+package com.example.projectvoice;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs transcription jobs on a {@link PriorityPool} of engines, with a bounded number of jobs in
+ * flight, cancellation that reaches into the decoder, and latest-wins coalescing.
+ *
+ * At most {@code capacity} jobs are queued or running; beyond that {@link #submit} throws
+ * {@link RejectedExecutionException} instead of letting a backlog of stale takes build up. Each
+ * queued job waits for an engine in the pool, which serves interactive jobs before batch jobs.
+ * Cancelling a job's {@link Future} drops it if it is still waiting; if it is running, its engine
+ * is cancelled ({@link TranscriptionEngine#setCancelled}), so a split model stops between decoder
+ * steps and the interpreter is asked to abandon the step in progress; it keeps its place in the
+ * {@code capacity} until it has let go of the engine. {@link #submitLatest}
+ * cancels the previous interactive job, whatever its state, before queueing the new one: when the
+ * user records again, only the newest take is worth finishing.
+ *
+ * Queue depth at submission and the wait for an engine are recorded into the
+ * {@link TranscriptionMetrics} given, or into this scheduler's own histograms.
+ */
+public final class TranscriptionScheduler {
+
+    /** One take's work on a leased engine, e.g. {@code engine -> engine.transcribe(frontend)}. */
+    public interface Job {
+        TranscriptionEngine.Result run(TranscriptionEngine engine) throws Exception;
+    }
+
+    private static final long IDLE_THREAD_SECONDS = 30;
+
+    private final PriorityPool<TranscriptionEngine> engines;
+    private final int capacity;
+    private final ThreadPoolExecutor executor;
+    private final Set<Task> live = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger outstanding = new AtomicInteger(); // Queued or running
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final LatencyHistogram waitNanos;
+    private final LatencyHistogram queueDepth;
+    private Task latest; // Last submitLatest job; guarded by this
+
+    /**
+     * @param capacity Jobs that may be queued or running at once; at least the pool size.
+     * @param metrics  Receives queue wait and depth; may be null.
+     */
+    public TranscriptionScheduler(PriorityPool<TranscriptionEngine> engines, int capacity, TranscriptionMetrics metrics) {
+        if (capacity < engines.size()) {
+            throw new IllegalArgumentException("Capacity " + capacity + " is below the " + engines.size() + " engines");
+        }
+        this.engines = engines;
+        this.capacity = capacity;
+        this.waitNanos = (metrics != null) ? metrics.getQueueWaitNanos() : new LatencyHistogram();
+        this.queueDepth = (metrics != null) ? metrics.getQueueDepth() : new LatencyHistogram();
+        // One thread per admitted job: queued jobs park in the engine pool, which orders them by priority
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threads = runnable -> {
+            Thread thread = new Thread(runnable, "transcription-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = new ThreadPoolExecutor(capacity, capacity, IDLE_THREAD_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), threads);
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues {@code job} at {@code priority}.
+     *
+     * @throws RejectedExecutionException if {@code capacity} jobs are already queued or running,
+     *                                    or the scheduler was shut down.
+     */
+    public Future<TranscriptionEngine.Result> submit(PriorityPool.Priority priority, Job job) {
+        int ahead = outstanding.getAndIncrement();
+        if (ahead >= capacity) {
+            outstanding.decrementAndGet();
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("Transcription queue is full (" + capacity + " jobs)");
+        }
+        queueDepth.record(ahead - running.get());
+        Task task = new Task(priority, job, System.nanoTime());
+        live.add(task);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            live.remove(task);
+            outstanding.decrementAndGet();
+            rejected.incrementAndGet();
+            throw e;
+        }
+        return task;
+    }
+
+    /**
+     * Queues {@code job} as an interactive job after cancelling the previous one submitted here,
+     * queued or running; its future then reports cancellation.
+     */
+    public synchronized Future<TranscriptionEngine.Result> submitLatest(Job job) {
+        if (latest != null && latest.cancel(true)) {
+            coalesced.incrementAndGet();
+        }
+        Task task = (Task) submit(PriorityPool.Priority.INTERACTIVE, job);
+        latest = task;
+        return task;
+    }
+
+    /** Admitted jobs still waiting for an engine. */
+    public int getQueueDepth() {
+        return Math.max(0, outstanding.get() - running.get());
+    }
+
+    public int getRunningCount() {
+        return running.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /** Jobs cancelled before they completed, including those replaced by {@link #submitLatest}. */
+    public long getCancelledCount() {
+        return cancelled.get();
+    }
+
+    /** Jobs replaced by a newer {@link #submitLatest} job. */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /** Submission until an engine was leased, per job that got one. */
+    public LatencyHistogram getWaitNanos() {
+        return waitNanos;
+    }
+
+    /** Jobs waiting for an engine at each submission. */
+    public LatencyHistogram getQueueDepthHistogram() {
+        return queueDepth;
+    }
+
+    /** Lets admitted jobs finish and rejects new ones. */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /** Cancels every queued or running job and rejects new ones. */
+    public void shutdownNow() {
+        executor.shutdown();
+        for (Task task : live) {
+            task.cancel(true);
+        }
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    /** Leases an engine at the job's priority and runs the job on it. */
+    private final class Work implements Callable<TranscriptionEngine.Result> {
+        private final PriorityPool.Priority priority;
+        private final Job job;
+        private final long submitted;
+        Task task; // Set right after construction
+
+        Work(PriorityPool.Priority priority, Job job, long submitted) {
+            this.priority = priority;
+            this.job = job;
+            this.submitted = submitted;
+        }
+
+        @Override
+        public TranscriptionEngine.Result call() throws Exception {
+            TranscriptionEngine engine = engines.acquire(priority); // Interrupted if cancelled meanwhile
+            waitNanos.record(System.nanoTime() - submitted);
+            running.incrementAndGet();
+            boolean started = false;
+            try {
+                if (!task.start(engine)) {
+                    return null; // Cancelled just before it got the engine; the result is discarded
+                }
+                started = true;
+                return job.run(engine);
+            } finally {
+                task.finish(engine);
+                running.decrementAndGet();
+                engines.release(engine);
+                if (started) {
+                    outstanding.decrementAndGet(); // Otherwise done() gave the slot back
+                }
+            }
+        }
+    }
+
+    /** A job's future; cancelling it also cancels the engine it runs on. */
+    private final class Task extends FutureTask<TranscriptionEngine.Result> {
+        private TranscriptionEngine engine; // While the job runs; guarded by this
+        private boolean started; // The job got its engine; Work then gives the slot back. Guarded by this
+
+        Task(PriorityPool.Priority priority, Job job, long submitted) {
+            this(new Work(priority, job, submitted));
+        }
+
+        private Task(Work work) {
+            super(work);
+            work.task = this;
+        }
+
+        synchronized boolean start(TranscriptionEngine engine) {
+            if (isCancelled()) {
+                return false;
+            }
+            engine.setCancelled(false); // The previous job on it may have been cancelled
+            this.engine = engine;
+            started = true;
+            return true;
+        }
+
+        synchronized void finish(TranscriptionEngine engine) {
+            this.engine = null;
+            engine.setCancelled(false);
+        }
+
+        /**
+         * {@code mayInterruptIfRunning} is ignored: a job still waiting for an engine is always
+         * interrupted, which just takes it out of the queue, and a running one never is. Its engine
+         * is cancelled instead, so the job's thread (and any interruptible channel it reads) is
+         * left alone while it winds down.
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            synchronized (this) {
+                boolean cancelledNow = super.cancel(engine == null);
+                if (cancelledNow && engine != null) {
+                    engine.setCancelled(true);
+                }
+                return cancelledNow;
+            }
+        }
+
+        @Override
+        protected void done() {
+            live.remove(this);
+            synchronized (this) {
+                if (!started) {
+                    outstanding.decrementAndGet(); // Never ran, so nothing else holds its slot
+                }
+            }
+            if (isCancelled()) {
+                cancelled.incrementAndGet();
+            }
+        }
+    }
+}
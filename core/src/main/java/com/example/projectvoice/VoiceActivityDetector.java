@@ -0,0 +1,221 @@
+package com.example.projectvoice;
+
+import java.util.Arrays;
+
+/**
+ * Energy + spectral-flatness speech detector over the STFT frames the Mel frontend already
+ * computes.
+ *
+ * {@link #acceptFrame(float[])} reduces each power spectrum to two numbers over the speech band
+ * (80 Hz - 4 kHz): band energy in dB and spectral flatness (geometric over arithmetic mean; near 1
+ * for noise, near 0 for voiced speech). It also bins the energy into a 1 dB histogram, so the
+ * take's noise floor (a low percentile of frame energy) is known at the end without sorting.
+ * {@link #findSpeech()} then marks frames that rise clearly above that floor and are not
+ * noise-like, and returns the span from the first to the last sustained run of speech, padded
+ * so word onsets and tails are kept. Per frame that is ~100 multiply-adds and logs, a few
+ * microseconds against a 10 ms hop.
+ */
+public class VoiceActivityDetector {
+
+    /** Frame range [start, end) that contains speech. */
+    public static final class Segment {
+        public final int start;
+        public final int end;
+
+        Segment(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + start + ", " + end + ")";
+        }
+    }
+
+    // Speech band in power-spectrum bins (40 Hz per bin at 16 kHz / 400-point FFT)
+    static final int BAND_FIRST_BIN = 2;
+    static final int BAND_LAST_BIN = 100;
+
+    public static final float DEFAULT_MARGIN_DB = 12f;
+    public static final float DEFAULT_MAX_FLATNESS = 0.3f;
+    public static final float DEFAULT_MIN_SPEECH_DB = -20f;
+    public static final int DEFAULT_MIN_SPEECH_FRAMES = 5;  // 50 ms
+    public static final int DEFAULT_PAD_BEFORE_FRAMES = 20; // 200 ms
+    public static final int DEFAULT_PAD_AFTER_FRAMES = 30;  // 300 ms
+
+    private static final float NOISE_FLOOR_PERCENTILE = 0.1f;
+    private static final int HISTOGRAM_MIN_DB = -100;
+    private static final int HISTOGRAM_MAX_DB = 100;
+    private static final double ENERGY_EPSILON = 1e-10;
+    private static final int INITIAL_CAPACITY = 512;
+
+    private final float marginDb;
+    private final float maxFlatness;
+    private final float minSpeechDb;
+    private final int minSpeechFrames;
+    private final int padBefore;
+    private final int padAfter;
+
+    private final int[] histogram = new int[HISTOGRAM_MAX_DB - HISTOGRAM_MIN_DB + 1];
+    private float[] energyDb = new float[INITIAL_CAPACITY];
+    private float[] flatness = new float[INITIAL_CAPACITY];
+    private int frameCount = 0;
+
+    public VoiceActivityDetector() {
+        this(DEFAULT_MARGIN_DB, DEFAULT_MAX_FLATNESS, DEFAULT_MIN_SPEECH_DB, DEFAULT_MIN_SPEECH_FRAMES,
+                DEFAULT_PAD_BEFORE_FRAMES, DEFAULT_PAD_AFTER_FRAMES);
+    }
+
+    /**
+     * @param marginDb        How far above the noise floor a frame's band energy must be.
+     * @param maxFlatness     Frames flatter than this only count if they are another margin louder.
+     * @param minSpeechDb     Absolute energy below which nothing is speech (digital silence, hum).
+     * @param minSpeechFrames Shortest run of speech frames that counts (rejects clicks).
+     */
+    public VoiceActivityDetector(float marginDb, float maxFlatness, float minSpeechDb, int minSpeechFrames,
+                                 int padBeforeFrames, int padAfterFrames) {
+        if (minSpeechFrames < 1 || padBeforeFrames < 0 || padAfterFrames < 0) {
+            throw new IllegalArgumentException("Invalid frame counts: min=" + minSpeechFrames
+                    + ", padBefore=" + padBeforeFrames + ", padAfter=" + padAfterFrames);
+        }
+        this.marginDb = marginDb;
+        this.maxFlatness = maxFlatness;
+        this.minSpeechDb = minSpeechDb;
+        this.minSpeechFrames = minSpeechFrames;
+        this.padBefore = padBeforeFrames;
+        this.padAfter = padAfterFrames;
+    }
+
+    /** Adds the next frame, given its {@link AudioPreprocessor#NUM_SPECTRUM_BINS}-bin power spectrum. */
+    public void acceptFrame(float[] powerSpectrum) {
+        if (frameCount == energyDb.length) {
+            energyDb = grow(energyDb, energyDb.length * 2);
+            flatness = grow(flatness, flatness.length * 2);
+        }
+        setFrame(frameCount, powerSpectrum);
+        commitFrames(frameCount + 1);
+    }
+
+    /**
+     * Makes room for frames up to {@code frames} so {@link #setFrame} can fill them out of order,
+     * from several threads (see {@link ParallelStft}).
+     */
+    void ensureCapacity(int frames) {
+        if (frames > energyDb.length) {
+            int capacity = Math.max(frames, energyDb.length * 2);
+            energyDb = grow(energyDb, capacity);
+            flatness = grow(flatness, capacity);
+        }
+    }
+
+    /** Stores the features of {@code frame} (at or past the frame count, within capacity). */
+    void setFrame(int frame, float[] powerSpectrum) {
+        double sum = 0.0;
+        double logSum = 0.0;
+        for (int k = BAND_FIRST_BIN; k <= BAND_LAST_BIN; k++) {
+            double p = powerSpectrum[k] + ENERGY_EPSILON;
+            sum += p;
+            logSum += Math.log(p);
+        }
+        final int bins = BAND_LAST_BIN - BAND_FIRST_BIN + 1;
+        energyDb[frame] = (float) (10.0 * Math.log10(sum));
+        flatness[frame] = (float) (Math.exp(logSum / bins) / (sum / bins));
+    }
+
+    /** Counts the frames set since the last commit, up to {@code newFrameCount}, as accepted. */
+    void commitFrames(int newFrameCount) {
+        for (int i = frameCount; i < newFrameCount; i++) {
+            int bin = Math.round(energyDb[i]) - HISTOGRAM_MIN_DB;
+            histogram[Math.max(0, Math.min(histogram.length - 1, bin))]++;
+        }
+        frameCount = newFrameCount;
+    }
+
+    private static float[] grow(float[] array, int capacity) {
+        float[] grown = new float[capacity];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public float getEnergyDb(int frame) {
+        return energyDb[frame];
+    }
+
+    public float getFlatness(int frame) {
+        return flatness[frame];
+    }
+
+    /** Band energy (dB) that the quietest 10% of the frames so far stay at or below. */
+    public float getNoiseFloorDb() {
+        if (frameCount == 0) {
+            return HISTOGRAM_MIN_DB;
+        }
+        int target = Math.max(1, (int) Math.ceil(frameCount * NOISE_FLOOR_PERCENTILE));
+        int seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= target) {
+                return HISTOGRAM_MIN_DB + i;
+            }
+        }
+        return HISTOGRAM_MAX_DB;
+    }
+
+    /** Whether {@code frame} looks like speech against the current noise floor. */
+    public boolean isSpeech(int frame) {
+        return isSpeech(frame, speechThresholdDb());
+    }
+
+    private float speechThresholdDb() {
+        return Math.max(getNoiseFloorDb() + marginDb, minSpeechDb);
+    }
+
+    private boolean isSpeech(int frame, float threshold) {
+        float energy = energyDb[frame];
+        return energy > threshold && (flatness[frame] < maxFlatness || energy > threshold + marginDb);
+    }
+
+    /**
+     * Finds the padded span between the first and last run of at least minSpeechFrames speech
+     * frames.
+     *
+     * @return The span, or null if the take contains no speech.
+     */
+    public Segment findSpeech() {
+        final float threshold = speechThresholdDb();
+        int first = -1;
+        int last = -1;
+        int run = 0;
+        for (int i = 0; i < frameCount; i++) {
+            if (isSpeech(i, threshold)) {
+                run++;
+                if (run == minSpeechFrames && first < 0) {
+                    first = i - run + 1;
+                }
+                if (run >= minSpeechFrames) {
+                    last = i;
+                }
+            } else {
+                run = 0;
+            }
+        }
+        if (first < 0) {
+            return null;
+        }
+        return new Segment(Math.max(0, first - padBefore), Math.min(frameCount, last + 1 + padAfter));
+    }
+
+    public void reset() {
+        frameCount = 0;
+        Arrays.fill(histogram, 0);
+    }
+}
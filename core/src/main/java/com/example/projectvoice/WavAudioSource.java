@@ -0,0 +1,49 @@
+package com.example.projectvoice;
+
+/**
+ * {@link AudioSource} playing a {@link WavReader}'s samples in reads of at most
+ * {@code periodSamples}, as AudioRecord hands them out, for exercising the capture path on the
+ * JVM. Float and multichannel files are downmixed and rounded to 16 bits; 16-bit mono files come
+ * out exactly as stored. Reads do not wait for real time.
+ */
+public final class WavAudioSource implements AudioSource {
+
+    private final WavReader wav;
+    private final int periodSamples;
+    private final float[] block;
+    private int next;
+
+    /** @param periodSamples Most samples one read returns, e.g. the AudioRecord buffer size. */
+    public WavAudioSource(WavReader wav, int periodSamples) {
+        if (periodSamples <= 0) {
+            throw new IllegalArgumentException("periodSamples must be positive: " + periodSamples);
+        }
+        this.wav = wav;
+        this.periodSamples = periodSamples;
+        this.block = new float[periodSamples];
+    }
+
+    @Override
+    public int getSampleRate() {
+        return wav.getSampleRate();
+    }
+
+    @Override
+    public int read(short[] samples, int offset, int length) {
+        if (next >= wav.getFrameCount()) {
+            return -1;
+        }
+        int n = wav.read(next, block, 0, Math.min(length, periodSamples));
+        for (int i = 0; i < n; i++) {
+            int sample = Math.round(block[i] * 32768f);
+            samples[offset + i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+        }
+        next += n;
+        return n;
+    }
+
+    /** Samples handed out so far. */
+    public int getPosition() {
+        return next;
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.projectvoice;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Zero-copy view of a RIFF/WAVE file's sample data.
+ *
+ * {@link #parse} walks the RIFF chunks once, reads the {@code fmt } chunk and slices the
+ * {@code data} chunk out of the (normally memory-mapped) buffer; unknown chunks such as
+ * {@code LIST} are skipped. Samples are converted to mono floats only as they are read, a block at
+ * a time, so feeding a long file into a {@link StreamingMelFrontend} never holds a second copy of
+ * it. 16-bit PCM and 32-bit IEEE float (e.g. MicInput.wav) are supported, plain or in
+ * WAVE_FORMAT_EXTENSIBLE form; multi-channel audio is averaged to mono.
+ */
+public final class WavReader implements ParallelStft.SampleSource {
+
+    public static final int FORMAT_PCM = 1;
+    public static final int FORMAT_IEEE_FLOAT = 3;
+    private static final int FORMAT_EXTENSIBLE = 0xFFFE;
+    private static final int RIFF = 0x46464952; // "RIFF" read little-endian
+    private static final int WAVE = 0x45564157;
+    private static final int FMT = 0x20746d66;
+    private static final int DATA = 0x61746164;
+    private static final int FEED_BLOCK_FRAMES = 4096;
+
+    private final ByteBuffer data; // Little-endian, whole frames only
+    private final int format;
+    private final int channels;
+    private final int sampleRate;
+    private final int bitsPerSample;
+    private final int frameBytes;
+
+    private WavReader(ByteBuffer data, int format, int channels, int sampleRate, int bitsPerSample) {
+        this.format = format;
+        this.channels = channels;
+        this.sampleRate = sampleRate;
+        this.bitsPerSample = bitsPerSample;
+        this.frameBytes = channels * bitsPerSample / 8;
+        data.limit(data.limit() - data.limit() % frameBytes);
+        this.data = data;
+    }
+
+    /** Maps and parses a WAV file. */
+    public static WavReader open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            return parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Parses a WAV file held in {@code file}, which must stay valid (mapped) for the reader's
+     * lifetime.
+     *
+     * @throws IOException if the RIFF structure is malformed or the sample format is unsupported.
+     */
+    public static WavReader parse(ByteBuffer file) throws IOException {
+        ByteBuffer buf = file.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        buf.rewind();
+        if (buf.remaining() < 12 || buf.getInt() != RIFF) {
+            throw new IOException("Not a RIFF file");
+        }
+        buf.getInt(); // RIFF size; often wrong for streamed recordings, so chunk sizes are trusted instead
+        if (buf.getInt() != WAVE) {
+            throw new IOException("RIFF file is not WAVE");
+        }
+
+        int format = -1;
+        int channels = 0;
+        int sampleRate = 0;
+        int bitsPerSample = 0;
+        while (buf.remaining() >= 8) {
+            int id = buf.getInt();
+            long size = buf.getInt() & 0xFFFFFFFFL;
+            int start = buf.position();
+            if (id == FMT) {
+                if (size < 16 || size > buf.remaining()) {
+                    throw new IOException("Invalid fmt chunk size " + size);
+                }
+                format = buf.getShort(start) & 0xFFFF;
+                channels = buf.getShort(start + 2) & 0xFFFF;
+                sampleRate = buf.getInt(start + 4);
+                bitsPerSample = buf.getShort(start + 14) & 0xFFFF;
+                if (format == FORMAT_EXTENSIBLE) {
+                    if (size < 40) {
+                        throw new IOException("Truncated WAVE_FORMAT_EXTENSIBLE fmt chunk");
+                    }
+                    format = buf.getShort(start + 24) & 0xFFFF; // First two bytes of the sub-format GUID
+                }
+            } else if (id == DATA) {
+                if (format < 0) {
+                    throw new IOException("data chunk before fmt chunk");
+                }
+                checkFormat(format, channels, sampleRate, bitsPerSample);
+                // Recorders that never patch the header leave 0 or 0xFFFFFFFF; take what is there
+                int length = (int) Math.min(size == 0 ? Long.MAX_VALUE : size, buf.remaining());
+                ByteBuffer data = buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+                data.limit(length);
+                return new WavReader(data, format, channels, sampleRate, bitsPerSample);
+            }
+            if (size > buf.remaining()) {
+                throw new IOException("Chunk 0x" + Integer.toHexString(id) + " overruns the file");
+            }
+            buf.position(start + (int) size + (int) (size & 1)); // Chunks are word aligned
+        }
+        throw new IOException("No data chunk");
+    }
+
+    private static void checkFormat(int format, int channels, int sampleRate, int bitsPerSample) throws IOException {
+        boolean supported = (format == FORMAT_PCM && bitsPerSample == 16) || (format == FORMAT_IEEE_FLOAT && bitsPerSample == 32);
+        if (!supported) {
+            throw new IOException("Unsupported sample format " + format + " with " + bitsPerSample + " bits (need 16-bit PCM or 32-bit float)");
+        }
+        if (channels <= 0 || sampleRate <= 0) {
+            throw new IOException("Invalid channels " + channels + " or sample rate " + sampleRate);
+        }
+    }
+
+    public int getFormat() {
+        return format;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getBitsPerSample() {
+        return bitsPerSample;
+    }
+
+    /** Number of sample frames (one sample per channel). */
+    public int getFrameCount() {
+        return data.limit() / frameBytes;
+    }
+
+    /** Same as {@link #getFrameCount()}: {@link #read} downmixes each frame to one sample. */
+    @Override
+    public int getSampleCount() {
+        return getFrameCount();
+    }
+
+    public float getDurationSeconds() {
+        return getFrameCount() / (float) sampleRate;
+    }
+
+    /** Read-only little-endian view of the raw sample data. */
+    public ByteBuffer getData() {
+        return data.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Reads frames {@code [firstFrame, firstFrame + count)} as mono floats in [-1, 1] into
+     * {@code out}.
+     *
+     * @return Number of frames read (fewer at the end of the file).
+     */
+    @Override
+    public int read(int firstFrame, float[] out, int offset, int count) {
+        int n = Math.max(0, Math.min(count, getFrameCount() - firstFrame));
+        int pos = firstFrame * frameBytes;
+        final float scale = 1f / channels;
+        for (int i = 0; i < n; i++) {
+            float sum = 0f;
+            for (int c = 0; c < channels; c++) {
+                if (format == FORMAT_PCM) {
+                    sum += data.getShort(pos) / 32768.0f;
+                    pos += 2;
+                } else {
+                    sum += data.getFloat(pos);
+                    pos += 4;
+                }
+            }
+            out[offset + i] = channels == 1 ? sum : sum * scale;
+        }
+        return n;
+    }
+
+    /** All frames as mono floats. */
+    public float[] readMono() {
+        float[] samples = new float[getFrameCount()];
+        read(0, samples, 0, samples.length);
+        return samples;
+    }
+
+    /**
+     * Streams every frame into {@code frontend} in blocks.
+     *
+     * @throws IOException if the file is not at the frontend's {@link AudioPreprocessor#SAMPLE_RATE}.
+     */
+    public void feed(StreamingMelFrontend frontend) throws IOException {
+        checkSampleRate();
+        float[] block = new float[FEED_BLOCK_FRAMES];
+        for (int frame = 0; frame < getFrameCount(); frame += FEED_BLOCK_FRAMES) {
+            long start = System.nanoTime();
+            int n = read(frame, block, 0, FEED_BLOCK_FRAMES);
+            frontend.getUtterance().add(TranscriptionMetrics.Stage.PCM_CONVERSION, System.nanoTime() - start);
+            frontend.accept(block, 0, n);
+        }
+    }
+
+    /**
+     * Hands the whole file to {@code frontend} at once, its frames computed in parallel by
+     * {@code stft}; {@code frontend} must not have been fed yet. Blocks are read by the pool's
+     * threads straight from the mapped data.
+     *
+     * @throws IOException if the file is not at the frontend's {@link AudioPreprocessor#SAMPLE_RATE}.
+     */
+    public void feed(StreamingMelFrontend frontend, ParallelStft stft) throws IOException {
+        checkSampleRate();
+        frontend.acceptAll(this, stft);
+    }
+
+    private void checkSampleRate() throws IOException {
+        if (sampleRate != AudioPreprocessor.SAMPLE_RATE) {
+            throw new IOException("Sample rate " + sampleRate + " Hz, need " + AudioPreprocessor.SAMPLE_RATE + " Hz");
+        }
+    }
+}
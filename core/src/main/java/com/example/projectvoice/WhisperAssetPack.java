@@ -0,0 +1,147 @@
+package com.example.projectvoice;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Zero-copy view of a whisper.cpp {@code filters_vocab_*.bin} asset.
+ *
+ * Layout (little-endian): int32 magic, int32 nMel, int32 nFft, float32[nMel * nFft] Mel filters,
+ * int32 nVocab, then nVocab tokens as (int32 length, raw bytes). The buffer is normally a
+ * read-only mapping of the asset (WhisperHelper.mapAsset in the app, {@link #open} on the JVM);
+ * parsing is a single pass that records where each token's bytes start. Nothing is decoded or
+ * boxed up front.
+ */
+public final class WhisperAssetPack {
+
+    public static final int MAGIC = 0x5553454e;
+
+    private final ByteBuffer buffer;
+    private final int melCount;
+    private final int binCount;
+    private final FloatBuffer filters;
+    private final int[] tokenOffsets; // Absolute position of each token's bytes in buffer
+
+    private WhisperAssetPack(ByteBuffer buffer, int melCount, int binCount, FloatBuffer filters, int[] tokenOffsets) {
+        this.buffer = buffer;
+        this.melCount = melCount;
+        this.binCount = binCount;
+        this.filters = filters;
+        this.tokenOffsets = tokenOffsets;
+    }
+
+    /**
+     * Parses a pack from {@code data}, which must stay valid (mapped) for the pack's lifetime.
+     *
+     * @throws IOException if the magic, dimensions or token table are malformed.
+     */
+    public static WhisperAssetPack parse(ByteBuffer data) throws IOException {
+        ByteBuffer buf = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        buf.rewind();
+        try {
+            int magic = buf.getInt();
+            if (magic != MAGIC) {
+                throw new IOException("Bad filters/vocab magic: 0x" + Integer.toHexString(magic));
+            }
+            int melCount = buf.getInt();
+            int binCount = buf.getInt();
+            if (melCount <= 0 || binCount <= 0 || (long) melCount * binCount * 4 > buf.remaining()) {
+                throw new IOException("Invalid filter dimensions: " + melCount + "x" + binCount);
+            }
+
+            ByteBuffer filterBytes = buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+            filterBytes.limit(melCount * binCount * 4);
+            FloatBuffer filters = filterBytes.asFloatBuffer().asReadOnlyBuffer();
+            buf.position(buf.position() + melCount * binCount * 4);
+
+            int tokenCount = buf.getInt();
+            if (tokenCount < 0 || tokenCount > buf.remaining() / 4) {
+                throw new IOException("Invalid vocabulary size: " + tokenCount);
+            }
+            int[] tokenOffsets = new int[tokenCount];
+            for (int i = 0; i < tokenCount; i++) {
+                int length = buf.getInt();
+                if (length < 0 || length > buf.remaining()) {
+                    throw new IOException("Invalid length " + length + " for token " + i);
+                }
+                tokenOffsets[i] = buf.position();
+                buf.position(buf.position() + length);
+            }
+            return new WhisperAssetPack(buf, melCount, binCount, filters, tokenOffsets);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated filters/vocab asset", e);
+        }
+    }
+
+    /** Maps and parses a pack from a plain file (JVM tools and tests). */
+    public static WhisperAssetPack open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            return parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public int getMelCount() {
+        return melCount;
+    }
+
+    public int getFilterBinCount() {
+        return binCount;
+    }
+
+    /** Read-only row-major [melCount * binCount] view of the precomputed Mel filters. */
+    public FloatBuffer getFilters() {
+        return filters.duplicate();
+    }
+
+    /** The filters in the sparse form used by {@link MelSpectrogramEngine}. */
+    public SparseMelFilterbank createFilterbank() {
+        float[] dense = new float[melCount * binCount];
+        getFilters().get(dense);
+        return SparseMelFilterbank.fromDense(dense, melCount, binCount);
+    }
+
+    public int getTokenCount() {
+        return tokenOffsets.length;
+    }
+
+    /** Absolute position of token {@code id}'s bytes in {@link #getBuffer()}. */
+    public int tokenOffset(int id) {
+        return tokenOffsets[id];
+    }
+
+    public int tokenLength(int id) {
+        return buffer.getInt(tokenOffsets[id] - 4);
+    }
+
+    /** Copies token {@code id}'s raw bytes into {@code dst} at {@code offset}; returns the length. */
+    public int copyToken(int id, byte[] dst, int offset) {
+        int length = tokenLength(id);
+        ByteBuffer src = buffer.duplicate();
+        src.position(tokenOffsets[id]);
+        src.get(dst, offset, length);
+        return length;
+    }
+
+    /** Decodes a single token as UTF-8, or null if {@code id} is outside the vocabulary. */
+    public String tokenString(int id) {
+        if (id < 0 || id >= tokenOffsets.length) {
+            return null;
+        }
+        byte[] bytes = new byte[tokenLength(id)];
+        copyToken(id, bytes, 0);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** The underlying little-endian buffer that token offsets index into. */
+    public ByteBuffer getBuffer() {
+        return buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
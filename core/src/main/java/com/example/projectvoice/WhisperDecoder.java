@@ -0,0 +1,36 @@
+package com.example.projectvoice;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Token selection strategy for one 30 s window of a {@link WhisperSession}.
+ *
+ * Implementations work directly on the session's logits buffer and keep their scratch state
+ * between calls, so like the session they are meant for a single inference thread.
+ */
+public interface WhisperDecoder {
+
+    /**
+     * Encodes {@code melInput}, feeds {@code prompt} and generates tokens until
+     * {@code endOfText}, the decoder context or {@code out} runs out.
+     *
+     * @return Number of generated tokens written to {@code out}, excluding end-of-text.
+     */
+    default int decode(WhisperSession session, ByteBuffer melInput, int[] prompt, int endOfText, int[] out) {
+        session.beginWindow(melInput);
+        return decodeWindow(session, prompt, endOfText, out);
+    }
+
+    /**
+     * Like {@link #decode}, but against the window the session already encoded: every slot is
+     * restarted at position 0 ({@link WhisperSession#restartWindow}) and the encoder is not run
+     * again, so a retry over the same features only pays for decoder steps.
+     */
+    int decodeWindow(WhisperSession session, int[] prompt, int endOfText, int[] out);
+
+    /**
+     * Mean log-probability per token (end-of-text included) of the last result, as used by
+     * Whisper's fallback heuristics.
+     */
+    float getLastAverageLogProb();
+}
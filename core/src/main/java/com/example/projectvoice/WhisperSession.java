@@ -0,0 +1,237 @@
+package com.example.projectvoice;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Autoregressive runtime for a {@link SplitWhisperModel}.
+ *
+ * {@link #beginWindow(ByteBuffer)} runs the encoder once and keeps the cross-attention K/V for
+ * the whole window; {@link #step(int)} then feeds one token at a time against a self-attention
+ * cache that persists between steps, so each step costs one position of decoder work instead of
+ * re-running the full prefix. A session has one or more cache slots, one per hypothesis a
+ * {@link WhisperDecoder} keeps alive; every slot shares the cross cache. Each step reads a slot's
+ * cache and writes a spare one, which then takes the slot's place, so the cross cache, all self
+ * caches and the logits are allocated once per session. Not thread-safe; use one session per
+ * inference thread.
+ */
+public class WhisperSession {
+
+    private final SplitWhisperModel model;
+    private final int vocabSize;
+    private final int maxPositions;
+
+    private final ByteBuffer crossCache;
+    private final ByteBuffer[] selfCaches; // One per slot
+    private ByteBuffer spareCache;
+    private final int[] positions;
+    private final FloatBuffer logits;
+
+    private boolean windowOpen = false;
+    private volatile boolean cancelled = false;
+    private int encoderRuns = 0;
+    private int decoderSteps = 0;
+
+    public WhisperSession(SplitWhisperModel model) {
+        this(model, 1);
+    }
+
+    /**
+     * @param slots Number of independent self-attention caches, e.g. the beam width.
+     */
+    public WhisperSession(SplitWhisperModel model, int slots) {
+        this.model = model;
+        this.vocabSize = model.getVocabSize();
+        this.maxPositions = model.getMaxPositions();
+        if (vocabSize <= 0 || maxPositions <= 0) {
+            throw new IllegalArgumentException("Invalid decoder dimensions: vocab=" + vocabSize + ", positions=" + maxPositions);
+        }
+        if (slots < 1) {
+            throw new IllegalArgumentException("slots must be >= 1: " + slots);
+        }
+        this.crossCache = allocate(model.getCrossCacheBytes());
+        this.selfCaches = new ByteBuffer[slots];
+        for (int i = 0; i < slots; i++) {
+            selfCaches[i] = allocate(model.getSelfCacheBytes());
+        }
+        this.spareCache = allocate(model.getSelfCacheBytes());
+        this.positions = new int[slots];
+        this.logits = allocate(vocabSize * 4).asFloatBuffer();
+    }
+
+    private static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    public SplitWhisperModel getModel() {
+        return model;
+    }
+
+    public int getVocabSize() {
+        return vocabSize;
+    }
+
+    public int getMaxPositions() {
+        return maxPositions;
+    }
+
+    public int getSlotCount() {
+        return selfCaches.length;
+    }
+
+    /** Number of tokens fed to slot 0 since the current window began. */
+    public int getPosition() {
+        return positions[0];
+    }
+
+    public int getPosition(int slot) {
+        return positions[slot];
+    }
+
+    /** Encoder invocations since the session was created. */
+    public int getEncoderRuns() {
+        return encoderRuns;
+    }
+
+    /** Decoder steps since the session was created, over all slots. */
+    public int getDecoderSteps() {
+        return decoderSteps;
+    }
+
+    /**
+     * Encodes one window of features and resets every slot to position 0. The self caches are
+     * zeroed so stale entries from the previous window can never be attended to.
+     */
+    public void beginWindow(ByteBuffer melInput) {
+        checkCancelled();
+        melInput.rewind();
+        crossCache.clear();
+        try {
+            model.encode(melInput, crossCache);
+        } catch (RuntimeException e) {
+            checkCancelled(); // An interrupted graph fails with whatever the runtime throws
+            throw e;
+        }
+        encoderRuns++;
+        for (int slot = 0; slot < selfCaches.length; slot++) {
+            clear(selfCaches[slot]);
+            positions[slot] = 0;
+        }
+        windowOpen = true;
+    }
+
+    /**
+     * Puts every slot back at position 0 of the current window, keeping the cross cache, so the
+     * window can be decoded again without another encoder run. Only slots that were stepped are
+     * zeroed; a slot at position 0 is already clear.
+     */
+    public void restartWindow() {
+        if (!windowOpen) {
+            throw new IllegalStateException("beginWindow() must be called before restartWindow()");
+        }
+        checkCancelled();
+        for (int slot = 0; slot < selfCaches.length; slot++) {
+            if (positions[slot] != 0) {
+                clear(selfCaches[slot]);
+                positions[slot] = 0;
+            }
+        }
+    }
+
+    private static void clear(ByteBuffer buffer) {
+        buffer.clear();
+        while (buffer.remaining() >= 8) {
+            buffer.putLong(0L);
+        }
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) 0);
+        }
+        buffer.clear();
+    }
+
+    /** True while another token fits into slot 0's decoder context. */
+    public boolean hasCapacity() {
+        return hasCapacity(0);
+    }
+
+    public boolean hasCapacity(int slot) {
+        return positions[slot] < maxPositions;
+    }
+
+    /** {@link #step(int, int)} on slot 0. */
+    public FloatBuffer step(int token) {
+        return step(0, token);
+    }
+
+    /**
+     * Feeds {@code token} at the slot's current position and returns the next-token logits. The
+     * returned buffer is shared by all slots and overwritten by the next step.
+     */
+    public FloatBuffer step(int slot, int token) {
+        if (!windowOpen) {
+            throw new IllegalStateException("beginWindow() must be called before step()");
+        }
+        if (positions[slot] >= maxPositions) {
+            throw new IllegalStateException("Decoder context of " + maxPositions + " positions is full");
+        }
+        checkCancelled();
+        ByteBuffer cacheIn = selfCaches[slot];
+        crossCache.rewind();
+        cacheIn.rewind();
+        spareCache.clear();
+        logits.clear();
+        try {
+            model.decode(token, positions[slot], crossCache, cacheIn, spareCache, logits);
+        } catch (RuntimeException e) {
+            checkCancelled();
+            throw e;
+        }
+        decoderSteps++;
+        positions[slot]++;
+
+        selfCaches[slot] = spareCache;
+        spareCache = cacheIn;
+
+        logits.rewind();
+        return logits;
+    }
+
+    /**
+     * Cancels the window being decoded, possibly from another thread: the next
+     * {@link #beginWindow} or {@link #step} (or the one running, if the model can interrupt
+     * itself) throws {@link CancellationException}, and so does every later one until
+     * {@code setCancelled(false)}.
+     */
+    public void setCancelled(boolean cancelled) {
+        this.cancelled = cancelled;
+        model.setCancelled(cancelled);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private void checkCancelled() {
+        if (cancelled) {
+            windowOpen = false;
+            throw new CancellationException("Decoding cancelled");
+        }
+    }
+
+    /** Makes slot {@code to} an exact copy of slot {@code from} (cache and position). */
+    public void copySlot(int from, int to) {
+        if (from == to) {
+            return;
+        }
+        ByteBuffer src = selfCaches[from];
+        ByteBuffer dst = selfCaches[to];
+        src.clear();
+        dst.clear();
+        dst.put(src);
+        src.clear();
+        dst.clear();
+        positions[to] = positions[from];
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.projectvoice;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class DirectBufferPoolTest {
+
+    @Test
+    public void steadyStateReusesPreallocatedBuffers() {
+        DirectBufferPool pool = new DirectBufferPool(1024, 2, 2);
+        assertEquals(2, pool.getAllocationCount());
+        for (int i = 0; i < 100; i++) {
+            ByteBuffer a = pool.acquire();
+            ByteBuffer b = pool.acquire();
+            a.putInt(i);
+            pool.release(a);
+            pool.release(b);
+        }
+        assertEquals(2, pool.getAllocationCount());
+    }
+
+    @Test
+    public void acquiredBuffersAreClearedDirectAndNativeOrder() {
+        DirectBufferPool pool = new DirectBufferPool(64, 1, 1);
+        ByteBuffer buffer = pool.acquire();
+        buffer.position(10).limit(20);
+        pool.release(buffer);
+        ByteBuffer again = pool.acquire();
+        assertSame(buffer, again);
+        assertEquals(0, again.position());
+        assertEquals(64, again.limit());
+        assertTrue(again.isDirect());
+        assertEquals(ByteOrder.nativeOrder(), again.order());
+    }
+
+    @Test
+    public void surplusAndForeignBuffersAreDropped() {
+        DirectBufferPool pool = new DirectBufferPool(64, 1, 1);
+        ByteBuffer first = pool.acquire();
+        ByteBuffer second = pool.acquire(); // Pool exhausted: fresh allocation
+        assertEquals(2, pool.getAllocationCount());
+        pool.release(first);
+        pool.release(second); // Over capacity
+        pool.release(ByteBuffer.allocateDirect(32));
+        pool.release(first); // Double release
+        assertEquals(1, pool.getFreeCount());
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.projectvoice;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Batch formation and result scatter of {@link InferenceBatcher}, against a backend whose answer
+ * for each input depends only on that input, so batched and one-by-one runs must agree.
+ */
+public class InferenceBatcherTest {
+
+    private static final int[] INPUT_SHAPE = {1, 80, 3000};
+    private static final String[] WAVS = { "jfk.wav", "english_test1.wav", "english_test2.wav", "english_test_3_bili.wav", "MicInput.wav" };
+    private static final long TIMEOUT_MS = 5000;
+
+    private final MelSpectrogramEngine melEngine = new MelSpectrogramEngine(INPUT_SHAPE);
+    private final int inputFloats = melEngine.getInputSize();
+    private final TokenTable table = TestAssets.letters();
+    private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+    private final List<int[]> batchPrompts = Collections.synchronizedList(new ArrayList<int[]>());
+    private final ExecutorService featureExecutor = Executors.newCachedThreadPool();
+    private InferenceBatcher batcher;
+
+    // Three letters from a checksum of the input
+    private static int answer(FloatBuffer input, int[] out) {
+        float sum = 0f;
+        for (int i = 0; i < input.remaining(); i += 97) sum += Math.abs(input.get(input.position() + i));
+        int hash = Float.floatToIntBits(sum) & 0x7fffffff;
+        for (int i = 0; i < 3; i++) {
+            out[i] = hash % 10;
+            hash /= 10;
+        }
+        return 3;
+    }
+
+    private final InferenceBatcher.BatchBackend checksums = (inputs, batchSize, prompt, out, counts) -> {
+        batchSizes.add(batchSize);
+        batchPrompts.add(prompt);
+        assertEquals(batchSize * inputFloats * 4, inputs.remaining());
+        FloatBuffer floats = inputs.asFloatBuffer();
+        for (int i = 0; i < batchSize; i++) {
+            floats.limit((i + 1) * inputFloats).position(i * inputFloats);
+            counts[i] = answer(floats, out[i]);
+        }
+    };
+
+    private final TranscriptionEngine.Backend unbatched = (input, prompt, out) -> answer(input.asFloatBuffer(), out);
+
+    @After
+    public void shutDown() throws InterruptedException {
+        if (batcher != null) {
+            batcher.shutdown();
+            assertTrue(batcher.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        }
+        featureExecutor.shutdownNow();
+    }
+
+    private ByteBuffer input(float value) {
+        ByteBuffer input = melEngine.allocateInputBuffer();
+        FloatBuffer floats = input.asFloatBuffer();
+        while (floats.hasRemaining()) floats.put(value);
+        return input;
+    }
+
+    private int[] expected(ByteBuffer input) {
+        int[] out = new int[3];
+        answer(input.duplicate().order(ByteOrder.nativeOrder()).asFloatBuffer(), out);
+        return out;
+    }
+
+    @Test
+    public void fullBatch_runsAsOneInvocation_andEachInputGetsItsOwnIds() throws Exception {
+        batcher = new InferenceBatcher(checksums, melEngine, 4, TIMEOUT_MS);
+        int[] prompt = table.transcribePrompt(false);
+        List<ByteBuffer> inputs = new ArrayList<>();
+        List<Future<int[]>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            inputs.add(input(0.25f * (i + 1)));
+            results.add(batcher.submit(inputs.get(i), prompt));
+        }
+
+        for (int i = 0; i < 4; i++) {
+            assertArrayEquals(expected(inputs.get(i)), results.get(i).get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        }
+        assertEquals(Collections.singletonList(4), batchSizes);
+        assertEquals(1, batcher.getBatchCount());
+        assertEquals(4, batcher.getInputCount());
+    }
+
+    @Test
+    public void partialBatch_runsOnceTheOldestInputHasWaitedLongEnough() throws Exception {
+        batcher = new InferenceBatcher(checksums, melEngine, 8, 20);
+        Future<int[]> first = batcher.submit(input(1f), table.transcribePrompt(false));
+        Future<int[]> second = batcher.submit(input(2f), table.transcribePrompt(false));
+
+        assertNotNull(first.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertNotNull(second.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(1, batcher.getBatchSizes().getCount());
+        assertEquals(2, batcher.getBatchSizes().getMax());
+        // Padded to the full width, so the backend sees one input shape
+        assertEquals(Collections.singletonList(8), batchSizes);
+    }
+
+    @Test
+    public void inputsWithAnotherPrompt_waitForTheirOwnBatch() throws Exception {
+        batcher = new InferenceBatcher(checksums, melEngine, 8, 50);
+        int[] untimed = table.transcribePrompt(false);
+        int[] timed = table.transcribePrompt(true);
+        List<Future<int[]>> results = Arrays.asList(batcher.submit(input(1f), untimed), batcher.submit(input(2f), timed),
+                batcher.submit(input(3f), untimed));
+        for (Future<int[]> result : results) {
+            result.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+
+        assertEquals(Arrays.asList(8, 8), batchSizes);
+        assertEquals(2, batcher.getBatchSizes().getMax());
+        assertEquals(1, batcher.getBatchSizes().getMin());
+        assertArrayEquals(untimed, batchPrompts.get(0));
+        assertArrayEquals(timed, batchPrompts.get(1));
+    }
+
+    @Test
+    public void failedInvocation_failsEveryInputOfTheBatch() throws Exception {
+        final IllegalStateException failure = new IllegalStateException("Interpreter failed");
+        batcher = new InferenceBatcher((inputs, batchSize, prompt, out, counts) -> {
+            throw failure;
+        }, melEngine, 2, TIMEOUT_MS);
+        Future<int[]> first = batcher.submit(input(1f), table.transcribePrompt(false));
+        Future<int[]> second = batcher.submit(input(2f), table.transcribePrompt(false));
+
+        for (Future<int[]> result : Arrays.asList(first, second)) {
+            try {
+                result.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                fail("Expected the batch failure");
+            } catch (ExecutionException e) {
+                assertSame(failure, e.getCause());
+            }
+        }
+    }
+
+    @Test
+    public void shutdown_closesTheBackendAfterTheLastBatch() throws Exception {
+        final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+        batcher = new InferenceBatcher(new InferenceBatcher.BatchBackend() {
+            @Override
+            public void decodeBatch(ByteBuffer inputs, int batchSize, int[] prompt, int[][] out, int[] counts) {
+                calls.add("decode");
+            }
+
+            @Override
+            public void close() {
+                calls.add("close");
+            }
+        }, melEngine, 2, TIMEOUT_MS);
+        Future<int[]> queued = batcher.submit(input(1f), table.transcribePrompt(false));
+        batcher.shutdown();
+
+        assertEquals(0, queued.get(TIMEOUT_MS, TimeUnit.MILLISECONDS).length);
+        assertTrue(batcher.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(Arrays.asList("decode", "close"), calls);
+    }
+
+    @Test
+    public void bundledWavs_transcribeTheSameBatched_inFewerInvocations() throws Exception {
+        List<String> expected = new ArrayList<>();
+        TranscriptionEngine reference = new TranscriptionEngine(melEngine, table, unbatched, featureExecutor);
+        int windows = 0;
+        for (String wav : WAVS) {
+            TranscriptionEngine.Result result = reference.transcribe(WavReader.open(TestAssets.file(wav)));
+            expected.add(result.text);
+            windows += result.windowCount;
+        }
+
+        batcher = new InferenceBatcher(checksums, melEngine, WAVS.length, TIMEOUT_MS / 10);
+        List<Future<TranscriptionEngine.Result>> results = new ArrayList<>();
+        ExecutorService workers = Executors.newFixedThreadPool(WAVS.length);
+        try {
+            for (final String wav : WAVS) {
+                final TranscriptionEngine engine = new TranscriptionEngine(new MelSpectrogramEngine(INPUT_SHAPE), table,
+                        batcher.asBackend(), featureExecutor);
+                results.add(workers.submit(() -> engine.transcribe(WavReader.open(TestAssets.file(wav)))));
+            }
+            for (int i = 0; i < WAVS.length; i++) {
+                assertEquals(WAVS[i], expected.get(i), results.get(i).get(TIMEOUT_MS, TimeUnit.MILLISECONDS).text);
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        assertEquals(windows, batcher.getInputCount());
+        assertTrue(batcher.getBatchCount() + " invocations for " + windows + " windows", batcher.getBatchCount() < windows);
+    }
+}
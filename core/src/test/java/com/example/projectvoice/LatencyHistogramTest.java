@@ -0,0 +1,85 @@
+package com.example.projectvoice;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverEveryValueWithinThreePercent() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong() & LatencyHistogram.MAX_TRACKABLE >>> random.nextInt(40);
+            int index = LatencyHistogram.indexOf(value);
+            long low = LatencyHistogram.lowestValueAt(index);
+            long high = LatencyHistogram.highestValueAt(index);
+            assertTrue(value + " in [" + low + ", " + high + "]", low <= value && value <= high);
+            assertTrue(high - low <= Math.max(0L, low / 32));
+        }
+        assertEquals(63, LatencyHistogram.indexOf(63));
+        assertEquals(64, LatencyHistogram.lowestValueAt(LatencyHistogram.indexOf(64)));
+    }
+
+    @Test
+    public void percentilesOfUniformValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 10_000; v++) {
+            histogram.record(v * 1000L);
+        }
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(1000L, histogram.getMin());
+        assertEquals(10_000_000L, histogram.getMax());
+        assertEquals(5_000_500.0, histogram.getMean(), 1e-6);
+        assertEquals(5_000_000.0, histogram.getValueAtPercentile(50), 5_000_000 / 32.0);
+        assertEquals(9_900_000.0, histogram.getValueAtPercentile(99), 9_900_000 / 32.0);
+        assertEquals(10_000_000L, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void outOfRangeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE / 2);
+        assertEquals(0L, histogram.getMin());
+        assertEquals(Long.MAX_VALUE / 2, histogram.getMax());
+        assertEquals(Long.MAX_VALUE / 2, histogram.getValueAtPercentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0L, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void concurrentRecordsAreAllCounted() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final int threads = 4;
+        final int perThread = 50_000;
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int base = t * perThread;
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) histogram.record(base + i);
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) worker.join();
+
+        assertEquals(threads * perThread, histogram.getCount());
+        assertEquals(0L, histogram.getMin());
+        assertEquals(threads * perThread - 1L, histogram.getMax());
+        StringBuilder json = new StringBuilder();
+        histogram.appendJson(json);
+        assertTrue(json.toString(), json.toString().startsWith("{\"count\":" + threads * perThread + ","));
+    }
+}
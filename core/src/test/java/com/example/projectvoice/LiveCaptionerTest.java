@@ -0,0 +1,213 @@
+package com.example.projectvoice;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local agreement and window trimming of {@link LiveCaptioner}, against a backend that plays a
+ * script of decoder outputs and checks the committed tokens it is forced with.
+ */
+public class LiveCaptionerTest {
+
+    private static final int[] INPUT_SHAPE = {1, 80, 3000};
+    private static final int SECOND = AudioPreprocessor.SAMPLE_RATE;
+    private static final long TIMEOUT_MS = 5000;
+
+    private static float[] jfk;
+
+    private final TokenTable table = TestAssets.letters();
+    private final int ts0 = table.getTimestampBegin();
+    private final ExecutorService featureExecutor = Executors.newSingleThreadExecutor();
+    private final ScriptedBackend backend = new ScriptedBackend();
+    private final TranscriptionEngine engine = new TranscriptionEngine(new MelSpectrogramEngine(INPUT_SHAPE), table, backend,
+            featureExecutor);
+
+    /** Per pass: the committed tokens expected after the base prompt, and what it generates after them. */
+    private final class ScriptedBackend implements TranscriptionEngine.Backend {
+        final List<int[][]> script = new ArrayList<>();
+        int pass;
+
+        void then(int[] forced, int[] generated) {
+            script.add(new int[][] { forced, generated });
+        }
+
+        @Override
+        public int decode(ByteBuffer input, int[] prompt, int[] out) {
+            int[][] step = script.get(Math.min(pass++, script.size() - 1));
+            int base = table.transcribePrompt(true).length;
+            assertArrayEquals("forced prefix of pass " + pass, step[0], Arrays.copyOfRange(prompt, base, prompt.length));
+            System.arraycopy(step[1], 0, out, 0, step[1].length);
+            return step[1].length;
+        }
+    }
+
+    @BeforeClass
+    public static void readAudio() throws IOException {
+        jfk = WavReader.open(TestAssets.file("jfk.wav")).readMono();
+    }
+
+    @After
+    public void shutDown() {
+        featureExecutor.shutdownNow();
+    }
+
+    private static int[] ids(int... ids) {
+        return ids;
+    }
+
+    @Test
+    public void textIsCommitted_onceTwoPassesAgree_andFinalSegmentsAreTrimmed() throws Exception {
+        StreamingMelFrontend frontend = engine.newFrontend();
+        LiveCaptioner captioner = new LiveCaptioner(frontend, table);
+        int t1 = ts0 + 50; // <|1.00|>
+        backend.then(ids(), ids(ts0, 0, 1));
+        backend.then(ids(), ids(ts0, 0, 1, 2));
+        backend.then(ids(ts0, 0, 1), ids(2, t1, t1, 3));
+        backend.then(ids(ts0, 0, 1, 2), ids(t1, t1, 3, 4));
+        backend.then(ids(ts0, 3), ids(4, 5));
+
+        frontend.accept(jfk, 0, SECOND);
+        assertTrue(captioner.update(engine));
+        assertEquals("", captioner.getStableText());
+        assertEquals("ab", captioner.getTentativeText());
+
+        frontend.accept(jfk, SECOND, SECOND);
+        assertTrue(captioner.update(engine));
+        assertEquals("ab", captioner.getStableText());
+        assertEquals("c", captioner.getTentativeText());
+
+        frontend.accept(jfk, 2 * SECOND, SECOND);
+        assertTrue(captioner.update(engine));
+        assertEquals("abc", captioner.getStableText());
+        assertEquals("d", captioner.getTentativeText());
+        assertEquals(0, captioner.getWindowStartFrame());
+
+        // "d" is agreed on after the segment ending at 1.00 s, which makes that segment final
+        frontend.accept(jfk, 3 * SECOND, SECOND);
+        assertTrue(captioner.update(engine));
+        assertEquals("abcd", captioner.getStableText());
+        assertEquals("e", captioner.getTentativeText());
+        assertEquals(100, captioner.getWindowStartFrame());
+
+        frontend.accept(jfk, 4 * SECOND, SECOND);
+        assertTrue(captioner.update(engine));
+        assertEquals("abcde", captioner.getStableText());
+        assertEquals("f", captioner.getTentativeText());
+        assertEquals(5, captioner.getPassCount());
+    }
+
+    @Test
+    public void passIsSkipped_untilEnoughNewAudio() throws Exception {
+        StreamingMelFrontend frontend = engine.newFrontend();
+        LiveCaptioner captioner = new LiveCaptioner(frontend, table);
+        backend.then(ids(), ids(0));
+
+        frontend.accept(jfk, 0, SECOND / 4);
+        assertFalse(captioner.update(engine));
+        frontend.accept(jfk, SECOND / 4, SECOND);
+        assertTrue(captioner.update(engine));
+        frontend.accept(jfk, SECOND + SECOND / 4, SECOND / 10);
+        assertFalse(captioner.update(engine));
+        assertEquals(1, captioner.getPassCount());
+        assertEquals(1, backend.pass);
+    }
+
+    @Test
+    public void graphsIgnoringThePrompt_doNotRepeatCommittedText() throws Exception {
+        StreamingMelFrontend frontend = engine.newFrontend();
+        LiveCaptioner captioner = new LiveCaptioner(frontend, table);
+        backend.then(ids(), ids(0, 1));
+        backend.then(ids(), ids(0, 1, 2));
+        backend.then(ids(0, 1), ids(0, 1, 2, 3)); // Re-emits the forced "ab"
+
+        for (int pass = 0; pass < 3; pass++) {
+            frontend.accept(jfk, pass * SECOND, SECOND);
+            assertTrue(captioner.update(engine));
+        }
+        assertEquals("abc", captioner.getStableText());
+        assertEquals("d", captioner.getTentativeText());
+    }
+
+    @Test
+    public void takesLongerThanTheWindow_keepEveryWordOnce_andKeepCommitting() throws Exception {
+        // An untimed graph that ignores the prompt: one letter per second whose middle is in the window
+        final LiveCaptioner[] captioner = new LiveCaptioner[1];
+        final StreamingMelFrontend[] frontend = new StreamingMelFrontend[1];
+        TranscriptionEngine.Backend untimed = (input, prompt, out) -> {
+            int count = 0;
+            for (int f = 50; f < frontend[0].getFrameCount(); f += 100) {
+                if (f >= captioner[0].getWindowStartFrame()) out[count++] = (f / 100) % 10;
+            }
+            return count;
+        };
+        TranscriptionEngine longTakes = new TranscriptionEngine(new MelSpectrogramEngine(INPUT_SHAPE), table, untimed, featureExecutor);
+        frontend[0] = longTakes.newFrontend();
+        captioner[0] = new LiveCaptioner(frontend[0], table);
+
+        StringBuilder expected = new StringBuilder();
+        for (int second = 0; second < 45; second++) {
+            frontend[0].accept(new float[SECOND], 0, SECOND);
+            assertTrue(captioner[0].update(longTakes));
+            expected.append((char) ('a' + second % 10));
+            assertEquals("second " + second, expected.toString(), captioner[0].getStableText() + captioner[0].getTentativeText());
+        }
+        assertTrue(captioner[0].getWindowStartFrame() > 0);
+        // Past the first restart, agreement goes on committing the new audio
+        assertTrue(captioner[0].getStableText(), captioner[0].getStableText().length() >= 40);
+    }
+
+    @Test
+    public void periodicPasses_runOnTheScheduler_untilStopped() throws Exception {
+        PriorityPool<TranscriptionEngine> engines = new PriorityPool<>(Collections.singletonList(engine));
+        TranscriptionScheduler scheduler = new TranscriptionScheduler(engines, 2, null);
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        try {
+            StreamingMelFrontend frontend = engine.newFrontend();
+            LiveCaptioner captioner = new LiveCaptioner(frontend, table);
+            backend.then(ids(), ids(0, 1));
+            final CountDownLatch captions = new CountDownLatch(2);
+            final List<String> stable = Collections.synchronizedList(new ArrayList<String>());
+
+            captioner.start(timer, scheduler, 5, (text, tentative) -> {
+                stable.add(text);
+                captions.countDown();
+            });
+            for (int offset = 0; offset + SECOND / 2 <= jfk.length && captions.getCount() > 0; offset += SECOND / 2) {
+                frontend.accept(jfk, offset, SECOND / 2);
+                Thread.sleep(20);
+            }
+            assertTrue(captions.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            captioner.stop();
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while (scheduler.getRunningCount() > 0 || scheduler.getQueueDepth() > 0) {
+                assertTrue("pass never ended", System.currentTimeMillis() < deadline);
+                Thread.sleep(1);
+            }
+            int passes = captioner.getPassCount();
+            frontend.accept(jfk, 0, jfk.length);
+            Thread.sleep(50);
+
+            assertEquals(passes, captioner.getPassCount());
+            assertEquals("ab", stable.get(stable.size() - 1));
+            assertEquals(0, captioner.getFailedPassCount());
+        } finally {
+            timer.shutdownNow();
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.example.projectvoice;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class LongFormTranscriberTest {
+
+    private static final int[] INPUT_SHAPE = {1, 80, 3000};
+    private static final int WINDOW = 3000;
+    private static final int WORD_SPACING = 100; // One word per second, at frame 50 of each second
+
+    /** Counts finished feature tasks so a recognizer can tell whether the next window is ready. */
+    private static final class CountingExecutor extends ThreadPoolExecutor {
+        final AtomicInteger completed = new AtomicInteger();
+
+        CountingExecutor() {
+            super(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+        }
+
+        @Override
+        protected void afterExecute(Runnable r, Throwable t) {
+            synchronized (completed) {
+                completed.incrementAndGet();
+                completed.notifyAll();
+            }
+        }
+
+        boolean awaitCompleted(int count, long timeoutMillis) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            synchronized (completed) {
+                while (completed.get() < count) {
+                    long left = deadline - System.currentTimeMillis();
+                    if (left <= 0) return false;
+                    completed.wait(left);
+                }
+            }
+            return true;
+        }
+    }
+
+    private final CountingExecutor executor = new CountingExecutor();
+    private final MelSpectrogramEngine engine = new MelSpectrogramEngine(INPUT_SHAPE);
+    // Ten one-letter text tokens; EOT = 10, SOT = 11, timestamps from 117 as in a multilingual table
+    private final TokenTable table = TestAssets.letters();
+
+    @After
+    public void shutDown() {
+        executor.shutdownNow();
+    }
+
+    private static float[] randomFrames(int frameCount) {
+        Random random = new Random(5);
+        float[] frames = new float[frameCount * INPUT_SHAPE[1]];
+        for (int i = 0; i < frames.length; i++) frames[i] = random.nextFloat();
+        return frames;
+    }
+
+    private static int wordAt(int frame) {
+        return (frame / WORD_SPACING) % 10;
+    }
+
+    /**
+     * Emits each segment of {@code spacing} frames that the window hears, starting at frames
+     * {@code offset + k * spacing} and {@code length} frames long, as {@code <|start|> word <|end|>}
+     * with word {@code k % 10}, the way Whisper does with timestamps on. A segment the window only
+     * hears the start of is left open; one it only hears the end of starts at {@code <|0.00|>}.
+     */
+    private static LongFormTranscriber.WindowRecognizer timedSegments(final LongFormTranscriber transcriber, final TokenTable table,
+                                                                      final int offset, final int spacing, final int length,
+                                                                      final int[] calls) {
+        return new LongFormTranscriber.WindowRecognizer() {
+            @Override
+            public int recognize(ByteBuffer input, int[] out) {
+                calls[0]++;
+                LongFormTranscriber.Window window = transcriber.getCurrentWindow();
+                int count = 0;
+                for (int k = Math.max(0, (window.start - offset - length) / spacing); offset + k * spacing < window.end; k++) {
+                    int start = offset + k * spacing;
+                    int end = start + length;
+                    if (end <= window.start) continue;
+                    out[count++] = table.getTimestampBegin() + Math.max(0, start - window.start) / 2; // 20 ms steps, 10 ms frames
+                    out[count++] = k % 10;
+                    if (end <= window.end) {
+                        out[count++] = table.getTimestampBegin() + (end - window.start) / 2;
+                    }
+                }
+                return count;
+            }
+        };
+    }
+
+    private static int[] expectedWords(int firstFrame, int endFrame) {
+        int[] words = new int[(endFrame - firstFrame + WORD_SPACING - 1) / WORD_SPACING];
+        int n = 0;
+        for (int f = firstFrame + WORD_SPACING / 2; f < endFrame; f += WORD_SPACING) words[n++] = wordAt(f);
+        return Arrays.copyOf(words, n);
+    }
+
+    @Test
+    public void shortTakeIsOneWindow() {
+        LongFormTranscriber transcriber = new LongFormTranscriber(engine, table, executor);
+        List<LongFormTranscriber.Window> plan = transcriber.planWindows(0, 2400, null);
+        assertEquals(1, plan.size());
+        assertEquals(0, plan.get(0).start);
+        assertEquals(2400, plan.get(0).end);
+    }
+
+    @Test
+    public void windowsFitTheModelAndKeepRangesTileTheTake() {
+        LongFormTranscriber transcriber = new LongFormTranscriber(engine, table, executor);
+        int end = 60_000; // 10 minutes
+        List<LongFormTranscriber.Window> plan = transcriber.planWindows(120, end, null);
+        assertTrue(plan.size() >= end / WINDOW);
+        int keep = 120;
+        for (LongFormTranscriber.Window window : plan) {
+            assertTrue(window.toString(), window.end - window.start <= WINDOW);
+            assertEquals(window.toString(), keep, window.keepFrom);
+            assertTrue(window.toString(), window.start <= window.keepFrom && window.keepUntil <= window.end);
+            keep = window.keepUntil;
+        }
+        assertEquals(end, keep);
+        for (int i = 1; i < plan.size(); i++) {
+            // Both windows hear a margin on either side of the cut
+            assertEquals(LongFormTranscriber.DEFAULT_OVERLAP_FRAMES, plan.get(i - 1).end - plan.get(i).start);
+        }
+    }
+
+    @Test
+    public void timestampsRemoveTheOverlapText() throws Exception {
+        LongFormTranscriber transcriber = new LongFormTranscriber(engine, table, executor);
+        int end = 20_000;
+        float[] frames = randomFrames(end);
+        int[] calls = {0};
+
+        // A 0.4 s segment for each word, one word per second
+        LongFormTranscriber.WindowRecognizer words = timedSegments(transcriber, table, WORD_SPACING / 2, WORD_SPACING, 40, calls);
+        String text = transcriber.transcribe(frames, 0, end, null, words);
+        assertEquals(calls[0], transcriber.getLastWindowCount());
+        assertTrue(calls[0] >= end / WINDOW);
+        int[] expected = expectedWords(0, end);
+        assertArrayEquals(expected, transcriber.getLastTokens());
+        assertEquals(expected.length, text.length());
+    }
+
+    @Test
+    public void segmentsLongerThanTheOverlapCrossingACutComeOutOnce() throws Exception {
+        LongFormTranscriber transcriber = new LongFormTranscriber(engine, table, executor);
+        int end = 20_000;
+        int[] calls = {0};
+
+        // 4.5 s sentences back to back: every planned cut falls inside one, far from its ends
+        int sentence = 450;
+        transcriber.transcribe(randomFrames(end), 0, end, null, timedSegments(transcriber, table, 0, sentence, sentence, calls));
+        int[] expected = new int[(end + sentence - 1) / sentence];
+        for (int k = 0; k < expected.length; k++) expected[k] = k % 10;
+        assertArrayEquals(expected, transcriber.getLastTokens());
+        assertTrue(calls[0] > 1);
+    }
+
+    @Test
+    public void untimedWindowsDropTheRepeatedRun() throws Exception {
+        LongFormTranscriber transcriber = new LongFormTranscriber(engine, table, executor);
+        final int[][] outputs = {
+                { 0, 1, 2, 3, 4, 5 },
+                { 4, 5, 6, 7 },      // "e f" heard again at the start
+                { 9, 8, 9 },         // Nothing repeated
+        };
+        final int[] calls = {0};
+        String text = transcriber.transcribe(randomFrames(7000), 0, 7000, null, new LongFormTranscriber.WindowRecognizer() {
+            @Override
+            public int recognize(ByteBuffer input, int[] out) {
+                int[] tokens = outputs[calls[0]++];
+                System.arraycopy(tokens, 0, out, 0, tokens.length);
+                return tokens.length;
+            }
+        });
+        assertEquals(3, calls[0]);
+        assertEquals("abcdefghjij", text);
+    }
+
+    @Test
+    public void nextWindowIsPreparedDuringInference() throws Exception {
+        LongFormTranscriber transcriber = new LongFormTranscriber(engine, table, executor);
+        int end = 12_000;
+        final List<LongFormTranscriber.Window> plan = transcriber.planWindows(0, end, null);
+        final float[] frames = randomFrames(end);
+        final int[] calls = {0};
+        final FloatBuffer expected = engine.allocateInputBuffer().asFloatBuffer();
+
+        transcriber.transcribe(frames, 0, end, null, new LongFormTranscriber.WindowRecognizer() {
+            @Override
+            public int recognize(ByteBuffer input, int[] out) throws Exception {
+                int n = calls[0]++;
+                LongFormTranscriber.Window window = plan.get(n);
+                expected.clear();
+                engine.writeNormalized(frames, window.start, window.end - window.start, expected);
+                assertEquals(0, Float.compare(expected.get(1234), input.asFloatBuffer().get(1234)));
+                if (n + 1 < plan.size()) {
+                    // Features for window n+1 finish while window n is still "in inference"
+                    assertTrue("window " + (n + 1) + " not prepared", executor.awaitCompleted(n + 2, 5000));
+                }
+                return 0;
+            }
+        });
+        assertEquals(plan.size(), calls[0]);
+        assertTrue(transcriber.getLastFeatureNanos() > 0);
+        assertTrue(transcriber.getLastWallNanos() >= transcriber.getLastInferenceNanos());
+    }
+
+    @Test
+    public void recognizerFailureNamesTheWindow() throws Exception {
+        LongFormTranscriber transcriber = new LongFormTranscriber(engine, table, executor);
+        try {
+            transcriber.transcribe(randomFrames(7000), 0, 7000, null, new LongFormTranscriber.WindowRecognizer() {
+                @Override
+                public int recognize(ByteBuffer input, int[] out) {
+                    throw new IllegalStateException("boom");
+                }
+            });
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Window 0 "));
+            assertEquals("boom", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void failedTakesReturnEveryInputBuffer() throws Exception {
+        LongFormTranscriber transcriber = new LongFormTranscriber(engine, table, executor);
+        DirectBufferPool pool = transcriber.getInputPool();
+        final int[] preparedBefore = {0};
+        LongFormTranscriber.WindowRecognizer failing = new LongFormTranscriber.WindowRecognizer() {
+            @Override
+            public int recognize(ByteBuffer input, int[] out) throws Exception {
+                assertTrue(executor.awaitCompleted(preparedBefore[0] + 2, 5000)); // Next window in hand
+                throw new IllegalStateException("boom");
+            }
+        };
+        for (int take = 0; take < 3; take++) {
+            preparedBefore[0] = executor.completed.get();
+            try {
+                transcriber.transcribe(randomFrames(7000), 0, 7000, null, failing);
+                fail();
+            } catch (ExecutionException expected) {
+            }
+        }
+        // Frames that stop short of the plan make writeNormalized fail on the feature executor
+        try {
+            transcriber.transcribe(randomFrames(100), 0, 7000, null, failing);
+            fail();
+        } catch (ExecutionException expected) {
+        }
+        assertEquals(2, pool.getAllocationCount());
+        assertEquals(2, pool.getFreeCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void overlapMustLeaveRoomToAdvance() {
+        new LongFormTranscriber(engine, table, executor, WINDOW / 2, 0);
+    }
+
+    @Test
+    public void cutsLandInPausesBetweenSentences() throws IOException, ExecutionException, InterruptedException {
+        // Five copies of jfk.wav (11 s) with 1.5 s quiet gaps: ~62 s of dictation
+        float[] jfk = AudioPreprocessor.pcm16ToFloat(StreamingMelFrontendTest.readWavData(TestAssets.file("jfk.wav")));
+        int gap = 3 * AudioPreprocessor.SAMPLE_RATE / 2;
+        float[] take = new float[5 * (jfk.length + gap)];
+        Random random = new Random(7);
+        for (int i = 0; i < take.length; i++) take[i] = (float) random.nextGaussian() * 0.001f;
+        for (int copy = 0; copy < 5; copy++) {
+            int offset = copy * (jfk.length + gap) + gap;
+            for (int i = 0; i < jfk.length; i++) take[offset + i] += jfk[i];
+        }
+
+        StreamingMelFrontend frontend = new StreamingMelFrontend(engine);
+        VoiceActivityDetector vad = new VoiceActivityDetector();
+        frontend.setVoiceActivityDetector(vad);
+        frontend.accept(take, 0, take.length);
+        VoiceActivityDetector.Segment speech = frontend.findSpeech();
+
+        LongFormTranscriber transcriber = new LongFormTranscriber(engine, table, executor);
+        List<LongFormTranscriber.Window> plan = transcriber.planWindows(speech.start, speech.end, vad);
+        assertTrue(plan.size() >= 3);
+        int period = (jfk.length + gap) / AudioPreprocessor.FRAME_SHIFT;
+        for (int i = 0; i + 1 < plan.size(); i++) {
+            int boundary = plan.get(i).keepUntil;
+            int intoPeriod = boundary % period;
+            // Gap occupies the first gap samples of each period (give the STFT window a frame or two)
+            assertTrue("cut at " + boundary + " is inside speech", intoPeriod < gap / AudioPreprocessor.FRAME_SHIFT);
+            assertFalse(vad.isSpeech(boundary));
+        }
+
+        final int[] calls = {0};
+        transcriber.transcribe(frontend, speech, new LongFormTranscriber.WindowRecognizer() {
+            @Override
+            public int recognize(ByteBuffer input, int[] out) {
+                calls[0]++;
+                return 0;
+            }
+        });
+        assertEquals(plan.size(), calls[0]);
+    }
+}
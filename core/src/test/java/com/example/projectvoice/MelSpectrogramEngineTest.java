@@ -0,0 +1,151 @@
+package com.example.projectvoice;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+public class MelSpectrogramEngineTest {
+
+    @Test
+    public void process_matchesBatchPreprocess_forEachLayout() throws IOException {
+        byte[] pcm = StreamingMelFrontendTest.readWavData(TestAssets.file("jfk.wav"));
+        float[] audio = AudioPreprocessor.pcm16ToFloat(pcm);
+        int[][] shapes = {{1, 80, 3000}, {1, 1, 3000, 80}};
+        for (int[] shape : shapes) {
+            MelSpectrogramEngine engine = new MelSpectrogramEngine(shape);
+            FloatBuffer out = engine.allocateInputBuffer().asFloatBuffer();
+            assertEquals(AudioPreprocessor.numFrames(audio.length), engine.process(audio, audio.length, out));
+            assertEquals(engine.getInputSize(), out.position());
+
+            float[] expected = new float[engine.getInputSize()];
+            float[] actual = new float[engine.getInputSize()];
+            AudioPreprocessor.preprocess(pcm, shape).order(ByteOrder.nativeOrder()).asFloatBuffer().get(expected);
+            out.rewind();
+            out.get(actual);
+            assertArrayEquals(expected, actual, 1e-5f);
+        }
+    }
+
+    @Test
+    public void process_isRepeatableIntoSameBuffer() {
+        float[] audio = new float[16000];
+        for (int i = 0; i < audio.length; i++) {
+            audio[i] = (float) Math.sin(2 * Math.PI * 440 * i / 16000.0);
+        }
+        MelSpectrogramEngine engine = new MelSpectrogramEngine(new int[]{1, 80, 3000});
+        ByteBuffer bytes = engine.allocateInputBuffer();
+        FloatBuffer out = bytes.asFloatBuffer();
+        engine.process(audio, audio.length, out);
+        float first = out.get(0);
+        out.clear();
+        engine.process(audio, audio.length, out);
+        assertEquals(first, out.get(0), 0f);
+        assertTrue(bytes.isDirect());
+    }
+
+    @Test
+    public void process_truncatesToModelFrames() {
+        MelSpectrogramEngine engine = new MelSpectrogramEngine(new int[]{1, 80, 100});
+        float[] audio = new float[16000 * 5];
+        FloatBuffer out = engine.allocateInputBuffer().asFloatBuffer();
+        assertEquals(100, engine.process(audio, audio.length, out));
+    }
+
+    private static float[] read(FloatBuffer out) {
+        float[] values = new float[out.capacity()];
+        out.rewind();
+        out.get(values);
+        return values;
+    }
+
+    @Test
+    public void frameSummaries_giveSameInputAsRecomputing() throws IOException {
+        float[] audio = WavReader.open(TestAssets.file("jfk.wav")).readMono();
+        for (MelSpectrogramEngine.Normalization normalization : MelSpectrogramEngine.Normalization.values()) {
+            for (int[] shape : new int[][] {{1, 80, 3000}, {1, 1, 3000, 80}}) {
+                MelSpectrogramEngine engine = new MelSpectrogramEngine(shape, null, normalization);
+                StreamingMelFrontend frontend = new StreamingMelFrontend(engine);
+                frontend.accept(audio, 0, audio.length);
+                float[] frames = frontend.finishFrames();
+                FloatBuffer fused = engine.allocateInputBuffer().asFloatBuffer();
+                FloatBuffer recomputed = engine.allocateInputBuffer().asFloatBuffer();
+
+                engine.writeNormalized(frames, frontend.getFrameSummaries(), 100, 900, fused);
+                engine.writeNormalized(frames, 100, 900, recomputed);
+                assertArrayEquals(normalization + " " + shape.length, read(recomputed), read(fused), 0f);
+            }
+        }
+    }
+
+    @Test
+    public void whisperNormalization_clampsLog10ToEightBelowMax() throws IOException {
+        float[] audio = WavReader.open(TestAssets.file("jfk.wav")).readMono();
+        int[] shape = {1, 80, 3000};
+        MelSpectrogramEngine whisper = new MelSpectrogramEngine(shape, null, MelSpectrogramEngine.Normalization.WHISPER);
+        StreamingMelFrontend log10 = new StreamingMelFrontend(whisper);
+        log10.accept(audio, 0, audio.length);
+        StreamingMelFrontend ln = new StreamingMelFrontend(new MelSpectrogramEngine(shape));
+        ln.accept(audio, 0, audio.length);
+        int frames = log10.getFrameCount();
+
+        float max = -10f; // Padding is log10 of silence
+        for (int i = 0; i < frames; i++) {
+            float[] frame = log10.getFrame(i);
+            float[] natural = ln.getFrame(i);
+            for (int m = 0; m < 80; m++) {
+                if (frame[m] > -6f) assertEquals(natural[m] / (float) Math.log(10), frame[m], 1e-4f);
+                max = Math.max(max, frame[m]);
+            }
+        }
+        FloatBuffer out = whisper.allocateInputBuffer().asFloatBuffer();
+        log10.finish(out);
+
+        float[] input = read(out);
+        for (int m = 0; m < 80; m++) {
+            for (int i = 0; i < 3000; i++) {
+                float expected = (i < frames) ? (Math.max(log10.getFrame(i)[m], max - 8f) + 4f) / 4f : (max - 8f + 4f) / 4f;
+                assertEquals("mel " + m + " frame " + i, expected, input[m * 3000 + i], 1e-6f);
+            }
+        }
+    }
+
+    @Test
+    public void encodedInputs_matchFloatInput_withinOneStep() throws IOException {
+        float[] audio = WavReader.open(TestAssets.file("jfk.wav")).readMono();
+        int[] shape = {1, 80, 3000};
+        StreamingMelFrontend frontend = new StreamingMelFrontend(new MelSpectrogramEngine(shape));
+        frontend.accept(audio, 0, audio.length);
+        float[] frames = frontend.finishFrames();
+        float[] summaries = frontend.getFrameSummaries();
+        MelSpectrogramEngine floats = new MelSpectrogramEngine(shape);
+        FloatBuffer reference = floats.allocateInputBuffer().asFloatBuffer();
+        floats.writeNormalized(frames, summaries, 0, frontend.getFrameCount(), reference);
+        float[] expected = read(reference);
+
+        TensorEncoding[] encodings = { TensorEncoding.FLOAT32, TensorEncoding.FLOAT16, TensorEncoding.int8(0.05f, -10),
+                TensorEncoding.uint8(0.05f, 118) };
+        float[] tolerances = { 0f, 2e-3f, 0.025f, 0.025f }; // Half of the quantization step; FP16 rounds to 11 bits
+        for (int e = 0; e < encodings.length; e++) {
+            MelSpectrogramEngine engine = new MelSpectrogramEngine(shape, null, MelSpectrogramEngine.Normalization.Z_SCORE, encodings[e]);
+            ByteBuffer input = engine.allocateInputBuffer();
+            assertEquals(engine.getInputSize() * encodings[e].getBytesPerValue(), input.capacity());
+            engine.writeNormalized(frames, summaries, 0, frontend.getFrameCount(), input);
+            assertEquals(engine.getInputBytes(), input.position());
+
+            for (int i = 0; i < expected.length; i++) {
+                float tolerance = tolerances[e] * Math.max(1f, Math.abs(expected[i]));
+                assertEquals(encodings[e] + " value " + i, expected[i], encodings[e].get(input, i), tolerance);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedShape_throws() {
+        new MelSpectrogramEngine(new int[]{2, 80, 3000});
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.projectvoice;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that frames and voice activity computed on a fork/join pool are exactly those of the
+ * streaming frontend over the same samples.
+ */
+public class ParallelStftTest {
+
+    private static final int[] INPUT_SHAPE = {1, 80, 3000};
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @After
+    public void shutDown() {
+        pool.shutdownNow();
+    }
+
+    private static float[] jfkTimes(int copies) throws IOException {
+        float[] jfk = WavReader.open(TestAssets.file("jfk.wav")).readMono();
+        float[] take = new float[copies * jfk.length];
+        for (int copy = 0; copy < copies; copy++) System.arraycopy(jfk, 0, take, copy * jfk.length, jfk.length);
+        return take;
+    }
+
+    private static StreamingMelFrontend streamed(float[] samples) {
+        StreamingMelFrontend frontend = new StreamingMelFrontend(new MelSpectrogramEngine(INPUT_SHAPE));
+        frontend.setVoiceActivityDetector(new VoiceActivityDetector());
+        frontend.accept(samples, 0, samples.length);
+        return frontend;
+    }
+
+    private static void assertSameFrames(StreamingMelFrontend expected, StreamingMelFrontend actual) {
+        assertEquals(expected.getSampleCount(), actual.getSampleCount());
+        assertEquals(expected.getFrameCount(), actual.getFrameCount());
+        for (int i = 0; i < expected.getFrameCount(); i++) {
+            assertArrayEquals("frame " + i, expected.getFrame(i), actual.getFrame(i), 0f);
+        }
+        VoiceActivityDetector e = expected.getVoiceActivityDetector();
+        VoiceActivityDetector a = actual.getVoiceActivityDetector();
+        assertEquals(e.getFrameCount(), a.getFrameCount());
+        for (int i = 0; i < e.getFrameCount(); i++) {
+            assertEquals(e.getEnergyDb(i), a.getEnergyDb(i), 0f);
+            assertEquals(e.getFlatness(i), a.getFlatness(i), 0f);
+        }
+        assertEquals(e.getNoiseFloorDb(), a.getNoiseFloorDb(), 0f);
+        assertEquals(String.valueOf(expected.findSpeech()), String.valueOf(actual.findSpeech()));
+    }
+
+    @Test
+    public void parallelFrames_matchStreamed() throws IOException {
+        float[] take = jfkTimes(4);
+        MelSpectrogramEngine engine = new MelSpectrogramEngine(INPUT_SHAPE);
+        ParallelStft stft = new ParallelStft(engine, pool, 0);
+        StreamingMelFrontend parallel = new StreamingMelFrontend(engine);
+        parallel.setVoiceActivityDetector(new VoiceActivityDetector());
+        final int[] listenerFrames = {0};
+        parallel.setFrameListener((frameIndex, logMel, offset) -> assertEquals(listenerFrames[0]++, frameIndex));
+
+        parallel.acceptAll(ParallelStft.samples(take, 0, take.length), stft);
+
+        assertSameFrames(streamed(take), parallel);
+        assertEquals(parallel.getFrameCount(), listenerFrames[0]);
+    }
+
+    @Test
+    public void belowThreshold_runsSerially_withSameFrames() throws IOException {
+        float[] take = jfkTimes(1);
+        MelSpectrogramEngine engine = new MelSpectrogramEngine(INPUT_SHAPE);
+        ParallelStft stft = new ParallelStft(engine, pool, Integer.MAX_VALUE);
+        StreamingMelFrontend serial = new StreamingMelFrontend(engine);
+        serial.setVoiceActivityDetector(new VoiceActivityDetector());
+
+        serial.acceptAll(ParallelStft.samples(take, 0, take.length), stft);
+
+        assertSameFrames(streamed(take), serial);
+    }
+
+    @Test
+    public void streamingContinues_afterAcceptAll() throws IOException {
+        float[] take = jfkTimes(2);
+        MelSpectrogramEngine engine = new MelSpectrogramEngine(INPUT_SHAPE);
+        ParallelStft stft = new ParallelStft(engine, pool, 0);
+        // Odd split points exercise every ring and hop phase
+        for (int split : new int[] {0, 1, 399, 400, 401, 559, 560, 123457}) {
+            StreamingMelFrontend frontend = new StreamingMelFrontend(engine);
+            frontend.setVoiceActivityDetector(new VoiceActivityDetector());
+            frontend.acceptAll(ParallelStft.samples(take, 0, split), stft);
+            frontend.accept(take, split, take.length - split);
+
+            assertSameFrames(streamed(take), frontend);
+        }
+    }
+
+    @Test
+    public void wavFeed_recordsStageTimes() throws Exception {
+        WavReader wav = WavReader.open(TestAssets.file("jfk.wav"));
+        MelSpectrogramEngine engine = new MelSpectrogramEngine(INPUT_SHAPE);
+        StreamingMelFrontend frontend = new StreamingMelFrontend(engine);
+        wav.feed(frontend, new ParallelStft(engine, pool, 0));
+
+        assertEquals(AudioPreprocessor.numFrames(wav.getSampleCount()), frontend.getFrameCount());
+        TranscriptionMetrics.Utterance utterance = frontend.getUtterance();
+        assertTrue(utterance.getNanos(TranscriptionMetrics.Stage.PCM_CONVERSION) > 0);
+        assertTrue(utterance.getNanos(TranscriptionMetrics.Stage.STFT) > 0);
+        assertTrue(utterance.getNanos(TranscriptionMetrics.Stage.MEL_PROJECTION) > 0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void acceptAll_afterStreaming_isRejected() {
+        MelSpectrogramEngine engine = new MelSpectrogramEngine(INPUT_SHAPE);
+        StreamingMelFrontend frontend = new StreamingMelFrontend(engine);
+        frontend.accept(new float[10], 0, 10);
+        frontend.acceptAll(ParallelStft.samples(new float[1000], 0, 1000), new ParallelStft(engine, pool, 0));
+    }
+}
@@ -0,0 +1,257 @@
+package com.example.projectvoice;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.*;
+
+public class PcmRingBufferTest {
+
+    /** Checks that segments continue the sequence 0, 1, 2, ... (as shorts). */
+    private static final class SequenceCheck implements PcmRingBuffer.SampleConsumer {
+        long next;
+
+        @Override
+        public void accept(short[] samples, int offset, int length) {
+            for (int i = 0; i < length; i++) {
+                if (samples[offset + i] != (short) next) {
+                    throw new AssertionError("sample " + next + " was " + samples[offset + i]);
+                }
+                next++;
+            }
+        }
+    }
+
+    private static long writeSequence(PcmRingBuffer ring, long from, int count, int chunk) {
+        short[] buffer = new short[chunk];
+        long next = from;
+        int left = count;
+        while (left > 0) {
+            int n = Math.min(chunk, left);
+            for (int i = 0; i < n; i++) buffer[i] = (short) (next + i);
+            ring.write(buffer, 0, n);
+            next += n;
+            left -= n;
+        }
+        return next;
+    }
+
+    @Test
+    public void capacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(1024, new PcmRingBuffer(1000).getCapacity());
+        assertEquals(1024, new PcmRingBuffer(1024).getCapacity());
+        assertEquals(PcmRingBuffer.DEFAULT_CAPACITY, new PcmRingBuffer().getCapacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTinyCapacity() {
+        new PcmRingBuffer(1);
+    }
+
+    @Test
+    public void readerFollowsTheProducerAcrossWraps() {
+        PcmRingBuffer ring = new PcmRingBuffer(1024);
+        PcmRingBuffer.Reader reader = ring.newReader();
+        SequenceCheck check = new SequenceCheck();
+        long written = 0;
+        for (int round = 0; round < 50; round++) {
+            written = writeSequence(ring, written, 300, 77);
+            assertEquals(300, reader.available());
+            assertEquals(300, reader.consume(check, Integer.MAX_VALUE));
+        }
+        assertEquals(written, check.next);
+        assertEquals(0, ring.getSpillChunkCount());
+        assertEquals(0, reader.getOverruns());
+    }
+
+    @Test
+    public void segmentsAreTheRingItself() {
+        PcmRingBuffer ring = new PcmRingBuffer(16);
+        PcmRingBuffer.Reader reader = ring.newReader();
+        writeSequence(ring, 0, 12, 12);
+        reader.consume(new SequenceCheck(), Integer.MAX_VALUE);
+        writeSequence(ring, 12, 8, 8); // Wraps: two segments
+        final AtomicReference<short[]> array = new AtomicReference<>();
+        final int[] segments = {0};
+        reader.consume(new PcmRingBuffer.SampleConsumer() {
+            @Override
+            public void accept(short[] samples, int offset, int length) {
+                assertTrue(array.get() == null || array.get() == samples);
+                array.set(samples);
+                segments[0]++;
+            }
+        }, Integer.MAX_VALUE);
+        assertEquals(2, segments[0]);
+        assertEquals(16, array.get().length);
+    }
+
+    @Test
+    public void lateReaderGetsSpilledSamplesAndChunksAreReleased() {
+        PcmRingBuffer ring = new PcmRingBuffer(4096);
+        PcmRingBuffer.Reader fast = ring.newReader();
+        PcmRingBuffer.Reader slow = ring.newReader();
+        SequenceCheck fastCheck = new SequenceCheck();
+        long total = 0;
+        // Slow reader lags 200k samples (~12 s) behind a 4096-sample ring
+        for (int i = 0; i < 100; i++) {
+            total = writeSequence(ring, total, 2000, 320);
+            fast.consume(fastCheck, Integer.MAX_VALUE);
+        }
+        assertEquals(total, fastCheck.next);
+        assertTrue(ring.getSpillChunkCount() > 0);
+
+        SequenceCheck slowCheck = new SequenceCheck();
+        // Partial reads are fine too
+        while (slow.available() > 0) {
+            slow.consume(slowCheck, 5000);
+        }
+        assertEquals(total, slowCheck.next);
+        assertEquals(0, slow.getOverruns());
+
+        // Once both readers are a chunk past the spilled audio, later writes drop it
+        for (int i = 0; i < 20; i++) {
+            total = writeSequence(ring, total, 2000, 320);
+            fast.consume(fastCheck, Integer.MAX_VALUE);
+            slow.consume(slowCheck, Integer.MAX_VALUE);
+        }
+        assertEquals(total, slowCheck.next);
+        assertEquals(0, ring.getSpillChunkCount());
+    }
+
+    @Test
+    public void sourceReadsStraightIntoTheRing_andLateReadersStillGetEverything() throws IOException {
+        final long[] produced = {0};
+        AudioSource sequence = new AudioSource() {
+            @Override
+            public int getSampleRate() {
+                return AudioPreprocessor.SAMPLE_RATE;
+            }
+
+            @Override
+            public int read(short[] samples, int offset, int length) {
+                int n = Math.min(length, 317); // Short reads, like a real device
+                for (int i = 0; i < n; i++) samples[offset + i] = (short) produced[0]++;
+                return n;
+            }
+        };
+        PcmRingBuffer ring = new PcmRingBuffer(4096);
+        PcmRingBuffer.Reader fast = ring.newReader();
+        PcmRingBuffer.Reader slow = ring.newReader();
+        SequenceCheck fastCheck = new SequenceCheck();
+        while (produced[0] < 100_000) {
+            assertTrue(ring.write(sequence, 1000) > 0);
+            fast.consume(fastCheck, Integer.MAX_VALUE);
+        }
+        assertTrue(ring.getSpillChunkCount() > 0);
+
+        SequenceCheck slowCheck = new SequenceCheck();
+        slow.consume(slowCheck, Integer.MAX_VALUE);
+        assertEquals(produced[0], ring.getWrittenSamples());
+        assertEquals(produced[0], fastCheck.next);
+        assertEquals(produced[0], slowCheck.next);
+        assertEquals(0, slow.getOverruns());
+    }
+
+    @Test
+    public void withoutReadersNothingIsSpilled() {
+        PcmRingBuffer ring = new PcmRingBuffer(1024);
+        writeSequence(ring, 0, 100_000, 500);
+        assertEquals(100_000, ring.getWrittenSamples());
+        assertEquals(0, ring.getSpillChunkCount());
+
+        PcmRingBuffer.Reader closed = ring.newReader();
+        closed.close();
+        writeSequence(ring, 100_000, 100_000, 500);
+        assertEquals(0, ring.getSpillChunkCount());
+    }
+
+    @Test
+    public void latestPeakLooksAtRecentSamplesOnly() {
+        PcmRingBuffer ring = new PcmRingBuffer(1024);
+        short[] loud = { 0, -3000, 100 };
+        short[] quiet = new short[200];
+        quiet[5] = 40;
+        ring.write(loud, 0, loud.length);
+        ring.write(quiet, 0, quiet.length);
+        assertEquals(40, ring.latestPeak(200));
+        assertEquals(3000, ring.latestPeak(400));
+    }
+
+    @Test
+    public void concurrentConsumersSeeTheWholeStream() throws InterruptedException {
+        final PcmRingBuffer ring = new PcmRingBuffer();
+        final int total = 2_000_000;
+        final PcmRingBuffer.Reader[] readers = { ring.newReader(), ring.newReader() };
+        final SequenceCheck[] checks = { new SequenceCheck(), new SequenceCheck() };
+        final Throwable[] failures = new Throwable[2];
+        Thread[] consumers = new Thread[2];
+        for (int c = 0; c < 2; c++) {
+            final int id = c;
+            consumers[c] = new Thread(() -> {
+                try {
+                    Random random = new Random(id);
+                    while (checks[id].next < total) {
+                        if (readers[id].awaitAvailable(TimeUnit.SECONDS.toNanos(5))) {
+                            readers[id].consume(checks[id], 1 + random.nextInt(4000));
+                        } else {
+                            throw new AssertionError("stalled at " + checks[id].next);
+                        }
+                        if (id == 1 && random.nextInt(50) == 0) {
+                            Thread.sleep(1); // A slow consumer that falls behind now and then
+                        }
+                    }
+                } catch (Throwable t) {
+                    failures[id] = t;
+                }
+            });
+            consumers[c].start();
+        }
+
+        Random random = new Random(9);
+        short[] buffer = new short[1024];
+        long next = 0;
+        while (next < total) {
+            int n = (int) Math.min(1 + random.nextInt(buffer.length), total - next);
+            for (int i = 0; i < n; i++) buffer[i] = (short) (next + i);
+            ring.write(buffer, 0, n);
+            next += n;
+            LockSupport.parkNanos(20_000); // Still ~1000x faster than 16 kHz capture
+        }
+        for (int c = 0; c < 2; c++) {
+            consumers[c].join(30_000);
+            assertNull(String.valueOf(failures[c]), failures[c]);
+            assertEquals(total, checks[c].next);
+            assertEquals(0, readers[c].getOverruns());
+        }
+    }
+
+    @Test
+    public void frontendFedFromTheRingMatchesDirectFeeding() {
+        MelSpectrogramEngine engine = new MelSpectrogramEngine(new int[] {1, 80, 3000});
+        Random random = new Random(4);
+        short[] pcm = new short[16000];
+        for (int i = 0; i < pcm.length; i++) pcm[i] = (short) (random.nextGaussian() * 3000);
+        float[] floats = new float[pcm.length];
+        for (int i = 0; i < pcm.length; i++) floats[i] = pcm[i] / 32768.0f;
+
+        StreamingMelFrontend direct = new StreamingMelFrontend(engine);
+        direct.accept(floats, 0, floats.length);
+
+        PcmRingBuffer ring = new PcmRingBuffer(2048);
+        PcmRingBuffer.Reader reader = ring.newReader();
+        final StreamingMelFrontend viaRing = new StreamingMelFrontend(engine);
+        for (int i = 0; i < pcm.length; i += 640) {
+            ring.write(pcm, i, Math.min(640, pcm.length - i));
+            reader.consume(viaRing::accept, Integer.MAX_VALUE);
+        }
+        assertEquals(direct.getFrameCount(), viaRing.getFrameCount());
+        for (int f = 0; f < direct.getFrameCount(); f++) {
+            assertArrayEquals(direct.getFrame(f), viaRing.getFrame(f), 0f);
+        }
+    }
+}
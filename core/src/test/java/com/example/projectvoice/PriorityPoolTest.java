@@ -0,0 +1,144 @@
+package com.example.projectvoice;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Grant order of {@link PriorityPool}. Every waiter records its name and releases the resource at
+ * once; since a release hands the resource straight to the chosen waiter, the recorded order is
+ * the grant order.
+ */
+public class PriorityPoolTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private static Thread waiter(final PriorityPool<String> pool, final PriorityPool.Priority priority, final String name,
+                                 final List<String> granted) throws InterruptedException {
+        int before = pool.getWaitingCount(priority);
+        Thread thread = new Thread(() -> {
+            try {
+                String item = pool.acquire(priority);
+                granted.add(name);
+                pool.release(item);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, name);
+        thread.start();
+        awaitWaiting(pool, priority, before + 1);
+        return thread;
+    }
+
+    private static void awaitWaiting(PriorityPool<String> pool, PriorityPool.Priority priority, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (pool.getWaitingCount(priority) < count) {
+            assertTrue("waiter never queued", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static void joinAll(List<Thread> threads) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join(TIMEOUT_MS);
+            assertFalse(thread.getName() + " still waiting", thread.isAlive());
+        }
+    }
+
+    @Test
+    public void interactiveWaiters_goFirst_inArrivalOrder() throws InterruptedException {
+        PriorityPool<String> pool = new PriorityPool<>(Collections.singletonList("interpreter"));
+        String held = pool.acquire(PriorityPool.Priority.BATCH);
+        List<String> granted = Collections.synchronizedList(new ArrayList<String>());
+        List<Thread> threads = new ArrayList<>();
+        threads.add(waiter(pool, PriorityPool.Priority.BATCH, "b1", granted));
+        threads.add(waiter(pool, PriorityPool.Priority.INTERACTIVE, "i1", granted));
+        threads.add(waiter(pool, PriorityPool.Priority.BATCH, "b2", granted));
+        threads.add(waiter(pool, PriorityPool.Priority.INTERACTIVE, "i2", granted));
+
+        pool.release(held);
+        joinAll(threads);
+
+        assertEquals(Arrays.asList("i1", "i2", "b1", "b2"), granted);
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void batchWaiter_isServedAfterInteractiveBurst() throws InterruptedException {
+        PriorityPool<String> pool = new PriorityPool<>(Collections.singletonList("interpreter"), 2);
+        String held = pool.acquire(PriorityPool.Priority.INTERACTIVE);
+        List<String> granted = Collections.synchronizedList(new ArrayList<String>());
+        List<Thread> threads = new ArrayList<>();
+        threads.add(waiter(pool, PriorityPool.Priority.BATCH, "b1", granted));
+        for (int i = 1; i <= 5; i++) {
+            threads.add(waiter(pool, PriorityPool.Priority.INTERACTIVE, "i" + i, granted));
+        }
+
+        pool.release(held);
+        joinAll(threads);
+
+        assertEquals(Arrays.asList("i1", "i2", "b1", "i3", "i4", "i5"), granted);
+    }
+
+    @Test
+    public void everyItemIsHandedOut_beforeAnybodyWaits() throws InterruptedException {
+        PriorityPool<String> pool = new PriorityPool<>(Arrays.asList("a", "b"));
+        String first = pool.acquire(PriorityPool.Priority.BATCH);
+        String second = pool.tryAcquire(PriorityPool.Priority.INTERACTIVE, 0, TimeUnit.MILLISECONDS);
+
+        assertNotNull(second);
+        assertNotEquals(first, second);
+        assertEquals(0, pool.getIdleCount());
+        assertNull(pool.tryAcquire(PriorityPool.Priority.INTERACTIVE, 0, TimeUnit.MILLISECONDS));
+        pool.release(first);
+        pool.release(second);
+        assertEquals(2, pool.getIdleCount());
+    }
+
+    @Test
+    public void timedOutWaiter_leavesTheQueue() throws InterruptedException {
+        PriorityPool<String> pool = new PriorityPool<>(Collections.singletonList("interpreter"));
+        String held = pool.acquire(PriorityPool.Priority.INTERACTIVE);
+
+        assertNull(pool.tryAcquire(PriorityPool.Priority.INTERACTIVE, 20, TimeUnit.MILLISECONDS));
+        assertEquals(0, pool.getWaitingCount(PriorityPool.Priority.INTERACTIVE));
+        pool.release(held);
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void interruptedWaiter_doesNotLoseTheResource() throws InterruptedException {
+        final PriorityPool<String> pool = new PriorityPool<>(Collections.singletonList("interpreter"));
+        String held = pool.acquire(PriorityPool.Priority.INTERACTIVE);
+        final AtomicReference<Throwable> outcome = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                pool.acquire(PriorityPool.Priority.BATCH);
+            } catch (Throwable t) {
+                outcome.set(t);
+            }
+        });
+        thread.start();
+        awaitWaiting(pool, PriorityPool.Priority.BATCH, 1);
+
+        thread.interrupt();
+        thread.join(TIMEOUT_MS);
+        assertTrue(outcome.get() instanceof InterruptedException);
+        assertEquals(0, pool.getWaitingCount(PriorityPool.Priority.BATCH));
+        pool.release(held);
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void extraRelease_isRejected() {
+        PriorityPool<String> pool = new PriorityPool<>(Collections.singletonList("interpreter"));
+        pool.release("interpreter");
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.projectvoice;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SparseMelFilterbankTest {
+
+    @Test
+    public void apply_matchesDenseProjectionExactly() {
+        float[][] dense = AudioPreprocessor.createMelFilterbank(80, AudioPreprocessor.N_FFT, AudioPreprocessor.SAMPLE_RATE);
+        SparseMelFilterbank sparse = SparseMelFilterbank.fromDense(dense);
+        Random random = new Random(42);
+        float[] power = new float[AudioPreprocessor.NUM_SPECTRUM_BINS];
+        float[] expected = new float[80];
+        float[] actual = new float[80 + 3];
+
+        for (int trial = 0; trial < 100; trial++) {
+            for (int k = 0; k < power.length; k++) {
+                power[k] = random.nextFloat() * 100f;
+            }
+            AudioPreprocessor.applyMelFilterbank(power, dense, expected);
+            sparse.apply(power, actual, 3);
+            for (int m = 0; m < 80; m++) {
+                assertEquals("filter " + m, expected[m], actual[3 + m], 0f);
+            }
+        }
+    }
+
+    @Test
+    public void storesOnlyNonZeroSpans() {
+        float[][] dense = AudioPreprocessor.createMelFilterbank(80, AudioPreprocessor.N_FFT, AudioPreprocessor.SAMPLE_RATE);
+        SparseMelFilterbank sparse = SparseMelFilterbank.fromDense(dense);
+        assertEquals(80, sparse.getNumFilters());
+        assertEquals(AudioPreprocessor.NUM_SPECTRUM_BINS, sparse.getNumBins());
+        assertTrue(sparse.getNonZeroCount() < 80 * AudioPreprocessor.NUM_SPECTRUM_BINS / 10);
+    }
+
+    @Test
+    public void allZeroFilter_yieldsZeroEnergy() {
+        float[][] dense = {{0f, 0f, 0f}, {0f, 0.5f, 1f}};
+        SparseMelFilterbank sparse = SparseMelFilterbank.fromDense(dense);
+        float[] out = new float[2];
+        sparse.apply(new float[]{1f, 2f, 3f}, out, 0);
+        assertEquals(0f, out[0], 0f);
+        assertEquals(4f, out[1], 0f);
+        assertEquals(2, sparse.getNonZeroCount());
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.projectvoice;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the streaming frontend produces exactly the batch AudioPreprocessor output.
+ */
+public class StreamingMelFrontendTest {
+
+    private static final int[] INPUT_SHAPE = {1, 80, 3000};
+
+    @Test
+    public void streamedFrames_matchBatchLogMel_onJfk() throws IOException {
+        byte[] pcm = readWavData(TestAssets.file("jfk.wav"));
+        float[][] batch = AudioPreprocessor.computeLogMel(AudioPreprocessor.pcm16ToFloat(pcm), 80);
+
+        StreamingMelFrontend frontend = new StreamingMelFrontend(new MelSpectrogramEngine(INPUT_SHAPE));
+        final int[] listenerFrames = {0};
+        frontend.setFrameListener((frameIndex, logMel, offset) -> {
+            assertEquals(listenerFrames[0]++, frameIndex);
+        });
+        feedInOddChunks(frontend, pcm, 1283);
+
+        assertEquals(pcm.length / 2, frontend.getSampleCount());
+        assertEquals(batch.length, frontend.getFrameCount());
+        assertEquals(batch.length, listenerFrames[0]);
+        for (int i = 0; i < batch.length; i++) {
+            assertArrayEquals("frame " + i, batch[i], frontend.getFrame(i), 0f);
+        }
+    }
+
+    @Test
+    public void finish_matchesBatchPreprocess_onJfk() throws IOException {
+        byte[] pcm = readWavData(TestAssets.file("jfk.wav"));
+        ByteBuffer expected = AudioPreprocessor.preprocess(pcm, INPUT_SHAPE);
+
+        MelSpectrogramEngine engine = new MelSpectrogramEngine(INPUT_SHAPE);
+        StreamingMelFrontend frontend = new StreamingMelFrontend(engine);
+        feedInOddChunks(frontend, pcm, 3200);
+        FloatBuffer actual = engine.allocateInputBuffer().asFloatBuffer();
+        assertEquals(AudioPreprocessor.numFrames(pcm.length / 2), frontend.finish(actual));
+
+        float[] e = new float[80 * 3000];
+        float[] a = new float[80 * 3000];
+        expected.order(ByteOrder.nativeOrder()).asFloatBuffer().get(e);
+        actual.rewind();
+        actual.get(a);
+        assertArrayEquals(e, a, 1e-5f);
+    }
+
+    @Test
+    public void finishOnFrameRange_matchesProcessingTheTrimmedAudio() throws IOException {
+        float[] samples = AudioPreprocessor.pcm16ToFloat(readWavData(TestAssets.file("jfk.wav")));
+        int first = 120;
+        int count = 700;
+
+        MelSpectrogramEngine engine = new MelSpectrogramEngine(INPUT_SHAPE);
+        StreamingMelFrontend frontend = new StreamingMelFrontend(engine);
+        frontend.accept(samples, 0, samples.length);
+        FloatBuffer trimmed = engine.allocateInputBuffer().asFloatBuffer();
+        assertEquals(count, frontend.finish(trimmed, first, count));
+
+        // Frame i of audio starting at first * FRAME_SHIFT is frame first + i of the whole take
+        int start = first * AudioPreprocessor.FRAME_SHIFT;
+        int length = (count - 1) * AudioPreprocessor.FRAME_SHIFT + AudioPreprocessor.FRAME_LENGTH;
+        float[] cut = Arrays.copyOfRange(samples, start, start + length);
+        FloatBuffer expected = engine.allocateInputBuffer().asFloatBuffer();
+        assertEquals(count, engine.process(cut, cut.length, expected));
+
+        float[] e = new float[80 * 3000];
+        float[] a = new float[80 * 3000];
+        expected.rewind();
+        expected.get(e);
+        trimmed.rewind();
+        trimmed.get(a);
+        assertArrayEquals(e, a, 0f);
+    }
+
+    @Test
+    public void noFramesUntilFirstWindowIsFull() {
+        StreamingMelFrontend frontend = new StreamingMelFrontend(new MelSpectrogramEngine(INPUT_SHAPE));
+        frontend.accept(new float[399], 0, 399);
+        assertEquals(0, frontend.getFrameCount());
+        frontend.accept(new float[1], 0, 1);
+        assertEquals(1, frontend.getFrameCount());
+        frontend.accept(new float[159], 0, 159);
+        assertEquals(1, frontend.getFrameCount());
+        frontend.accept(new float[1], 0, 1);
+        assertEquals(2, frontend.getFrameCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void acceptAfterFinish_throws() {
+        MelSpectrogramEngine engine = new MelSpectrogramEngine(INPUT_SHAPE);
+        StreamingMelFrontend frontend = new StreamingMelFrontend(engine);
+        frontend.accept(new float[1600], 0, 1600);
+        frontend.finish(engine.allocateInputBuffer().asFloatBuffer());
+        frontend.accept(new float[1], 0, 1);
+    }
+
+    // Odd chunk sizes exercise the split-sample carry in acceptPcm16.
+    private static void feedInOddChunks(StreamingMelFrontend frontend, byte[] pcm, int chunkBytes) {
+        for (int off = 0; off < pcm.length; off += chunkBytes) {
+            frontend.acceptPcm16(pcm, off, Math.min(chunkBytes, pcm.length - off));
+        }
+    }
+
+    /** Returns the raw "data" chunk of a RIFF/WAVE file, skipping LIST and other chunks. */
+    static byte[] readWavData(File file) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        buf.position(12);
+        while (buf.remaining() >= 8) {
+            int id = buf.getInt();
+            int size = buf.getInt();
+            if (id == 0x61746164) { // "data"
+                return Arrays.copyOfRange(buf.array(), buf.position(), buf.position() + Math.min(size, buf.remaining()));
+            }
+            buf.position(buf.position() + size + (size & 1));
+        }
+        throw new IOException("No data chunk in " + file);
+    }
+}
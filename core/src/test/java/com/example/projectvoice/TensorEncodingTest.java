@@ -0,0 +1,81 @@
+package com.example.projectvoice;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+public class TensorEncodingTest {
+
+    private static ByteBuffer encode(TensorEncoding encoding, float... values) {
+        ByteBuffer out = ByteBuffer.allocateDirect(values.length * encoding.getBytesPerValue()).order(ByteOrder.nativeOrder());
+        encoding.put(values, 0, values.length, out);
+        assertFalse(out.hasRemaining());
+        return out;
+    }
+
+    @Test
+    public void int8_roundsToNearestStep_andSaturates() {
+        TensorEncoding int8 = TensorEncoding.int8(0.5f, 3);
+        ByteBuffer out = encode(int8, 0f, 1.2f, -1.3f, 1000f, -1000f);
+
+        assertArrayEquals(new byte[] {3, 5, 0, 127, -128}, bytes(out));
+        assertEquals(1f, int8.get(out, 1), 0f);
+        assertEquals(62f, int8.get(out, 3), 0f);
+        assertEquals(-65.5f, int8.get(out, 4), 0f);
+    }
+
+    @Test
+    public void uint8_readsBytesAsUnsigned() {
+        TensorEncoding uint8 = TensorEncoding.uint8(0.1f, 128);
+        ByteBuffer out = encode(uint8, 12.7f, -12.8f, 50f);
+
+        assertEquals(255, out.get(0) & 0xff);
+        assertEquals(0, out.get(1) & 0xff);
+        assertEquals(12.7f, uint8.get(out, 0), 1e-5f);
+        assertEquals(-12.8f, uint8.get(out, 1), 1e-5f);
+        assertEquals(12.7f, uint8.get(out, 2), 1e-5f);
+    }
+
+    @Test
+    public void float16_roundTripsExactValues_andRoundsToEven() {
+        float[] exact = { 0f, -0f, 1f, -2.5f, 65504f, 0x1p-14f, 0x1p-24f, Float.POSITIVE_INFINITY };
+        ByteBuffer out = encode(TensorEncoding.FLOAT16, exact);
+        for (int i = 0; i < exact.length; i++) {
+            assertEquals(Float.floatToIntBits(exact[i]), Float.floatToIntBits(TensorEncoding.FLOAT16.get(out, i)));
+        }
+
+        assertEquals(0x3c00, TensorEncoding.floatToHalf(1f + 0x1p-11f));               // Tie, to even
+        assertEquals(0x3c01, TensorEncoding.floatToHalf(1f + 0x1p-11f + 0x1p-20f));    // Above the tie
+        assertEquals(0x7c00, TensorEncoding.floatToHalf(65520f));                      // Rounds past the largest half
+        assertEquals(0x0001, TensorEncoding.floatToHalf(0x1p-25f + 0x1p-30f));        // Smallest subnormal
+        assertTrue(Float.isNaN(TensorEncoding.halfToFloat(TensorEncoding.floatToHalf(Float.NaN))));
+    }
+
+    @Test
+    public void dequantize_writesFloatsAtThePosition() {
+        TensorEncoding int8 = TensorEncoding.int8(0.25f, 0);
+        ByteBuffer raw = encode(int8, 1f, 2f, 3f);
+        FloatBuffer logits = FloatBuffer.allocate(4);
+        logits.put(9f);
+
+        int8.dequantize(raw, 1, logits, 2);
+        assertEquals(3, logits.position());
+        assertArrayEquals(new float[] {9f, 2f, 3f, 0f}, logits.array(), 0f);
+        assertEquals(2, Logits.argMax(raw, int8, 0, 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroPointOutsideTheType_throws() {
+        TensorEncoding.uint8(0.1f, -1);
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.capacity()];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = buffer.get(i);
+        return bytes;
+    }
+}
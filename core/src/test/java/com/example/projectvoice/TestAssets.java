@@ -0,0 +1,33 @@
+package com.example.projectvoice;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The bundled WAV and filters/vocab files live with the app's assets. The build points
+ * {@code projectvoice.assets} at them; running from the module directory works without it.
+ * Also holds the small fixtures several tests share.
+ */
+final class TestAssets {
+
+    private static final File DIRECTORY = new File(System.getProperty("projectvoice.assets", "../app/src/main/assets"));
+
+    private TestAssets() {
+    }
+
+    static File directory() {
+        return DIRECTORY;
+    }
+
+    static File file(String name) {
+        return new File(DIRECTORY, name);
+    }
+
+    /** Token table of ten one-letter tokens, "a" to "j", for stub backends that emit ids 0-9. */
+    static TokenTable letters() {
+        byte[] bytes = "abcdefghij".getBytes(StandardCharsets.US_ASCII);
+        int[] offsets = new int[bytes.length + 1];
+        for (int i = 0; i <= bytes.length; i++) offsets[i] = i;
+        return TokenTable.fromBytes(bytes, offsets);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.projectvoice;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class TokenTableTest {
+
+    static TokenTable load(String asset) throws IOException {
+        return TokenTable.fromAssetPack(WhisperAssetPack.open(TestAssets.file(asset)));
+    }
+
+    @Test
+    public void englishSpecialTokenLayout() throws IOException {
+        TokenTable table = load("filters_vocab_en.bin");
+        assertEquals(50257, table.getTokenCount());
+        assertEquals(50256, table.getEndOfText());
+        assertEquals(50257, table.getStartOfTranscript());
+        assertEquals(50358, table.getTranscribe());
+        assertEquals(50362, table.getNoTimestamps());
+        assertEquals(50363, table.getTimestampBegin());
+        assertTrue(table.isSpecial(50256));
+        assertTrue(table.isSpecial(51000));
+        assertFalse(table.isSpecial(0));
+        assertTrue(table.isTimestamp(50363 + 50));
+        assertEquals(1.0f, table.timestampSeconds(50363 + 50), 1e-6f);
+    }
+
+    @Test
+    public void multilingualSpecialTokenLayout() throws IOException {
+        TokenTable table = load("filters_vocab_multilingual.bin");
+        assertEquals(50257, table.getEndOfText());
+        assertEquals(50364, table.getTimestampBegin());
+        assertTrue(table.isSpecial(50256)); // empty entry
+    }
+
+    @Test
+    public void decode_concatenatesByteLevelPieces_andSkipsSpecials() throws IOException {
+        TokenTable table = load("filters_vocab_en.bin");
+        // " And so my fellow Americans" per the GPT-2 vocabulary, wrapped in special tokens
+        int[] ids = {50257, 50362, 843, 523, 616, 5891, 3399, 50256};
+        TokenTable.TextBuffer out = new TokenTable.TextBuffer(4);
+        table.decode(ids, 0, ids.length, out);
+        assertEquals(" And so my fellow Americans", out.toString());
+
+        out.clear();
+        table.decode(ids, 2, 2, out);
+        assertEquals(" And so", out.toString());
+    }
+
+    @Test
+    public void decode_rebuildsCharactersSplitAcrossTokens() {
+        byte[] snowman = "\u2603".getBytes(StandardCharsets.UTF_8); // 3 bytes
+        byte[] bytes = {'<', '|', 'x', '|', '>', snowman[0], snowman[1], snowman[2], '!'};
+        int[] offsets = {0, 5, 6, 8, 9};
+        TokenTable table = TokenTable.fromBytes(bytes, offsets);
+        TokenTable.TextBuffer out = new TokenTable.TextBuffer();
+        table.decode(new int[]{0, 1, 2, 3}, 0, 4, out);
+        assertEquals("\u2603!", out.toString());
+        assertTrue(table.isSpecial(0));
+        assertEquals(4, table.getEndOfText());
+    }
+}
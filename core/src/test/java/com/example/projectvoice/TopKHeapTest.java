@@ -0,0 +1,63 @@
+package com.example.projectvoice;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TopKHeapTest {
+
+    @Test
+    public void keepsTheLargestScoresInDescendingOrder() {
+        Random random = new Random(7);
+        float[] values = new float[51865];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (float) random.nextGaussian();
+        }
+        TopKHeap heap = new TopKHeap(10);
+        for (int i = 0; i < values.length; i++) {
+            heap.offer(values[i], i / 1000, i);
+        }
+        float[] scores = new float[10];
+        int[] as = new int[10];
+        int[] bs = new int[10];
+        assertEquals(10, heap.drainDescending(scores, as, bs));
+        assertEquals(0, heap.size());
+
+        float[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(sorted[sorted.length - 1 - i], scores[i], 0f);
+            assertEquals(values[bs[i]], scores[i], 0f);
+            assertEquals(bs[i] / 1000, as[i]);
+        }
+    }
+
+    @Test
+    public void partiallyFilledHeapDrainsEverything() {
+        TopKHeap heap = new TopKHeap(4);
+        assertEquals(Float.NEGATIVE_INFINITY, heap.threshold(), 0f);
+        heap.offer(1f, 0, 1);
+        heap.offer(3f, 0, 3);
+        float[] scores = new float[4];
+        int[] as = new int[4];
+        int[] bs = new int[4];
+        assertEquals(2, heap.drainDescending(scores, as, bs));
+        assertEquals(3, bs[0]);
+        assertEquals(1, bs[1]);
+    }
+
+    @Test
+    public void fullHeapRejectsScoresAtOrBelowThreshold() {
+        TopKHeap heap = new TopKHeap(2);
+        assertTrue(heap.offer(5f, 0, 0));
+        assertTrue(heap.offer(6f, 0, 1));
+        assertEquals(5f, heap.threshold(), 0f);
+        assertFalse(heap.offer(5f, 0, 2));
+        assertFalse(heap.offer(Float.NaN, 0, 3));
+        assertTrue(heap.offer(7f, 0, 4));
+        assertEquals(6f, heap.threshold(), 0f);
+    }
+}
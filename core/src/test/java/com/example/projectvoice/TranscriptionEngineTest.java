@@ -0,0 +1,148 @@
+package com.example.projectvoice;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class TranscriptionEngineTest {
+
+    private static final int[] INPUT_SHAPE = {1, 80, 3000};
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // Ten one-letter text tokens; EOT = 10, SOT = 11 as in LongFormTranscriberTest
+    private final TokenTable table = TestAssets.letters();
+
+    /** Answers every window with "abc" and records the prompts it was given. */
+    private final List<int[]> prompts = new ArrayList<>();
+    private final TranscriptionEngine.Backend abc = new TranscriptionEngine.Backend() {
+        @Override
+        public int decode(ByteBuffer input, int[] prompt, int[] out) {
+            prompts.add(prompt);
+            out[0] = 0;
+            out[1] = 1;
+            out[2] = 2;
+            return 3;
+        }
+    };
+
+    @After
+    public void shutDown() {
+        executor.shutdownNow();
+    }
+
+    private TranscriptionEngine engine(TranscriptionEngine.Backend backend) {
+        return new TranscriptionEngine(new MelSpectrogramEngine(INPUT_SHAPE), table, backend, executor);
+    }
+
+    @Test
+    public void withoutBackend_runsFeaturesOnly() throws Exception {
+        TranscriptionEngine engine = engine(null);
+        TranscriptionEngine.Result result = engine.transcribe(WavReader.open(TestAssets.file("jfk.wav")));
+
+        assertFalse(engine.hasBackend());
+        assertNull(result.text);
+        assertNotNull(result.speech);
+        assertEquals(1, result.windowCount);
+        assertEquals(11f, result.audioSeconds, 0.01f);
+        assertTrue(result.featureNanos > 0 && result.totalNanos >= result.featureNanos);
+        assertTrue(result.realTimeFactor() > 0f);
+    }
+
+    @Test
+    public void shortTake_isDecodedWithoutTimestamps() throws Exception {
+        TranscriptionEngine.Result result = engine(abc).transcribe(WavReader.open(TestAssets.file("jfk.wav")));
+
+        assertEquals("abc", result.text);
+        assertEquals(1, prompts.size());
+        assertArrayEquals(table.transcribePrompt(false), prompts.get(0));
+    }
+
+    @Test
+    public void silence_isNoSpeech() throws ExecutionException, InterruptedException {
+        TranscriptionEngine engine = engine(abc);
+        StreamingMelFrontend frontend = engine.newFrontend();
+        float[] quiet = new float[5 * AudioPreprocessor.SAMPLE_RATE];
+        Random random = new Random(3);
+        for (int i = 0; i < quiet.length; i++) quiet[i] = (float) random.nextGaussian() * 0.001f;
+        frontend.accept(quiet, 0, quiet.length);
+
+        TranscriptionEngine.Result result = engine.transcribe(frontend);
+        assertNull(result.speech);
+        assertEquals("", result.text);
+        assertEquals(0, result.windowCount);
+        assertTrue(prompts.isEmpty());
+    }
+
+    @Test
+    public void longTake_asksForTimestampsAcrossWindows() throws IOException, ExecutionException, InterruptedException {
+        float[] jfk = WavReader.open(TestAssets.file("jfk.wav")).readMono();
+        float[] take = new float[4 * jfk.length];
+        for (int copy = 0; copy < 4; copy++) System.arraycopy(jfk, 0, take, copy * jfk.length, jfk.length);
+        TranscriptionEngine engine = engine(abc);
+        StreamingMelFrontend frontend = engine.newFrontend();
+        frontend.accept(take, 0, take.length);
+
+        TranscriptionEngine.Result result = engine.transcribe(frontend);
+        assertTrue(result.windowCount > 1);
+        assertEquals(result.windowCount, prompts.size());
+        assertArrayEquals(table.transcribePrompt(true), prompts.get(0));
+    }
+
+    // Records the frame count of every input it is given, then answers like abc
+    private TranscriptionEngine.Backend recordingFrames(final List<Integer> frames) {
+        return (input, prompt, out) -> {
+            frames.add(input.capacity() / 4 / AudioPreprocessor.melFeatureCount(INPUT_SHAPE));
+            return abc.decode(input, prompt, out);
+        };
+    }
+
+    @Test
+    public void shortTake_goesToTheShortestLengthBucketThatHoldsItsSpeech() throws Exception {
+        List<Integer> frames = new ArrayList<>();
+        TranscriptionEngine engine = engine(recordingFrames(frames));
+        engine.addLengthBucket(1500, recordingFrames(frames));
+        engine.addLengthBucket(500, recordingFrames(frames));
+        engine.addLengthBucket(1000, recordingFrames(frames));
+
+        TranscriptionEngine.Result result = engine.transcribe(WavReader.open(TestAssets.file("jfk.wav")));
+        int speech = result.speech.length();
+        int expected = (speech <= 500) ? 500 : (speech <= 1000) ? 1000 : 1500;
+        assertArrayEquals(new int[] {500, 1000, 1500, 3000}, engine.getLengthBucketFrames());
+        assertEquals("abc", result.text);
+        assertEquals(expected, result.inputFrames);
+        assertEquals(Collections.singletonList(expected), frames);
+        assertArrayEquals(table.transcribePrompt(false), prompts.get(0));
+    }
+
+    @Test
+    public void longTake_usesTheFullInput_despiteLengthBuckets() throws IOException, ExecutionException, InterruptedException {
+        float[] jfk = WavReader.open(TestAssets.file("jfk.wav")).readMono();
+        float[] take = new float[4 * jfk.length];
+        for (int copy = 0; copy < 4; copy++) System.arraycopy(jfk, 0, take, copy * jfk.length, jfk.length);
+        List<Integer> frames = new ArrayList<>();
+        TranscriptionEngine engine = engine(recordingFrames(frames));
+        engine.addLengthBucket(1500, recordingFrames(frames));
+        StreamingMelFrontend frontend = engine.newFrontend();
+        frontend.accept(take, 0, take.length);
+
+        TranscriptionEngine.Result result = engine.transcribe(frontend);
+        assertEquals(3000, result.inputFrames);
+        for (int windowFrames : frames) assertEquals(3000, windowFrames);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lengthBucket_mustBeShorterThanTheInput() {
+        engine(abc).addLengthBucket(3000, abc);
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.projectvoice;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class TranscriptionMetricsTest {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void shutDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void engineRecordsEveryStageOfATake() throws Exception {
+        final long[] allocated = {1000L};
+        TranscriptionMetrics metrics = new TranscriptionMetrics(() -> allocated[0] += 4096);
+        TranscriptionEngine engine = new TranscriptionEngine(new MelSpectrogramEngine(new int[] {1, 80, 3000}), TestAssets.letters(),
+                new TranscriptionEngine.Backend() {
+                    @Override
+                    public int decode(ByteBuffer input, int[] prompt, int[] out) throws InterruptedException {
+                        Thread.sleep(2);
+                        out[0] = 7;
+                        return 1;
+                    }
+                }, executor, metrics);
+
+        StreamingMelFrontend frontend = engine.newFrontend();
+        WavReader.open(TestAssets.file("jfk.wav")).feed(frontend);
+        frontend.getUtterance().add(TranscriptionMetrics.Stage.CAPTURE_TO_STOP, 1234L);
+        TranscriptionEngine.Result result = engine.transcribe(frontend);
+
+        TranscriptionMetrics.Utterance utterance = result.utterance;
+        for (TranscriptionMetrics.Stage stage : TranscriptionMetrics.Stage.values()) {
+            assertTrue(stage + " not timed", utterance.getNanos(stage) > 0);
+        }
+        assertTrue(utterance.getNanos(TranscriptionMetrics.Stage.INFERENCE) >= 2_000_000L);
+        assertEquals(result.totalNanos, utterance.getNanos(TranscriptionMetrics.Stage.TOTAL));
+        assertEquals(4096L, utterance.getAllocatedBytes());
+        assertEquals(result.realTimeFactor(), utterance.getRealTimeFactor(), 1e-6f);
+
+        assertEquals(1, metrics.getUtteranceCount());
+        assertEquals(1234L, metrics.getStage(TranscriptionMetrics.Stage.CAPTURE_TO_STOP).getMax());
+        assertEquals(11_000L, metrics.getAudioMillis().getMax());
+        assertEquals(4096L, metrics.getAllocatedBytes().getMax());
+    }
+
+    @Test
+    public void toJson_hasTagsAndEveryHistogram() {
+        TranscriptionMetrics metrics = new TranscriptionMetrics(null);
+        metrics.setTag("device", "Pixel \"8\"");
+        TranscriptionMetrics.Utterance utterance = metrics.newUtterance();
+        utterance.add(TranscriptionMetrics.Stage.INFERENCE, 5_000_000L);
+        metrics.record(utterance, 2.5f, 10_000_000L);
+
+        String json = metrics.toJson();
+        assertTrue(json, json.startsWith("{\"tags\":{\"device\":\"Pixel \\\"8\\\"\"},\"utterances\":1,\"stages_ns\":{"));
+        for (TranscriptionMetrics.Stage stage : TranscriptionMetrics.Stage.values()) {
+            assertTrue(stage.jsonName(), json.contains("\"" + stage.jsonName() + "\":{\"count\":1,"));
+        }
+        assertTrue(json.contains("\"inference\":{\"count\":1,\"min\":5000000,"));
+        assertTrue(json.contains("\"allocated_bytes\":{\"count\":0,"));
+        assertTrue(json.contains("\"real_time_factor_permille\":{\"count\":1,\"min\":4,"));
+        assertTrue(json.contains("\"queue_wait_ns\":{\"count\":0,"));
+        assertTrue(json.endsWith("\"queue_depth\":{\"count\":0,\"min\":0,\"mean\":0,\"p50\":0,\"p90\":0,\"p99\":0,\"max\":0,\"buckets\":[]}}"));
+        assertEquals(-1L, utterance.getAllocatedBytes());
+
+        metrics.reset();
+        assertEquals(0, metrics.getUtteranceCount());
+        assertEquals(0, metrics.getStage(TranscriptionMetrics.Stage.TOTAL).getCount());
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.projectvoice;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Admission, priority, cancellation and coalescing of {@link TranscriptionScheduler} over a pool
+ * of one engine, whose backend can be made to hang in a window until it is cancelled.
+ */
+public class TranscriptionSchedulerTest {
+
+    private static final int[] INPUT_SHAPE = {1, 80, 3000};
+    private static final long TIMEOUT_MS = 5000;
+
+    private static float[] jfk;
+
+    private final ExecutorService featureExecutor = Executors.newSingleThreadExecutor();
+    private final HangingBackend backend = new HangingBackend();
+    private final TranscriptionEngine engine = new TranscriptionEngine(new MelSpectrogramEngine(INPUT_SHAPE), TestAssets.letters(),
+            backend, featureExecutor);
+    private final PriorityPool<TranscriptionEngine> engines = new PriorityPool<>(Collections.singletonList(engine));
+    private TranscriptionScheduler scheduler;
+
+    /** Answers "abc", or with {@link #hangNext} set, waits in the window until cancelled. */
+    private static final class HangingBackend implements TranscriptionEngine.Backend {
+        final AtomicBoolean hangNext = new AtomicBoolean();
+        final CountDownLatch hanging = new CountDownLatch(1);
+        final List<Boolean> cancelCalls = Collections.synchronizedList(new ArrayList<Boolean>());
+        volatile boolean cancelled;
+
+        @Override
+        public int decode(ByteBuffer input, int[] prompt, int[] out) throws InterruptedException {
+            if (hangNext.getAndSet(false)) {
+                hanging.countDown();
+                long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+                while (!cancelled && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(1);
+                }
+                throw new IllegalStateException("Interpreter cancelled"); // What a runtime would throw
+            }
+            out[0] = 0;
+            out[1] = 1;
+            out[2] = 2;
+            return 3;
+        }
+
+        @Override
+        public void setCancelled(boolean cancelled) {
+            this.cancelled = cancelled;
+            cancelCalls.add(cancelled);
+        }
+    }
+
+    @BeforeClass
+    public static void readAudio() throws IOException {
+        jfk = WavReader.open(TestAssets.file("jfk.wav")).readMono();
+    }
+
+    @After
+    public void shutDown() {
+        if (scheduler != null) scheduler.shutdownNow();
+        featureExecutor.shutdownNow();
+    }
+
+    private static TranscriptionScheduler.Job transcribeJfk() {
+        return engine -> {
+            StreamingMelFrontend frontend = engine.newFrontend();
+            frontend.accept(jfk, 0, jfk.length);
+            return engine.transcribe(frontend);
+        };
+    }
+
+    // Holds the only engine until the latch opens
+    private static TranscriptionScheduler.Job holdUntil(final CountDownLatch started, final CountDownLatch release) {
+        return engine -> {
+            started.countDown();
+            assertTrue(release.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            return null;
+        };
+    }
+
+    private static TranscriptionScheduler.Job record(final List<String> order, final String name) {
+        return engine -> {
+            order.add(name);
+            return null;
+        };
+    }
+
+    private void awaitWaiting(PriorityPool.Priority priority, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (engines.getWaitingCount(priority) != count) {
+            assertTrue("job never queued", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void fullQueue_rejectsFurtherJobs() throws Exception {
+        scheduler = new TranscriptionScheduler(engines, 2, null);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<TranscriptionEngine.Result> holding = scheduler.submit(PriorityPool.Priority.BATCH, holdUntil(started, release));
+        assertTrue(started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        Future<TranscriptionEngine.Result> queued = scheduler.submit(PriorityPool.Priority.BATCH, transcribeJfk());
+        awaitWaiting(PriorityPool.Priority.BATCH, 1);
+        assertEquals(1, scheduler.getQueueDepth());
+        try {
+            scheduler.submit(PriorityPool.Priority.INTERACTIVE, transcribeJfk());
+            fail("third job admitted");
+        } catch (RejectedExecutionException expected) {
+        }
+        assertEquals(1, scheduler.getRejectedCount());
+
+        release.countDown();
+        holding.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertEquals("abc", queued.get(TIMEOUT_MS, TimeUnit.MILLISECONDS).text);
+        assertEquals(2, scheduler.getWaitNanos().getCount());
+        assertEquals(2, scheduler.getQueueDepthHistogram().getCount());
+    }
+
+    @Test
+    public void queuedInteractiveJob_runsBeforeQueuedBatchJob() throws Exception {
+        scheduler = new TranscriptionScheduler(engines, 3, null);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        scheduler.submit(PriorityPool.Priority.BATCH, holdUntil(started, release));
+        assertTrue(started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        Future<TranscriptionEngine.Result> batch = scheduler.submit(PriorityPool.Priority.BATCH, record(order, "batch"));
+        awaitWaiting(PriorityPool.Priority.BATCH, 1);
+        Future<TranscriptionEngine.Result> interactive = scheduler.submit(PriorityPool.Priority.INTERACTIVE, record(order, "interactive"));
+        awaitWaiting(PriorityPool.Priority.INTERACTIVE, 1);
+
+        release.countDown();
+        batch.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        interactive.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertEquals(Arrays.asList("interactive", "batch"), order);
+    }
+
+    @Test
+    public void cancellingRunningJob_cancelsItsEngine() throws Exception {
+        scheduler = new TranscriptionScheduler(engines, 1, null);
+        backend.hangNext.set(true);
+        Future<TranscriptionEngine.Result> hung = scheduler.submit(PriorityPool.Priority.INTERACTIVE, transcribeJfk());
+        assertTrue(backend.hanging.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        assertTrue(hung.cancel(false));
+        assertTrue(hung.isCancelled());
+        assertTrue(backend.cancelCalls.contains(Boolean.TRUE));
+
+        // The engine is usable again once the cancelled job has let go of it
+        Future<TranscriptionEngine.Result> next = null;
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (next == null) {
+            try {
+                next = scheduler.submit(PriorityPool.Priority.INTERACTIVE, transcribeJfk());
+            } catch (RejectedExecutionException stillRunning) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(1);
+            }
+        }
+        assertEquals("abc", next.get(TIMEOUT_MS, TimeUnit.MILLISECONDS).text);
+        assertEquals(1, scheduler.getCancelledCount());
+    }
+
+    @Test
+    public void cancelledRunningJob_keepsItsSlotUntilItReleasesTheEngine() throws Exception {
+        scheduler = new TranscriptionScheduler(engines, 1, null);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<TranscriptionEngine.Result> holding = scheduler.submit(PriorityPool.Priority.BATCH, holdUntil(started, release));
+        assertTrue(started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        assertTrue(holding.cancel(false));
+        try {
+            scheduler.submit(PriorityPool.Priority.INTERACTIVE, transcribeJfk());
+            fail("job admitted while the cancelled one still holds the engine");
+        } catch (RejectedExecutionException expected) {
+        }
+        assertEquals(0, scheduler.getQueueDepth());
+        assertEquals(1, scheduler.getRunningCount());
+
+        release.countDown();
+        Future<TranscriptionEngine.Result> next = null;
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (next == null) {
+            try {
+                next = scheduler.submit(PriorityPool.Priority.INTERACTIVE, transcribeJfk());
+            } catch (RejectedExecutionException stillRunning) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(1);
+            }
+        }
+        assertEquals("abc", next.get(TIMEOUT_MS, TimeUnit.MILLISECONDS).text);
+    }
+
+    @Test
+    public void submitLatest_doesNotInterruptTheRunningTake() throws Exception {
+        scheduler = new TranscriptionScheduler(engines, 2, null);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        Future<TranscriptionEngine.Result> stale = scheduler.submitLatest(engine -> {
+            started.countDown();
+            try {
+                release.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+            return null;
+        });
+        assertTrue(started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        Future<TranscriptionEngine.Result> latest = scheduler.submitLatest(transcribeJfk());
+        assertTrue(stale.isCancelled());
+        assertTrue(backend.cancelled);
+        release.countDown();
+        assertEquals("abc", latest.get(TIMEOUT_MS, TimeUnit.MILLISECONDS).text);
+        assertFalse(interrupted.get());
+    }
+
+    @Test
+    public void cancelledQueuedJob_neverRuns() throws Exception {
+        scheduler = new TranscriptionScheduler(engines, 2, null);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        Future<TranscriptionEngine.Result> holding = scheduler.submit(PriorityPool.Priority.BATCH, holdUntil(started, release));
+        assertTrue(started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        Future<TranscriptionEngine.Result> queued = scheduler.submit(PriorityPool.Priority.BATCH, record(order, "queued"));
+        awaitWaiting(PriorityPool.Priority.BATCH, 1);
+
+        assertTrue(queued.cancel(false));
+        awaitWaiting(PriorityPool.Priority.BATCH, 0);
+        assertEquals(0, scheduler.getQueueDepth());
+        release.countDown();
+        holding.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertEquals(Collections.emptyList(), order);
+        assertEquals(1, engines.getIdleCount());
+    }
+
+    @Test
+    public void submitLatest_replacesThePreviousTake() throws Exception {
+        scheduler = new TranscriptionScheduler(engines, 2, null);
+        backend.hangNext.set(true);
+        Future<TranscriptionEngine.Result> stale = scheduler.submitLatest(transcribeJfk());
+        assertTrue(backend.hanging.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        Future<TranscriptionEngine.Result> latest = scheduler.submitLatest(transcribeJfk());
+
+        assertTrue(stale.isCancelled());
+        try {
+            stale.get();
+            fail("stale take delivered a result");
+        } catch (CancellationException expected) {
+        }
+        assertEquals("abc", latest.get(TIMEOUT_MS, TimeUnit.MILLISECONDS).text);
+        assertEquals(1, scheduler.getCoalescedCount());
+    }
+}
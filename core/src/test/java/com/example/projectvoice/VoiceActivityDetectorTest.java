@@ -0,0 +1,118 @@
+package com.example.projectvoice;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class VoiceActivityDetectorTest {
+
+    private static final int[] INPUT_SHAPE = {1, 80, 3000};
+    private static final int SAMPLES_PER_SECOND = AudioPreprocessor.SAMPLE_RATE;
+
+    private static float[] pcm16Asset(String name) throws IOException {
+        return AudioPreprocessor.pcm16ToFloat(StreamingMelFrontendTest.readWavData(TestAssets.file(name)));
+    }
+
+    // MicInput.wav is IEEE float rather than 16-bit PCM
+    private static float[] float32Asset(String name) throws IOException {
+        byte[] data = StreamingMelFrontendTest.readWavData(TestAssets.file(name));
+        float[] samples = new float[data.length / 4];
+        ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(samples);
+        return samples;
+    }
+
+    private static VoiceActivityDetector detect(float[] samples) {
+        VoiceActivityDetector vad = new VoiceActivityDetector();
+        StreamingMelFrontend frontend = new StreamingMelFrontend(new MelSpectrogramEngine(INPUT_SHAPE));
+        frontend.setVoiceActivityDetector(vad);
+        frontend.accept(samples, 0, samples.length);
+        assertEquals(frontend.getFrameCount(), vad.getFrameCount());
+        return vad;
+    }
+
+    private static float[] surround(float[] speech, int silenceSamples, float noiseLevel, long seed) {
+        Random random = new Random(seed);
+        float[] out = new float[speech.length + 2 * silenceSamples];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = (float) random.nextGaussian() * noiseLevel;
+        }
+        for (int i = 0; i < speech.length; i++) {
+            out[silenceSamples + i] += speech[i];
+        }
+        return out;
+    }
+
+    @Test
+    public void findsSpeechInEveryBundledSpeechAsset() throws IOException {
+        String[] assets = { "jfk.wav", "english_test1.wav", "english_test2.wav", "english_test_3_bili.wav" };
+        for (String asset : assets) {
+            VoiceActivityDetector vad = detect(pcm16Asset(asset));
+            VoiceActivityDetector.Segment speech = vad.findSpeech();
+            assertNotNull(asset, speech);
+            assertTrue(asset + " " + speech, speech.length() > vad.getFrameCount() / 2);
+        }
+    }
+
+    @Test
+    public void trimsTrailingDigitalSilence_micInput() throws IOException {
+        // ~5 s of speech followed by ~25 s of exact zeros
+        VoiceActivityDetector vad = detect(float32Asset("MicInput.wav"));
+        VoiceActivityDetector.Segment speech = vad.findSpeech();
+        assertNotNull(speech);
+        assertTrue(speech.toString(), speech.start < 50);
+        assertTrue(speech.toString(), speech.end > 450 && speech.end < 700);
+        assertTrue(vad.getFrameCount() > 2900);
+    }
+
+    @Test
+    public void trimsLeadingAndTrailingNoise_jfk() throws IOException {
+        float[] jfk = pcm16Asset("jfk.wav");
+        int pad = 2 * SAMPLES_PER_SECOND;
+        VoiceActivityDetector vad = detect(surround(jfk, pad, 0.001f, 1));
+        VoiceActivityDetector.Segment speech = vad.findSpeech();
+        assertNotNull(speech);
+
+        int padFrames = pad / AudioPreprocessor.FRAME_SHIFT;
+        int jfkFrames = AudioPreprocessor.numFrames(jfk.length);
+        assertTrue(speech.toString(), speech.start >= padFrames - VoiceActivityDetector.DEFAULT_PAD_BEFORE_FRAMES - 5);
+        assertTrue(speech.toString(), speech.start < padFrames + 50);
+        assertTrue(speech.toString(), speech.end <= padFrames + jfkFrames + VoiceActivityDetector.DEFAULT_PAD_AFTER_FRAMES + 5);
+        assertTrue(speech.toString(), speech.end > padFrames + jfkFrames - 100);
+    }
+
+    @Test
+    public void silenceHasNoSpeech() {
+        assertNull(detect(new float[3 * SAMPLES_PER_SECOND]).findSpeech());
+    }
+
+    @Test
+    public void steadyNoiseHasNoSpeech() {
+        VoiceActivityDetector vad = detect(surround(new float[0], 3 * SAMPLES_PER_SECOND / 2, 0.05f, 2));
+        assertNull(vad.findSpeech());
+        assertTrue("white noise is flat: " + vad.getFlatness(100), vad.getFlatness(100) > 0.4f);
+    }
+
+    @Test
+    public void briefClickIsNotSpeech() {
+        float[] samples = new float[2 * SAMPLES_PER_SECOND];
+        samples[SAMPLES_PER_SECOND] = 0.9f;
+        assertNull(detect(samples).findSpeech());
+    }
+
+    @Test
+    public void voicedSpeechIsLessFlatThanNoise() throws IOException {
+        VoiceActivityDetector vad = detect(pcm16Asset("jfk.wav"));
+        int loudest = 0;
+        for (int i = 1; i < vad.getFrameCount(); i++) {
+            if (vad.getEnergyDb(i) > vad.getEnergyDb(loudest)) loudest = i;
+        }
+        assertTrue(vad.isSpeech(loudest));
+        assertTrue(vad.getFlatness(loudest) < 0.1f);
+        assertTrue(vad.getNoiseFloorDb() < vad.getEnergyDb(loudest) - 20f);
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.projectvoice;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/** The capture path of the app (source, ring, frontend) on the JVM, with a WAV in place of the microphone. */
+public class WavAudioSourceTest {
+
+    @Test
+    public void pcm16Samples_comeOutAsStored_inPeriods() throws IOException {
+        WavReader wav = WavReader.open(TestAssets.file("jfk.wav"));
+        assertEquals(WavReader.FORMAT_PCM, wav.getFormat());
+        WavAudioSource source = new WavAudioSource(wav, 640);
+        short[] samples = new short[wav.getFrameCount() + 1000];
+        int total = 0;
+        int n;
+        while ((n = source.read(samples, total, 1000)) >= 0) {
+            assertTrue(n <= 640);
+            total += n;
+        }
+        assertEquals(wav.getFrameCount(), total);
+        assertEquals(total, source.getPosition());
+        for (int i = 0; i < total; i++) {
+            assertEquals("sample " + i, wav.getData().getShort(2 * i), samples[i]);
+        }
+    }
+
+    @Test
+    public void floatSamples_areRoundedAndClamped() throws IOException {
+        WavReader wav = WavReader.open(TestAssets.file("MicInput.wav"));
+        assertEquals(WavReader.FORMAT_IEEE_FLOAT, wav.getFormat());
+        float[] expected = wav.readMono();
+        short[] samples = new short[expected.length];
+        WavAudioSource source = new WavAudioSource(wav, expected.length);
+        assertEquals(expected.length, source.read(samples, 0, samples.length));
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(Math.max(-32768f, Math.min(32767f, Math.round(expected[i] * 32768f))), samples[i], 0f);
+        }
+        assertEquals(-1, source.read(samples, 0, 1));
+    }
+
+    @Test
+    public void captureThroughTheRing_givesTheFramesOfFeedingTheFile() throws IOException {
+        MelSpectrogramEngine engine = new MelSpectrogramEngine(new int[] {1, 80, 3000});
+        WavReader wav = WavReader.open(TestAssets.file("jfk.wav"));
+        StreamingMelFrontend direct = new StreamingMelFrontend(engine);
+        wav.feed(direct);
+
+        // A ring much shorter than the take, so capture wraps many times
+        PcmRingBuffer ring = new PcmRingBuffer(4096);
+        PcmRingBuffer.Reader reader = ring.newReader();
+        StreamingMelFrontend captured = new StreamingMelFrontend(engine);
+        AudioSource source = new WavAudioSource(wav, 1280);
+        while (ring.write(source, 1280) >= 0) {
+            reader.consume(captured::accept, Integer.MAX_VALUE);
+        }
+        assertEquals(wav.getFrameCount(), ring.getWrittenSamples());
+        assertEquals(0, reader.getOverruns());
+        assertTrue(captured.getUtterance().getNanos(TranscriptionMetrics.Stage.PCM_CONVERSION) > 0);
+        assertEquals(direct.getFrameCount(), captured.getFrameCount());
+        for (int f = 0; f < direct.getFrameCount(); f++) {
+            assertArrayEquals("frame " + f, direct.getFrame(f), captured.getFrame(f), 0f);
+        }
+    }
+}
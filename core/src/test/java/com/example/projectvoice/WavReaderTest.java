@@ -0,0 +1,101 @@
+package com.example.projectvoice;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class WavReaderTest {
+
+    private static final int[] INPUT_SHAPE = {1, 80, 3000};
+
+    /** Builds a WAV image: RIFF header, optional LIST chunk, fmt chunk, data chunk. */
+    private static ByteBuffer wav(int format, int channels, int bits, boolean withList, byte[] data) {
+        ByteBuffer buf = ByteBuffer.allocate(12 + (withList ? 8 + 5 + 1 : 0) + 8 + 16 + 8 + data.length).order(ByteOrder.LITTLE_ENDIAN);
+        buf.put("RIFF".getBytes()).putInt(buf.capacity() - 8).put("WAVE".getBytes());
+        if (withList) {
+            buf.put("LIST".getBytes()).putInt(5).put(new byte[] {'I', 'N', 'F', 'O', 0}).put((byte) 0); // Odd size, padded
+        }
+        buf.put("fmt ".getBytes()).putInt(16)
+                .putShort((short) format).putShort((short) channels).putInt(16000)
+                .putInt(16000 * channels * bits / 8).putShort((short) (channels * bits / 8)).putShort((short) bits);
+        buf.put("data".getBytes()).putInt(data.length).put(data);
+        buf.flip();
+        return buf;
+    }
+
+    @Test
+    public void jfk_matchesRawPcm16() throws IOException {
+        byte[] pcm = StreamingMelFrontendTest.readWavData(TestAssets.file("jfk.wav"));
+        WavReader wav = WavReader.open(TestAssets.file("jfk.wav"));
+
+        assertEquals(WavReader.FORMAT_PCM, wav.getFormat());
+        assertEquals(1, wav.getChannels());
+        assertEquals(16000, wav.getSampleRate());
+        assertEquals(pcm.length / 2, wav.getFrameCount());
+        assertEquals(11f, wav.getDurationSeconds(), 0.01f);
+        assertArrayEquals(AudioPreprocessor.pcm16ToFloat(pcm), wav.readMono(), 0f);
+    }
+
+    @Test
+    public void micInput_isReadAsFloat() throws IOException {
+        WavReader wav = WavReader.open(TestAssets.file("MicInput.wav"));
+
+        assertEquals(WavReader.FORMAT_IEEE_FLOAT, wav.getFormat());
+        assertEquals(32, wav.getBitsPerSample());
+        float peak = 0f;
+        for (float s : wav.readMono()) peak = Math.max(peak, Math.abs(s));
+        assertTrue(peak > 0f && peak <= 1f);
+    }
+
+    @Test
+    public void skipsUnknownChunksAndDownmixesStereo() throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        data.putShort((short) 16384).putShort((short) 0).putShort((short) -32768).putShort((short) -32768);
+        WavReader wav = WavReader.parse(wav(WavReader.FORMAT_PCM, 2, 16, true, data.array()));
+
+        assertEquals(2, wav.getFrameCount());
+        assertArrayEquals(new float[] {0.25f, -1f}, wav.readMono(), 0f);
+    }
+
+    @Test
+    public void readPastTheEnd_returnsWhatIsLeft() throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        data.putFloat(0.5f).putFloat(-0.5f).putFloat(0.25f);
+        WavReader wav = WavReader.parse(wav(WavReader.FORMAT_IEEE_FLOAT, 1, 32, false, data.array()));
+
+        float[] out = new float[4];
+        assertEquals(2, wav.read(1, out, 0, 4));
+        assertEquals(-0.5f, out[0], 0f);
+        assertEquals(0.25f, out[1], 0f);
+        assertEquals(0, wav.read(5, out, 0, 4));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnsupportedFormat() throws IOException {
+        WavReader.parse(wav(WavReader.FORMAT_PCM, 1, 24, false, new byte[6]));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsNonRiffInput() throws IOException {
+        WavReader.parse(ByteBuffer.wrap("this is not a wav file".getBytes()));
+    }
+
+    @Test
+    public void feed_matchesFeedingTheSamplesDirectly() throws IOException {
+        WavReader wav = WavReader.open(TestAssets.file("jfk.wav"));
+        StreamingMelFrontend fed = new StreamingMelFrontend(new MelSpectrogramEngine(INPUT_SHAPE));
+        wav.feed(fed);
+        float[] samples = wav.readMono();
+        StreamingMelFrontend direct = new StreamingMelFrontend(new MelSpectrogramEngine(INPUT_SHAPE));
+        direct.accept(samples, 0, samples.length);
+
+        int values = direct.getFrameCount() * INPUT_SHAPE[1];
+        assertEquals(direct.getFrameCount(), fed.getFrameCount());
+        assertArrayEquals(Arrays.copyOf(direct.finishFrames(), values), Arrays.copyOf(fed.finishFrames(), values), 0f);
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.projectvoice;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+public class WhisperAssetPackTest {
+
+    @Test
+    public void parsesEnglishPack() throws IOException {
+        WhisperAssetPack pack = WhisperAssetPack.open(TestAssets.file("filters_vocab_en.bin"));
+        assertEquals(80, pack.getMelCount());
+        assertEquals(201, pack.getFilterBinCount());
+        assertEquals(50257, pack.getTokenCount());
+        assertEquals("!", pack.tokenString(0));
+        assertEquals("<|endoftext|>", pack.tokenString(50256));
+        assertNull(pack.tokenString(50257));
+        assertNull(pack.tokenString(-1));
+    }
+
+    @Test
+    public void parsesMultilingualPack_andRebuildsMultiByteTokens() throws IOException {
+        WhisperAssetPack pack = WhisperAssetPack.open(TestAssets.file("filters_vocab_multilingual.bin"));
+        assertEquals(50257, pack.getTokenCount());
+        // Token 50255 is the three UTF-8 bytes of U+573A
+        byte[] bytes = new byte[8];
+        assertEquals(3, pack.copyToken(50255, bytes, 1));
+        assertEquals("\u573a", new String(bytes, 1, 3, "UTF-8"));
+        assertEquals(0, pack.tokenLength(50256));
+    }
+
+    @Test
+    public void filtersAreUsableByTheEngine() throws IOException {
+        WhisperAssetPack pack = WhisperAssetPack.open(TestAssets.file("filters_vocab_en.bin"));
+        FloatBuffer filters = pack.getFilters();
+        assertEquals(80 * 201, filters.remaining());
+        for (int m = 0; m < 80; m++) {
+            float sum = 0;
+            for (int k = 0; k < 201; k++) sum += filters.get(m * 201 + k);
+            assertTrue("filter " + m + " is empty", sum > 0);
+        }
+        SparseMelFilterbank filterbank = pack.createFilterbank();
+        assertTrue(filterbank.getNonZeroCount() < 80 * 201 / 4);
+
+        MelSpectrogramEngine engine = new MelSpectrogramEngine(new int[]{1, 80, 3000}, filterbank);
+        float[] audio = new float[16000];
+        for (int i = 0; i < audio.length; i++) audio[i] = (float) Math.sin(i * 0.1);
+        FloatBuffer out = engine.allocateInputBuffer().asFloatBuffer();
+        assertEquals(98, engine.process(audio, audio.length, out));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsBadMagic() throws IOException {
+        WhisperAssetPack.parse(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 0, 0, 0, 0, 0, 0, 0, 0}));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedTokens() throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(28).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(WhisperAssetPack.MAGIC).putInt(1).putInt(1).putFloat(1f).putInt(2).putInt(1).put((byte) 'a').put((byte) 0);
+        buf.flip();
+        WhisperAssetPack.parse(buf);
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.projectvoice;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class WhisperDecoderTest {
+
+    // Ten one-letter text tokens; EOT = 10 and SOT = 11 follow as in a multilingual table
+    private static final int VOCAB = 128;
+    private static final int EOT = 10;
+    private static final int SOT = 11;
+    private static final int[] PROMPT = { SOT };
+
+    /** Next-token probabilities as a function of the generated prefix. */
+    private interface LanguageModel {
+        void probabilities(int[] generated, int count, float[] probs);
+    }
+
+    /**
+     * Split model whose self cache records the tokens fed at each position. The decoder reads the
+     * generated prefix back out of the cache, so hypotheses only score correctly if every beam
+     * keeps its own cache.
+     */
+    private static final class PrefixModel implements SplitWhisperModel {
+        static final int MAX_POSITIONS = 80;
+
+        final LanguageModel lm;
+        final int[] prefix = new int[MAX_POSITIONS];
+        final float[] probs = new float[VOCAB];
+        int decodes = 0;
+        int encodes = 0;
+
+        PrefixModel(LanguageModel lm) {
+            this.lm = lm;
+        }
+
+        @Override public int[] getInputShape() { return new int[] { 1, 1, 1 }; }
+        @Override public int getVocabSize() { return VOCAB; }
+        @Override public int getMaxPositions() { return MAX_POSITIONS; }
+        @Override public int getCrossCacheBytes() { return 4; }
+        @Override public int getSelfCacheBytes() { return MAX_POSITIONS * 4; }
+        @Override public void encode(ByteBuffer melInput, ByteBuffer crossCache) { encodes++; }
+
+        @Override
+        public void decode(int token, int position, ByteBuffer crossCache, ByteBuffer selfCacheIn, ByteBuffer selfCacheOut, FloatBuffer logits) {
+            decodes++;
+            for (int p = 0; p < MAX_POSITIONS; p++) {
+                selfCacheOut.putInt(p * 4, p < position ? selfCacheIn.getInt(p * 4) : 0);
+            }
+            selfCacheOut.putInt(position * 4, token);
+
+            int count = 0;
+            for (int p = PROMPT.length; p <= position; p++) {
+                prefix[count++] = selfCacheOut.getInt(p * 4);
+            }
+            Arrays.fill(probs, 0f);
+            lm.probabilities(prefix, count, probs);
+            for (int v = 0; v < VOCAB; v++) {
+                logits.put(v, (float) Math.log(probs[v] + 1e-9));
+            }
+        }
+    }
+
+    // After the prompt: 0 (0.6) or 1 (0.4). After 0: seven equally likely letters, then EOT.
+    // After 1: always 2, then EOT. Greedy takes 0 and ends with mean logprob -0.82; 1 2 scores -0.31.
+    private static final LanguageModel GARDEN_PATH = new LanguageModel() {
+        @Override
+        public void probabilities(int[] generated, int count, float[] probs) {
+            if (count == 0) {
+                probs[0] = 0.6f;
+                probs[1] = 0.4f;
+            } else if (count == 1 && generated[0] == 0) {
+                for (int v = 3; v < 10; v++) probs[v] = 1f / 7;
+            } else if (count == 1) {
+                probs[2] = 1f;
+            } else {
+                probs[EOT] = 1f;
+            }
+        }
+    };
+
+    private static ByteBuffer noFeatures() {
+        return ByteBuffer.allocateDirect(4).order(ByteOrder.nativeOrder());
+    }
+
+    private static int[] decode(WhisperDecoder decoder, WhisperSession session) {
+        int[] out = new int[PrefixModel.MAX_POSITIONS];
+        int count = decoder.decode(session, noFeatures(), PROMPT, EOT, out);
+        return Arrays.copyOf(out, count);
+    }
+
+    @Test
+    public void greedyFollowsTheLocallyBestToken() {
+        GreedyDecoder greedy = new GreedyDecoder();
+        assertArrayEquals(new int[] { 0, 3 }, decode(greedy, new WhisperSession(new PrefixModel(GARDEN_PATH))));
+        double expected = (Math.log(0.6) + Math.log(1.0 / 7) + 0.0) / 3;
+        assertEquals(expected, greedy.getLastAverageLogProb(), 1e-3);
+    }
+
+    @Test
+    public void beamSearchFindsTheBetterSequence() {
+        BeamSearchDecoder beam = new BeamSearchDecoder(3);
+        PrefixModel model = new PrefixModel(GARDEN_PATH);
+        assertArrayEquals(new int[] { 1, 2 }, decode(beam, new WhisperSession(model, 3)));
+        assertEquals(Math.log(0.4) / 3, beam.getLastAverageLogProb(), 1e-3);
+        // Prompt step plus at most one step per live beam per position
+        assertTrue("decoder steps: " + model.decodes, model.decodes <= PROMPT.length + 3 * 3);
+    }
+
+    @Test
+    public void beamWidthOneMatchesGreedy() {
+        assertArrayEquals(decode(new GreedyDecoder(), new WhisperSession(new PrefixModel(GARDEN_PATH))),
+                decode(new BeamSearchDecoder(1), new WhisperSession(new PrefixModel(GARDEN_PATH))));
+    }
+
+    @Test
+    public void beamStopsAtTheDecoderContext() {
+        // Never emits EOT; every beam runs into the context limit
+        LanguageModel endless = new LanguageModel() {
+            @Override
+            public void probabilities(int[] generated, int count, float[] probs) {
+                probs[count % 2] = 0.7f;
+                probs[5] = 0.3f;
+            }
+        };
+        int[] tokens = decode(new BeamSearchDecoder(2), new WhisperSession(new PrefixModel(endless), 2));
+        // Every position feeds one token; the final token is selected but never needs feeding
+        assertEquals(PrefixModel.MAX_POSITIONS - PROMPT.length + 1, tokens.length);
+        for (int i = 0; i < tokens.length; i++) {
+            assertEquals(i % 2, tokens[i]);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void beamNeedsOneSlotPerBeam() {
+        decode(new BeamSearchDecoder(4), new WhisperSession(new PrefixModel(GARDEN_PATH), 2));
+    }
+
+    @Test
+    public void confidentResultNeedsNoFallback() {
+        TemperatureFallbackDecoder decoder = new TemperatureFallbackDecoder(new GreedyDecoder(), TestAssets.letters(), 1L);
+        LanguageModel confident = new LanguageModel() {
+            @Override
+            public void probabilities(int[] generated, int count, float[] probs) {
+                probs[count < 6 ? count : EOT] = 0.95f;
+                probs[9] += 0.05f;
+            }
+        };
+        assertArrayEquals(new int[] { 0, 1, 2, 3, 4, 5 }, decode(decoder, new WhisperSession(new PrefixModel(confident))));
+        assertEquals(1, decoder.getLastAttempts());
+        assertEquals(0f, decoder.getLastTemperature(), 0f);
+    }
+
+    @Test
+    public void repetitionTriggersSampling() {
+        TemperatureFallbackDecoder decoder = new TemperatureFallbackDecoder(new GreedyDecoder(), TestAssets.letters(), 1L);
+        // Greedy repeats "a" (compresses far too well); sampling often picks from the other letters
+        LanguageModel loop = new LanguageModel() {
+            @Override
+            public void probabilities(int[] generated, int count, float[] probs) {
+                if (count >= 60) {
+                    probs[EOT] = 1f;
+                    return;
+                }
+                probs[0] = 0.5f;
+                for (int v = 1; v < 10; v++) probs[v] = 0.5f / 9;
+            }
+        };
+        PrefixModel model = new PrefixModel(loop);
+        int[] tokens = decode(decoder, new WhisperSession(model));
+        assertTrue(decoder.getLastAttempts() > 1);
+        assertEquals("retries reuse the encoded window", 1, model.encodes);
+        assertTrue(decoder.getLastTemperature() > 0f);
+        assertEquals(60, tokens.length);
+    }
+
+    @Test
+    public void lowConfidenceExhaustsTemperaturesAndKeepsTheLastAttempt() {
+        TemperatureFallbackDecoder decoder = new TemperatureFallbackDecoder(new GreedyDecoder(), null,
+                new float[] { 0.5f, 1.0f }, -1.0f, 2.4f, new Random(3));
+        LanguageModel uniform = new LanguageModel() {
+            @Override
+            public void probabilities(int[] generated, int count, float[] probs) {
+                if (count >= 3) {
+                    probs[EOT] = 1f;
+                    return;
+                }
+                for (int v = 0; v < 10; v++) probs[v] = 0.1f;
+            }
+        };
+        assertEquals(3, decode(decoder, new WhisperSession(new PrefixModel(uniform))).length);
+        assertEquals(3, decoder.getLastAttempts());
+        assertEquals(1.0f, decoder.getLastTemperature(), 0f);
+        assertTrue(Float.isNaN(decoder.getLastCompressionRatio()));
+        assertEquals(3 * Math.log(0.1) / 4, decoder.getLastAverageLogProb(), 1e-3);
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.projectvoice;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.Assert.*;
+
+public class WhisperSessionTest {
+
+    private static final int VOCAB = 64;
+    private static final int EOT = 50;
+    private static final int SOT = 51;
+    private static final int NO_TIMESTAMPS = 52;
+    private static final int[] PROMPT = { SOT, NO_TIMESTAMPS };
+    private static final WhisperDecoder GREEDY = new GreedyDecoder();
+
+    /**
+     * Tiny stand-in for a split export. The "encoder" copies a script of token ids out of the
+     * features into the cross cache; the "decoder" keeps one int per position in the self cache
+     * and picks the next token only from what the caches contain, so it can only follow the
+     * script if the cross cache survives across steps and the self cache carries every earlier
+     * token forward.
+     */
+    private static final class ScriptedModel implements SplitWhisperModel {
+        static final int MAX_POSITIONS = 16;
+        static final int SCRIPT_LENGTH = 8;
+
+        int encodes = 0;
+        int decodes = 0;
+        ByteBuffer firstCrossCache;
+        ByteBuffer previousSelfOut;
+        int cacheMismatches = 0;
+        final int[] fed = new int[MAX_POSITIONS];
+        final int maxPositions;
+        boolean checkSwap = true; // Only meaningful with a single slot
+
+        ScriptedModel() {
+            this(MAX_POSITIONS);
+        }
+
+        ScriptedModel(int maxPositions) {
+            this.maxPositions = maxPositions;
+        }
+
+        @Override public int[] getInputShape() { return new int[] { 1, 1, SCRIPT_LENGTH }; }
+        @Override public int getVocabSize() { return VOCAB; }
+        @Override public int getMaxPositions() { return maxPositions; }
+        @Override public int getCrossCacheBytes() { return SCRIPT_LENGTH * 4; }
+        @Override public int getSelfCacheBytes() { return MAX_POSITIONS * 4; }
+
+        @Override
+        public void encode(ByteBuffer melInput, ByteBuffer crossCache) {
+            encodes++;
+            FloatBuffer features = melInput.order(ByteOrder.nativeOrder()).asFloatBuffer();
+            for (int i = 0; i < SCRIPT_LENGTH; i++) {
+                crossCache.putInt(i * 4, (int) features.get(i));
+            }
+        }
+
+        @Override
+        public void decode(int token, int position, ByteBuffer crossCache, ByteBuffer selfCacheIn, ByteBuffer selfCacheOut, FloatBuffer logits) {
+            decodes++;
+            if (firstCrossCache == null) firstCrossCache = crossCache;
+            assertSame("cross cache must be reused", firstCrossCache, crossCache);
+            assertNotSame(selfCacheIn, selfCacheOut);
+            if (checkSwap && position > 0) assertSame("last step's output is this step's cache", previousSelfOut, selfCacheIn);
+            previousSelfOut = selfCacheOut;
+
+            fed[position] = token;
+            for (int p = 0; p < position; p++) {
+                if (selfCacheIn.getInt(p * 4) != fed[p]) cacheMismatches++;
+            }
+            for (int p = position; p < MAX_POSITIONS; p++) {
+                if (selfCacheIn.getInt(p * 4) != 0) cacheMismatches++; // Nothing from the future or an older window
+            }
+            for (int p = 0; p < MAX_POSITIONS; p++) {
+                selfCacheOut.putInt(p * 4, p < position ? selfCacheIn.getInt(p * 4) : 0);
+            }
+            selfCacheOut.putInt(position * 4, token);
+
+            // Next token = script entry after the generated tokens, as recorded in the self cache
+            int generated = position + 1 - PROMPT.length;
+            int next = generated < 0 ? 0 : generated < SCRIPT_LENGTH ? crossCache.getInt(generated * 4) : EOT; // Prompt steps: ignored
+            for (int v = 0; v < VOCAB; v++) {
+                logits.put(v, v == next ? 1f : 0f);
+            }
+        }
+    }
+
+    private static ByteBuffer features(int... script) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(ScriptedModel.SCRIPT_LENGTH * 4).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < ScriptedModel.SCRIPT_LENGTH; i++) {
+            buffer.putFloat(i < script.length ? script[i] : EOT);
+        }
+        buffer.rewind();
+        return buffer;
+    }
+
+    @Test
+    public void encodesOnceAndStopsAtEndOfText() {
+        ScriptedModel model = new ScriptedModel();
+        WhisperSession session = new WhisperSession(model);
+        int[] out = new int[ScriptedModel.MAX_POSITIONS];
+
+        int count = GREEDY.decode(session, features(7, 3, 9, EOT), PROMPT, EOT, out);
+
+        assertEquals(3, count);
+        assertArrayEquals(new int[] { 7, 3, 9 }, Arrays.copyOf(out, count));
+        assertEquals(1, model.encodes);
+        // Two prompt steps plus one per generated token; the step after 9 yields EOT and ends decoding
+        assertEquals(PROMPT.length + count, model.decodes);
+        assertEquals(0, model.cacheMismatches);
+    }
+
+    @Test
+    public void newWindowReEncodesAndClearsSelfCache() {
+        ScriptedModel model = new ScriptedModel();
+        WhisperSession session = new WhisperSession(model);
+        int[] out = new int[ScriptedModel.MAX_POSITIONS];
+
+        assertEquals(5, GREEDY.decode(session, features(1, 2, 3, 4, 5, EOT), PROMPT, EOT, out));
+        assertEquals(2, GREEDY.decode(session, features(8, 6, EOT), PROMPT, EOT, out));
+        assertEquals(8, out[0]);
+        assertEquals(6, out[1]);
+        assertEquals(2, model.encodes);
+        assertEquals(2 * PROMPT.length + 5 + 2, session.getDecoderSteps());
+        assertEquals(0, model.cacheMismatches);
+    }
+
+    @Test
+    public void restartedWindowDecodesAgainWithoutEncoding() {
+        ScriptedModel model = new ScriptedModel();
+        model.checkSwap = false; // The restart starts from a cleared cache, not the last step's output
+        WhisperSession session = new WhisperSession(model);
+        int[] out = new int[ScriptedModel.MAX_POSITIONS];
+
+        assertEquals(3, GREEDY.decode(session, features(7, 3, 9, EOT), PROMPT, EOT, out));
+        Arrays.fill(out, 0);
+        assertEquals(3, GREEDY.decodeWindow(session, PROMPT, EOT, out));
+
+        assertArrayEquals(new int[] { 7, 3, 9 }, Arrays.copyOf(out, 3));
+        assertEquals(1, model.encodes);
+        assertEquals(PROMPT.length + 3, session.getPosition());
+        assertEquals(0, model.cacheMismatches);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void restartBeforeWindowIsRejected() {
+        new WhisperSession(new ScriptedModel()).restartWindow();
+    }
+
+    @Test
+    public void stopsWhenDecoderContextIsFull() {
+        int[] out = new int[64];
+        WhisperSession small = new WhisperSession(new ScriptedModel(4));
+        int limited = GREEDY.decode(small, features(1, 1, 1, 1, 1, 1, 1, 1), PROMPT, EOT, out);
+        assertEquals(3, limited); // 2 prompt positions + 2 generated steps, plus the final argmax
+        assertFalse(small.hasCapacity());
+    }
+
+    @Test
+    public void copiedSlotContinuesFromTheSameCache() {
+        ScriptedModel model = new ScriptedModel();
+        model.checkSwap = false;
+        WhisperSession session = new WhisperSession(model, 2);
+        session.beginWindow(features(4, 5, 6));
+        session.step(0, SOT);
+        session.step(0, NO_TIMESTAMPS);
+        session.copySlot(0, 1);
+        assertEquals(2, session.getPosition(1));
+
+        // Both slots hold [SOT, NO_TIMESTAMPS]; stepping one must not disturb the other
+        assertEquals(5, Logits.argMax(session.step(1, 4), VOCAB));
+        assertEquals(5, Logits.argMax(session.step(0, 4), VOCAB));
+        assertEquals(3, session.getPosition(0));
+        assertEquals(3, session.getPosition(1));
+        assertEquals(0, model.cacheMismatches);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void stepBeforeWindowIsRejected() {
+        new WhisperSession(new ScriptedModel()).step(SOT);
+    }
+
+    @Test
+    public void cancellationStopsAtTheNextStep_untilCleared() {
+        ScriptedModel model = new ScriptedModel();
+        WhisperSession session = new WhisperSession(model);
+        session.beginWindow(features(7, 3, EOT));
+        session.step(SOT);
+        session.setCancelled(true);
+        try {
+            session.step(NO_TIMESTAMPS);
+            fail("step after cancellation");
+        } catch (CancellationException expected) {
+        }
+        assertEquals(1, model.decodes);
+
+        session.setCancelled(false);
+        int[] out = new int[ScriptedModel.MAX_POSITIONS];
+        assertEquals(2, GREEDY.decode(session, features(7, 3, EOT), PROMPT, EOT, out));
+    }
+}
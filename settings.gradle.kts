@@ -21,3 +21,6 @@ dependencyResolutionManagement {
 
 rootProject.name = "Project Voice"
 include(":app")
+include(":core")
+include(":cli")
+include(":benchmarks")